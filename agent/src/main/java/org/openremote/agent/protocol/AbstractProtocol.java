@@ -37,9 +37,7 @@ import org.openremote.model.asset.agent.ProtocolDescriptor;
 import org.openremote.model.attribute.*;
 import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.Pair;
-import org.openremote.model.util.TextUtil;
 import org.openremote.model.value.Value;
-import org.openremote.model.value.Values;
 
 import java.io.IOException;
 import java.util.*;
@@ -111,7 +109,9 @@ public abstract class AbstractProtocol implements Protocol {
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, AbstractProtocol.class);
     public static final int PRIORITY = MessageBrokerService.PRIORITY + 10;
     protected final Map<AttributeRef, AssetAttribute> linkedAttributes = new HashMap<>();
-    protected final Set<AttributeRef> dynamicAttributes = new HashSet<>();
+    protected final Map<AttributeRef, AttributeValuePipeline> linkedAttributePipelines = new HashMap<>();
+    // The linked attribute updates of the current thread whilst processing a message, see batchLinkedAttributeUpdates
+    protected final ThreadLocal<List<AttributeEvent>> linkedAttributeUpdateBatch = new ThreadLocal<>();
     protected final Map<AttributeRef, LinkedProtocolInfo> linkedProtocolConfigurations = new HashMap<>();
     protected MessageBrokerContext messageBrokerContext;
     protected ProducerTemplate producerTemplate;
@@ -145,7 +145,10 @@ public abstract class AbstractProtocol implements Protocol {
                                 String protocolName = exchange.getIn().getHeader(ACTUATOR_TOPIC_TARGET_PROTOCOL, String.class);
                                 if (!getProtocolName().equals(protocolName))
                                     return;
-                                processLinkedAttributeWrite(exchange.getIn().getBody(AttributeEvent.class));
+                                processLinkedAttributeWrite(
+                                    exchange.getIn().getBody(AttributeEvent.class),
+                                    exchange.getIn().getHeader(AttributeEvent.HEADER_SOURCE, AttributeEvent.Source.class)
+                                );
                             });
                     }
                 });
@@ -168,12 +171,18 @@ public abstract class AbstractProtocol implements Protocol {
     final public void stop(Container container) {
         withLock(getProtocolName() + "::stop", () -> {
             linkedAttributes.clear();
+            linkedAttributePipelines.clear();
             try {
                 messageBrokerContext.stopRoute("Actuator-" + getProtocolName(), 1, TimeUnit.MILLISECONDS);
                 messageBrokerContext.removeRoute("Actuator-" + getProtocolName());
 
                 doStop(container);
 
+                // Cancel any timers the protocol didn't clean up
+                if (executorService != null) {
+                    executorService.cancelTimers(this);
+                }
+
             } catch (Exception ex) {
                 throw new RuntimeException(ex);
             }
@@ -230,19 +239,14 @@ public abstract class AbstractProtocol implements Protocol {
                 // linking process and without entry in the map any update would be blocked
                 linkedAttributes.put(attributeRef, attribute);
 
-                // Check for dynamic value placeholder
-                final String writeValue = Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_WRITE_VALUE, false, true)
-                    .map(Object::toString).orElse(null);
-
-                if (!TextUtil.isNullOrEmpty(writeValue) && writeValue.contains(DYNAMIC_VALUE_PLACEHOLDER)) {
-                    dynamicAttributes.add(attributeRef);
-                }
-
                 try {
+                    // Compile value processing once so sensor updates and writes don't have to re-read the meta items
+                    linkedAttributePipelines.put(attributeRef, AttributeValuePipeline.compile(attribute));
                     doLinkAttribute(attribute, protocolConfiguration);
                 } catch (Exception e) {
                     LOG.log(Level.SEVERE, "Failed to link attribute to protocol: " + attribute, e);
                     linkedAttributes.remove(attributeRef);
+                    linkedAttributePipelines.remove(attributeRef);
                 }
             });
         });
@@ -262,7 +266,7 @@ public abstract class AbstractProtocol implements Protocol {
                 LOG.fine("Unlinking attribute on '" + getProtocolName() + "': " + attribute);
                 AttributeRef attributeRef = attribute.getReferenceOrThrow();
                 linkedAttributes.remove(attributeRef);
-                dynamicAttributes.remove(attributeRef);
+                linkedAttributePipelines.remove(attributeRef);
                 doUnlinkAttribute(attribute, protocolConfiguration);
             });
         });
@@ -292,19 +296,17 @@ public abstract class AbstractProtocol implements Protocol {
         });
     }
 
-    final protected void processLinkedAttributeWrite(AttributeEvent event) {
+    final protected void processLinkedAttributeWrite(AttributeEvent event, AttributeEvent.Source source) {
         LOG.finest("Processing linked attribute write on " + getProtocolName() + ": " + event);
         withLock(getProtocolName() + "::processLinkedAttributeWrite", () -> {
             AttributeRef attributeRef = event.getAttributeRef();
             AssetAttribute attribute = linkedAttributes.get(attributeRef);
-            if (attribute == null) {
+            AttributeValuePipeline pipeline = linkedAttributePipelines.get(attributeRef);
+            if (attribute == null || pipeline == null) {
                 LOG.warning("Attribute doesn't exist on this protocol: " + attributeRef);
             } else {
 
-                Pair<Boolean, Value> ignoreAndConverted = Protocol.doOutboundValueProcessing(
-                    attribute,
-                    event.getValue().orElse(null),
-                    dynamicAttributes.contains(attributeRef));
+                Pair<Boolean, Value> ignoreAndConverted = pipeline.processOutbound(event.getValue().orElse(null));
 
                 if (ignoreAndConverted.key) {
                     LOG.fine("Value conversion returned ignore so attribute will not write to protocol: " + attribute.getReferenceOrThrow());
@@ -312,7 +314,7 @@ public abstract class AbstractProtocol implements Protocol {
                 }
 
                 AssetAttribute protocolConfiguration = getLinkedProtocolConfiguration(attribute);
-                processLinkedAttributeWrite(event, ignoreAndConverted.value, protocolConfiguration);
+                processLinkedAttributeWrite(event, ignoreAndConverted.value, protocolConfiguration, source);
             }
         });
     }
@@ -342,27 +344,120 @@ public abstract class AbstractProtocol implements Protocol {
     }
 
     /**
-     * Update the value of a linked attribute. Call this to publish new sensor values. This will call
-     * {@link #doInboundValueProcessing} before sending on the sensor queue.
+     * Update the value of a linked attribute. Call this to publish new sensor values. This will apply the
+     * {@link AttributeValuePipeline#processInbound} value processing compiled when the attribute was linked before
+     * sending on the sensor queue.
      */
     final protected void updateLinkedAttribute(final AttributeState state, long timestamp) {
+        AttributeEvent attributeEvent = processLinkedAttributeUpdate(state, timestamp);
+
+        if (attributeEvent == null) {
+            return;
+        }
+
+        List<AttributeEvent> batch = linkedAttributeUpdateBatch.get();
+        if (batch != null) {
+            batch.add(attributeEvent);
+            return;
+        }
+
+        LOG.fine("Sending on sensor queue: " + attributeEvent);
+        producerTemplate.sendBodyAndHeader(SENSOR_QUEUE, attributeEvent, Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, getProtocolName());
+    }
+
+    /**
+     * Update the values of several linked attributes at once, call this when a single message or response produces
+     * values for many attributes. Each state is processed as in {@link #updateLinkedAttribute(AttributeState, long)}
+     * but the resulting events are sent on the sensor queue as a single {@link AttributeEventBatch} so that the asset
+     * processing chain can handle them as one unit.
+     */
+    final protected void updateLinkedAttributes(final Collection<AttributeState> states, long timestamp) {
+        List<AttributeEvent> attributeEvents = new ArrayList<>(states.size());
+
+        for (AttributeState state : states) {
+            AttributeEvent attributeEvent = processLinkedAttributeUpdate(state, timestamp);
+            if (attributeEvent != null) {
+                attributeEvents.add(attributeEvent);
+            }
+        }
+
+        List<AttributeEvent> batch = linkedAttributeUpdateBatch.get();
+        if (batch != null) {
+            batch.addAll(attributeEvents);
+            return;
+        }
+
+        sendLinkedAttributeUpdates(attributeEvents);
+    }
+
+    /**
+     * Run the processing of a single message which updates several linked attributes, e.g. a received packet with the
+     * status of all channels of a device. The updates of {@link #updateLinkedAttribute} and
+     * {@link #updateLinkedAttributes} on this thread whilst processing are sent as one batch once the processing is
+     * done, nested calls join the outer batch.
+     */
+    final protected void batchLinkedAttributeUpdates(Runnable processing) {
+        if (linkedAttributeUpdateBatch.get() != null) {
+            processing.run();
+            return;
+        }
+
+        List<AttributeEvent> batch = new ArrayList<>();
+        linkedAttributeUpdateBatch.set(batch);
+        try {
+            processing.run();
+        } finally {
+            linkedAttributeUpdateBatch.remove();
+        }
+        sendLinkedAttributeUpdates(batch);
+    }
+
+    protected void sendLinkedAttributeUpdates(List<AttributeEvent> attributeEvents) {
+        if (attributeEvents.isEmpty()) {
+            return;
+        }
+
+        if (attributeEvents.size() == 1) {
+            LOG.fine("Sending on sensor queue: " + attributeEvents.get(0));
+            producerTemplate.sendBodyAndHeader(SENSOR_QUEUE, attributeEvents.get(0), Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, getProtocolName());
+            return;
+        }
+
+        AttributeEventBatch batch = new AttributeEventBatch(attributeEvents);
+        LOG.fine("Sending batch of " + batch.size() + " events on sensor queue");
+        producerTemplate.sendBodyAndHeader(SENSOR_QUEUE, batch, Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, getProtocolName());
+    }
+
+    /**
+     * Update the values of several linked attributes, with the current system time as event time see
+     * {@link #updateLinkedAttributes(Collection, long)} for more details.
+     */
+    final protected void updateLinkedAttributes(final Collection<AttributeState> states) {
+        updateLinkedAttributes(states, timerService.getCurrentTimeMillis());
+    }
+
+    /**
+     * Apply the inbound value processing of the linked attribute and create the resulting sensor
+     * {@link AttributeEvent}; returns <code>null</code> if the attribute is not linked or the update should be
+     * ignored.
+     */
+    protected AttributeEvent processLinkedAttributeUpdate(final AttributeState state, long timestamp) {
         AssetAttribute attribute = linkedAttributes.get(state.getAttributeRef());
+        AttributeValuePipeline pipeline = linkedAttributePipelines.get(state.getAttributeRef());
 
-        if (attribute == null) {
+        if (attribute == null || pipeline == null) {
             LOG.severe("Update linked attribute called for un-linked attribute: " + state);
-            return;
+            return null;
         }
 
-        Pair<Boolean, Value> ignoreAndConverted = Protocol.doInboundValueProcessing(attribute, state.getValue().orElse(null), assetService);
+        Pair<Boolean, Value> ignoreAndConverted = pipeline.processInbound(state.getValue().orElse(null), assetService);
 
         if (ignoreAndConverted.key) {
             LOG.fine("Value conversion returned ignore so attribute will not be updated: " + attribute.getReferenceOrThrow());
-            return;
+            return null;
         }
 
-        AttributeEvent attributeEvent = new AttributeEvent(new AttributeState(attribute.getReferenceOrThrow(), ignoreAndConverted.value), timestamp);
-        LOG.fine("Sending on sensor queue: " + attributeEvent);
-        producerTemplate.sendBodyAndHeader(SENSOR_QUEUE, attributeEvent, Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, getProtocolName());
+        return new AttributeEvent(new AttributeState(attribute.getReferenceOrThrow(), ignoreAndConverted.value), timestamp);
     }
 
     /**
@@ -525,4 +620,13 @@ public abstract class AbstractProtocol implements Protocol {
      * purpose if required (e.g. {@link org.openremote.agent.protocol.http.HttpClientProtocol#META_QUERY_PARAMETERS}).
      */
     abstract protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration);
+
+    /**
+     * Same as {@link #processLinkedAttributeWrite(AttributeEvent, Value, AssetAttribute)} but also supplies the
+     * {@link AttributeEvent.Source} of the write request (can be null if unknown); protocols that prioritise writes to
+     * a shared bus/network can override this.
+     */
+    protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration, AttributeEvent.Source source) {
+        processLinkedAttributeWrite(event, processedValue, protocolConfiguration);
+    }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol;
+
+import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.attribute.AttributeExecuteStatus;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.attribute.AttributeValueDescriptor;
+import org.openremote.model.util.Pair;
+import org.openremote.model.value.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+import static org.openremote.agent.protocol.Protocol.*;
+import static org.openremote.model.value.Values.NULL_LITERAL;
+
+/**
+ * Immutable, pre-compiled form of the inbound and outbound value processing defined by the meta items of a protocol
+ * linked {@link AssetAttribute} (see the recommended inbound and outbound value conversion of {@link Protocol}).
+ * <p>
+ * The {@link ValueFilter}s, value converters and write value are extracted and parsed once when the attribute is
+ * linked so that processing of each sensor update or attribute write only operates on the already parsed structures.
+ * A new pipeline must be compiled whenever the linked attribute is modified (protocols are always re-linked in that
+ * case).
+ */
+public final class AttributeValuePipeline {
+
+    /**
+     * Pre-computed outcome of a value converter entry.
+     */
+    protected static final class ConverterResult {
+        final boolean ignore;
+        final Value value;
+
+        ConverterResult(boolean ignore, Value value) {
+            this.ignore = ignore;
+            this.value = value;
+        }
+    }
+
+    protected final AttributeRef attributeRef;
+    protected final ValueFilter[] valueFilters;
+    protected final Map<String, ConverterResult> valueConverter;
+    protected final ValueType attributeValueType;
+    protected final boolean executable;
+    protected final Map<String, ConverterResult> writeValueConverter;
+    protected final boolean hasWriteValue;
+    protected final String writeValue;
+    protected final boolean writeValueParsed;
+    protected final Value parsedWriteValue;
+    protected final boolean containsDynamicPlaceholder;
+
+    protected AttributeValuePipeline(AttributeRef attributeRef,
+                                     ValueFilter[] valueFilters,
+                                     Map<String, ConverterResult> valueConverter,
+                                     ValueType attributeValueType,
+                                     boolean executable,
+                                     Map<String, ConverterResult> writeValueConverter,
+                                     boolean hasWriteValue,
+                                     String writeValue,
+                                     boolean writeValueParsed,
+                                     Value parsedWriteValue,
+                                     boolean containsDynamicPlaceholder) {
+        this.attributeRef = attributeRef;
+        this.valueFilters = valueFilters;
+        this.valueConverter = valueConverter;
+        this.attributeValueType = attributeValueType;
+        this.executable = executable;
+        this.writeValueConverter = writeValueConverter;
+        this.hasWriteValue = hasWriteValue;
+        this.writeValue = writeValue;
+        this.writeValueParsed = writeValueParsed;
+        this.parsedWriteValue = parsedWriteValue;
+        this.containsDynamicPlaceholder = containsDynamicPlaceholder;
+    }
+
+    /**
+     * Extract and parse all value processing meta items of the linked attribute; will throw an
+     * {@link IllegalArgumentException} if any of the meta items are of the wrong type.
+     */
+    public static AttributeValuePipeline compile(AssetAttribute attribute) throws IllegalArgumentException {
+
+        ValueFilter[] valueFilters = Protocol.getLinkedAttributeValueFilters(attribute).orElse(null);
+
+        Map<String, ConverterResult> valueConverter = compileConverter(
+            Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_VALUE_CONVERTER, false, false)
+                .flatMap(Values::getObject)
+                .orElse(null)
+        );
+
+        Map<String, ConverterResult> writeValueConverter = compileConverter(
+            Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_WRITE_VALUE_CONVERTER, false, false)
+                .flatMap(Values::getObject)
+                .orElse(null)
+        );
+
+        ValueType attributeValueType = attribute.getType().map(AttributeValueDescriptor::getValueType).orElse(null);
+
+        boolean hasWriteValue = attribute.hasMetaItem(META_ATTRIBUTE_WRITE_VALUE);
+        String writeValue = Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_WRITE_VALUE, false, true)
+            .map(Object::toString).orElse(null);
+        boolean containsDynamicPlaceholder = writeValue != null && writeValue.contains(DYNAMIC_VALUE_PLACEHOLDER);
+
+        // Static write values only need to be parsed once
+        boolean writeValueParsed = false;
+        Value parsedWriteValue = null;
+        if (writeValue != null && !containsDynamicPlaceholder) {
+            try {
+                parsedWriteValue = Values.parse(writeValue).orElse(null);
+                writeValueParsed = true;
+            } catch (Exception e) {
+                LOG.log(Level.INFO, "Failed to pass attribute write payload generated by META_ATTRIBUTE_WRITE_VALUE", e);
+            }
+        }
+
+        return new AttributeValuePipeline(
+            attribute.getReferenceOrThrow(),
+            valueFilters,
+            valueConverter,
+            attributeValueType,
+            attribute.isExecutable(),
+            writeValueConverter,
+            hasWriteValue,
+            writeValue,
+            writeValueParsed,
+            parsedWriteValue,
+            containsDynamicPlaceholder
+        );
+    }
+
+    protected static Map<String, ConverterResult> compileConverter(ObjectValue converter) {
+        if (converter == null) {
+            return null;
+        }
+
+        Map<String, ConverterResult> compiled = new HashMap<>();
+        converter.stream().forEach(entry -> {
+            Value v = entry.value;
+            ConverterResult result = new ConverterResult(false, v);
+
+            if (v != null && v.getType() == ValueType.STRING) {
+                String valStr = v.toString();
+                if ("@IGNORE".equalsIgnoreCase(valStr)) {
+                    result = new ConverterResult(true, null);
+                } else if ("@NULL".equalsIgnoreCase(valStr)) {
+                    result = new ConverterResult(false, null);
+                }
+            }
+
+            // A null converter value is treated the same as a missing key
+            if (v != null) {
+                compiled.put(entry.key, result);
+            }
+        });
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    protected static Pair<Boolean, Value> applyConverter(Value value, Map<String, ConverterResult> converter) {
+        String converterKey = value == null ? NULL_LITERAL.toUpperCase(Locale.ROOT) : value.toString().toUpperCase(Locale.ROOT);
+        ConverterResult result = converter.get(converterKey);
+        return result != null ? new Pair<>(result.ignore, result.value) : new Pair<>(true, value);
+    }
+
+    public AttributeRef getAttributeRef() {
+        return attributeRef;
+    }
+
+    /**
+     * Inbound value processing (Protocol -> Linked Attribute).
+     */
+    public Pair<Boolean, Value> processInbound(Value value, ProtocolAssetService assetService) {
+
+        // filtering
+        if (valueFilters != null) {
+            value = assetService.applyValueFilters(value, valueFilters);
+        }
+
+        // value conversion
+        if (valueConverter != null) {
+            LOG.fine("Applying attribute value converter to attribute: " + attributeRef);
+
+            Pair<Boolean, Value> convertedValue = applyConverter(value, valueConverter);
+
+            if (convertedValue.key) {
+                return convertedValue;
+            }
+
+            value = convertedValue.value;
+        }
+
+        // built in value conversion
+        if (value != null && attributeValueType != null && attributeValueType != value.getType()) {
+            LOG.fine("Trying to convert value: " + value.getType() + " -> " + attributeValueType);
+            Value convertedValue = Values.convertToValue(value, attributeValueType).orElse(null);
+
+            if (convertedValue == null) {
+                LOG.warning("Failed to convert value: " + value.getType() + " -> " + attributeValueType);
+                LOG.warning("Cannot send linked attribute update");
+                return new Pair<>(true, null);
+            }
+
+            value = convertedValue;
+        }
+
+        return new Pair<>(false, value);
+    }
+
+    /**
+     * Outbound value processing (Linked Attribute -> Protocol).
+     */
+    public Pair<Boolean, Value> processOutbound(Value value) {
+
+        if (executable) {
+            AttributeExecuteStatus status = Values.getString(value)
+                .flatMap(AttributeExecuteStatus::fromString)
+                .orElse(null);
+
+            if (status == AttributeExecuteStatus.REQUEST_START && writeValue != null) {
+                return new Pair<>(false, writeValueParsed ? copyParsedWriteValue() : null);
+            }
+        }
+
+        // value conversion
+        if (writeValueConverter != null) {
+            LOG.fine("Applying attribute value converter to attribute write: " + attributeRef);
+
+            Pair<Boolean, Value> converterResult = applyConverter(value, writeValueConverter);
+
+            if (converterResult.key) {
+                return converterResult;
+            }
+
+            value = converterResult.value;
+        }
+
+        // dynamic value insertion
+        if (hasWriteValue) {
+            if (writeValue == null) {
+                LOG.fine("META_ATTRIBUTE_WRITE_VALUE contains null so sending null to protocol for attribute write on: " + attributeRef);
+                return new Pair<>(false, null);
+            }
+
+            if (containsDynamicPlaceholder) {
+                String valueStr = value == null ? NULL_LITERAL : value.toString();
+                try {
+                    value = Values.parse(writeValue.replaceAll(DYNAMIC_VALUE_PLACEHOLDER_REGEXP, valueStr)).orElse(null);
+                } catch (Exception e) {
+                    LOG.log(Level.INFO, "Failed to pass attribute write payload generated by META_ATTRIBUTE_WRITE_VALUE", e);
+                }
+            } else if (writeValueParsed) {
+                value = copyParsedWriteValue();
+            }
+        }
+
+        return new Pair<>(false, value);
+    }
+
+    /**
+     * Protocols are free to modify the value they are given so containers must not be shared between writes.
+     */
+    protected Value copyParsedWriteValue() {
+        if (parsedWriteValue instanceof ObjectValue) {
+            return ((ObjectValue) parsedWriteValue).deepCopy();
+        }
+        if (parsedWriteValue instanceof ArrayValue) {
+            return ((ArrayValue) parsedWriteValue).deepCopy();
+        }
+        return parsedWriteValue;
+    }
+}
@@ -99,7 +99,7 @@ import static org.openremote.model.value.Values.NULL_LITERAL;
  * <h1>Inbound value conversion (Protocol -> Linked Attribute)</h1>
  * <p>
  * Standard value filtering and/or conversion should be performed in the following order, this is encapsulated in
- * {@link #doInboundValueProcessing}:
+ * {@link AttributeValuePipeline#processInbound}, compile the pipeline once when the attribute is linked:
  * <ol>
  * <li>Configurable value filtering which allows the value produced by the protocol to be filtered through any
  * number of {@link ValueFilter}s before being written to the linked attribute
@@ -112,7 +112,7 @@ import static org.openremote.model.value.Values.NULL_LITERAL;
  * </ol>
  * <h1>Outbound value conversion (Linked Attribute -> Protocol)</h1>
  * Standard value conversion should be performed in the following order, this is encapsulated in
- * {@link #doOutboundValueProcessing}:
+ * {@link AttributeValuePipeline#processOutbound}, compile the pipeline once when the attribute is linked:
  * <ol>
  * <li>Configurable value conversion which allows the value sent from the linked attribute to be converted in a
  * configurable way before being sent to the protocol for processing (see {@link #META_ATTRIBUTE_WRITE_VALUE_CONVERTER})
@@ -240,6 +240,32 @@ public interface Protocol extends ContainerService {
         false
     );
 
+    /**
+     * Maximum number of messages per second that a {@link Protocol} should write to the bus/network; writes that
+     * exceed this rate are queued in priority order (see
+     * {@link org.openremote.agent.protocol.io.OutboundMessageScheduler}). This is typically used for
+     * {@link org.openremote.agent.protocol.io.IoClient} based {@link Protocol}s.
+     */
+    MetaItemDescriptor META_PROTOCOL_MAX_SEND_RATE = metaItemInteger(
+        PROTOCOL_NAMESPACE + ":maxSendRate",
+        ACCESS_PRIVATE,
+        false,
+        1,
+        1000
+    );
+
+    /**
+     * For protocols that use {@link #META_PROTOCOL_MAX_SEND_RATE}, this is the number of messages that can be written
+     * in a single burst before the rate limit applies (defaults to 1).
+     */
+    MetaItemDescriptor META_PROTOCOL_SEND_BURST = metaItemInteger(
+        PROTOCOL_NAMESPACE + ":sendBurst",
+        ACCESS_PRIVATE,
+        false,
+        1,
+        1000
+    );
+
     /**
      * OAuth grant ({@link OAuthGrant} stored as {@link ObjectValue})
      */
@@ -544,128 +570,6 @@ public interface Protocol extends ContainerService {
         }
     }
 
-    /**
-     * Will perform recommended value processing for outbound values (Linked Attribute -> Protocol); the
-     * containsDynamicPlaceholder flag is required so that the entire {@link #META_ATTRIBUTE_WRITE_VALUE} payload is
-     * not searched on every single write request (for performance reasons), instead this should be recorded when the
-     * attribute is first linked.
-     */
-    static Pair<Boolean, Value> doOutboundValueProcessing(AssetAttribute attribute, Value value, boolean containsDynamicPlaceholder) {
-
-        String writeValue = Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_WRITE_VALUE, false, true)
-            .map(Object::toString).orElse(null);
-
-        if (attribute.isExecutable()) {
-            AttributeExecuteStatus status = Values.getString(value)
-                .flatMap(AttributeExecuteStatus::fromString)
-                .orElse(null);
-
-            if (status == AttributeExecuteStatus.REQUEST_START && writeValue != null) {
-                try {
-                    value = Values.parse(writeValue).orElse(null);
-                } catch (Exception e) {
-                    value = null;
-                    LOG.log(Level.INFO, "Failed to pass attribute write payload generated by META_ATTRIBUTE_WRITE_VALUE", e);
-                }
-                return new Pair<>(false, value);
-            }
-        }
-
-        // value conversion
-        ObjectValue converter = Values.getMetaItemValueOrThrow(
-            attribute,
-            META_ATTRIBUTE_WRITE_VALUE_CONVERTER,
-            false,
-            false)
-            .flatMap(Values::getObject)
-            .orElse(null);
-
-        if (converter != null) {
-            LOG.fine("Applying attribute value converter to attribute write: " + attribute.getReferenceOrThrow());
-
-            Pair<Boolean, Value> converterResult = applyValueConverter(value, converter);
-
-            if (converterResult.key) {
-                return converterResult;
-            }
-
-            value = converterResult.value;
-        }
-
-        // dynamic value insertion
-        boolean hasWriteValue = attribute.hasMetaItem(META_ATTRIBUTE_WRITE_VALUE);
-
-        if (hasWriteValue) {
-            if (writeValue == null) {
-                LOG.fine("META_ATTRIBUTE_WRITE_VALUE contains null so sending null to protocol for attribute write on: " + attribute.getReferenceOrThrow());
-                return new Pair<>(false, null);
-            }
-
-            if (containsDynamicPlaceholder) {
-                String valueStr = value == null ? NULL_LITERAL : value.toString();
-                writeValue = writeValue.replaceAll(DYNAMIC_VALUE_PLACEHOLDER_REGEXP, valueStr);
-            }
-
-            try {
-                value = Values.parse(writeValue).orElse(null);
-            } catch (Exception e) {
-                LOG.log(Level.INFO, "Failed to pass attribute write payload generated by META_ATTRIBUTE_WRITE_VALUE", e);
-            }
-        }
-
-        return new Pair<>(false, value);
-    }
-
-    static Pair<Boolean, Value> doInboundValueProcessing(AssetAttribute attribute, Value value, ProtocolAssetService assetService) {
-
-        // filtering
-        ValueFilter[] filters = Protocol.getLinkedAttributeValueFilters(attribute).orElse(null);
-        if (filters != null) {
-            value = assetService.applyValueFilters(value, filters);
-        }
-
-        // value conversion
-        ObjectValue converter = Values.getMetaItemValueOrThrow(
-            attribute,
-            META_ATTRIBUTE_VALUE_CONVERTER,
-            false,
-            false)
-            .flatMap(Values::getObject)
-            .orElse(null);
-
-        if (converter != null) {
-            LOG.fine("Applying attribute value converter to attribute: " + attribute.getReferenceOrThrow());
-
-            Pair<Boolean, Value> convertedValue = applyValueConverter(value, converter);
-
-            if (convertedValue.key) {
-                return convertedValue;
-            }
-
-            value = convertedValue.value;
-        }
-
-        // built in value conversion
-        Optional<ValueType> attributeValueType = attribute.getType().map(AttributeValueDescriptor::getValueType);
-
-        if (value != null && attributeValueType.isPresent()) {
-            if (attributeValueType.get() != value.getType()) {
-                LOG.fine("Trying to convert value: " + value.getType() + " -> " + attributeValueType.get());
-                Optional<Value> convertedValue = Values.convertToValue(value, attributeValueType.get());
-
-                if (!convertedValue.isPresent()) {
-                    LOG.warning("Failed to convert value: " + value.getType() + " -> " + attributeValueType.get());
-                    LOG.warning("Cannot send linked attribute update");
-                    return new Pair<>(true, null);
-                }
-
-                value = convertedValue.get();
-            }
-        }
-
-        return new Pair<>(false, value);
-    }
-
     static Pair<Boolean, Value> applyValueConverter(Value value, ObjectValue converter) {
 
         if (converter == null) {
@@ -45,4 +45,27 @@ public interface ProtocolExecutorService extends ScheduledExecutorService, Conta
      * @see java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay
      */
     ScheduledFuture<?> scheduleWithFixedDelay(Runnable runnable, long initialDelayMillis, long periodMillis);
+
+    /**
+     * Schedule a coarse grained one-shot timer (e.g. a poll, replay or validity timer) on a timing wheel; timers fire
+     * with a resolution of about 100ms (shorter periods are rounded up) and are cheap to create and cancel so this
+     * should be preferred for large numbers of timers. The owner (typically the caller instance) can be used to cancel all its timers with
+     * {@link #cancelTimers}.
+     */
+    ScheduledFuture<?> scheduleTimer(Object owner, Runnable runnable, long delayMillis);
+
+    /**
+     * Periodic version of {@link #scheduleTimer}, see {@link #scheduleAtFixedRate}.
+     */
+    ScheduledFuture<?> scheduleTimerAtFixedRate(Object owner, Runnable runnable, long initialDelayMillis, long periodMillis);
+
+    /**
+     * Periodic version of {@link #scheduleTimer}, see {@link #scheduleWithFixedDelay}.
+     */
+    ScheduledFuture<?> scheduleTimerWithFixedDelay(Object owner, Runnable runnable, long initialDelayMillis, long periodMillis);
+
+    /**
+     * Cancel all timers scheduled by the owner; returns the number of cancelled timers.
+     */
+    int cancelTimers(Object owner);
 }
@@ -34,6 +34,7 @@ import static org.openremote.model.Constants.PROTOCOL_NAMESPACE;
 import static org.openremote.model.asset.AssetType.THING;
 import static org.openremote.model.attribute.AttributeValueType.*;
 import static org.openremote.model.attribute.MetaItemDescriptor.Access.ACCESS_PRIVATE;
+import static org.openremote.model.attribute.MetaItemDescriptorImpl.metaItemFixedBoolean;
 import static org.openremote.model.attribute.MetaItemDescriptorImpl.metaItemInteger;
 import static org.openremote.model.attribute.MetaItemDescriptorImpl.metaItemObject;
 import static org.openremote.model.attribute.MetaItemType.AGENT_LINK;
@@ -44,7 +45,29 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
     private static final String PROTOCOL_VERSION = "1.70";
     public static final String PROTOCOL_NAME = PROTOCOL_NAMESPACE + ":artnet";
     public static final String PROTOCOL_DISPLAY_NAME = "Artnet Client";
-    public static final List<MetaItemDescriptor> PROTOCOL_META_ITEM_DESCRIPTORS = joinCollections(ArtnetClientProtocol.PROTOCOL_META_ITEM_DESCRIPTORS, AbstractIoClientProtocol.PROTOCOL_GENERIC_META_ITEM_DESCRIPTORS);
+    /**
+     * Default max number of ArtDMX packets per second (the DMX512 refresh rate) when no
+     * {@link Protocol#META_PROTOCOL_MAX_SEND_RATE} is configured
+     */
+    public static final int DEFAULT_MAX_SEND_RATE = 44;
+    /**
+     * Enables the frame buffer mode: light writes are applied to the channel state of their universe and one packet
+     * per changed universe is sent at the {@link #META_ARTNET_REFRESH_RATE} instead of a packet per write
+     */
+    public static final MetaItemDescriptor META_ARTNET_FRAME_BUFFER = metaItemFixedBoolean(
+            PROTOCOL_NAME + ":frameBuffer",
+            ACCESS_PRIVATE,
+            false);
+    /**
+     * Refresh rate (packets per second per universe) of the frame buffer mode; defaults to {@link #DEFAULT_MAX_SEND_RATE}
+     */
+    public static final MetaItemDescriptor META_ARTNET_REFRESH_RATE = metaItemInteger(
+            PROTOCOL_NAME + ":refreshRate",
+            ACCESS_PRIVATE,
+            false,
+            1,
+            DEFAULT_MAX_SEND_RATE);
+    public static final List<MetaItemDescriptor> PROTOCOL_META_ITEM_DESCRIPTORS = joinCollections(Arrays.asList(META_ARTNET_FRAME_BUFFER, META_ARTNET_REFRESH_RATE), AbstractIoClientProtocol.PROTOCOL_GENERIC_META_ITEM_DESCRIPTORS);
     public static final String agentProtocolConfigName = "ArtnetProtocolAgent";
     public static final String ARTNET_DEFAULT_LIGHT_STATE = "{'r': 0, 'g': 0, 'b': 0, 'w': 0}";
     public static final MetaItemDescriptor META_ARTNET_LIGHT_ID = metaItemInteger(
@@ -83,6 +106,7 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
             META_ARTNET_CONFIGURATION);
 
     protected final Map<AttributeRef, List<Pair<AttributeRef, Consumer<ArtnetPacket>>>> protocolMessageConsumers = new HashMap<>();
+    protected final Map<AttributeRef, ArtnetFrameBuffer> frameBuffers = new HashMap<>();
 
     private List<ArtnetLight> artnetLightMemory = new ArrayList<>();
 
@@ -122,14 +146,91 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
                 );
     }
 
+    @Override
+    protected void doStop(Container container) throws Exception {
+        synchronized (frameBuffers) {
+            frameBuffers.values().forEach(ArtnetFrameBuffer::stop);
+            frameBuffers.clear();
+        }
+        super.doStop(container);
+    }
+
+    @Override
+    protected void doLinkProtocolConfiguration(AssetAttribute protocolConfiguration) {
+        super.doLinkProtocolConfiguration(protocolConfiguration);
+
+        boolean frameBufferEnabled = Values.getMetaItemValueOrThrow(
+                protocolConfiguration,
+                META_ARTNET_FRAME_BUFFER,
+                false,
+                false
+        ).flatMap(Values::getBoolean).orElse(false);
+
+        if (!frameBufferEnabled) {
+            return;
+        }
+
+        int refreshRate = Values.getMetaItemValueOrThrow(
+                protocolConfiguration,
+                META_ARTNET_REFRESH_RATE,
+                false,
+                false
+        ).flatMap(Values::getIntegerCoerced).orElse(DEFAULT_MAX_SEND_RATE);
+
+        AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
+        ProtocolIoClient<ArtnetPacket, UdpIoClient<ArtnetPacket>> protocolIoClient = protocolIoClientMap.get(protocolRef);
+
+        if (protocolIoClient == null) {
+            return;
+        }
+
+        // Packets are already rate limited by the refresh rate so they bypass the outbound scheduler
+        ArtnetFrameBuffer frameBuffer = new ArtnetFrameBuffer(packet -> protocolIoClient.client.sendMessage(packet));
+        frameBuffer.start(executorService, refreshRate);
+
+        synchronized (frameBuffers) {
+            frameBuffers.put(protocolRef, frameBuffer);
+        }
+    }
+
     @Override
     protected void doUnlinkProtocolConfiguration(AssetAttribute protocolConfiguration) {
         synchronized (protocolMessageConsumers) {
             protocolMessageConsumers.remove(protocolConfiguration.getReferenceOrThrow());
         }
+        synchronized (frameBuffers) {
+            ArtnetFrameBuffer frameBuffer = frameBuffers.remove(protocolConfiguration.getReferenceOrThrow());
+            if (frameBuffer != null) {
+                frameBuffer.stop();
+            }
+        }
         super.doUnlinkProtocolConfiguration(protocolConfiguration);
     }
 
+    @Override
+    protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration, AttributeEvent.Source source) {
+        ArtnetFrameBuffer frameBuffer;
+        synchronized (frameBuffers) {
+            frameBuffer = frameBuffers.get(protocolConfiguration.getReferenceOrThrow());
+        }
+
+        if (frameBuffer == null) {
+            super.processLinkedAttributeWrite(event, processedValue, protocolConfiguration, source);
+            return;
+        }
+
+        AssetAttribute attribute = getLinkedAttribute(event.getAttributeRef());
+        if (attribute == null) {
+            return;
+        }
+
+        // Apply the write to the light memory and then to the channel state of the light's universe
+        ArtnetPacket packet = createWriteMessage(protocolConfiguration, attribute, event, processedValue);
+        if (packet != null) {
+            frameBuffer.update(packet.getUniverse(), packet.getLights());
+        }
+    }
+
     @Override
     protected UdpIoClient<ArtnetPacket> createIoClient(AssetAttribute protocolConfiguration) throws Exception {
         String host = Values.getMetaItemValueOrThrow(
@@ -179,6 +280,20 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
         return encoderDecoderProvider;
     }
 
+    @Override
+    protected Integer getDefaultMaxSendRate() {
+        return DEFAULT_MAX_SEND_RATE;
+    }
+
+    /**
+     * Each packet contains the state of all lights in the universe so only the latest queued packet of a universe
+     * needs to be sent.
+     */
+    @Override
+    protected Object getWriteCollapseKey(AssetAttribute protocolConfiguration, AssetAttribute attribute, AttributeEvent event, ArtnetPacket message) {
+        return message.getUniverse();
+    }
+
     @Override
     protected void doLinkAttribute(AssetAttribute attribute, AssetAttribute protocolConfiguration) {
         AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
@@ -0,0 +1,169 @@
+package org.openremote.agent.protocol.artnet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.model.syslog.SyslogCategory;
+
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
+
+/**
+ * Holds the DMX channel state of each universe of an Artnet node; light writes are applied to the universe buffer and
+ * one ArtDMX packet per dirty universe is sent at a fixed refresh rate, so the packet rate is bounded no matter how many
+ * lights are updated. Unchanged universes are re-sent every {@link #KEEP_ALIVE_MILLIS} as DMX nodes expect a
+ * periodic refresh.
+ */
+public class ArtnetFrameBuffer {
+
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, ArtnetFrameBuffer.class);
+
+    public static final int DMX_CHANNELS = 512;
+    public static final int KEEP_ALIVE_MILLIS = 1000;
+    /**
+     * ArtDMX data must be at least two channels long.
+     */
+    public static final int MIN_DMX_DATA_LENGTH = 2;
+
+    /**
+     * Reusable (off-heap) channel state of a single universe.
+     */
+    public static class Universe {
+        protected final int universe;
+        protected final ByteBuf channels = Unpooled.directBuffer(DMX_CHANNELS, DMX_CHANNELS);
+        protected boolean dirty;
+        protected long lastSentTimestamp;
+
+        public Universe(int universe) {
+            this.universe = universe;
+        }
+
+        public int getUniverse() {
+            return universe;
+        }
+
+        /**
+         * Re-write the channels of the universe from the supplied lights (in light ID order, each light's values are
+         * repeated for each of its LEDs); channels beyond {@link #DMX_CHANNELS} are discarded.
+         */
+        public synchronized void update(List<ArtnetLight> lights) {
+            if (channels.refCnt() == 0) {
+                return;
+            }
+            channels.clear();
+            for (ArtnetLight light : lights) {
+                if (light.getLightState() == null) {
+                    continue;
+                }
+                Byte[] values = light.getLightState().getValues();
+                for (int i = 0; i < light.getAmountOfLeds(); i++) {
+                    for (Byte value : values) {
+                        if (!channels.isWritable()) {
+                            LOG.warning("Lights exceed the " + DMX_CHANNELS + " channels of universe: " + universe);
+                            dirty = true;
+                            return;
+                        }
+                        channels.writeByte(value);
+                    }
+                }
+            }
+            dirty = true;
+        }
+
+        /**
+         * Write the DMX data of the universe; the data length must be even and at least {@link #MIN_DMX_DATA_LENGTH} so
+         * an odd number of channels, or a universe without channel state, is padded with zeros.
+         */
+        public synchronized void writeTo(ByteBuf buf) {
+            if (channels.refCnt() == 0) {
+                // Frame buffer has been stopped
+                return;
+            }
+            int length = channels.writerIndex();
+            buf.writeBytes(channels, 0, length);
+            int paddedLength = Math.max(MIN_DMX_DATA_LENGTH, length + length % 2);
+            buf.writeZero(paddedLength - length);
+        }
+
+        protected synchronized boolean requiresSend(long timestamp) {
+            if (dirty || timestamp - lastSentTimestamp >= KEEP_ALIVE_MILLIS) {
+                dirty = false;
+                lastSentTimestamp = timestamp;
+                return true;
+            }
+            return false;
+        }
+
+        protected synchronized void release() {
+            channels.release();
+        }
+    }
+
+    protected final Map<Integer, Universe> universes = new HashMap<>();
+    protected final Consumer<ArtnetPacket> packetSender;
+    protected ScheduledFuture<?> refreshTask;
+
+    public ArtnetFrameBuffer(Consumer<ArtnetPacket> packetSender) {
+        this.packetSender = packetSender;
+    }
+
+    public synchronized void start(ProtocolExecutorService executorService, int refreshRate) {
+        if (refreshTask != null) {
+            return;
+        }
+        long periodMillis = Math.max(1, 1000 / refreshRate);
+        refreshTask = executorService.scheduleAtFixedRate(this::refresh, periodMillis, periodMillis);
+    }
+
+    public synchronized void stop() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+        universes.values().forEach(Universe::release);
+        universes.clear();
+    }
+
+    /**
+     * Apply the current state of the lights of a universe; the universe will be sent on the next refresh.
+     */
+    public void update(int universe, List<ArtnetLight> lights) {
+        Universe universeBuffer;
+        synchronized (this) {
+            if (refreshTask == null) {
+                return;
+            }
+            universeBuffer = universes.computeIfAbsent(universe, Universe::new);
+        }
+        universeBuffer.update(lights);
+    }
+
+    protected void refresh() {
+        refresh(System.currentTimeMillis());
+    }
+
+    protected void refresh(long timestamp) {
+        List<Universe> universesToSend = new ArrayList<>();
+
+        synchronized (this) {
+            for (Universe universe : universes.values()) {
+                if (universe.requiresSend(timestamp)) {
+                    universesToSend.add(universe);
+                }
+            }
+        }
+
+        for (Universe universe : universesToSend) {
+            try {
+                packetSender.accept(new ArtnetPacket(universe));
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to send universe: " + universe.getUniverse(), e);
+            }
+        }
+    }
+}
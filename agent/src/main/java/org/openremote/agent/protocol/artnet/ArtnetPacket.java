@@ -17,6 +17,7 @@ public class ArtnetPacket {
 
     private int universe;
     private List<ArtnetLight> lights;
+    private ArtnetFrameBuffer.Universe universeBuffer;
 
     public ArtnetPacket(int universe, List<ArtnetLight> lights) {
         this.universe = universe;
@@ -24,10 +25,30 @@ public class ArtnetPacket {
         this.lights = lights;
     }
 
+    /**
+     * Creates a packet that contains the current channel state of a frame buffer universe
+     */
+    public ArtnetPacket(ArtnetFrameBuffer.Universe universeBuffer) {
+        this.universe = universeBuffer.getUniverse();
+        this.lights = Collections.emptyList();
+        this.universeBuffer = universeBuffer;
+    }
+
+    public int getUniverse() {
+        return universe;
+    }
+
+    public List<ArtnetLight> getLights() {
+        return lights;
+    }
+
     public void toByteBuf(ByteBuf buf) {
         writePrefix(buf, this.universe);
-        for(ArtnetLight light : lights)
-            writeLight(buf, light.getLightState().getValues(), light.getAmountOfLeds());
+        if(universeBuffer != null)
+            universeBuffer.writeTo(buf);
+        else
+            for(ArtnetLight light : lights)
+                writeLight(buf, light.getLightState().getValues(), light.getAmountOfLeds());
         updateLength(buf);
     }
 
@@ -225,9 +225,8 @@ public class ControllerProtocol extends AbstractProtocol {
 
             this.updateStatus(protocolConfiguration.getReferenceOrThrow(), ConnectionStatus.DISCONNECTED);
 
-            controllerHeartbeat.put(protocolConfiguration.getReferenceOrThrow(), this.executorService.scheduleWithFixedDelay(() -> this.executeHeartbeat(protocolConfiguration.getReferenceOrThrow(),
-                response -> onHeartbeatResponse(protocolConfiguration.getReferenceOrThrow(), response)), 0, HEARTBEAT_DELAY_SECONDS,
-                TimeUnit.SECONDS));
+            controllerHeartbeat.put(protocolConfiguration.getReferenceOrThrow(), this.executorService.scheduleTimerWithFixedDelay(this, () -> this.executeHeartbeat(protocolConfiguration.getReferenceOrThrow(),
+                response -> onHeartbeatResponse(protocolConfiguration.getReferenceOrThrow(), response)), 0, TimeUnit.SECONDS.toMillis(HEARTBEAT_DELAY_SECONDS)));
         } catch (URISyntaxException e) {
             LOG.log(Level.SEVERE, "Invalid URI", e);
             updateConnectionStatus(protocolConfiguration.getReferenceOrThrow(), ConnectionStatus.ERROR);
@@ -238,7 +237,10 @@ public class ControllerProtocol extends AbstractProtocol {
     protected void doUnlinkProtocolConfiguration(AssetAttribute protocolConfiguration) {
         controllersMap.remove(protocolConfiguration.getReferenceOrThrow());
         controllersTargetMap.remove(protocolConfiguration.getReferenceOrThrow());
-        controllerHeartbeat.remove(protocolConfiguration.getReferenceOrThrow());
+        ScheduledFuture heartbeat = controllerHeartbeat.remove(protocolConfiguration.getReferenceOrThrow());
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
 
         for (PollingKey key : this.pollingSensorList.keySet()) {
             if (key.getControllerAgentRef().equals(protocolConfiguration.getReferenceOrThrow())) {
@@ -608,8 +610,8 @@ public class ControllerProtocol extends AbstractProtocol {
                 //Starting a heartbeat Task until connection is OK
                 if (!this.controllerHeartbeat.containsKey(protocolRef) || this.controllerHeartbeat.get(protocolRef).isCancelled()) {
                     this.controllerHeartbeat.put(protocolRef, this.executorService
-                            .scheduleWithFixedDelay(() -> this.executeHeartbeat(protocolRef, response -> onHeartbeatResponse(protocolRef, response)),
-                                    0, HEARTBEAT_DELAY_SECONDS, TimeUnit.SECONDS));
+                            .scheduleTimerWithFixedDelay(this, () -> this.executeHeartbeat(protocolRef, response -> onHeartbeatResponse(protocolRef, response)),
+                                    0, TimeUnit.SECONDS.toMillis(HEARTBEAT_DELAY_SECONDS)));
                 }
             }
         }
@@ -55,7 +55,6 @@ import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -1122,7 +1121,7 @@ public class HttpClientProtocol extends AbstractProtocol {
 
         LOG.fine("Scheduling polling request '" + clientRequest + "' to execute every " + pollingMillis + " ms for attribute: " + attributeRef);
 
-        return executorService.scheduleWithFixedDelay(() ->
+        return executorService.scheduleTimerWithFixedDelay(this, () ->
                 executePollingRequest(clientRequest, body, response -> {
                     try {
                         onPollingResponse(
@@ -1133,7 +1132,7 @@ public class HttpClientProtocol extends AbstractProtocol {
                     } catch (Exception e) {
                         LOG.log(Level.WARNING, getProtocolDisplayName() + " exception thrown whilst processing polling response [" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "]: " + clientRequest.requestTarget.getUriBuilder().build().toString());
                     }
-                }), 0, pollingMillis, TimeUnit.MILLISECONDS);
+                }), 0, pollingMillis);
     }
 
     protected void executePollingRequest(HttpClientRequest clientRequest, String body, Consumer<Response> responseConsumer) {
@@ -1222,16 +1221,20 @@ public class HttpClientProtocol extends AbstractProtocol {
         }
 
         if (attributeRef != null) {
-            updateLinkedAttribute(new AttributeState(attributeRef, value));
+            List<AttributeState> states = new ArrayList<>();
+            states.add(new AttributeState(attributeRef, value));
 
             // Look for any attributes that also want to use this polling response
             synchronized (pollingLinkedAttributeMap) {
                 Set<AttributeRef> linkedRefs = pollingLinkedAttributeMap.get(attributeRef);
                 if (linkedRefs != null) {
                     Value finalValue = value;
-                    linkedRefs.forEach(ref -> updateLinkedAttribute(new AttributeState(ref, finalValue)));
+                    linkedRefs.forEach(ref -> states.add(new AttributeState(ref, finalValue)));
                 }
             }
+
+            // Send all values extracted from this response as a single batch
+            updateLinkedAttributes(states);
         }
     }
 
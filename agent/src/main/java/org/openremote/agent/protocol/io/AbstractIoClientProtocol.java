@@ -48,12 +48,13 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static org.openremote.container.concurrent.GlobalLock.withLockReturning;
 import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 
 /**
  * This is an abstract {@link org.openremote.agent.protocol.Protocol} for protocols that require an {@link IoClient}.
  */
-public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends AbstractProtocol {
+public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends AbstractProtocol implements OutboundMessageSchedulerProvider {
 
     /**
      * List of protocol {@link MetaItem}s that are used by generic (string based) IO client protocols
@@ -64,7 +65,9 @@ public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends
         META_PROTOCOL_DELIMITER,
         META_PROTOCOL_STRIP_DELIMITER,
         META_PROTOCOL_CONVERT_BINARY,
-        META_PROTOCOL_CONVERT_HEX
+        META_PROTOCOL_CONVERT_HEX,
+        META_PROTOCOL_MAX_SEND_RATE,
+        META_PROTOCOL_SEND_BURST
     );
 
     /**
@@ -177,12 +180,18 @@ public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends
         public U client;
         public BiConsumer<AttributeRef, ConnectionStatus> connectionStatusConsumer;
         public BiConsumer<AttributeRef, T> messageConsumer;
+        public OutboundMessageScheduler<T> outboundScheduler;
 
         public ProtocolIoClient(AttributeRef protocolRef, U client, BiConsumer<AttributeRef, ConnectionStatus> connectionStatusConsumer, BiConsumer<AttributeRef, T> messageConsumer) {
+            this(protocolRef, client, connectionStatusConsumer, messageConsumer, null);
+        }
+
+        public ProtocolIoClient(AttributeRef protocolRef, U client, BiConsumer<AttributeRef, ConnectionStatus> connectionStatusConsumer, BiConsumer<AttributeRef, T> messageConsumer, OutboundMessageScheduler<T> outboundScheduler) {
             this.protocolRef = protocolRef;
             this.client = client;
             this.connectionStatusConsumer = connectionStatusConsumer;
             this.messageConsumer = messageConsumer;
+            this.outboundScheduler = outboundScheduler;
         }
 
         public void connect() {
@@ -203,13 +212,34 @@ public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends
         }
 
         protected void disconnect() {
+            if (outboundScheduler != null) {
+                outboundScheduler.close();
+            }
             client.removeAllMessageConsumers();
             client.removeAllConnectionStatusConsumers();
             LOG.info("Disconnecting IO client");
             client.disconnect();
         }
 
-        protected synchronized void send(T message) {
+        protected void send(T message) {
+            send(message, OutboundMessageScheduler.Priority.USER_COMMAND, null);
+        }
+
+        /**
+         * Send the message immediately or, if this client has an {@link OutboundMessageScheduler}, queue it with the
+         * specified priority and collapse key.
+         */
+        protected void send(T message, OutboundMessageScheduler.Priority priority, Object collapseKey) {
+            if (outboundScheduler != null) {
+                LOG.finest("Queueing message for IO client: " + client.getClientUri());
+                outboundScheduler.schedule(message, priority, collapseKey);
+                return;
+            }
+
+            doSend(message);
+        }
+
+        protected synchronized void doSend(T message) {
             LOG.fine("Sending message to IO client: " + client.getClientUri());
             client.sendMessage(message);
         }
@@ -252,8 +282,23 @@ public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends
         }
     }
 
+    @Override
+    public Collection<OutboundMessageScheduler<?>> getOutboundMessageSchedulers() {
+        return withLockReturning(getProtocolName() + "::getOutboundMessageSchedulers", () ->
+            protocolIoClientMap.values().stream()
+                .<OutboundMessageScheduler<?>>map(protocolIoClient -> protocolIoClient.outboundScheduler)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())
+        );
+    }
+
     @Override
     protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration) {
+        processLinkedAttributeWrite(event, processedValue, protocolConfiguration, null);
+    }
+
+    @Override
+    protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration, AttributeEvent.Source source) {
         ProtocolIoClient<T, U> protocolIoClient = protocolIoClientMap.get(protocolConfiguration.getReferenceOrThrow());
         AssetAttribute attribute = getLinkedAttribute(event.getAttributeRef());
 
@@ -268,7 +313,11 @@ public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends
             return;
         }
 
-        protocolIoClient.send(message);
+        protocolIoClient.send(
+            message,
+            OutboundMessageScheduler.Priority.fromSource(source),
+            getWriteCollapseKey(protocolConfiguration, attribute, event, message)
+        );
     }
 
     protected ProtocolIoClient<T, U> createProtocolClient(AssetAttribute protocolConfiguration) throws Exception {
@@ -276,7 +325,60 @@ public abstract class AbstractIoClientProtocol<T, U extends IoClient<T>> extends
         U client = createIoClient(protocolConfiguration);
         Supplier<ChannelHandler[]> encoderDecoderProvider = getEncoderDecoderProvider(client, protocolConfiguration);
         client.setEncoderDecoderProvider(encoderDecoderProvider);
-        return new ProtocolIoClient<>(protocolRef, client, this::onConnectionStatusChanged, this::onMessageReceived);
+        ProtocolIoClient<T, U> protocolIoClient = new ProtocolIoClient<>(protocolRef, client, this::onConnectionStatusChanged, this::onMessageReceived);
+        protocolIoClient.outboundScheduler = createOutboundMessageScheduler(protocolConfiguration, protocolIoClient);
+        return protocolIoClient;
+    }
+
+    /**
+     * Creates the {@link OutboundMessageScheduler} used to rate limit writes to the {@link IoClient} based on the
+     * {@link #META_PROTOCOL_MAX_SEND_RATE} and {@link #META_PROTOCOL_SEND_BURST} {@link MetaItem}s; returns null (no
+     * rate limiting) if no max send rate is configured and there is no {@link #getDefaultMaxSendRate}.
+     */
+    protected OutboundMessageScheduler<T> createOutboundMessageScheduler(AssetAttribute protocolConfiguration, ProtocolIoClient<T, U> protocolIoClient) {
+        Integer maxSendRate = Values.getMetaItemValueOrThrow(
+            protocolConfiguration,
+            META_PROTOCOL_MAX_SEND_RATE,
+            false,
+            false
+        ).flatMap(Values::getIntegerCoerced).orElse(getDefaultMaxSendRate());
+
+        if (maxSendRate == null) {
+            return null;
+        }
+
+        int sendBurst = Values.getMetaItemValueOrThrow(
+            protocolConfiguration,
+            META_PROTOCOL_SEND_BURST,
+            false,
+            false
+        ).flatMap(Values::getIntegerCoerced).orElse(1);
+
+        return OutboundMessageScheduler.forRate(
+            protocolIoClient.client.getClientUri(),
+            executorService,
+            protocolIoClient::doSend,
+            maxSendRate,
+            sendBurst
+        );
+    }
+
+    /**
+     * The max number of messages per second to write to the {@link IoClient} when no
+     * {@link #META_PROTOCOL_MAX_SEND_RATE} is configured; protocols can override this to supply a default rate for
+     * their bus. Returns null (no rate limiting) by default.
+     */
+    protected Integer getDefaultMaxSendRate() {
+        return null;
+    }
+
+    /**
+     * Key used to collapse queued writes when an {@link OutboundMessageScheduler} is in use; a queued message is
+     * replaced by a newer message with the same key (e.g. the same bus address). Returns null by default so no
+     * writes are collapsed.
+     */
+    protected Object getWriteCollapseKey(AssetAttribute protocolConfiguration, AssetAttribute attribute, AttributeEvent event, T message) {
+        return null;
     }
 
     /**
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.io;
+
+import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
+
+/**
+ * Prioritised, rate limited queue for messages that are written to a shared bus/network (e.g. Velbus, KNX, Artnet).
+ * <p>
+ * Messages are sent in {@link Priority} order (FIFO within a priority) and the rate at which they are sent is limited
+ * by a token bucket: a token is added every <code>tokenIntervalMillis</code> up to a maximum of
+ * <code>burstSize</code> and each sent message consumes one token; so short bursts are sent immediately whilst
+ * sustained traffic is spread out to protect the bus.
+ * <p>
+ * Messages can optionally be queued with a collapse key (e.g. a bus address); a queued message that is superseded by a
+ * newer message with the same key is replaced (it keeps its position in the queue) so that only the latest state is
+ * written, if the newer message has a higher priority it is moved to that priority.
+ * <p>
+ * The queue depth, number of sent/collapsed/dropped messages and the time messages spend in the queue are recorded and
+ * can be retrieved with {@link #getStats}.
+ */
+public class OutboundMessageScheduler<T> {
+
+    /**
+     * Priority classes of outbound messages in descending order of priority.
+     */
+    public enum Priority {
+
+        /**
+         * A write requested by a user (or another system on behalf of a user)
+         */
+        USER_COMMAND,
+
+        /**
+         * A write resulting from internal processing (e.g. a rule action or attribute link)
+         */
+        RULE_ACTION,
+
+        /**
+         * Protocol generated traffic such as status/poll requests
+         */
+        POLL;
+
+        public static Priority fromSource(AttributeEvent.Source source) {
+            if (source == null) {
+                return USER_COMMAND;
+            }
+
+            switch (source) {
+                case INTERNAL:
+                case ATTRIBUTE_LINKING_SERVICE:
+                    return RULE_ACTION;
+                default:
+                    return USER_COMMAND;
+            }
+        }
+    }
+
+    protected static class QueuedMessage<T> {
+        protected final Object key;
+        protected final Priority priority;
+        protected final long queuedTimestamp;
+        protected T message;
+
+        protected QueuedMessage(Object key, Priority priority, long queuedTimestamp, T message) {
+            this.key = key;
+            this.priority = priority;
+            this.queuedTimestamp = queuedTimestamp;
+            this.message = message;
+        }
+    }
+
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, OutboundMessageScheduler.class);
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+    protected final String name;
+    protected final ProtocolExecutorService executorService;
+    protected final Consumer<T> sender;
+    protected final long tokenIntervalMillis;
+    protected final int burstSize;
+    protected final int maxQueueSize;
+    protected final Map<Priority, Deque<QueuedMessage<T>>> queues = new EnumMap<>(Priority.class);
+    protected final Map<Object, QueuedMessage<T>> queuedByKey = new HashMap<>();
+    protected int queueDepth;
+    protected long tokens;
+    protected long lastRefillTimestamp;
+    protected boolean drainPending;
+    protected ScheduledFuture<?> drainTask;
+    protected boolean closed;
+
+    // Stats
+    protected int maxQueueDepth;
+    protected long sentCount;
+    protected long collapsedCount;
+    protected long droppedCount;
+    protected long totalWaitMillis;
+    protected long maxWaitMillis;
+
+    public OutboundMessageScheduler(String name, ProtocolExecutorService executorService, Consumer<T> sender, long tokenIntervalMillis, int burstSize) {
+        this(name, executorService, sender, tokenIntervalMillis, burstSize, DEFAULT_MAX_QUEUE_SIZE);
+    }
+
+    public OutboundMessageScheduler(String name, ProtocolExecutorService executorService, Consumer<T> sender, long tokenIntervalMillis, int burstSize, int maxQueueSize) {
+        if (burstSize < 1) {
+            throw new IllegalArgumentException("Burst size must be at least 1");
+        }
+        if (maxQueueSize < 1) {
+            throw new IllegalArgumentException("Max queue size must be at least 1");
+        }
+
+        this.name = name;
+        this.executorService = executorService;
+        this.sender = sender;
+        this.tokenIntervalMillis = Math.max(0, tokenIntervalMillis);
+        this.burstSize = burstSize;
+        this.maxQueueSize = maxQueueSize;
+        this.tokens = burstSize;
+        this.lastRefillTimestamp = System.currentTimeMillis();
+
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Create a scheduler that sends at most the specified number of messages per second.
+     */
+    public static <T> OutboundMessageScheduler<T> forRate(String name, ProtocolExecutorService executorService, Consumer<T> sender, int messagesPerSecond, int burstSize) {
+        if (messagesPerSecond < 1) {
+            throw new IllegalArgumentException("Messages per second must be at least 1");
+        }
+        return new OutboundMessageScheduler<>(name, executorService, sender, 1000L / messagesPerSecond, burstSize);
+    }
+
+    /**
+     * Queue a message without a collapse key.
+     */
+    public boolean schedule(T message, Priority priority) {
+        return schedule(message, priority, null);
+    }
+
+    /**
+     * Queue a message for sending; if a message with the same (non null) collapse key is still queued then it is
+     * replaced by this message. Returns false if the message was rejected (scheduler closed or queue full of higher
+     * priority messages).
+     */
+    public synchronized boolean schedule(T message, Priority priority, Object collapseKey) {
+        Objects.requireNonNull(message);
+        Objects.requireNonNull(priority);
+
+        if (closed) {
+            return false;
+        }
+
+        long queuedTimestamp = System.currentTimeMillis();
+
+        if (collapseKey != null) {
+            QueuedMessage<T> existing = queuedByKey.get(collapseKey);
+
+            if (existing != null) {
+                collapsedCount++;
+
+                if (existing.priority.ordinal() <= priority.ordinal()) {
+                    existing.message = message;
+                    return true;
+                }
+
+                // Promote: leave a tombstone in the lower priority queue and keep the original queue time
+                existing.message = null;
+                queuedByKey.remove(collapseKey);
+                queueDepth--;
+                queuedTimestamp = existing.queuedTimestamp;
+            }
+        }
+
+        if (queueDepth >= maxQueueSize && !dropLowestPriority(priority)) {
+            droppedCount++;
+            LOG.fine("Outbound queue is full so dropping message: " + name);
+            return false;
+        }
+
+        QueuedMessage<T> queuedMessage = new QueuedMessage<>(collapseKey, priority, queuedTimestamp, message);
+        queues.get(priority).add(queuedMessage);
+        if (collapseKey != null) {
+            queuedByKey.put(collapseKey, queuedMessage);
+        }
+        queueDepth++;
+        maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+
+        if (!drainPending) {
+            drainPending = true;
+            drainTask = executorService.schedule(this::drain, 0);
+        }
+
+        return true;
+    }
+
+    /**
+     * Discard all queued messages (e.g. stale messages after a reconnect).
+     */
+    public synchronized void clear() {
+        queues.values().forEach(Deque::clear);
+        queuedByKey.clear();
+        queueDepth = 0;
+    }
+
+    /**
+     * Discard all queued messages and stop accepting new messages.
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+        if (drainTask != null) {
+            drainTask.cancel(false);
+            drainTask = null;
+        }
+        drainPending = false;
+    }
+
+    public synchronized int size() {
+        return queueDepth;
+    }
+
+    public synchronized int size(Priority priority) {
+        return (int) queues.get(priority).stream().filter(queuedMessage -> queuedMessage.message != null).count();
+    }
+
+    public synchronized ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("name", name);
+        stats.put("queueDepth", queueDepth);
+        for (Priority priority : Priority.values()) {
+            stats.put("queueDepth" + priority.name(), size(priority));
+        }
+        stats.put("maxQueueDepth", maxQueueDepth);
+        stats.put("sent", sentCount);
+        stats.put("collapsed", collapsedCount);
+        stats.put("dropped", droppedCount);
+        stats.put("averageWaitMillis", sentCount > 0 ? totalWaitMillis / sentCount : 0);
+        stats.put("maxWaitMillis", maxWaitMillis);
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + name + '\'' +
+            ", tokenIntervalMillis=" + tokenIntervalMillis +
+            ", burstSize=" + burstSize +
+            ", queueDepth=" + queueDepth +
+            '}';
+    }
+
+    protected void drain() {
+        while (true) {
+            QueuedMessage<T> next;
+
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+
+                if (queueDepth == 0) {
+                    drainPending = false;
+                    drainTask = null;
+                    return;
+                }
+
+                long now = System.currentTimeMillis();
+                refillTokens(now);
+
+                if (tokens <= 0) {
+                    long delay = Math.max(1, tokenIntervalMillis - (now - lastRefillTimestamp));
+                    drainTask = executorService.schedule(this::drain, delay);
+                    return;
+                }
+
+                next = poll();
+                if (next == null) {
+                    // Only tombstones left
+                    queueDepth = 0;
+                    continue;
+                }
+
+                tokens--;
+                long waitMillis = Math.max(0, now - next.queuedTimestamp);
+                sentCount++;
+                totalWaitMillis += waitMillis;
+                maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+            }
+
+            try {
+                sender.accept(next.message);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to send queued message: " + name, e);
+            }
+        }
+    }
+
+    protected void refillTokens(long now) {
+        if (tokenIntervalMillis == 0) {
+            tokens = burstSize;
+            lastRefillTimestamp = now;
+            return;
+        }
+
+        long newTokens = (now - lastRefillTimestamp) / tokenIntervalMillis;
+        if (newTokens > 0) {
+            tokens = Math.min(burstSize, tokens + newTokens);
+            lastRefillTimestamp = tokens == burstSize ? now : lastRefillTimestamp + (newTokens * tokenIntervalMillis);
+        }
+    }
+
+    /**
+     * Get the next live message in priority order; must be called whilst holding the lock.
+     */
+    protected QueuedMessage<T> poll() {
+        for (Priority priority : Priority.values()) {
+            Deque<QueuedMessage<T>> queue = queues.get(priority);
+            QueuedMessage<T> queuedMessage;
+            while ((queuedMessage = queue.poll()) != null) {
+                if (queuedMessage.message != null) {
+                    if (queuedMessage.key != null) {
+                        queuedByKey.remove(queuedMessage.key);
+                    }
+                    queueDepth--;
+                    return queuedMessage;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Make space for a message of the specified priority by dropping the oldest message with the lowest priority that
+     * is not higher than the specified priority; must be called whilst holding the lock.
+     */
+    protected boolean dropLowestPriority(Priority priority) {
+        Priority[] priorities = Priority.values();
+        for (int i = priorities.length - 1; i >= priority.ordinal(); i--) {
+            Deque<QueuedMessage<T>> queue = queues.get(priorities[i]);
+            QueuedMessage<T> queuedMessage;
+            while ((queuedMessage = queue.poll()) != null) {
+                if (queuedMessage.message != null) {
+                    if (queuedMessage.key != null) {
+                        queuedByKey.remove(queuedMessage.key);
+                    }
+                    queueDepth--;
+                    droppedCount++;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
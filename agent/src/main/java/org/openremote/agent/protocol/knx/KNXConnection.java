@@ -2,6 +2,7 @@ package org.openremote.agent.protocol.knx;
 
 import org.apache.commons.lang3.StringUtils;
 import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.agent.protocol.io.OutboundMessageScheduler;
 import org.openremote.model.asset.agent.ConnectionStatus;
 import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.Pair;
@@ -37,6 +38,8 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
     protected final static int INITIAL_RECONNECT_DELAY_MILLIS = 1000;
     protected final static int MAX_RECONNECT_DELAY_MILLIS = 60000;
     protected final static int RECONNECT_BACKOFF_MULTIPLIER = 2;
+    protected final static int MAX_SEND_RATE = 20; // KNX TP1 can handle ~50 telegrams per second shared by all devices
+    protected final static int SEND_BURST = 5;
     protected ScheduledFuture<?> reconnectTask;
     protected int reconnectDelayMilliseconds = INITIAL_RECONNECT_DELAY_MILLIS;
     
@@ -49,6 +52,8 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
     protected ProcessCommunicator processCommunicator;
     protected final Map<GroupAddress, byte[]> groupAddressStateMap = new HashMap<>();
     protected final Map<GroupAddress, List<Pair<StateDP, Consumer<Value>>>> groupAddressConsumerMap = new HashMap<>();
+    protected Consumer<Runnable> updateProcessor = Runnable::run;
+    protected final OutboundMessageScheduler<Pair<Datapoint, Value>> commandQueue;
 
     protected final String gatewayIp;
     
@@ -70,6 +75,13 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
         this.remotePort = remotePort;
         this.useNat = useNat;
         this.localKNXAddress = localKNXAddress;
+        this.commandQueue = OutboundMessageScheduler.forRate(
+            "knx://" + gatewayIp,
+            executorService,
+            this::doSendCommand,
+            MAX_SEND_RATE,
+            SEND_BURST
+        );
     }
 
     public synchronized void connect() {
@@ -141,6 +153,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
 
         LOG.finest("Disconnecting");
         onConnectionStatusChanged(ConnectionStatus.DISCONNECTING);
+        commandQueue.clear();
         if (processCommunicator != null) {
             processCommunicator.detach();
         }
@@ -152,6 +165,14 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
         onConnectionStatusChanged(ConnectionStatus.DISCONNECTED);
     }
         
+    /**
+     * Set the processor that runs the notification of the consumers of changed group addresses, so that all values of
+     * a group address or of all group addresses cleared on a connection error can be handled together.
+     */
+    public void setUpdateProcessor(Consumer<Runnable> updateProcessor) {
+        this.updateProcessor = updateProcessor;
+    }
+
     public synchronized void addConnectionStatusConsumer(Consumer<ConnectionStatus> connectionStatusConsumer) {
         if (!connectionStatusConsumers.contains(connectionStatusConsumer)) {
             connectionStatusConsumers.add(connectionStatusConsumer);
@@ -171,15 +192,30 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
     }
     
     public void sendCommand(Datapoint datapoint, Optional<Value> value) {
+        sendCommand(datapoint, value, OutboundMessageScheduler.Priority.USER_COMMAND);
+    }
+
+    /**
+     * Queue a write to the datapoint's group address; a queued write that hasn't been sent yet is replaced by a newer
+     * write to the same group address.
+     */
+    public void sendCommand(Datapoint datapoint, Optional<Value> value, OutboundMessageScheduler.Priority priority) {
+        if (this.connectionStatus == ConnectionStatus.CONNECTED && value.isPresent()) {
+            commandQueue.schedule(new Pair<>(datapoint, value.get()), priority, datapoint.getMainAddress());
+        }
+    }
+
+    protected void doSendCommand(Pair<Datapoint, Value> command) {
+        Datapoint datapoint = command.key;
+        Value val = command.value;
         try {
-            if (this.connectionStatus == ConnectionStatus.CONNECTED && value.isPresent()) {
-                LOG.fine("Sending to KNX action datapoint '" + datapoint + "': " + value);
-                Value val = value.get();
+            if (this.connectionStatus == ConnectionStatus.CONNECTED) {
+                LOG.fine("Sending to KNX action datapoint '" + datapoint + "': " + val);
                 DPTXlator translator = TypeMapper.toDPTXlator(datapoint, val);
                 processCommunicator.write(datapoint.getMainAddress(), translator);
             }
         } catch (KNXAckTimeoutException e) {
-            LOG.log(Level.INFO, "Failed to send KNX value: " + datapoint + " : " + value, e);
+            LOG.log(Level.INFO, "Failed to send KNX value: " + datapoint + " : " + val, e);
             onConnectionError();
         } catch (Exception e) {
             LOG.severe(e.getMessage());
@@ -201,7 +237,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
         }
 
         synchronized (groupAddressConsumerMap) {
-            groupAddressConsumerMap.computeIfPresent(groupAddress, (ga, datapointAndConsumerList) -> {
+            updateProcessor.accept(() -> groupAddressConsumerMap.computeIfPresent(groupAddress, (ga, datapointAndConsumerList) -> {
                 datapointAndConsumerList.forEach(datapointAndConsumer -> {
                     StateDP datapoint = datapointAndConsumer.key;
                     Consumer<Value> consumer = datapointAndConsumer.value;
@@ -209,7 +245,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
                 });
 
                 return datapointAndConsumerList;
-            });
+            }));
         }
     }
 
@@ -256,7 +292,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
 
         // Clear out the group address states
         List<GroupAddress> groupAddresses = Arrays.asList(groupAddressStateMap.keySet().toArray(new GroupAddress[groupAddressStateMap.size()]));
-        groupAddresses.forEach(groupAddress -> onGroupAddressUpdated(groupAddress, null));
+        updateProcessor.accept(() -> groupAddresses.forEach(groupAddress -> onGroupAddressUpdated(groupAddress, null)));
 
         scheduleReconnect();
     }
@@ -2,6 +2,8 @@ package org.openremote.agent.protocol.knx;
 
 import org.apache.commons.io.IOUtils;
 import org.openremote.agent.protocol.AbstractProtocol;
+import org.openremote.agent.protocol.io.OutboundMessageScheduler;
+import org.openremote.agent.protocol.io.OutboundMessageSchedulerProvider;
 import org.openremote.model.asset.AssetTreeNode;
 import org.openremote.agent.protocol.ProtocolLinkedAttributeImport;
 import org.openremote.container.util.CodecUtil;
@@ -40,6 +42,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -52,7 +55,7 @@ import static org.openremote.model.util.TextUtil.isNullOrEmpty;
 /**
  * This protocol is used to connect to a KNX bus via an IP interface.
  */
-public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttributeImport {
+public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttributeImport, OutboundMessageSchedulerProvider {
 
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, KNXProtocol.class);
 
@@ -233,8 +236,12 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
             Consumer<ConnectionStatus> statusConsumer = status -> updateStatus(protocolRef, status);
 
             KNXConnection knxConnection = knxConnections.computeIfAbsent(
-                            gatewayIpParam.get(), gatewayIp ->
-                    new KNXConnection(gatewayIp, connectionType, executorService, localIp, remotePort, useNat, localKNXAddress)
+                            gatewayIpParam.get(), gatewayIp -> {
+                    KNXConnection connection = new KNXConnection(gatewayIp, connectionType, executorService, localIp, remotePort, useNat, localKNXAddress);
+                    // A group address can be linked to several attributes and a connection error clears all of them
+                    connection.setUpdateProcessor(this::batchLinkedAttributeUpdates);
+                    return connection;
+                }
             );
             knxConnection.addConnectionStatusConsumer(statusConsumer);
             knxConnection.connect();
@@ -326,6 +333,11 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
 
     @Override
     protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration) {
+        processLinkedAttributeWrite(event, processedValue, protocolConfiguration, null);
+    }
+
+    @Override
+    protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration, AttributeEvent.Source source) {
         if (!protocolConfiguration.isEnabled()) {
             LOG.fine("Protocol configuration is disabled so ignoring write request");
             return;
@@ -339,13 +351,22 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
                 return;
             }
 
-            controlInfo.key.sendCommand(controlInfo.value, event.getValue());
+            controlInfo.key.sendCommand(controlInfo.value, event.getValue(), OutboundMessageScheduler.Priority.fromSource(source));
 
             // We assume KNX actuator will send new status on relevant status group address which will be picked up by listener and updates the state again later
             updateLinkedAttribute(event.getAttributeState());
         }
     }
 
+    @Override
+    public Collection<OutboundMessageScheduler<?>> getOutboundMessageSchedulers() {
+        synchronized (knxConnections) {
+            return knxConnections.values().stream()
+                .<OutboundMessageScheduler<?>>map(knxConnection -> knxConnection.commandQueue)
+                .collect(Collectors.toList());
+        }
+    }
+
     protected KNXConnection getConnection(String gatewayIp) {
         synchronized (knxConnections) {
             return knxConnections.get(gatewayIp);
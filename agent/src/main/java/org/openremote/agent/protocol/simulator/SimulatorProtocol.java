@@ -386,7 +386,7 @@ public class SimulatorProtocol extends AbstractProtocol {
             if (updateSensorDelayMilliseconds <= 0) {
                 updateLinkedAttribute(state);
             } else {
-                executorService.schedule(() -> updateLinkedAttribute(state), updateSensorDelayMilliseconds);
+                executorService.scheduleTimer(this, () -> updateLinkedAttribute(state), updateSensorDelayMilliseconds);
             }
         });
     }
@@ -561,13 +561,13 @@ public class SimulatorProtocol extends AbstractProtocol {
             long nextRunRelative = nextRun - now;
 
             LOG.info("Next update for asset " + attributeRef.getEntityId() + " for attribute " + attributeRef.getAttributeName() + " in " + nextRunRelative + " second(s)");
-            return executorService.schedule(() -> {
+            return executorService.scheduleTimer(this, () -> {
                 withLock(getProtocolName() + "::firingNextUpdate", () -> {
                     LOG.info("Updating asset " + attributeRef.getEntityId() + " for attribute " + attributeRef.getAttributeName() + " with value " + nextDatapoint.value.toString());
                     updateLinkedAttribute(new AttributeState(attributeRef, nextDatapoint.value));
                     replayMap.put(attributeRef, scheduleReplay(attributeRef, replaySimulatorElement));
                 });
-            }, nextRunRelative, TimeUnit.SECONDS);
+            }, TimeUnit.SECONDS.toMillis(nextRunRelative));
         } catch (JsonProcessingException e) {
             LOG.log(Level.SEVERE, "Exception thrown when scheduling value update: %s", e);
             return null;
@@ -21,6 +21,8 @@ package org.openremote.agent.protocol.velbus;
 
 import org.openremote.agent.protocol.*;
 import org.openremote.agent.protocol.io.IoClient;
+import org.openremote.agent.protocol.io.OutboundMessageScheduler;
+import org.openremote.agent.protocol.io.OutboundMessageSchedulerProvider;
 import org.openremote.agent.protocol.velbus.device.DevicePropertyValue;
 import org.openremote.agent.protocol.velbus.device.FeatureProcessor;
 import org.openremote.agent.protocol.velbus.device.VelbusDeviceType;
@@ -50,8 +52,10 @@ import java.util.*;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static org.openremote.agent.protocol.velbus.VelbusConfiguration.*;
+import static org.openremote.container.concurrent.GlobalLock.withLockReturning;
 import static org.openremote.model.Constants.PROTOCOL_NAMESPACE;
 import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_INTEGER_POSITIVE_NON_ZERO;
@@ -59,7 +63,8 @@ import static org.openremote.model.util.TextUtil.isNullOrEmpty;
 
 public abstract class AbstractVelbusProtocol extends AbstractProtocol implements
     ProtocolLinkedAttributeDiscovery,
-    ProtocolLinkedAttributeImport {
+    ProtocolLinkedAttributeImport,
+    OutboundMessageSchedulerProvider {
 
     public static final String PROTOCOL_BASE_NAME = PROTOCOL_NAMESPACE + ":velbus";
     public static final String META_VELBUS_DEVICE_ADDRESS = PROTOCOL_BASE_NAME + ":deviceAddress";
@@ -139,6 +144,8 @@ public abstract class AbstractVelbusProtocol extends AbstractProtocol implements
                 int timeInjectionSeconds = getTimeInjectionIntervalSeconds(protocolConfiguration);
                 LOG.fine("Creating new VELBUS network instance for protocolConfiguration: " + protocolRef);
                 velbusNetwork = new VelbusNetwork(messageProcessor, executorService, timeInjectionSeconds);
+                // A packet often sets several properties of a device (e.g. the status of all channels)
+                velbusNetwork.setPacketProcessor(this::batchLinkedAttributeUpdates);
             } catch (Exception e) {
                 LOG.log(Level.SEVERE, "Failed to create message processor for protocol Configuration: " + protocolConfiguration, e);
                 updateStatus(protocolConfiguration.getReferenceOrThrow(), ConnectionStatus.ERROR);
@@ -236,6 +243,11 @@ public abstract class AbstractVelbusProtocol extends AbstractProtocol implements
 
     @Override
     protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration) {
+        processLinkedAttributeWrite(event, processedValue, protocolConfiguration, null);
+    }
+
+    @Override
+    protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration, AttributeEvent.Source source) {
         Pair<VelbusNetwork, Consumer<ConnectionStatus>> velbusNetworkConsumerPair = networkConfigurationMap.get(protocolConfiguration.getReferenceOrThrow());
 
         if (velbusNetworkConsumerPair == null) {
@@ -255,7 +267,16 @@ public abstract class AbstractVelbusProtocol extends AbstractProtocol implements
         // Get the property that this attribute is linked to
         String property = getVelbusDevicePropertyLink(attribute);
 
-        velbusNetwork.writeProperty(deviceAddress, property, event.getValue().orElse(null));
+        velbusNetwork.writeProperty(deviceAddress, property, event.getValue().orElse(null), OutboundMessageScheduler.Priority.fromSource(source));
+    }
+
+    @Override
+    public Collection<OutboundMessageScheduler<?>> getOutboundMessageSchedulers() {
+        return withLockReturning(getProtocolName() + "::getOutboundMessageSchedulers", () ->
+            networkMap.values().stream()
+                .<OutboundMessageScheduler<?>>map(velbusNetwork -> velbusNetwork.messageQueue)
+                .collect(Collectors.toList())
+        );
     }
 
     @Override
@@ -21,13 +21,13 @@ package org.openremote.agent.protocol.velbus;
 
 import org.openremote.agent.protocol.ProtocolExecutorService;
 import org.openremote.agent.protocol.io.IoClient;
+import org.openremote.agent.protocol.io.OutboundMessageScheduler;
 import org.openremote.agent.protocol.velbus.device.DevicePropertyValue;
 import org.openremote.agent.protocol.velbus.device.VelbusDevice;
 import org.openremote.model.asset.agent.ConnectionStatus;
 import org.openremote.model.value.Value;
 
 import java.util.*;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 
@@ -38,19 +38,25 @@ public class VelbusNetwork {
     protected static int DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS = 100; // Need to throttle bus writes
     protected final Integer timeInjectionIntervalSeconds;
     protected IoClient<VelbusPacket> client;
-    protected final Queue<VelbusPacket> messageQueue = new ArrayDeque<>();
-    protected List<ScheduledFuture> scheduledTasks = new ArrayList<>();
+    protected final OutboundMessageScheduler<VelbusPacket> messageQueue;
     protected ScheduledFuture timeInjector;
     protected VelbusDevice[] devices = new VelbusDevice[254];
     protected VelbusDevice[] subAddressDevices = new VelbusDevice[254];
-    protected ScheduledFuture queueProcessingTask;
     protected ProtocolExecutorService executorService;
     protected final List<Consumer<ConnectionStatus>> connectionStatusConsumers = new ArrayList<>();
+    protected Consumer<Runnable> packetProcessor = Runnable::run;
 
     public VelbusNetwork(IoClient<VelbusPacket> client, ProtocolExecutorService executorService, Integer timeInjectionIntervalSeconds) {
         this.client = client;
         this.executorService = executorService;
         this.timeInjectionIntervalSeconds = timeInjectionIntervalSeconds;
+        this.messageQueue = new OutboundMessageScheduler<>(
+            client.getClientUri(),
+            executorService,
+            this::doSendPacket,
+            DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS,
+            1
+        );
         client.addConnectionStatusConsumer(this::onConnectionStatusChanged);
         client.addMessageConsumer(this::onPacketReceived);
         onConnectionStatusChanged(getConnectionStatus());
@@ -71,16 +77,33 @@ public class VelbusNetwork {
         }
     }
 
+    /**
+     * Set the processor that runs the processing of each received packet by the devices, so that all property values
+     * set by a single packet can be handled together.
+     */
+    public void setPacketProcessor(Consumer<Runnable> packetProcessor) {
+        this.packetProcessor = packetProcessor;
+    }
+
     public ProtocolExecutorService getExecutorService() {
         return this.executorService;
     }
 
-    public synchronized void sendPackets(VelbusPacket... packets) {
-        if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
-            messageQueue.addAll(Arrays.asList(packets));
+    /**
+     * Queue protocol generated packets (status requests, time injection etc.) for sending.
+     */
+    public void sendPackets(VelbusPacket... packets) {
+        sendPackets(OutboundMessageScheduler.Priority.POLL, packets);
+    }
 
-            if (queueProcessingTask == null) {
-                startSendingPackets();
+    /**
+     * Queue packets for sending; packets are written to the bus in priority order and throttled to one packet per
+     * {@link #DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS}.
+     */
+    public synchronized void sendPackets(OutboundMessageScheduler.Priority priority, VelbusPacket... packets) {
+        if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
+            for (VelbusPacket packet : packets) {
+                messageQueue.schedule(packet, priority);
             }
         }
     }
@@ -94,8 +117,7 @@ public class VelbusNetwork {
     }
 
     public void disconnect() {
-        scheduledTasks.forEach(task -> task.cancel(true));
-        scheduledTasks.clear();
+        getExecutorService().cancelTimers(this);
 
         if (client != null) {
             client.disconnect();
@@ -112,6 +134,7 @@ public class VelbusNetwork {
             connectionStatusConsumers.clear();
         }
 
+        messageQueue.close();
         disconnect();
 
         if (client != null) {
@@ -166,15 +189,14 @@ public class VelbusNetwork {
         VelbusPacket.InboundCommand command = VelbusPacket.InboundCommand.fromCode(packet.getCommand());
         LOG.finest("Received packet " + command + " : " + packet);
 
-        if (matchingDevice != null) {
-            matchingDevice.processReceivedPacket(packet);
-        } else {
+        if (matchingDevice == null) {
             // Look for sub address device
             matchingDevice = subAddressDevices[address-1];
+        }
 
-            if (matchingDevice != null) {
-                matchingDevice.processReceivedPacket(packet);
-            }
+        if (matchingDevice != null) {
+            VelbusDevice device = matchingDevice;
+            packetProcessor.accept(() -> device.processReceivedPacket(packet));
         }
     }
 
@@ -223,6 +245,10 @@ public class VelbusNetwork {
     }
 
     public void writeProperty(int deviceAddress, String property, Value value) {
+        writeProperty(deviceAddress, property, value, OutboundMessageScheduler.Priority.USER_COMMAND);
+    }
+
+    public void writeProperty(int deviceAddress, String property, Value value, OutboundMessageScheduler.Priority priority) {
         if (getConnectionStatus() != ConnectionStatus.CONNECTED) {
             return;
         }
@@ -235,7 +261,7 @@ public class VelbusNetwork {
         VelbusDevice device = getDevice(deviceAddress);
 
         if (device != null) {
-            device.writeProperty(property, value);
+            device.writeProperty(property, value, priority);
         }
     }
 
@@ -256,40 +282,17 @@ public class VelbusNetwork {
         return devices[address-1];
     }
 
-    protected synchronized void startSendingPackets() {
-        if (queueProcessingTask != null) {
-            return;
-        }
-
-        queueProcessingTask = getExecutorService().scheduleWithFixedDelay(
-            this::doSendPacket,
-            0,
-            DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS
-        );
-    }
-
-    protected void doSendPacket() {
-        if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
-            VelbusPacket packet = messageQueue.poll();
-            if (packet != null) {
-                VelbusPacket.OutboundCommand command = VelbusPacket.OutboundCommand.fromCode(packet.getCommand());
-                LOG.finest("Sending packet " + command + " : " + packet);
-                client.sendMessage(packet);
-            } else {
-                queueProcessingTask.cancel(false);
-                queueProcessingTask = null;
-            }
+    protected void doSendPacket(VelbusPacket packet) {
+        if (client != null && getConnectionStatus() == ConnectionStatus.CONNECTED) {
+            VelbusPacket.OutboundCommand command = VelbusPacket.OutboundCommand.fromCode(packet.getCommand());
+            LOG.finest("Sending packet " + command + " : " + packet);
+            client.sendMessage(packet);
         }
     }
 
     public ScheduledFuture scheduleTask(Runnable runnable, int delayMillis) {
-        // Remove old completed tasks
-        scheduledTasks.removeIf(Future::isDone);
-
         if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
-            ScheduledFuture future = getExecutorService().schedule(runnable, delayMillis);
-            scheduledTasks.add(future);
-            return future;
+            return getExecutorService().scheduleTimer(this, runnable, delayMillis);
         }
 
         return null;
@@ -1,5 +1,6 @@
 package org.openremote.agent.protocol.velbus.device;
 
+import org.openremote.agent.protocol.io.OutboundMessageScheduler;
 import org.openremote.agent.protocol.velbus.VelbusNetwork;
 import org.openremote.agent.protocol.velbus.VelbusPacket;
 import org.openremote.model.value.Value;
@@ -204,7 +205,11 @@ public class VelbusDevice {
         }
     }
 
-    public synchronized void writeProperty(String property, Value value) {
+    public void writeProperty(String property, Value value) {
+        writeProperty(property, value, OutboundMessageScheduler.Priority.USER_COMMAND);
+    }
+
+    public synchronized void writeProperty(String property, Value value, OutboundMessageScheduler.Priority priority) {
         if (!isInitialisedAndValid()) {
             LOG.fine("Ignoring property write as device is not initialised and/or it is invalid");
             return;
@@ -218,7 +223,7 @@ public class VelbusDevice {
             for (FeatureProcessor processor : featureProcessors) {
                 List<VelbusPacket> packets = processor.getPropertyWritePackets(this, property, value);
                 if (packets != null) {
-                    velbusNetwork.sendPackets(packets.toArray(new VelbusPacket[packets.size()]));
+                    velbusNetwork.sendPackets(priority, packets.toArray(new VelbusPacket[packets.size()]));
                     break;
                 }
             }
@@ -41,6 +41,7 @@ import java.util.stream.Collectors;
 
 import static java.util.stream.StreamSupport.stream;
 import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 
 /**
  * A thread-safe registry of {@link ContainerService}s.
@@ -65,6 +66,8 @@ public class Container {
 
     public static final String DEV_MODE = "DEV_MODE";
     public static final boolean DEV_MODE_DEFAULT = true;
+    public static final String CONTAINER_STARTUP_THREADS = "CONTAINER_STARTUP_THREADS";
+    public static final int CONTAINER_STARTUP_THREADS_DEFAULT = 4;
 
     @SuppressWarnings("deprecation")
     public static final ObjectMapper JSON = new ObjectMapper()
@@ -83,6 +86,7 @@ public class Container {
 
     protected final Map<String, String> config = new HashMap<>();
     protected final boolean devMode;
+    protected final int startupThreads;
 
     protected Thread waitingThread;
     protected final Map<Class<? extends ContainerService>, ContainerService> services = new LinkedHashMap<>();
@@ -111,6 +115,7 @@ public class Container {
         }
 
         this.devMode = getBoolean(this.config, DEV_MODE, DEV_MODE_DEFAULT);
+        this.startupThreads = getInteger(this.config, CONTAINER_STARTUP_THREADS, CONTAINER_STARTUP_THREADS_DEFAULT);
 
         if (this.devMode) {
             JSON.enable(SerializationFeature.INDENT_OUTPUT);
@@ -143,30 +148,32 @@ public class Container {
         return waitingThread != null;
     }
 
+    /**
+     * Initializes and then starts all services, see {@link ContainerStartup}. Services may look up other services
+     * while they are initialized or started on other threads, so this doesn't lock the registry.
+     */
     public void start() throws Exception {
-        synchronized (services) {
+        synchronized (this) {
             if (isRunning())
                 return;
             LOG.info(">>> Starting runtime container...");
+            ContainerStartup startup = new ContainerStartup(startupThreads, Arrays.asList(getServices()));
             try {
-                for (ContainerService service : getServices()) {
-                    LOG.fine("Initializing service: " + service);
-                    service.init(Container.this);
-                }
-                for (ContainerService service : getServices()) {
-                    LOG.fine("Starting service: " + service);
-                    service.start(Container.this);
-                }
+                startup.run("init", service -> service.init(Container.this));
+                startup.run("start", service -> service.start(Container.this));
             } catch (Exception ex) {
                 LOG.log(Level.SEVERE, ">>> Runtime container startup failed", ex);
                 throw ex;
+            } finally {
+                LOG.info(startup.getReport());
             }
-            LOG.info(">>> Runtime container startup complete");
+            LOG.info(">>> Runtime container startup complete in "
+                + (startup.getPhaseMillis("init") + startup.getPhaseMillis("start")) + "ms");
         }
     }
 
     public void stop() {
-        synchronized (services) {
+        synchronized (this) {
             if (!isRunning())
                 return;
             LOG.info("<<< Stopping runtime container...");
@@ -19,6 +19,8 @@
  */
 package org.openremote.container;
 
+import java.util.Collection;
+
 /**
  * The {@link Container} is a registry of services, the order of services in a container is important and is determined
  * by the {@link #getPriority} value; when starting the {@link Container} using the auto service discovery mechanism.
@@ -31,6 +33,11 @@ package org.openremote.container;
  * <li>{@link #start} in registry insertion order</li>
  * </ol>
  * <p>
+ * A service that declares its {@link #getDependencies} is initialized and started as soon as its dependencies are,
+ * concurrently with other services (see {@link ContainerStartup}). All services are initialized before any service is
+ * started.
+ * </p>
+ * <p>
  * Service shutdown lifecycle:
  * </p>
  * <ol>
@@ -47,6 +54,16 @@ public interface ContainerService {
      */
     int getPriority();
 
+    /**
+     * Gets the services that must be initialized before this service is initialized and started before this service is
+     * started; only services before this service in the container are considered. Services that register with this
+     * service in their {@link #init} must come before this service and be declared here too. The default is
+     * <code>null</code>, this service depends on all services before it in the container.
+     */
+    default Collection<Class<? extends ContainerService>> getDependencies() {
+        return null;
+    }
+
     /**
      * All services are initialized in the order they have been added to the container (if container started with
      * explicit list of services) otherwise they are initialized in order of {@link #getPriority}.
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container;
+
+import org.openremote.container.concurrent.ContainerThreadFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a startup phase (e.g. {@link ContainerService#init}) of the services of a {@link Container} and records how
+ * long each service took.
+ * <p>
+ * A service that doesn't declare its {@link ContainerService#getDependencies} runs after all services before it in the
+ * container have completed the phase, as if all services ran one after another. A service that declares its
+ * dependencies runs as soon as those (of the services before it) have completed the phase, concurrently with other
+ * services. When the phase fails, the services already running are completed before the first failure is thrown.
+ */
+public class ContainerStartup {
+
+    private static final Logger LOG = Logger.getLogger(ContainerStartup.class.getName());
+
+    @FunctionalInterface
+    public interface ServiceAction {
+        void run(ContainerService service) throws Exception;
+    }
+
+    protected final int threads;
+    protected final List<ContainerService> services;
+    protected final Map<String, Map<ContainerService, Long>> phaseServiceMillis = new LinkedHashMap<>();
+    protected final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+    /**
+     * @param threads The maximum number of services running a phase at the same time, services run one after another
+     *                in container order if this is less than 2.
+     */
+    public ContainerStartup(int threads, List<ContainerService> services) {
+        this.threads = threads;
+        this.services = services;
+    }
+
+    public void run(String phase, ServiceAction action) throws Exception {
+        Map<ContainerService, Long> serviceMillis = Collections.synchronizedMap(new IdentityHashMap<>());
+        long phaseStart = System.nanoTime();
+
+        try {
+            if (threads < 2) {
+                for (ContainerService service : services) {
+                    run(phase, service, action, serviceMillis);
+                }
+            } else {
+                runConcurrently(phase, action, serviceMillis);
+            }
+        } finally {
+            phaseMillis.put(phase, (System.nanoTime() - phaseStart) / 1000000L);
+            phaseServiceMillis.put(phase, serviceMillis);
+        }
+    }
+
+    /**
+     * @return The time it took to run each phase and each service in each phase, slowest services first.
+     */
+    public String getReport() {
+        List<ContainerService> slowest = new ArrayList<>(services);
+        slowest.sort(Comparator.<ContainerService>comparingLong(this::getTotalMillis).reversed());
+
+        StringBuilder report = new StringBuilder("Service startup times (ms):");
+        for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+            report.append(" ").append(phase.getKey()).append("=").append(phase.getValue());
+        }
+        for (ContainerService service : slowest) {
+            report.append("\n  ").append(String.format("%6d", getTotalMillis(service)));
+            for (Map.Entry<String, Map<ContainerService, Long>> phase : phaseServiceMillis.entrySet()) {
+                Long millis = phase.getValue().get(service);
+                report.append(" ").append(phase.getKey()).append("=").append(millis != null ? millis : "-");
+            }
+            report.append(" ").append(service.getClass().getName());
+        }
+        return report.toString();
+    }
+
+    public long getTotalMillis(ContainerService service) {
+        long total = 0;
+        for (Map<ContainerService, Long> serviceMillis : phaseServiceMillis.values()) {
+            total += serviceMillis.getOrDefault(service, 0L);
+        }
+        return total;
+    }
+
+    public long getPhaseMillis(String phase) {
+        return phaseMillis.getOrDefault(phase, 0L);
+    }
+
+    protected void runConcurrently(String phase, ServiceAction action, Map<ContainerService, Long> serviceMillis) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ContainerThreadFactory("Container " + phase));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(services.size());
+
+        try {
+            for (int i = 0; i < services.size(); i++) {
+                ContainerService service = services.get(i);
+                futures.add(
+                    CompletableFuture.allOf(getRequired(i, futures)).thenRunAsync(() -> {
+                        try {
+                            run(phase, service, action, serviceMillis);
+                        } catch (Exception ex) {
+                            throw new CompletionException(ex);
+                        }
+                    }, executor)
+                );
+            }
+
+            // Wait for all services, including those that don't depend on a failed service, then throw the failure
+            // of the first failed service in container order
+            Throwable failure = null;
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                } catch (CompletionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause() != null ? ex.getCause() : ex;
+                    }
+                }
+            }
+            if (failure instanceof Exception) {
+                throw (Exception) failure;
+            }
+            if (failure != null) {
+                throw (Error) failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return The futures of the services before the service at the given index that it must wait for.
+     */
+    protected CompletableFuture<?>[] getRequired(int index, List<CompletableFuture<Void>> futures) {
+        ContainerService service = services.get(index);
+        Collection<Class<? extends ContainerService>> dependencies = service.getDependencies();
+
+        if (dependencies == null) {
+            return futures.toArray(new CompletableFuture[0]);
+        }
+
+        List<CompletableFuture<Void>> required = new ArrayList<>();
+        for (int i = 0; i < index; i++) {
+            for (Class<? extends ContainerService> dependency : dependencies) {
+                if (dependency.isAssignableFrom(services.get(i).getClass())) {
+                    required.add(futures.get(i));
+                    break;
+                }
+            }
+        }
+
+        for (Class<? extends ContainerService> dependency : dependencies) {
+            for (int i = index + 1; i < services.size(); i++) {
+                if (dependency.isAssignableFrom(services.get(i).getClass())) {
+                    LOG.warning("Ignoring dependency of service '" + service.getClass().getName() + "' on '"
+                        + services.get(i).getClass().getName() + "' which comes after it in the container");
+                }
+            }
+        }
+
+        return required.toArray(new CompletableFuture[0]);
+    }
+
+    protected void run(String phase, ContainerService service, ServiceAction action, Map<ContainerService, Long> serviceMillis) throws Exception {
+        LOG.fine("Running " + phase + " of service: " + service);
+        long start = System.nanoTime();
+        try {
+            action.run(service);
+        } catch (Exception ex) {
+            LOG.log(Level.FINE, "Failed " + phase + " of service: " + service, ex);
+            throw ex;
+        } finally {
+            serviceMillis.put(service, (System.nanoTime() - start) / 1000000L);
+        }
+    }
+}
@@ -20,10 +20,15 @@
 package org.openremote.container.json;
 
 import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.openremote.model.value.ObjectValue;
 import org.openremote.model.value.Values;
 
 import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.openremote.container.json.ModelValuePersistentType.readValue;
 
 public class ModelObjectValuePersistentType extends PostgreSQLJsonType {
 
@@ -37,6 +42,14 @@ public class ModelObjectValuePersistentType extends PostgreSQLJsonType {
         return cached == null ? null : Values.<ObjectValue>parse(cached.toString()).orElseThrow(() -> new HibernateException("Empty JSON data"));
     }
 
+    @Override
+    public Object nullSafeGet(ResultSet resultSet,
+                              String[] names,
+                              SharedSessionContractImplementor session,
+                              Object owner) throws HibernateException, SQLException {
+        return readValue(resultSet, names[0]);
+    }
+
     @Override
     public Class returnedClass() {
         return ObjectValue.class;
@@ -20,10 +20,16 @@
 package org.openremote.container.json;
 
 import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.openremote.model.value.Value;
+import org.openremote.model.value.ValueException;
 import org.openremote.model.value.Values;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 public class ModelValuePersistentType extends PostgreSQLJsonType {
 
@@ -37,10 +43,32 @@ public class ModelValuePersistentType extends PostgreSQLJsonType {
         return cached == null ? null : Values.parse(cached.toString()).orElseThrow(() -> new HibernateException("Empty JSON data"));
     }
 
+    @Override
+    public Object nullSafeGet(ResultSet resultSet,
+                              String[] names,
+                              SharedSessionContractImplementor session,
+                              Object owner) throws HibernateException, SQLException {
+        return readValue(resultSet, names[0]);
+    }
+
     @Override
     public Class returnedClass() {
         return Value.class;
     }
 
+    /**
+     * Parses the UTF-8 bytes of the JSON column directly, without decoding them to a String first.
+     */
+    protected static <T extends Value> T readValue(ResultSet resultSet, String column) throws HibernateException, SQLException {
+        try (InputStream json = resultSet.getBinaryStream(column)) {
+            if (json == null) {
+                return null;
+            }
+            return Values.<T>parse(json).orElseThrow(() -> new HibernateException("Empty JSON data"));
+        } catch (IOException | ValueException e) {
+            throw new HibernateException("Error reading JSON column: " + column, e);
+        }
+    }
+
 }
 
@@ -90,6 +90,14 @@ public class PersistenceService implements ContainerService {
         return PRIORITY;
     }
 
+    /**
+     * Migrating the database doesn't depend on other services, the identity service is initialized concurrently.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
         this.messageBrokerService = container.hasService(MessageBrokerService.class)
@@ -26,6 +26,8 @@ import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.keycloak.KeycloakIdentityProvider;
 
 import javax.ws.rs.core.UriBuilder;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Logger;
 
 import static org.openremote.container.util.MapAccess.*;
@@ -53,6 +55,15 @@ public abstract class IdentityService implements ContainerService {
         return PRIORITY;
     }
 
+    /**
+     * Waiting for the identity provider doesn't depend on other services, the persistence service is initialized
+     * concurrently.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
         boolean identityNetworkSecure = getBoolean(container.getConfig(), IDENTITY_NETWORK_SECURE, IDENTITY_NETWORK_SECURE_DEFAULT);
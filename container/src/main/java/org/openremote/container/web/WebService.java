@@ -41,10 +41,10 @@ import javax.servlet.DispatcherType;
 import javax.ws.rs.core.UriBuilder;
 import java.net.Inet4Address;
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -96,7 +96,8 @@ public abstract class WebService implements ContainerService {
     protected String host;
     protected int port;
     protected Undertow undertow;
-    protected List<RequestHandler> httpHandlers = new ArrayList<>();
+    // Services add handlers when they are initialized, possibly concurrently
+    protected List<RequestHandler> httpHandlers = new CopyOnWriteArrayList<>();
     protected URI containerHostUri;
     protected CORSFilter corsFilter;
     protected FilterInfo corsFilterInfo;
@@ -101,6 +101,7 @@ import javax.servlet.http.HttpServletResponse;
  * <li>{@link #handleFileNotFound(HttpServletRequest, HttpServletResponse)}
  * <li>{@link #getExpireTime(HttpServletRequest, File)}
  * <li>{@link #getContentType(HttpServletRequest, File)}
+ * <li>{@link #getFileCache(HttpServletRequest, File)}
  * </ul>
  *
  * <p><strong>See also</strong>:
@@ -183,6 +184,9 @@ public abstract class AbstractFileServlet extends HttpServlet {
 		if (!ranges.isEmpty()) {
 			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
 		}
+		else if (writeCachedContent(request, response, resource, head)) {
+			return;
+		}
 		else {
 			ranges.add(new Range(0, resource.length - 1)); // Full content.
 		}
@@ -246,8 +250,59 @@ public abstract class AbstractFileServlet extends HttpServlet {
 		return coalesce(request.getServletContext().getMimeType(file.getName()), "application/octet-stream");
 	}
 
+	/**
+	 * Returns the cache of the file contents and their compressed variants, if the given file may be served from it.
+	 * <p>
+	 * The default implementation returns <code>null</code>, all files are streamed from disk.
+	 * @param request The involved HTTP servlet request.
+	 * @param file The involved file.
+	 * @return The cache to serve the file from, or <code>null</code> to stream the file from disk.
+	 */
+	protected FileCache getFileCache(HttpServletRequest request, File file) {
+		return null;
+	}
+
 	// Sub-actions ----------------------------------------------------------------------------------------------------
 
+	/**
+	 * Write the full content of the given resource from the file cache, in the smallest variant with an encoding
+	 * accepted by the client. Returns false if the resource is not cached and must be streamed from disk.
+	 */
+	private boolean writeCachedContent(HttpServletRequest request, HttpServletResponse response, Resource resource, boolean head) throws IOException {
+		FileCache fileCache = getFileCache(request, resource.file);
+
+		if (fileCache == null) {
+			return false;
+		}
+
+		String contentType = getContentType(request, resource.file);
+		FileCache.Entry entry = fileCache.get(resource.file, resource.lastModified, resource.length, contentType);
+
+		if (entry == null) {
+			return false;
+		}
+
+		FileCache.Variant variant = entry.getVariant(request.getHeaders("Accept-Encoding"));
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setContentType(contentType);
+
+		if (entry.isEncoded()) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+
+		if (variant.getEncoding() != null) {
+			response.setHeader("Content-Encoding", variant.getEncoding());
+		}
+
+		response.setHeader("Content-Length", String.valueOf(variant.getData().length));
+
+		if (!head) {
+			response.getOutputStream().write(variant.getData());
+		}
+
+		return true;
+	}
+
 	/**
 	 * Returns true if it's a conditional request which must return 412.
 	 */
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container.web.file;
+
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Least recently used static files in memory up to a maximum total size, each with its content and, if its content
+ * type is compressible, a gzip compressed variant, so that files are read and compressed once instead of on every
+ * request. A precompressed <code>.br</code> or <code>.gz</code> file next to a file (e.g. written by the app build) is
+ * cached and served as its brotli or gzip variant. An entry is keyed by the file path and is reloaded when the file's
+ * last modified time or length changes.
+ */
+public class FileCache {
+
+    private static final Logger LOG = Logger.getLogger(FileCache.class.getName());
+
+    public static final String ENCODING_BROTLI = "br";
+    public static final String ENCODING_GZIP = "gzip";
+
+    /**
+     * The content of a file with a content encoding, <code>null</code> for the identity encoding.
+     */
+    public static class Variant {
+        protected final String encoding;
+        protected final byte[] data;
+
+        public Variant(String encoding, byte[] data) {
+            this.encoding = encoding;
+            this.data = data;
+        }
+
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    public static class Entry {
+        protected final long lastModified;
+        protected final long length;
+        protected final Variant identity;
+        protected final Variant gzip;
+        protected final Variant brotli;
+
+        public Entry(long lastModified, long length, Variant identity, Variant gzip, Variant brotli) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+        }
+
+        public boolean isCurrent(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+
+        /**
+         * @return <code>true</code> if the entry has a compressed variant and responses must vary by
+         * <code>Accept-Encoding</code>.
+         */
+        public boolean isEncoded() {
+            return gzip != null || brotli != null;
+        }
+
+        /**
+         * @return The smallest variant with an encoding accepted by the given <code>Accept-Encoding</code> headers.
+         */
+        public Variant getVariant(Enumeration<String> acceptEncodingHeaders) {
+            Set<String> accepted = isEncoded() ? getAcceptedEncodings(acceptEncodingHeaders) : Collections.emptySet();
+            if (brotli != null && accepted.contains(ENCODING_BROTLI)) {
+                return brotli;
+            }
+            if (gzip != null && accepted.contains(ENCODING_GZIP)) {
+                return gzip;
+            }
+            return identity;
+        }
+
+        public long getBytes() {
+            return identity.data.length
+                + (gzip != null ? gzip.data.length : 0)
+                + (brotli != null ? brotli.data.length : 0);
+        }
+    }
+
+    protected final long maxBytes;
+    protected final long maxFileBytes;
+    protected final Set<String> compressMimeTypes;
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    protected final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    protected long bytes;
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+
+    /**
+     * @param maxBytes          The maximum total size of all cached variants.
+     * @param maxFileBytes      Files larger than this are not cached and must be streamed from disk.
+     * @param compressMimeTypes The content types of files for which a gzip variant is created.
+     */
+    public FileCache(long maxBytes, long maxFileBytes, String[] compressMimeTypes) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = maxFileBytes;
+        this.compressMimeTypes = new HashSet<>(Arrays.asList(compressMimeTypes));
+    }
+
+    /**
+     * @return The cached entry of the file, loaded if it isn't cached or the file has changed; <code>null</code> if
+     * the file is too large to be cached.
+     */
+    public Entry get(File file, long lastModified, long length, String contentType) throws IOException {
+        if (length > maxFileBytes) {
+            return null;
+        }
+
+        String key = file.getAbsolutePath();
+        Entry entry = getCurrent(key, lastModified, length, true);
+        if (entry != null) {
+            return entry;
+        }
+
+        // Only one request loads a file, all others requesting it at the same time wait for it
+        synchronized (loadLocks.computeIfAbsent(key, k -> new Object())) {
+            entry = getCurrent(key, lastModified, length, false);
+            if (entry == null) {
+                entry = load(file, lastModified, length, contentType);
+                put(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    synchronized public void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("files", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    synchronized protected Entry getCurrent(String key, long lastModified, long length, boolean count) {
+        Entry entry = entries.get(key);
+        boolean current = entry != null && entry.isCurrent(lastModified, length);
+        if (count) {
+            if (current) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return current ? entry : null;
+    }
+
+    synchronized protected void put(String key, Entry entry) {
+        if (entry.getBytes() > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.getBytes();
+        }
+        bytes += entry.getBytes();
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().getBytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    protected Entry load(File file, long lastModified, long length, String contentType) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        Variant identity = new Variant(null, data);
+        Variant gzip = null;
+        Variant brotli = null;
+
+        if (contentType != null && compressMimeTypes.contains(contentType.split(";", 2)[0])) {
+            byte[] brotliData = readPrecompressed(file, ".br", lastModified);
+            if (brotliData != null && brotliData.length < data.length) {
+                brotli = new Variant(ENCODING_BROTLI, brotliData);
+            }
+
+            byte[] gzipData = readPrecompressed(file, ".gz", lastModified);
+            if (gzipData == null) {
+                gzipData = gzip(data);
+            }
+            if (gzipData.length < data.length) {
+                gzip = new Variant(ENCODING_GZIP, gzipData);
+            }
+        }
+
+        LOG.fine("Cached file '" + file.getAbsolutePath() + "' with " + data.length + " bytes, gzip: "
+            + (gzip != null ? gzip.data.length : "-") + " bytes, brotli: " + (brotli != null ? brotli.data.length : "-") + " bytes");
+        return new Entry(lastModified, length, identity, gzip, brotli);
+    }
+
+    /**
+     * @return The content of the precompressed file next to the file, if it isn't older than the file.
+     */
+    protected byte[] readPrecompressed(File file, String extension, long lastModified) throws IOException {
+        File precompressed = new File(file.getPath() + extension);
+        if (!precompressed.isFile() || precompressed.lastModified() < lastModified) {
+            return null;
+        }
+        return Files.readAllBytes(precompressed.toPath());
+    }
+
+    protected static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+        // Compressed once per file modification, so use the best compression
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed) {{
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }}) {
+            output.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @return The encodings of the given <code>Accept-Encoding</code> headers, without those with a quality of 0.
+     */
+    public static Set<String> getAcceptedEncodings(Enumeration<String> acceptEncodingHeaders) {
+        Set<String> encodings = new HashSet<>();
+        if (acceptEncodingHeaders == null) {
+            return encodings;
+        }
+        while (acceptEncodingHeaders.hasMoreElements()) {
+            for (String coding : acceptEncodingHeaders.nextElement().split(",")) {
+                String[] parameters = coding.trim().split("\\s*;\\s*");
+                String name = parameters[0].toLowerCase(Locale.ROOT);
+                if (name.isEmpty() || isZeroQuality(parameters)) {
+                    continue;
+                }
+                if ("*".equals(name)) {
+                    encodings.add(ENCODING_GZIP);
+                    encodings.add(ENCODING_BROTLI);
+                } else {
+                    encodings.add(name);
+                }
+            }
+        }
+        return encodings;
+    }
+
+    protected static boolean isZeroQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            if (parameters[i].startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameters[i].substring(2)) == 0;
+                } catch (NumberFormatException ex) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -45,8 +45,17 @@ public class FileServlet extends AbstractFileServlet {
     final protected Map<String, String> mimeTypes;
     final protected Map<String, Integer> mimeTypesExpireSeconds;
     final protected String[] alreadyZippedExtensions;
+    final protected FileCache fileCache;
 
     public FileServlet(boolean devMode, File base, String[] requiredRoles, Map<String, String> mimeTypes, Map<String, Integer> mimeTypesExpireSeconds, String[] alreadyZippedExtensions) {
+        this(devMode, base, requiredRoles, mimeTypes, mimeTypesExpireSeconds, alreadyZippedExtensions, null);
+    }
+
+    /**
+     * @param fileCache Serve files from this cache, can be <code>null</code> and is not used in dev mode, so that
+     *                  changed files are always read from disk.
+     */
+    public FileServlet(boolean devMode, File base, String[] requiredRoles, Map<String, String> mimeTypes, Map<String, Integer> mimeTypesExpireSeconds, String[] alreadyZippedExtensions, FileCache fileCache) {
         this.devMode = devMode;
         this.base = base;
         this.unsecuredIndex = new File(base, "index.html");
@@ -54,6 +63,7 @@ public class FileServlet extends AbstractFileServlet {
         this.mimeTypes = mimeTypes;
         this.mimeTypesExpireSeconds = mimeTypesExpireSeconds;
         this.alreadyZippedExtensions = alreadyZippedExtensions;
+        this.fileCache = fileCache;
     }
 
     public boolean isSecured() {
@@ -154,6 +164,21 @@ public class FileServlet extends AbstractFileServlet {
             mimeTypes.get(getExtension(file.getName()))), "application/octet-stream");
     }
 
+    @Override
+    protected FileCache getFileCache(HttpServletRequest request, File file) {
+        if (devMode || fileCache == null) {
+            return null;
+        }
+
+        // Already zipped files need their own content encoding header, see setContentHeaders()
+        for (String alreadyZippedExtension : alreadyZippedExtensions) {
+            if (file.getName().endsWith(alreadyZippedExtension)) {
+                return null;
+            }
+        }
+        return fileCache;
+    }
+
     @Override
     protected String setContentHeaders(HttpServletRequest request, HttpServletResponse response, AbstractFileServlet.Resource resource, List<Range> ranges) {
         String result = super.setContentHeaders(request, response, resource, ranges);
@@ -89,6 +89,9 @@ public class GzipHttpServletResponse extends HttpServletResponseOutputWrapper {
 			else if ("content-range".equals(lowerCasedName)) {
 				noGzip = (value != null);
 			}
+			else if ("content-encoding".equals(lowerCasedName)) {
+				noGzip = (value != null); // Already encoded, e.g. served precompressed from the file cache.
+			}
 			else if ("cache-control".equals(lowerCasedName)) {
 				noGzip = (value != null && NO_TRANSFORM.matcher(value).matches());
 			}
@@ -105,7 +108,7 @@ public class GzipHttpServletResponse extends HttpServletResponseOutputWrapper {
 			if ("vary".equals(lowerCasedName)) {
 				vary = ((vary != null) ? (vary + ",") : "") + value;
 			}
-			else if ("content-range".equals(lowerCasedName)) {
+			else if ("content-range".equals(lowerCasedName) || "content-encoding".equals(lowerCasedName)) {
 				noGzip = true;
 			}
 			else if ("cache-control".equals(lowerCasedName)) {
@@ -19,6 +19,8 @@
  */
 package org.openremote.manager.agent;
 
+import org.openremote.agent.protocol.io.OutboundMessageScheduler;
+import org.openremote.agent.protocol.io.OutboundMessageSchedulerProvider;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
 import org.openremote.container.ContainerHealthStatusProvider;
@@ -26,6 +28,7 @@ import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.agent.ConnectionStatus;
 import org.openremote.model.asset.agent.ProtocolConfiguration;
 import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.value.ArrayValue;
 import org.openremote.model.value.ObjectValue;
 import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
@@ -161,6 +164,19 @@ public class AgentHealthStatusProvider implements ContainerHealthStatusProvider
         objectValue.put("otherProtocolConfigs", otherCount.get());
         objectValue.put("linkedAttributes", agentService.linkedAttributes.values().stream().mapToInt(List::size).sum());
 
+        // Outbound write queues of protocols that rate limit bus/network writes
+        ObjectValue outboundQueues = Values.createObject();
+        agentService.protocols.forEach((protocolName, protocol) -> {
+            if (protocol instanceof OutboundMessageSchedulerProvider) {
+                ArrayValue queues = Values.createArray();
+                for (OutboundMessageScheduler<?> scheduler : ((OutboundMessageSchedulerProvider) protocol).getOutboundMessageSchedulers()) {
+                    queues.add(scheduler.getStats());
+                }
+                outboundQueues.put(protocolName, queues);
+            }
+        });
+        objectValue.put("outboundQueues", outboundQueues);
+
         return objectValue;
     }
 }
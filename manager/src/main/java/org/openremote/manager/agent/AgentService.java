@@ -22,9 +22,6 @@ package org.openremote.manager.agent;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
-import com.jayway.jsonpath.ParseContext;
-import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
-import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
 import org.apache.camel.builder.RouteBuilder;
 import org.openremote.agent.protocol.Protocol;
 import org.openremote.agent.protocol.ProtocolAssetService;
@@ -47,6 +44,7 @@ import org.openremote.model.asset.AssetType;
 import org.openremote.model.asset.agent.*;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeEvent.Source;
+import org.openremote.model.attribute.AttributeEventBatch;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.event.shared.TenantFilter;
@@ -68,6 +66,7 @@ import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.openremote.agent.protocol.Protocol.ACTUATOR_TOPIC;
 import static org.openremote.agent.protocol.Protocol.SENSOR_QUEUE;
 import static org.openremote.container.concurrent.GlobalLock.withLock;
@@ -96,6 +95,7 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
 
     private static final Logger LOG = Logger.getLogger(AgentService.class.getName());
     public static final int AGENT_SERVICE_PRIORITY = GATEWAY_SERVICE_PRIORITY + 1; // Start after the gateway service
+    public static final int JSON_PATH_CACHE_SIZE = 1000;
     protected TimerService timerService;
     protected ManagerIdentityService identityService;
     protected AssetProcessingService assetProcessingService;
@@ -109,7 +109,18 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
     protected final Map<AttributeRef, List<AttributeRef>> linkedAttributes = new HashMap<>();
     protected LocalAgentConnector localAgentConnector;
     protected Map<String, Asset> agentMap;
-    protected ParseContext jsonPathParser;
+    // Evaluate JSON paths directly on the model values rather than serialising them to JSON
+    protected final Configuration jsonPathConfiguration = Configuration.builder()
+        .jsonProvider(new ValueJsonProvider())
+        .build()
+        .addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL);
+    // Keep the compiled paths of the most recently used JSON path filters
+    protected final Map<String, JsonPath> jsonPathCache = Collections.synchronizedMap(new LinkedHashMap<String, JsonPath>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JsonPath> eldest) {
+            return size() > JSON_PATH_CACHE_SIZE;
+        }
+    });
 
     /**
      * It's important that {@link Protocol}s have a lower priority than this service so they are fully initialized
@@ -145,14 +156,6 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
                 assetStorageService,
                 this)
         );
-
-        jsonPathParser = JsonPath.using(
-            Configuration.builder()
-                .jsonProvider(new JacksonJsonNodeJsonProvider())
-                .mappingProvider(new JacksonMappingProvider())
-                .build()
-                .addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL)
-        );
     }
 
     @Override
@@ -212,10 +215,10 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
                 }
             });
 
-        // A protocol wants to write a new sensor value
+        // A protocol wants to write a new sensor value (or several values at once)
         from(SENSOR_QUEUE)
             .routeId("FromSensorUpdates")
-            .filter(body().isInstanceOf(AttributeEvent.class))
+            .filter(or(body().isInstanceOf(AttributeEvent.class), body().isInstanceOf(AttributeEventBatch.class)))
             .setHeader(HEADER_SOURCE, () -> SENSOR)
             .to(ASSET_QUEUE);
     }
@@ -784,7 +787,7 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
         }
 
         Boolean result = withLockReturning(getClass().getSimpleName() + "::processAssetUpdate", () ->
-            AgentLink.getAgentLink(attribute)
+            attribute.getCompiled().getAgentLink()
                 .map(ref ->
                     getProtocolConfiguration(ref)
                         .orElseThrow(() -> new AssetProcessingException(AssetProcessingException.Reason.INVALID_AGENT_LINK))
@@ -793,11 +796,13 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
                     // Its' a send to actuator - push the update to the protocol
                     attribute.getStateEvent().ifPresent(attributeEvent -> {
                         LOG.fine("Sending to actuator topic: " + attributeEvent);
-                        messageBrokerService.getProducerTemplate().sendBodyAndHeader(
+                        Map<String, Object> headers = new HashMap<>();
+                        headers.put(Protocol.ACTUATOR_TOPIC_TARGET_PROTOCOL, protocolConfiguration.getValueAsString().orElse(""));
+                        headers.put(AttributeEvent.HEADER_SOURCE, source);
+                        messageBrokerService.getProducerTemplate().sendBodyAndHeaders(
                             ACTUATOR_TOPIC,
                             attributeEvent,
-                            Protocol.ACTUATOR_TOPIC_TARGET_PROTOCOL,
-                            protocolConfiguration.getValueAsString().orElse("")
+                            headers
                         );
                     });
                     return true; // Processing complete, skip other processors
@@ -1059,20 +1064,21 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
             return null;
         }
 
-        Object obj = jsonPathParser.parse(value.toJson()).read(filter.path);
-        String pathJson = obj != null ? obj.toString() : null;
-        if (TextUtil.isNullOrEmpty(pathJson)) {
+        // Compiled paths are thread safe so they can be shared by all filters with the same path
+        JsonPath jsonPath = jsonPathCache.computeIfAbsent(filter.path, JsonPath::compile);
+        Object obj = jsonPath.read(value, jsonPathConfiguration);
+        // Functions (e.g. length() or avg()) return plain Java values rather than model values
+        Value pathValue = ValueJsonProvider.toValue(obj);
+
+        if (pathValue == null) {
             return null;
         }
 
-        if (filter.returnFirst || filter.returnLast) {
-            Value pathValue = Values.parse(pathJson).orElse(null);
-            if (pathValue != null && pathValue.getType() == ValueType.ARRAY) {
-                pathValue = Values.getArray(pathValue).flatMap(arr -> arr.length() > 0 ? filter.returnFirst ? arr.get(0) : arr.get(arr.length() - 1) : Optional.empty()).orElse(null);
-            }
-            return pathValue;
+        if ((filter.returnFirst || filter.returnLast) && pathValue.getType() == ValueType.ARRAY) {
+            ArrayValue arr = (ArrayValue) pathValue;
+            pathValue = arr.length() > 0 ? arr.get(filter.returnFirst ? 0 : arr.length() - 1).orElse(null) : null;
         }
 
-        return Values.parse(pathJson).orElse(null);
+        return pathValue;
     }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.agent;
+
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.JsonPathException;
+import com.jayway.jsonpath.spi.json.AbstractJsonProvider;
+import org.openremote.model.value.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A Jayway {@link com.jayway.jsonpath.spi.json.JsonProvider} that navigates the model {@link Value} structures
+ * directly so JSON path expressions can be evaluated without serialising the {@link Value} to JSON and re-parsing it.
+ * <p>
+ * Objects are represented by {@link ObjectValue} and arrays by {@link ArrayValue}; JSON <code>null</code> is
+ * represented by <code>null</code>.
+ */
+public class ValueJsonProvider extends AbstractJsonProvider {
+
+    @Override
+    public Object parse(String json) throws InvalidJsonException {
+        try {
+            return Values.parse(json).orElse(null);
+        } catch (Exception e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    @Override
+    public Object parse(InputStream jsonStream, String charset) throws InvalidJsonException {
+        if (StandardCharsets.UTF_8.name().equalsIgnoreCase(charset)) {
+            try {
+                return Values.parse(jsonStream).orElse(null);
+            } catch (Exception e) {
+                throw new InvalidJsonException(e);
+            }
+        }
+        try (Scanner scanner = new Scanner(jsonStream, charset)) {
+            return parse(scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "");
+        }
+    }
+
+    @Override
+    public String toJson(Object obj) {
+        return obj == null ? Values.NULL_LITERAL : toValue(obj).toJson();
+    }
+
+    @Override
+    public Object createArray() {
+        return Values.createArray();
+    }
+
+    @Override
+    public Object createMap() {
+        return Values.createObject();
+    }
+
+    @Override
+    public boolean isArray(Object obj) {
+        return obj instanceof ArrayValue;
+    }
+
+    @Override
+    public boolean isMap(Object obj) {
+        return obj instanceof ObjectValue;
+    }
+
+    @Override
+    public int length(Object obj) {
+        if (obj instanceof ArrayValue) {
+            return ((ArrayValue) obj).length();
+        }
+        if (obj instanceof ObjectValue) {
+            return ((ObjectValue) obj).keys().length;
+        }
+        if (obj instanceof StringValue) {
+            return ((StringValue) obj).getString().length();
+        }
+        throw new JsonPathException("length operation cannot be applied to " + (obj != null ? obj.getClass().getName() : "null"));
+    }
+
+    @Override
+    public Iterable<?> toIterable(Object obj) {
+        if (obj instanceof ArrayValue) {
+            return ((ArrayValue) obj).stream().collect(Collectors.toList());
+        }
+        if (obj instanceof ObjectValue) {
+            ObjectValue objectValue = (ObjectValue) obj;
+            List<Value> values = new ArrayList<>();
+            for (String key : objectValue.keys()) {
+                values.add(objectValue.get(key).orElse(null));
+            }
+            return values;
+        }
+        throw new JsonPathException("Cannot iterate over " + (obj != null ? obj.getClass().getName() : "null"));
+    }
+
+    @Override
+    public Collection<String> getPropertyKeys(Object obj) {
+        if (obj instanceof ObjectValue) {
+            return Arrays.asList(((ObjectValue) obj).keys());
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object getArrayIndex(Object obj, int idx) {
+        return ((ArrayValue) obj).get(idx).orElse(null);
+    }
+
+    @Override
+    public void setArrayIndex(Object array, int idx, Object newValue) {
+        if (!(array instanceof ArrayValue)) {
+            throw new UnsupportedOperationException();
+        }
+        ArrayValue arrayValue = (ArrayValue) array;
+        Value value = toValue(newValue);
+        if (idx == arrayValue.length()) {
+            arrayValue.add(value);
+        } else {
+            arrayValue.set(idx, value);
+        }
+    }
+
+    @Override
+    public Object getMapValue(Object obj, String key) {
+        ObjectValue objectValue = (ObjectValue) obj;
+        if (!objectValue.hasKey(key)) {
+            return UNDEFINED;
+        }
+        return objectValue.get(key).orElse(null);
+    }
+
+    @Override
+    public void setProperty(Object obj, Object key, Object value) {
+        if (obj instanceof ObjectValue) {
+            ((ObjectValue) obj).put(key.toString(), toValue(value));
+        } else if (obj instanceof ArrayValue) {
+            ArrayValue arrayValue = (ArrayValue) obj;
+            int index = key != null ? (key instanceof Integer ? (Integer) key : Integer.parseInt(key.toString())) : arrayValue.length();
+            setArrayIndex(arrayValue, index, value);
+        } else {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public void removeProperty(Object obj, Object key) {
+        if (obj instanceof ObjectValue) {
+            ((ObjectValue) obj).remove(key.toString());
+        } else if (obj instanceof ArrayValue) {
+            ArrayValue arrayValue = (ArrayValue) obj;
+            int index = key instanceof Integer ? (Integer) key : Integer.parseInt(key.toString());
+            arrayValue.remove(index);
+        } else {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Primitive values are unwrapped so that filter predicates can compare them.
+     */
+    @Override
+    public Object unwrap(Object obj) {
+        if (obj instanceof StringValue) {
+            return ((StringValue) obj).getString();
+        }
+        if (obj instanceof NumberValue) {
+            return ((NumberValue) obj).getNumber();
+        }
+        if (obj instanceof BooleanValue) {
+            return ((BooleanValue) obj).getBoolean();
+        }
+        return obj;
+    }
+
+    /**
+     * @return The model value of a value navigated to or returned by a path function, which can be a plain Java value.
+     */
+    public static Value toValue(Object obj) {
+        if (obj == null || obj instanceof Value) {
+            return (Value) obj;
+        }
+        if (obj instanceof String) {
+            return Values.create((String) obj);
+        }
+        if (obj instanceof Number) {
+            return Values.create(((Number) obj).doubleValue());
+        }
+        if (obj instanceof Boolean) {
+            return Values.create((Boolean) obj);
+        }
+        if (obj instanceof Collection) {
+            ArrayValue arrayValue = Values.createArray();
+            ((Collection<?>) obj).forEach(item -> arrayValue.add(toValue(item)));
+            return arrayValue;
+        }
+        if (obj instanceof Map) {
+            ObjectValue objectValue = Values.createObject();
+            ((Map<?, ?>) obj).forEach((key, item) -> objectValue.put(String.valueOf(key), toValue(item)));
+            return objectValue;
+        }
+        throw new JsonPathException("Cannot convert to model value: " + obj.getClass().getName());
+    }
+}
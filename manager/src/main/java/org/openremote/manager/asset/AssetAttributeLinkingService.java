@@ -40,7 +40,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.model.attribute.AttributeEvent.Source.ATTRIBUTE_LINKING_SERVICE;
-import static org.openremote.model.attribute.MetaItem.isMetaNameEqualTo;
 import static org.openremote.model.query.AssetQuery.Select;
 
 /**
@@ -122,8 +121,7 @@ public class AssetAttributeLinkingService implements ContainerService, AssetUpda
             return false;
         }
 
-        attribute.getMetaStream()
-            .filter(isMetaNameEqualTo(MetaItemType.ATTRIBUTE_LINK))
+        attribute.getCompiled().getMetaItems(MetaItemType.ATTRIBUTE_LINK)
             .forEach(metaItem -> processLinkedAttributeUpdate(em, metaItem, attribute.getState().orElse(null)));
 
         return false;
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.openremote.container.persistence.PersistenceEvent;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.security.Tenant;
+import org.openremote.model.value.ArrayValue;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Value;
+import org.openremote.model.value.Values;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
+
+/**
+ * Write-through cache of completely loaded {@link Asset}s, bounded by the estimated size of the cached assets in bytes
+ * and evicting the least recently used asset first. Cached assets are never modified, callers always get a copy that
+ * shares the attributes of the cached asset until they are read (see {@link ObjectValue#lazyCopy}), so only the
+ * attributes a caller accesses are copied.
+ * <p>
+ * Attribute values stored with {@link AssetStorageService#storeAttributeValue} are applied to a copy of the cached
+ * asset that replaces it when the transaction commits. Other modifications invalidate the asset (and its descendants, as their path and parent info
+ * depend on it) directly after the commit and again when the {@link PersistenceEvent} is received; an update event
+ * doesn't invalidate a cached asset that has the same or a newer version, as it was loaded after the update.
+ * <p>
+ * Every modification increments the generation of the asset (striped by identifier); an asset loaded by a transaction
+ * that overlapped with a modification is not cached, so a stale state can't replace a newer one.
+ */
+public class AssetCache extends RouteBuilder {
+
+    private static final Logger LOG = Logger.getLogger(AssetCache.class.getName());
+    public static final String ASSET_CACHE_MAX_MB = "ASSET_CACHE_MAX_MB";
+    public static final int ASSET_CACHE_MAX_MB_DEFAULT = 64;
+    protected static final int ENTRY_OVERHEAD_BYTES = 512;
+    protected static final int GENERATION_STRIPES = 256;
+
+    protected static class Entry {
+        final Asset asset;
+        final long sizeBytes;
+
+        protected Entry(Asset asset, long sizeBytes) {
+            this.asset = asset;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    protected final long maxBytes;
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+    protected long sizeBytes;
+
+    public AssetCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void configure() throws Exception {
+        from(PERSISTENCE_TOPIC)
+            .routeId("AssetCacheInvalidation")
+            .filter(exchange ->
+                isPersistenceEventForEntityType(Asset.class).matches(exchange)
+                    || isPersistenceEventForEntityType(Tenant.class).matches(exchange))
+            .process(exchange -> onPersistenceEvent(exchange.getIn().getBody(PersistenceEvent.class)));
+    }
+
+    /**
+     * @return A copy of the cached asset or <code>null</code> if the asset is not cached.
+     */
+    public Asset get(String assetId) {
+        synchronized (entries) {
+            Entry entry = entries.get(assetId);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return copy(entry.asset);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return The generation to pass to {@link #put} for an asset that is about to be loaded.
+     */
+    public long getGeneration(String assetId) {
+        return generations.get(getStripe(assetId));
+    }
+
+    /**
+     * Cache the completely loaded asset, unless the asset was modified since the given generation. The asset must not
+     * be modified by the caller afterwards.
+     */
+    public void put(Asset asset, long loadGeneration) {
+        long assetSizeBytes = estimateSize(asset);
+        if (assetSizeBytes > maxBytes) {
+            return;
+        }
+
+        synchronized (entries) {
+            if (loadGeneration != getGeneration(asset.getId())) {
+                LOG.finest("Asset modified while loading, not caching: " + asset.getId());
+                return;
+            }
+            Entry existing = entries.get(asset.getId());
+            if (existing != null) {
+                if (existing.asset.getVersion() > asset.getVersion()) {
+                    return;
+                }
+                remove(asset.getId());
+            }
+            entries.put(asset.getId(), new Entry(asset, assetSizeBytes));
+            sizeBytes += assetSizeBytes;
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (sizeBytes > maxBytes && it.hasNext()) {
+                sizeBytes -= it.next().sizeBytes;
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Apply the committed attribute values to the cached asset; if any of the attributes doesn't exist on the cached
+     * asset it is invalidated.
+     */
+    public void updateAttributeValues(String assetId, Collection<AttributeEvent> attributeEvents) {
+        incrementGeneration(assetId);
+        synchronized (entries) {
+            Entry entry = entries.get(assetId);
+            if (entry == null) {
+                return;
+            }
+            // Copies of the asset returned earlier may still share the attributes of the cached asset
+            Asset asset = copy(entry.asset);
+            ObjectValue attributes = asset.getAttributes();
+            for (AttributeEvent attributeEvent : attributeEvents) {
+                ObjectValue attribute = attributes != null ? attributes.getObject(attributeEvent.getAttributeName()).orElse(null) : null;
+                if (attribute == null) {
+                    remove(assetId);
+                    return;
+                }
+                // Same as the jsonb_set() of the update statement, an empty value is stored as JSON null
+                Value value = attributeEvent.getValue().map(AssetCache::copyValue).orElse(null);
+                attribute.put("value", value);
+                attribute.put("valueTimestamp", Values.create(attributeEvent.getTimestamp()));
+            }
+            entries.put(assetId, new Entry(asset, entry.sizeBytes));
+        }
+    }
+
+    public void invalidate(String assetId) {
+        incrementGeneration(assetId);
+        synchronized (entries) {
+            remove(assetId);
+        }
+    }
+
+    /**
+     * Invalidate the asset and all cached assets that have it in their path.
+     */
+    public void invalidateTree(String assetId) {
+        incrementGeneration(assetId);
+        synchronized (entries) {
+            remove(assetId);
+            invalidateDescendants(assetId);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        synchronized (entries) {
+            entries.clear();
+            sizeBytes = 0;
+        }
+    }
+
+    public ObjectValue getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        ObjectValue stats = Values.createObject();
+        synchronized (entries) {
+            stats.put("assets", entries.size());
+            stats.put("sizeBytes", sizeBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total > 0 ? (double) hitCount / total : 0);
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    protected void onPersistenceEvent(PersistenceEvent<?> persistenceEvent) {
+        Object entity = persistenceEvent.getEntity();
+
+        if (entity instanceof Tenant) {
+            if (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
+                // Assets of the realm are deleted by the database
+                clear();
+            }
+            return;
+        }
+
+        Asset asset = (Asset) entity;
+        switch (persistenceEvent.getCause()) {
+            case UPDATE:
+                incrementGeneration(asset.getId());
+                synchronized (entries) {
+                    Entry entry = entries.get(asset.getId());
+                    if (entry != null && entry.asset.getVersion() < asset.getVersion()) {
+                        remove(asset.getId());
+                    }
+                    invalidateDescendants(asset.getId());
+                }
+                break;
+            case DELETE:
+                invalidate(asset.getId());
+                break;
+        }
+    }
+
+    protected void invalidateDescendants(String assetId) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            Asset asset = entry.getValue().asset;
+            if (!assetId.equals(entry.getKey()) && (assetId.equals(asset.getParentId()) || asset.pathContains(assetId))) {
+                incrementGeneration(entry.getKey());
+                sizeBytes -= entry.getValue().sizeBytes;
+                it.remove();
+            }
+        }
+    }
+
+    protected void remove(String assetId) {
+        Entry entry = entries.remove(assetId);
+        if (entry != null) {
+            sizeBytes -= entry.sizeBytes;
+        }
+    }
+
+    protected void incrementGeneration(String assetId) {
+        generations.incrementAndGet(getStripe(assetId));
+    }
+
+    protected static int getStripe(String assetId) {
+        return (assetId.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    /**
+     * Estimate of the heap used by the asset, the attributes dominate and are estimated by their JSON length.
+     */
+    protected static long estimateSize(Asset asset) {
+        long size = ENTRY_OVERHEAD_BYTES;
+        if (asset.getAttributes() != null) {
+            size += 2L * asset.getAttributes().toJson().length();
+        }
+        if (asset.getPath() != null) {
+            size += asset.getPath().length * 64L;
+        }
+        return size;
+    }
+
+    /**
+     * @return A copy of the asset that shares its attributes until they are read, the asset must not be modified
+     * afterwards.
+     */
+    protected static Asset copy(Asset asset) {
+        return new Asset(
+            asset.getId(),
+            asset.getVersion(),
+            asset.getCreatedOn(),
+            asset.getName(),
+            asset.getType(),
+            asset.isAccessPublicRead(),
+            asset.getParentId(),
+            asset.getParentName(),
+            asset.getParentType(),
+            asset.getRealm(),
+            asset.getPath() != null ? asset.getPath().clone() : null,
+            asset.getAttributes() != null ? asset.getAttributes().lazyCopy() : null
+        );
+    }
+
+    protected static Value copyValue(Value value) {
+        if (value instanceof ObjectValue) {
+            return ((ObjectValue) value).deepCopy();
+        }
+        if (value instanceof ArrayValue) {
+            return ((ArrayValue) value).deepCopy();
+        }
+        return value;
+    }
+}
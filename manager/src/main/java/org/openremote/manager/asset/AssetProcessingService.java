@@ -22,6 +22,7 @@ package org.openremote.manager.asset;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
+import org.hibernate.Session;
 import org.openremote.agent.protocol.Protocol;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
@@ -36,29 +37,27 @@ import org.openremote.manager.gateway.GatewayService;
 import org.openremote.manager.rules.RulesService;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.model.Constants;
-import org.openremote.model.ValidationFailure;
 import org.openremote.model.asset.*;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeEvent.Source;
+import org.openremote.model.attribute.AttributeEventBatch;
 import org.openremote.model.attribute.AttributeExecuteStatus;
-import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.security.ClientRole;
-import org.openremote.model.util.AssetModelUtil;
 import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
 
 import javax.persistence.EntityManager;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.manager.asset.AssetProcessingException.Reason.*;
 import static org.openremote.manager.event.ClientEventService.CLIENT_EVENT_TOPIC;
-import static org.openremote.model.asset.agent.AgentLink.getAgentLink;
 import static org.openremote.model.attribute.AttributeEvent.HEADER_SOURCE;
 import static org.openremote.model.attribute.AttributeEvent.Source.*;
 
@@ -71,7 +70,8 @@ import static org.openremote.model.attribute.AttributeEvent.Source.*;
  * <dt>{@link Source#INTERNAL}</dt>
  * <dd><p>Events sent to {@link #ASSET_QUEUE} or through {@link #sendAttributeEvent} convenience method by processors.</dd>
  * <dt>{@link Source#SENSOR}</dt>
- * <dd><p>Protocol sensor updates sent to {@link Protocol#SENSOR_QUEUE}.</dd>
+ * <dd><p>Protocol sensor updates sent to {@link Protocol#SENSOR_QUEUE}. Several updates produced together can be sent
+ * as an {@link AttributeEventBatch} which is processed as one unit, see {@link #processAttributeEventBatch}.</dd>
  * </dl>
  * NOTE: An attribute value can be changed during Asset CRUD but this does not come through
  * this route but is handled separately, see {@link AssetResource}. Any attribute values
@@ -259,23 +259,34 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         */
         from(ASSET_QUEUE)
             .routeId("AssetQueueProcessor")
-            .filter(body().isInstanceOf(AttributeEvent.class))
+            .filter(or(body().isInstanceOf(AttributeEvent.class), body().isInstanceOf(AttributeEventBatch.class)))
             .doTry()
             // Lock the global context, we can only process attribute events when the
             // context isn't locked. Agent- and RulesService lock the context while protocols
             // or rulesets are modified.
             .process(exchange -> withLock(getClass().getSimpleName() + "::processFromAssetQueue", () -> {
 
+                Source source = exchange.getIn().getHeader(HEADER_SOURCE, () -> null, Source.class);
+                if (source == null) {
+                    throw new AssetProcessingException(MISSING_SOURCE);
+                }
+
+                AttributeEventBatch batch = exchange.getIn().getBody(AttributeEventBatch.class);
+                if (batch != null) {
+                    processAttributeEventBatch(
+                        batch,
+                        source,
+                        exchange.getIn().getHeader(Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, String.class)
+                    );
+                    return;
+                }
+
                 AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
                 LOG.finest("Processing: " + event);
                 if (event.getEntityId() == null || event.getEntityId().isEmpty())
                     return;
                 if (event.getAttributeName() == null || event.getAttributeName().isEmpty())
                     return;
-                Source source = exchange.getIn().getHeader(HEADER_SOURCE, () -> null, Source.class);
-                if (source == null) {
-                    throw new AssetProcessingException(MISSING_SOURCE);
-                }
 
                 // Process the asset update in a database transaction, this ensures that processors
                 // will see consistent database state and we only commit if no processor failed. This
@@ -285,145 +296,250 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
                     if (asset == null)
                         throw new AssetProcessingException(ASSET_NOT_FOUND);
 
+                    AssetAttribute updatedAttribute = validateAttributeEvent(
+                        asset,
+                        event,
+                        source,
+                        exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class)
+                    );
 
-                    AssetAttribute oldAttribute = asset.getAttribute(event.getAttributeName()).orElse(null);
-                    if (oldAttribute == null)
-                        throw new AssetProcessingException(ATTRIBUTE_NOT_FOUND);
-
-                    switch (source) {
-                        case CLIENT:
-
-                            AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
-                            if (authContext == null) {
-                                // Check attribute has public write flag
-                                if (!oldAttribute.getMetaItem(MetaItemType.ACCESS_PUBLIC_WRITE).isPresent()) {
-                                    throw new AssetProcessingException(NO_AUTH_CONTEXT);
-                                }
-                                // Check read-only
-                                if (oldAttribute.isReadOnly()) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-                            } else {
-                                // Check realm, must be accessible
-                                if (!identityService.getIdentityProvider().isTenantActiveAndAccessible(authContext,
-                                                                                                       asset.getRealm())) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Check read-only
-                                if (oldAttribute.isReadOnly() && !authContext.isSuperUser()) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Regular user must have write assets role
-                                if (!authContext.hasResourceRoleOrIsSuperUser(ClientRole.WRITE_ASSETS.getValue(),
-                                                                              Constants.KEYCLOAK_CLIENT_ID)) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Check restricted user
-                                if (identityService.getIdentityProvider().isRestrictedUser(authContext.getUserId())) {
-                                    // Must be asset linked to user
-                                    if (!assetStorageService.isUserAsset(authContext.getUserId(),
-                                                                         event.getEntityId())) {
-                                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                    }
-                                    // Must be writable by restricted client
-                                    if (!oldAttribute.isAccessRestrictedWrite()) {
-                                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                    }
-                                }
-                            }
-                            break;
+                    // Push through all processors
+                    boolean consumedCompletely = processAssetUpdate(em, asset, updatedAttribute, source);
 
-                        case SENSOR:
-                            Optional<AssetAttribute> protocolConfiguration =
-                                getAgentLink(oldAttribute).flatMap(agentService::getProtocolConfiguration);
+                    // Publish a new event for clients if no processor consumed the update completely
+                    if (!consumedCompletely) {
+                        publishClientEvent(asset, updatedAttribute);
+                    }
+                });
+            }))
+            .endDoTry()
+            .doCatch(AssetProcessingException.class)
+            .process(handleAssetProcessingException(LOG));
+    }
+
+    /**
+     * Processes the events of an {@link AttributeEventBatch} under the lock that is already held by the caller; the
+     * events are grouped by asset and each asset is loaded once, the events are then validated and pushed through the
+     * processors in batch order and all attribute values that must be stored are written with a single statement. A
+     * failed event is logged and skipped, it doesn't prevent processing of the other events in the batch.
+     * <p>
+     * The processors of each event run within their own savepoint, so the database changes of an event that fails
+     * (e.g. its datapoint) are rolled back without affecting the other events of the asset. If storing the values
+     * fails, the whole transaction and therefore all database changes of the asset's events are rolled back.
+     */
+    protected void processAttributeEventBatch(AttributeEventBatch batch, Source source, String protocolName) {
+        LOG.finest("Processing batch: " + batch);
+
+        Map<String, List<AttributeEvent>> eventsByAsset = new LinkedHashMap<>();
+        for (AttributeEvent event : batch.getEvents()) {
+            if (event.getEntityId() == null || event.getEntityId().isEmpty())
+                continue;
+            if (event.getAttributeName() == null || event.getAttributeName().isEmpty())
+                continue;
+            eventsByAsset.computeIfAbsent(event.getEntityId(), id -> new ArrayList<>()).add(event);
+        }
+
+        eventsByAsset.forEach((assetId, events) -> {
+            try {
+                persistenceService.doTransaction(em -> {
+                    Asset asset = assetStorageService.find(em, assetId, true);
+                    if (asset == null)
+                        throw new AssetProcessingException(ASSET_NOT_FOUND);
 
-                            // Sensor event must be for an attribute linked to a protocol configuration
-                            if (!protocolConfiguration.isPresent()) {
-                                throw new AssetProcessingException(INVALID_AGENT_LINK);
+                    Map<String, AssetAttribute> updatedAttributes = new LinkedHashMap<>();
+
+                    for (AttributeEvent event : events) {
+                        AssetAttribute updatedAttribute;
+                        try {
+                            updatedAttribute = validateAttributeEvent(asset, event, source, null);
+                        } catch (AssetProcessingException ex) {
+                            logAssetProcessingException(LOG, source, protocolName, event, ex);
+                            continue;
+                        }
+
+                        Savepoint savepoint = setSavepoint(em);
+                        boolean consumedCompletely;
+                        try {
+                            consumedCompletely = applyAssetUpdateProcessors(em, asset, updatedAttribute, source);
+                            em.flush(); // Make sure the changes of this event are written before its savepoint is released
+                            releaseSavepoint(em, savepoint);
+                        } catch (AssetProcessingException | PersistenceException ex) {
+                            if (em.getTransaction().getRollbackOnly()) {
+                                // A failed flush can't be undone with a savepoint, fail all events of the asset
+                                throw ex;
                             }
-                            break;
+                            rollbackToSavepoint(em, savepoint);
+                            // Discard the pending changes of the failed event, changes of earlier events are flushed
+                            em.clear();
+                            logAssetProcessingException(LOG, source, protocolName, event, ex);
+                            continue;
+                        }
+
+                        if (!consumedCompletely) {
+                            // Later events in this batch for the same attribute must be checked against this state
+                            asset.replaceAttribute(updatedAttribute);
+                            updatedAttributes.put(updatedAttribute.getNameOrThrow(), updatedAttribute);
+                        }
                     }
 
-                    // Agent attributes can't be updated with events
-                    if (asset.getWellKnownType() == AssetType.AGENT) {
-                        throw new AssetProcessingException(ILLEGAL_AGENT_UPDATE);
+                    if (!updatedAttributes.isEmpty()) {
+                        LOG.fine("No processor consumed the updates completely, storing: " + updatedAttributes.keySet());
+                        storeAttributeValues(em, asset, updatedAttributes.values());
+                        em.flush(); // Make sure constraint violations are immediately visible
+                        updatedAttributes.values().forEach(attribute -> publishClientEvent(asset, attribute));
                     }
+                });
+            } catch (Exception ex) {
+                events.forEach(event -> logAssetProcessingException(LOG, source, protocolName, event, ex));
+            }
+        });
+    }
 
-                    // For executable attributes, non-sensor sources can set a writable attribute execute status
-                    if (oldAttribute.isExecutable() && source != SENSOR) {
-                        Optional<AttributeExecuteStatus> status = event.getValue()
-                            .flatMap(Values::getString)
-                            .flatMap(AttributeExecuteStatus::fromString);
+    protected Savepoint setSavepoint(EntityManager em) {
+        return em.unwrap(Session.class).doReturningWork(Connection::setSavepoint);
+    }
 
-                        if (status.isPresent() && !status.get().isWrite()) {
-                            throw new AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
-                        }
+    protected void releaseSavepoint(EntityManager em, Savepoint savepoint) {
+        em.unwrap(Session.class).doWork(connection -> connection.releaseSavepoint(savepoint));
+    }
+
+    protected void rollbackToSavepoint(EntityManager em, Savepoint savepoint) {
+        em.unwrap(Session.class).doWork(connection -> connection.rollback(savepoint));
+    }
+
+    /**
+     * Validates the {@link AttributeEvent} against the current state of the asset and returns a copy of the
+     * attribute with the new value and timestamp set.
+     */
+    protected AssetAttribute validateAttributeEvent(Asset asset, AttributeEvent event, Source source, AuthContext authContext) throws AssetProcessingException {
+
+        AssetAttribute oldAttribute = asset.getAttribute(event.getAttributeName()).orElse(null);
+        if (oldAttribute == null)
+            throw new AssetProcessingException(ATTRIBUTE_NOT_FOUND);
+
+        // Compiled once, the copy with the new value shares it with the processors
+        CompiledAssetAttribute compiledAttribute = oldAttribute.getCompiled();
+
+        switch (source) {
+            case CLIENT:
+
+                if (authContext == null) {
+                    // Check attribute has public write flag
+                    if (!compiledAttribute.isAccessPublicWrite()) {
+                        throw new AssetProcessingException(NO_AUTH_CONTEXT);
+                    }
+                    // Check read-only
+                    if (compiledAttribute.isReadOnly()) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+                } else {
+                    // Check realm, must be accessible
+                    if (!identityService.getIdentityProvider().isTenantActiveAndAccessible(authContext,
+                                                                                           asset.getRealm())) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+
+                    // Check read-only
+                    if (compiledAttribute.isReadOnly() && !authContext.isSuperUser()) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
                     }
 
-                    // Check if attribute is well known and the value is valid
-                    AssetModelUtil.getAttributeDescriptor(oldAttribute.name).ifPresent(wellKnownAttribute -> {
-                        // Check if the value is valid
-                        wellKnownAttribute.getValueDescriptor()
-                            .getValidator().flatMap(v -> v.apply(event.getValue().orElse(null)))
-                            .ifPresent(validationFailure -> {
-                                throw new AssetProcessingException(
-                                    INVALID_VALUE_FOR_WELL_KNOWN_ATTRIBUTE
-                                );
-                            });
-                    });
-
-                    // Either use the timestamp of the event or set event time to processing time
-                    long processingTime = timerService.getCurrentTimeMillis();
-                    long eventTime = event.getTimestamp() > 0 ? event.getTimestamp() : processingTime;
-
-                    // Ensure timestamp of event is not in the future as that would essentially block access to
-                    // the attribute until after that time (maybe that is desirable behaviour)
-                    if (eventTime - processingTime > 0) {
-                        // TODO: Decide how to handle update events in the future - ignore or change timestamp
-                        throw new AssetProcessingException(
-                            EVENT_IN_FUTURE,
-                            "current time: " + new Date(processingTime) + "/" + processingTime
-                                + ", event time: " + new Date(eventTime) + "/" + eventTime
-                        );
+                    // Regular user must have write assets role
+                    if (!authContext.hasResourceRoleOrIsSuperUser(ClientRole.WRITE_ASSETS.getValue(),
+                                                                  Constants.KEYCLOAK_CLIENT_ID)) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
                     }
 
-                    // Check the last update timestamp of the attribute, ignoring any event that is older than last update
-                    // TODO This means we drop out-of-sequence events but accept events with the same source timestamp
-                    // TODO Several attribute events can occur in the same millisecond, then order of application is undefined
-                    oldAttribute.getValueTimestamp().filter(t -> t >= 0 && eventTime < t).ifPresent(
-                        lastStateTime -> {
-                            throw new AssetProcessingException(
-                                EVENT_OUTDATED,
-                                "last asset state time: " + new Date(lastStateTime) + "/" + lastStateTime
-                                    + ", event time: " + new Date(eventTime) + "/" + eventTime);
+                    // Check restricted user
+                    if (identityService.getIdentityProvider().isRestrictedUser(authContext.getUserId())) {
+                        // Must be asset linked to user
+                        if (!assetStorageService.isUserAsset(authContext.getUserId(),
+                                                             event.getEntityId())) {
+                            throw new AssetProcessingException(INSUFFICIENT_ACCESS);
                         }
-                    );
+                        // Must be writable by restricted client
+                        if (!compiledAttribute.isAccessRestrictedWrite()) {
+                            throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                        }
+                    }
+                }
+                break;
 
-                    // Create a copy of the attribute and set the new value and timestamp
-                    AssetAttribute updatedAttribute = oldAttribute.deepCopy();
-                    updatedAttribute.setValue(event.getValue().orElse(null), eventTime);
+            case SENSOR:
+                Optional<AssetAttribute> protocolConfiguration =
+                    compiledAttribute.getAgentLink().flatMap(agentService::getProtocolConfiguration);
 
-                    // Validate constraints of attribute
-                    List<ValidationFailure> validationFailures = updatedAttribute.getValidationFailures();
-                    if (!validationFailures.isEmpty()) {
-                        throw new AssetProcessingException(ATTRIBUTE_VALIDATION_FAILURE, validationFailures.toString());
-                    }
+                // Sensor event must be for an attribute linked to a protocol configuration
+                if (!protocolConfiguration.isPresent()) {
+                    throw new AssetProcessingException(INVALID_AGENT_LINK);
+                }
+                break;
+        }
 
-                    // Push through all processors
-                    boolean consumedCompletely = processAssetUpdate(em, asset, updatedAttribute, source);
+        // Agent attributes can't be updated with events
+        if (asset.getWellKnownType() == AssetType.AGENT) {
+            throw new AssetProcessingException(ILLEGAL_AGENT_UPDATE);
+        }
 
-                    // Publish a new event for clients if no processor consumed the update completely
-                    if (!consumedCompletely) {
-                        publishClientEvent(asset, updatedAttribute);
-                    }
+        // For executable attributes, non-sensor sources can set a writable attribute execute status
+        if (compiledAttribute.isExecutable() && source != SENSOR) {
+            Optional<AttributeExecuteStatus> status = event.getValue()
+                .flatMap(Values::getString)
+                .flatMap(AttributeExecuteStatus::fromString);
+
+            if (status.isPresent() && !status.get().isWrite()) {
+                throw new AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
+            }
+        }
+
+        // Check if attribute is well known and the value is valid
+        compiledAttribute.getAttributeDescriptor().ifPresent(wellKnownAttribute -> {
+            // Check if the value is valid
+            wellKnownAttribute.getValueDescriptor()
+                .getValidator().flatMap(v -> v.apply(event.getValue().orElse(null)))
+                .ifPresent(validationFailure -> {
+                    throw new AssetProcessingException(
+                        INVALID_VALUE_FOR_WELL_KNOWN_ATTRIBUTE
+                    );
                 });
-            }))
-            .endDoTry()
-            .doCatch(AssetProcessingException.class)
-            .process(handleAssetProcessingException(LOG));
+        });
+
+        // Either use the timestamp of the event or set event time to processing time
+        long processingTime = timerService.getCurrentTimeMillis();
+        long eventTime = event.getTimestamp() > 0 ? event.getTimestamp() : processingTime;
+
+        // Ensure timestamp of event is not in the future as that would essentially block access to
+        // the attribute until after that time (maybe that is desirable behaviour)
+        if (eventTime - processingTime > 0) {
+            // TODO: Decide how to handle update events in the future - ignore or change timestamp
+            throw new AssetProcessingException(
+                EVENT_IN_FUTURE,
+                "current time: " + new Date(processingTime) + "/" + processingTime
+                    + ", event time: " + new Date(eventTime) + "/" + eventTime
+            );
+        }
+
+        // Check the last update timestamp of the attribute, ignoring any event that is older than last update
+        // TODO This means we drop out-of-sequence events but accept events with the same source timestamp
+        // TODO Several attribute events can occur in the same millisecond, then order of application is undefined
+        oldAttribute.getValueTimestamp().filter(t -> t >= 0 && eventTime < t).ifPresent(
+            lastStateTime -> {
+                throw new AssetProcessingException(
+                    EVENT_OUTDATED,
+                    "last asset state time: " + new Date(lastStateTime) + "/" + lastStateTime
+                        + ", event time: " + new Date(eventTime) + "/" + eventTime);
+            }
+        );
+
+        // Create a new version of the attribute with the new value and timestamp, sharing the unchanged meta items
+        AssetAttribute updatedAttribute = oldAttribute.withValue(event.getValue().orElse(null), eventTime);
+
+        // Only the value changed, the rest of the attribute was validated when the asset was stored
+        updatedAttribute.getValueValidationFailure().ifPresent(validationFailure -> {
+            throw new AssetProcessingException(ATTRIBUTE_VALIDATION_FAILURE, validationFailure.toString());
+        });
+
+        return updatedAttribute;
     }
 
     /**
@@ -452,6 +568,25 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
                                          AssetAttribute attribute,
                                          Source source) throws AssetProcessingException {
 
+        boolean complete = applyAssetUpdateProcessors(em, asset, attribute, source);
+
+        if (!complete) {
+            LOG.fine("No processor consumed the update completely, storing: " + attribute);
+            storeAttributeValue(em, asset, attribute);
+            em.flush(); // Make sure constraint violations are immediately visible
+        }
+
+        return complete;
+    }
+
+    /**
+     * Pushes the update through the chain of {@link AssetUpdateProcessor}s without storing the attribute value.
+     */
+    protected boolean applyAssetUpdateProcessors(EntityManager em,
+                                                 Asset asset,
+                                                 AssetAttribute attribute,
+                                                 Source source) throws AssetProcessingException {
+
         String attributeStr = attribute.toString();
 
         LOG.fine(">>> Processing start: " + attributeStr);
@@ -482,49 +617,46 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
             }
         }
 
-        if (!complete) {
-            LOG.fine("No processor consumed the update completely, storing: " + attributeStr);
-            storeAttributeValue(em, asset, attribute);
-            em.flush(); // Make sure constraint violations are immediately visible
-        }
-
         LOG.fine("<<< Processing complete: " + attributeStr);
         return complete;
     }
 
     protected static Processor handleAssetProcessingException(Logger logger) {
         return exchange -> {
-            AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
             Exception exception = (Exception) exchange.getProperty(Exchange.EXCEPTION_CAUGHT);
-
-            StringBuilder error = new StringBuilder();
-
             Source source = exchange.getIn().getHeader(HEADER_SOURCE, "unknown source", Source.class);
-            if (source != null) {
-                error.append("Error processing from ").append(source);
-            }
-
             String protocolName = exchange.getIn().getHeader(Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, String.class);
-            if (protocolName != null) {
-                error.append(" (protocol: ").append(protocolName).append(")");
-            }
 
-            // TODO Better exception handling - dead letter queue?
-            if (exception instanceof AssetProcessingException) {
-                AssetProcessingException processingException = (AssetProcessingException) exception;
-                error.append(" - ").append(processingException.getMessage());
-                error.append(": ").append(event.toString());
-                logger.warning(error.toString());
-            } else {
-                error.append(": ").append(event.toString());
-                logger.log(Level.WARNING, error.toString(), exception);
-            }
+            logAssetProcessingException(logger, source, protocolName, exchange.getIn().getBody(), exception);
 
             // Make the exception available if MEP is InOut
             exchange.getOut().setBody(exception);
         };
     }
 
+    protected static void logAssetProcessingException(Logger logger, Source source, String protocolName, Object event, Exception exception) {
+        StringBuilder error = new StringBuilder();
+
+        if (source != null) {
+            error.append("Error processing from ").append(source);
+        }
+
+        if (protocolName != null) {
+            error.append(" (protocol: ").append(protocolName).append(")");
+        }
+
+        // TODO Better exception handling - dead letter queue?
+        if (exception instanceof AssetProcessingException) {
+            AssetProcessingException processingException = (AssetProcessingException) exception;
+            error.append(" - ").append(processingException.getMessage());
+            error.append(": ").append(event);
+            logger.warning(error.toString());
+        } else {
+            error.append(": ").append(event);
+            logger.log(Level.WARNING, error.toString(), exception);
+        }
+    }
+
     protected void storeAttributeValue(EntityManager em, Asset asset, AssetAttribute attribute) throws AssetProcessingException {
         String attributeName = attribute.getName()
             .orElseThrow(() -> new AssetProcessingException(
@@ -546,10 +678,35 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         }
     }
 
+    protected void storeAttributeValues(EntityManager em, Asset asset, Collection<AssetAttribute> attributes) throws AssetProcessingException {
+        List<AttributeEvent> attributeEvents = new ArrayList<>(attributes.size());
+
+        for (AssetAttribute attribute : attributes) {
+            String attributeName = attribute.getName()
+                .orElseThrow(() -> new AssetProcessingException(
+                    STATE_STORAGE_FAILED,
+                    "cannot store asset state for attribute with no name on: " + asset)
+                );
+
+            // If there is no timestamp, use system time (0 or -1 are "no timestamp")
+            long timestamp = attribute.getValueTimestamp()
+                .filter(ts -> ts > 0)
+                .orElseGet(() -> timerService.getCurrentTimeMillis());
+
+            attributeEvents.add(new AttributeEvent(asset.getId(), attributeName, attribute.getValue().orElse(null), timestamp));
+        }
+
+        if (!assetStorageService.storeAttributeValues(em, asset.getId(), attributeEvents)) {
+            throw new AssetProcessingException(
+                STATE_STORAGE_FAILED, "database update failed, no rows updated"
+            );
+        }
+    }
+
     protected void publishClientEvent(Asset asset, AssetAttribute attribute) {
         // TODO Catch "queue full" exception (e.g. when producing thousands of INFO messages in rules)?
         clientEventService.publishEvent(
-            attribute.isAccessRestrictedRead(),
+            attribute.getCompiled().isAccessRestrictedRead(),
             new AttributeEvent(
                 asset.getId(),
                 attribute.getNameOrThrow(),
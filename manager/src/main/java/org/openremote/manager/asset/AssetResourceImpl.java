@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.asset;
 
+import com.fasterxml.jackson.databind.SequenceWriter;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.security.ManagerIdentityService;
@@ -44,7 +45,10 @@ import org.openremote.model.value.Values;
 import javax.persistence.OptimisticLockException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.logging.Logger;
 
@@ -539,10 +543,65 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
     @Override
     public Asset[] queryAssets(RequestParams requestParams, AssetQuery query) {
         try {
+            query = prepareQuery(query);
+
             if (query == null) {
                 return EMPTY_ASSETS;
             }
 
+            List<Asset> result = assetStorageService.findAll(query);
+
+            // Compress response (the request attribute enables the interceptor)
+            request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+            return result.toArray(new Asset[result.size()]);
+
+        } catch (IllegalStateException ex) {
+            throw new WebApplicationException(ex, BAD_REQUEST);
+        }
+    }
+
+    @Override
+    public Response streamAssets(RequestParams requestParams, AssetQuery query) {
+        AssetQuery streamQuery = prepareQuery(query);
+
+        if (streamQuery == null) {
+            return Response.ok(EMPTY_ASSETS).build();
+        }
+
+        // Compress response (the request attribute enables the interceptor)
+        request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        StreamingOutput output = outputStream -> {
+            try (SequenceWriter writer = JSON.writer().writeValuesAsArray(outputStream)) {
+                // Pages are written after their transaction is closed, a slow client doesn't hold a connection
+                int count = assetStorageService.streamAll(streamQuery, assets -> {
+                    try {
+                        writer.writeAll(assets);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                LOG.fine("Streamed assets: " + count);
+            } catch (UncheckedIOException e) {
+                // Client has most likely gone away
+                throw e.getCause();
+            }
+        };
+
+        return Response.ok(output).build();
+    }
+
+    /**
+     * Restricts the query to what the authenticated user may access, returns <code>null</code> if the user can't
+     * access the requested realm.
+     */
+    protected AssetQuery prepareQuery(AssetQuery query) {
+        try {
+            if (query == null) {
+                return null;
+            }
+
             if (isRestrictedUser()) {
                 // A restricted user can only query linked assets
                 query = query.userIds(getUserId());
@@ -561,7 +620,7 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
             }
 
             if (!isTenantActiveAndAccessible(realm)) {
-                return EMPTY_ASSETS;
+                return null;
             }
 
             // This replicates behaviour of old getRoot and getChildren methods
@@ -569,12 +628,7 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
                 query.tenant(new TenantPredicate(realm));
             }
 
-            List<Asset> result = assetStorageService.findAll(query);
-
-            // Compress response (the request attribute enables the interceptor)
-            request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
-
-            return result.toArray(new Asset[result.size()]);
+            return query;
 
         } catch (IllegalStateException ex) {
             throw new WebApplicationException(ex, BAD_REQUEST);
@@ -61,11 +61,16 @@ import org.postgresql.util.PGobject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 import javax.ws.rs.WebApplicationException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
 import java.util.Date;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -77,7 +82,11 @@ import static java.util.stream.Collectors.joining;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.event.ClientEventService.CLIENT_EVENT_TOPIC;
+import static org.openremote.manager.asset.AssetCache.ASSET_CACHE_MAX_MB;
+import static org.openremote.manager.asset.AssetCache.ASSET_CACHE_MAX_MB_DEFAULT;
 import static org.openremote.manager.event.ClientEventService.getSessionKey;
 import static org.openremote.manager.rules.AssetQueryPredicate.asPredicate;
 import static org.openremote.model.asset.AssetAttribute.*;
@@ -120,7 +129,56 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         void acceptStatement(PreparedStatement st) throws SQLException;
     }
 
+    /**
+     * The built SQL of a query shape and the number of parameters bound to it.
+     */
+    protected static class QueryShape {
+
+        final protected String querySql;
+        final protected int parameterCount;
+
+        protected QueryShape(String querySql, int parameterCount) {
+            this.querySql = querySql;
+            this.parameterCount = parameterCount;
+        }
+    }
+
+    /**
+     * Copy of a query that is paged with the sort key and ID of the last row of the previous page.
+     */
+    protected static class KeysetAssetQuery extends AssetQuery {
+
+        protected Object afterOrderByValue;
+        protected String afterId;
+
+        protected KeysetAssetQuery(AssetQuery query) {
+            this.recursive = query.recursive;
+            this.select = query.select;
+            this.access = query.access;
+            this.ids = query.ids;
+            this.names = query.names;
+            this.parents = query.parents;
+            this.paths = query.paths;
+            this.tenant = query.tenant;
+            this.userIds = query.userIds;
+            this.types = query.types;
+            this.attributes = query.attributes;
+            this.attributeMeta = query.attributeMeta;
+            this.orderBy = query.orderBy;
+            this.limit = query.limit;
+            this.after = query.after;
+        }
+    }
+
     private static final Logger LOG = Logger.getLogger(AssetStorageService.class.getName());
+    public static final int STREAM_PAGE_SIZE = 500;
+    public static final int MAX_QUERY_SHAPES = 1000;
+    /**
+     * Store attribute values in the narrow ASSET_ATTRIBUTE_STATE table instead of the ATTRIBUTES document of the asset,
+     * the stored values are merged with the document when reading assets.
+     */
+    public static final String ASSET_ATTRIBUTE_STATE_TABLE = "ASSET_ATTRIBUTE_STATE_TABLE";
+    public static final boolean ASSET_ATTRIBUTE_STATE_TABLE_DEFAULT = false;
     protected static String META_ITEM_RESTRICTED_READ_SQL_FRAGMENT;
     protected static String META_ITEM_PUBLIC_READ_SQL_FRAGMENT;
     protected TimerService timerService;
@@ -128,6 +186,17 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected ManagerIdentityService identityService;
     protected ClientEventService clientEventService;
     protected GatewayService gatewayService;
+    protected AssetCache assetCache;
+    protected boolean attributeStateTable;
+    // Built SQL of recently executed query shapes, the SQL only depends on the shape of the query (values are bound)
+    protected final Map<String, QueryShape> queryShapes = new LinkedHashMap<String, QueryShape>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QueryShape> eldest) {
+            return size() > MAX_QUERY_SHAPES;
+        }
+    };
+    protected final AtomicLong queryShapeHits = new AtomicLong();
+    protected final AtomicLong queryShapeMisses = new AtomicLong();
 
     /**
      * Will evaluate each {@link CalendarEventPredicate} and apply it depending on the {@link LogicGroup} type
@@ -213,6 +282,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         identityService = container.getService(ManagerIdentityService.class);
         clientEventService = container.getService(ClientEventService.class);
         gatewayService = container.getService(GatewayService.class);
+        assetCache = new AssetCache(getInteger(container.getConfig(), ASSET_CACHE_MAX_MB, ASSET_CACHE_MAX_MB_DEFAULT) * 1024L * 1024L);
+        attributeStateTable = getBoolean(container.getConfig(), ASSET_ATTRIBUTE_STATE_TABLE, ASSET_ATTRIBUTE_STATE_TABLE_DEFAULT);
 
         META_ITEM_RESTRICTED_READ_SQL_FRAGMENT =
             " ('" + Arrays.stream(AssetModelUtil.getMetaItemDescriptors()).filter(i -> i.getAccess().restrictedRead).map(MetaItemDescriptor::getUrn).collect(joining("','")) + "')";
@@ -251,10 +322,37 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         );
 
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
+        container.getService(MessageBrokerService.class).getContext().addRoutes(assetCache);
+    }
+
+    public AssetCache getAssetCache() {
+        return assetCache;
     }
 
     @Override
     public void start(Container container) throws Exception {
+        if (!attributeStateTable) {
+            // State is only stored while the state table is enabled, so this only moves anything once, on the first
+            // start after it has been disabled: move the values back into the attributes documents, so queries can
+            // read the documents directly
+            persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    boolean hasState;
+                    try (ResultSet rs = statement.executeQuery("select exists(select 1 from ASSET_ATTRIBUTE_STATE)")) {
+                        hasState = rs.next() && rs.getBoolean(1);
+                    }
+                    if (!hasState) {
+                        return;
+                    }
+                    int updatedRows = statement.executeUpdate(
+                        "update ASSET set ATTRIBUTES = MERGE_ASSET_ATTRIBUTE_STATE(ID, ATTRIBUTES)" +
+                            " where ID in (select ASSET_ID from ASSET_ATTRIBUTE_STATE)"
+                    );
+                    statement.executeUpdate("delete from ASSET_ATTRIBUTE_STATE");
+                    LOG.info("Moved attribute state of assets into attributes documents: " + updatedRows);
+                }
+            }));
+        }
     }
 
     @Override
@@ -365,6 +463,57 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return persistenceService.doReturningTransaction(em -> findAll(em, query));
     }
 
+    /**
+     * Pages through the result of the query with keyset pagination (see {@link AssetQuery#after}), each page of at
+     * most {@link #STREAM_PAGE_SIZE} assets is loaded in its own transaction and then passed to the consumer. The
+     * consumer is therefore called outside of any transaction and may block (e.g. while writing to a slow client)
+     * without holding a database connection, and memory usage doesn't depend on the size of the result. Each page sees
+     * the state committed when it is loaded, assets which are moved in the order while paging may be missed or passed
+     * twice. The next page starts after the sort key and ID of the last row of the previous page, so paging continues
+     * when that asset is deleted. The query isn't changed.
+     *
+     * @return The number of assets passed to the consumer.
+     */
+    public int streamAll(AssetQuery query, Consumer<List<Asset>> pageConsumer) {
+        return streamAll(query, STREAM_PAGE_SIZE, pageConsumer);
+    }
+
+    public int streamAll(AssetQuery query, int maxPageSize, Consumer<List<Asset>> pageConsumer) {
+        // Page on a copy so the query of the caller isn't changed
+        KeysetAssetQuery pageQuery = new KeysetAssetQuery(query);
+        int limit = query.limit;
+
+        // Keyset pagination requires an order, the asset ID breaks ties
+        if (pageQuery.orderBy == null)
+            pageQuery.orderBy = new OrderBy(OrderBy.Property.CREATED_ON);
+
+        int count = 0;
+        while (limit <= 0 || count < limit) {
+            int pageSize = limit > 0 ? Math.min(maxPageSize, limit - count) : maxPageSize;
+            pageQuery.limit = pageSize;
+
+            List<Asset> page = new ArrayList<>(pageSize);
+            // The last row may have been filtered by a calendar predicate, the next page must still start after it
+            Asset[] lastRow = new Asset[1];
+            int rows = persistenceService.doReturningTransaction(em ->
+                findAll(em, pageQuery, page::add, asset -> lastRow[0] = asset)
+            );
+
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+                count += page.size();
+            }
+
+            if (rows < pageSize) {
+                break;
+            }
+            // Start after the sort key of the last row, not after its ID, the asset may be deleted in the meantime
+            pageQuery.afterOrderByValue = getOrderByValue(pageQuery.orderBy.property, lastRow[0]);
+            pageQuery.afterId = lastRow[0].getId();
+        }
+        return count;
+    }
+
     public List<String> findNames(String... ids) {
         if (ids == null || ids.length == 0)
             return new ArrayList<>();
@@ -424,7 +573,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
      * @throws IllegalArgumentException if the realm or parent is illegal, or other asset constraint is violated.
      */
     public Asset merge(Asset asset, boolean overrideVersion, boolean skipGatewayCheck, String userName) {
-        return persistenceService.doReturningTransaction(em -> {
+        Asset mergedAsset = persistenceService.doReturningTransaction(em -> {
 
             Asset existing = null;
 
@@ -437,6 +586,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     throw new IllegalStateException(msg);
                 }
 
+                if (attributeStateTable) {
+                    // Entities are loaded without the attribute state, make the document of the asset current first
+                    moveAttributeState(em, asset.getId());
+                }
+
                 existing = em.find(Asset.class, asset.getId());
 
                 // Verify type has not been changed
@@ -594,6 +748,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
             return updatedAsset;
         });
+
+        if (mergedAsset != null && mergedAsset.getId() != null) {
+            assetCache.invalidateTree(mergedAsset.getId());
+        }
+        return mergedAsset;
     }
 
     /**
@@ -691,6 +850,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             return false;
         }
 
+        ids.forEach(assetCache::invalidate);
+
         return true;
     }
 
@@ -698,29 +859,15 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return isUserAsset((String) null, assetId);
     }
 
+    /**
+     * Answered by the {@link org.openremote.manager.security.AuthorizationCache}, this is called for every client
+     * event and subscription of a restricted user.
+     */
     public boolean isUserAsset(String userId, String assetId) {
         if (TextUtil.isNullOrEmpty(userId) || TextUtil.isNullOrEmpty(assetId)) {
             return false;
         }
-        return persistenceService.doReturningTransaction(entityManager -> {
-            try {
-                String queryStr = TextUtil.isNullOrEmpty(userId) ?
-                    "select count(ua) from UserAsset ua where ua.id.assetId = :assetId" :
-                    "select count(ua) from UserAsset ua where ua.id.userId = :userId and ua.id.assetId = :assetId";
-
-                TypedQuery<Long> query = entityManager.createQuery(
-                    queryStr,
-                    Long.class).setParameter("assetId", assetId);
-
-                if (!TextUtil.isNullOrEmpty(userId)) {
-                    query.setParameter("userId", userId);
-                }
-
-                return query.getSingleResult() > 0;
-            } catch (NoResultException ex) {
-                return false;
-            }
-        });
+        return identityService.getAuthorizationCache().isUserAsset(userId, assetId);
     }
 
     public boolean isUserAsset(List<String> userIds, String assetId) {
@@ -795,7 +942,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return persistenceService.doReturningTransaction(entityManager -> entityManager.unwrap(Session.class).doReturningWork(new AbstractReturningWork<Boolean>() {
             @Override
             public Boolean execute(Connection connection) throws SQLException {
-                try (PreparedStatement st = connection.prepareStatement("select count(*) from Asset a where ? = ANY(get_asset_tree_path(a.ID)) AND a.id = ANY(?)")) {
+                try (PreparedStatement st = connection.prepareStatement("select count(*) from Asset a where a.PATH @> array[cast(? as text)] AND a.id = ANY(?)")) {
                     st.setString(1, parentAssetId);
                     st.setArray(2, st.getConnection().createArrayOf("text", assetIds.toArray()));
                     ResultSet rs = st.executeQuery();
@@ -843,6 +990,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
      */
     public void storeUserAsset(UserAsset userAsset) {
         persistenceService.doTransaction(entityManager -> storeUserAsset(entityManager, userAsset));
+        identityService.getAuthorizationCache().invalidateUser(userAsset.getId().getUserId());
     }
 
     /**
@@ -855,6 +1003,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             if (userAsset != null)
                 entityManager.remove(userAsset);
         });
+        identityService.getAuthorizationCache().invalidateUser(userId);
     }
 
     protected void storeUserAsset(EntityManager entityManager, UserAsset userAsset) {
@@ -865,7 +1014,20 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected Asset find(EntityManager em, String assetId, boolean loadComplete, Access access) {
         if (assetId == null)
             throw new IllegalArgumentException("Can't query null asset identifier");
-        return find(
+
+        // Completely loaded assets are cached, the data of the other access levels is derived from it by the query
+        boolean cacheable = loadComplete && access == PRIVATE;
+        long loadGeneration = 0;
+
+        if (cacheable) {
+            Asset cachedAsset = assetCache.get(assetId);
+            if (cachedAsset != null) {
+                return cachedAsset;
+            }
+            loadGeneration = assetCache.getGeneration(assetId);
+        }
+
+        Asset asset = find(
             em,
             new AssetQuery()
                 .select(loadComplete
@@ -874,15 +1036,62 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 .ids(assetId)
                 .access(access)
         );
+
+        if (cacheable && asset != null) {
+            // Only cache what was committed, the transaction might have modified the asset; the caller might modify
+            // the returned instance before the commit so it gets a copy and the loaded asset is cached unmodified
+            final Asset loadedAsset = asset;
+            final long generation = loadGeneration;
+            asset = AssetCache.copy(loadedAsset);
+            afterCommit(em, () -> assetCache.put(loadedAsset, generation));
+        }
+        return asset;
+    }
+
+    /**
+     * Run the action after the transaction of the entity manager has been committed, or immediately if there is no
+     * active transaction.
+     */
+    protected void afterCommit(EntityManager em, Runnable action) {
+        org.hibernate.Transaction transaction = em.unwrap(Session.class).getTransaction();
+        if (!transaction.isActive()) {
+            action.run();
+            return;
+        }
+        transaction.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
     }
 
     protected List<Asset> findAll(EntityManager em, AssetQuery query) {
+        List<Asset> result = new ArrayList<>();
+        findAll(em, query, result::add, null);
+        return result;
+    }
+
+    /**
+     * Passes each asset of the result to the consumer as soon as its row has been mapped.
+     *
+     * @param rowConsumer Receives the asset of every row, also of rows which don't match the calendar predicates of the
+     *                    query, can be <code>null</code>.
+     * @return The number of rows read.
+     */
+    protected int findAll(EntityManager em, AssetQuery query, Consumer<Asset> consumer, Consumer<Asset> rowConsumer) {
 
         if (query.access == null)
             query.access = PRIVATE;
 
-        // Default to order by creation date if the query may return multiple results
-        if (query.orderBy == null && query.ids == null)
+        // Default to order by creation date if the query may return multiple results or is paged
+        if (query.orderBy == null && (query.ids == null || query.after != null))
             query.orderBy = new OrderBy(OrderBy.Property.CREATED_ON);
 
         Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = buildQuery(query);
@@ -894,29 +1103,27 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             throw new IllegalArgumentException("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
         }
 
-        return em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<List<Asset>>() {
+        return em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<Integer>() {
             @Override
-            public List<Asset> execute(Connection connection) throws SQLException {
+            public Integer execute(Connection connection) throws SQLException {
                 LOG.fine("Executing: " + querySql.querySql);
                 try (PreparedStatement st = connection.prepareStatement(querySql.querySql)) {
                     querySql.apply(st);
 
                     try (ResultSet rs = st.executeQuery()) {
-                        List<Asset> result = new ArrayList<>();
-                        if (containsCalendarPredicate) {
-                            while (rs.next()) {
-                                Asset asset = mapResultTuple(query, rs);
-                                // Apply calendar event filter here (difficult to translate this into a SQL query)
-                                if (calendarEventPredicateMatches(query, asset)) {
-                                    result.add(asset);
-                                }
+                        int rows = 0;
+                        while (rs.next()) {
+                            Asset asset = mapResultTuple(query, rs);
+                            rows++;
+                            if (rowConsumer != null) {
+                                rowConsumer.accept(asset);
                             }
-                        } else {
-                            while (rs.next()) {
-                                result.add(mapResultTuple(query, rs));
+                            // Apply calendar event filter here (difficult to translate this into a SQL query)
+                            if (!containsCalendarPredicate || calendarEventPredicateMatches(query, asset)) {
+                                consumer.accept(asset);
                             }
                         }
-                        return result;
+                        return rows;
                     }
                 }
             }
@@ -945,8 +1152,42 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         }
 
         sb.append(buildOrderByString(query));
-        sb.append(buildLimitString(query));
-        return new Pair<>(new PreparedAssetQuery(sb.toString(), binders), containsCalendarPredicate);
+        sb.append(buildLimitString(query, binders));
+        QueryShape queryShape = getQueryShape(sb.toString(), binders.size());
+        return new Pair<>(new PreparedAssetQuery(queryShape.querySql, binders), containsCalendarPredicate);
+    }
+
+    /**
+     * Returns the cached shape of the built SQL. As all values are bound, queries of the same shape produce the same
+     * SQL with the same parameters and the JDBC driver reuses the server-side prepared statement (and its plan) of the
+     * connection after the driver's prepare threshold; the hit rate shows how often shapes are reused.
+     */
+    protected QueryShape getQueryShape(String querySql, int parameterCount) {
+        synchronized (queryShapes) {
+            QueryShape queryShape = queryShapes.get(querySql);
+            if (queryShape != null && queryShape.parameterCount == parameterCount) {
+                queryShapeHits.incrementAndGet();
+                return queryShape;
+            }
+            queryShape = new QueryShape(querySql, parameterCount);
+            queryShapes.put(querySql, queryShape);
+            queryShapeMisses.incrementAndGet();
+            return queryShape;
+        }
+    }
+
+    public ObjectValue getQueryShapeStats() {
+        long hits = queryShapeHits.get();
+        long misses = queryShapeMisses.get();
+        long total = hits + misses;
+        ObjectValue stats = Values.createObject();
+        synchronized (queryShapes) {
+            stats.put("shapes", queryShapes.size());
+        }
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", total > 0 ? (double) hits / total : 0);
+        return stats;
     }
 
     protected String buildSelectString(AssetQuery query, int level, List<ParameterBinder> binders) {
@@ -972,12 +1213,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             sb.append(", A.NAME as TENANT_NAME");
         }
 
-        if (!query.recursive || level == 3) {
-            if (select == null || !select.excludePath) {
-                sb.append(", get_asset_tree_path(A.ID) as PATH");
-            } else {
-                sb.append(", NULL as PATH");
-            }
+        if (query.recursive && level != 3) {
+            // Carried through the CTE
+            sb.append(", A.PATH as PATH");
+        } else if (select == null || !select.excludePath) {
+            sb.append(", A.PATH as PATH");
+        } else {
+            sb.append(", NULL as PATH");
         }
 
         if (select == null || !select.excludeAttributes) {
@@ -997,10 +1239,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         Select select = query.select;
         boolean hasMetaFilter = select != null && !select.excludeAttributeMeta && select.meta != null && select.meta.length > 0;
+        boolean hasAttributeMetaFilter = select != null && select.attributeMeta != null && select.attributeMeta.length > 0;
         boolean fullyPopulateAttributes = select == null || !(select.excludeAttributeMeta || select.excludeAttributeValue || select.excludeAttributeTimestamp || select.meta != null);
 
-        if ((select == null || select.attributes == null) && query.access == PRIVATE && fullyPopulateAttributes) {
-            return ", A.ATTRIBUTES as ATTRIBUTES";
+        if ((select == null || select.attributes == null) && !hasAttributeMetaFilter && query.access == PRIVATE && fullyPopulateAttributes) {
+            return ", " + getAttributesExpression() + " as ATTRIBUTES";
         }
 
         StringBuilder attributeBuilder = new StringBuilder();
@@ -1024,7 +1267,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         if (select != null && select.excludeAttributeMeta) {
             sb.append("select json_object_agg(AX.key, AX.value");
             sb.append(attributeBuilder);
-            sb.append(") from jsonb_each(A.attributes) as AX");
+            sb.append(") from jsonb_each(" + getAttributesExpression() + ") as AX");
             if (query.access != PRIVATE) {
                 // Use implicit inner join on meta array set to only select non-private attributes
                 sb.append(", jsonb_array_elements(AX.VALUE #> '{meta}') as AM");
@@ -1033,7 +1276,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             // Use sub-select for processing the attributes the meta inside each attribute is replaced with filtered meta
             // (coalesce null to empty array because jsonb_set() with null will clear the whole object)
             sb.append(
-                "select json_object_agg(AX.key, jsonb_set(AX.value, '{meta}', coalesce(AMF.VALUE, jsonb_build_array()), false)) from jsonb_each(A.attributes) as AX");
+                "select json_object_agg(AX.key, jsonb_set(AX.value, '{meta}', coalesce(AMF.VALUE, jsonb_build_array()), false)) from jsonb_each(" + getAttributesExpression() + ") as AX");
             // Use implicit inner join on meta array set to only select attributes with a non-private access meta item
             sb.append(", jsonb_array_elements(AX.VALUE #> '{meta}') as AM");
             // Use subquery to filter out meta items not marked as non-private access
@@ -1049,14 +1292,19 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             }
 
             if (hasMetaFilter) {
-                sb.append(" ('");
-                sb.append(String.join("','", select.meta));
-                sb.append("')");
+                sb.append(" (");
+                for (int i = 0; i < select.meta.length; i++) {
+                    sb.append(i == select.meta.length - 1 ? "?" : "?,");
+                    final String metaItemName = select.meta[i];
+                    final int pos = binders.size() + 1;
+                    binders.add(st -> st.setString(pos, metaItemName));
+                }
+                sb.append(")");
             }
 
             sb.append(") as AMF ON true");
         } else {
-            sb.append("select json_object_agg(AX.key, AX.value) from jsonb_each(A.attributes) as AX");
+            sb.append("select json_object_agg(AX.key, AX.value) from jsonb_each(" + getAttributesExpression() + ") as AX");
         }
 
         sb.append(" where true");
@@ -1073,6 +1321,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             sb.append(")");
         }
 
+        if (hasAttributeMetaFilter) {
+            // Filter attributes with a matching meta item, the subquery meta array set shadows any outer AM
+            sb.append(" AND exists (select 1 from jsonb_array_elements(AX.VALUE #> '{meta}') as AM where true");
+            sb.append(buildAttributeMetaFilter(binders, select.attributeMeta));
+            sb.append(")");
+        }
+
         if (query.access != PRIVATE) {
             // Filter non-private access attributes
             MetaPredicate accessPredicate =
@@ -1086,6 +1341,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return sb.toString();
     }
 
+    /**
+     * @return The expression for the attributes of asset <code>A</code> with their current values.
+     */
+    protected String getAttributesExpression() {
+        return attributeStateTable ? "MERGE_ASSET_ATTRIBUTE_STATE(A.ID, A.ATTRIBUTES)" : "A.ATTRIBUTES";
+    }
+
     protected String buildFromString(AssetQuery query, int level) {
         // level = 1 is main query
         // level = 2 is union
@@ -1130,39 +1392,63 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected String buildOrderByString(AssetQuery query) {
         StringBuilder sb = new StringBuilder();
 
-        if (query.ids != null && !query.recursive) {
+        if (query.ids != null && !query.recursive && query.after == null) {
             return sb.toString();
         }
 
         if (query.orderBy != null && query.orderBy.property != null) {
             sb.append(" order by ");
-
-            switch (query.orderBy.property) {
-                case CREATED_ON:
-                    sb.append(" A.CREATED_ON ");
-                    break;
-                case ASSET_TYPE:
-                    sb.append(" A.ASSET_TYPE ");
-                    break;
-                case NAME:
-                    sb.append(" A.NAME ");
-                    break;
-                case PARENT_ID:
-                    sb.append(" A.PARENT_ID ");
-                    break;
-                case REALM:
-                    sb.append(" A.REALM ");
-                    break;
-            }
-            sb.append(query.orderBy.descending ? "desc " : "asc ");
+            sb.append(buildOrderByExpression(query.orderBy.property, "A"));
+            sb.append(query.orderBy.descending ? " desc" : " asc");
+            // Asset ID breaks ties so the order is stable, required for keyset pagination
+            sb.append(", A.ID").append(query.orderBy.descending ? " desc " : " asc ");
         }
 
         return sb.toString();
     }
 
-    protected String buildLimitString(AssetQuery query) {
+    protected String buildOrderByExpression(OrderBy.Property property, String tableAlias) {
+        switch (property) {
+            case ASSET_TYPE:
+                return tableAlias + ".ASSET_TYPE";
+            case NAME:
+                return tableAlias + ".NAME";
+            case PARENT_ID:
+                // Root assets have no parent, the sort key must not be null for keyset comparison
+                return "coalesce(" + tableAlias + ".PARENT_ID, '')";
+            case REALM:
+                return tableAlias + ".REALM";
+            case CREATED_ON:
+            default:
+                return tableAlias + ".CREATED_ON";
+        }
+    }
+
+    /**
+     * @return The value of the asset compared by {@link #buildOrderByExpression}.
+     */
+    protected Object getOrderByValue(OrderBy.Property property, Asset asset) {
+        switch (property) {
+            case ASSET_TYPE:
+                return asset.getType();
+            case NAME:
+                return asset.getName();
+            case PARENT_ID:
+                return asset.getParentId() != null ? asset.getParentId() : "";
+            case REALM:
+                return asset.getRealm();
+            case CREATED_ON:
+            default:
+                return asset.getCreatedOn();
+        }
+    }
+
+    protected String buildLimitString(AssetQuery query, List<ParameterBinder> binders) {
         if (query.limit > 0) {
-            return " LIMIT " + query.limit;
+            final int pos = binders.size() + 1;
+            final int limit = query.limit;
+            binders.add(st -> st.setInt(pos, limit));
+            return " LIMIT ?";
         }
         return "";
     }
@@ -1180,17 +1466,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         }
 
         if (level == 1 && query.ids != null && query.ids.length > 0) {
-            sb.append(" and A.ID IN (?");
+            // Bind as a single array so the statement is the same for any number of identifiers
+            sb.append(" and A.ID = any(?)");
             final int pos = binders.size() + 1;
-            binders.add(st -> st.setString(pos, query.ids[0]));
-
-            for (int i = 1; i < query.ids.length; i++) {
-                sb.append(",?");
-                final int pos2 = binders.size() + 1;
-                final int index = i;
-                binders.add(st -> st.setString(pos2, query.ids[index]));
-            }
-            sb.append(")");
+            final String[] ids = query.ids;
+            binders.add(st -> st.setArray(pos, st.getConnection().createArrayOf("text", ids)));
         }
 
         if (level == 1 && query.names != null && query.names.length > 0) {
@@ -1265,7 +1545,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 }
                 isFirst = false;
 
-                sb.append("? <@ get_asset_tree_path(A.ID)");
+                sb.append("A.PATH @> ?");
                 final int pos = binders.size() + 1;
                 binders.add(st -> st.setArray(pos, st.getConnection().createArrayOf("text", pred.path)));
             }
@@ -1336,9 +1616,12 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             }
 
             if (query.attributes != null) {
+                // Index usable pre-filter, the exact predicates are still applied below
+                sb.append(buildAttributeContainmentFilter(query.attributes, binders));
+
                 AtomicInteger joinCounter = new AtomicInteger(1);
                 sb.append(" and A.ID in (select A.ID from");
-                sb.append(" jsonb_each(A.ATTRIBUTES) as AX1");
+                sb.append(" jsonb_each(").append(getAttributesExpression()).append(") as AX1");
                 int offset = sb.length();
                 sb.append(" where true AND ");
                 containsCalendarPredicate = addAttributePredicateGroupQuery(sb, binders, joinCounter, query.attributes);
@@ -1347,14 +1630,108 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 int counter = joinCounter.get();
 
                 while (counter > 2) {
-                    sb.insert(offset, ", jsonb_each(A.ATTRIBUTES) as AX" + (counter-1));
+                    sb.insert(offset, ", jsonb_each(" + getAttributesExpression() + ") as AX" + (counter-1));
                     counter--;
                 }
             }
+
+            if (query instanceof KeysetAssetQuery && ((KeysetAssetQuery) query).afterId != null && query.orderBy != null && query.orderBy.property != null) {
+                // Keyset pagination, compare with the sort key and ID of the last row of the previous page
+                KeysetAssetQuery keysetQuery = (KeysetAssetQuery) query;
+                sb.append(" and (").append(buildOrderByExpression(query.orderBy.property, "A")).append(", A.ID)");
+                sb.append(query.orderBy.descending ? " < " : " > ");
+                sb.append("(?, ?)");
+                final int pos = binders.size() + 1;
+                final Object afterOrderByValue = keysetQuery.afterOrderByValue;
+                final String afterId = keysetQuery.afterId;
+                binders.add(st -> {
+                    if (afterOrderByValue instanceof Date) {
+                        st.setTimestamp(pos, afterOrderByValue instanceof Timestamp
+                            ? (Timestamp) afterOrderByValue
+                            : new Timestamp(((Date) afterOrderByValue).getTime()));
+                    } else {
+                        st.setString(pos, (String) afterOrderByValue);
+                    }
+                });
+                binders.add(st -> st.setString(pos + 1, afterId));
+            } else if (!TextUtil.isNullOrEmpty(query.after) && query.orderBy != null && query.orderBy.property != null) {
+                // Keyset pagination, compare with the sort key of the last asset of the previous page
+                sb.append(" and (").append(buildOrderByExpression(query.orderBy.property, "A")).append(", A.ID)");
+                sb.append(query.orderBy.descending ? " < " : " > ");
+                sb.append("(select ").append(buildOrderByExpression(query.orderBy.property, "K"));
+                sb.append(", K.ID from ASSET K where K.ID = ?)");
+                final int pos = binders.size() + 1;
+                binders.add(st -> st.setString(pos, query.after));
+            }
         }
         return containsCalendarPredicate;
     }
 
+    /**
+     * Rewrites the attribute predicates of the top level AND group that can be expressed as containment or key
+     * existence of the ATTRIBUTES column (attribute exists, attribute value equals a boolean) into conditions on the
+     * column itself; these are necessary conditions of the predicates so they can be added in front of the
+     * <code>jsonb_each</code> filter and both key existence and containment can use the GIN index on the column.
+     */
+    protected String buildAttributeContainmentFilter(LogicGroup<AttributePredicate> attributePredicateGroup, List<ParameterBinder> binders) {
+        if (attributePredicateGroup.operator == LogicGroup.Operator.OR) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        ObjectValue containedAttributes = Values.createObject();
+
+        for (AttributePredicate attributePredicate : attributePredicateGroup.getItems()) {
+            StringPredicate name = attributePredicate.name;
+            if (attributePredicate.notExists
+                || name == null
+                || name.value == null
+                || name.match != Match.EXACT
+                || !name.caseSensitive
+                || name.negate) {
+                continue;
+            }
+
+            // Values in the attribute state table aren't in the column, only attribute existence can be pre-filtered
+            Value value = attributeStateTable ? null : getContainedValue(attributePredicate.value);
+
+            if (value != null) {
+                containedAttributes.put(name.value, Values.createObject().put("value", value));
+            } else if (!containedAttributes.hasKey(name.value)) {
+                sb.append(" and A.ATTRIBUTES ?? ?");
+                final int pos = binders.size() + 1;
+                binders.add(st -> st.setString(pos, name.value));
+            }
+        }
+
+        if (containedAttributes.hasKeys()) {
+            sb.append(" and A.ATTRIBUTES @> ?");
+            final int pos = binders.size() + 1;
+            final String json = containedAttributes.toJson();
+            binders.add(st -> {
+                PGobject pgJsonValue = new PGobject();
+                pgJsonValue.setType("jsonb");
+                pgJsonValue.setValue(json);
+                st.setObject(pos, pgJsonValue);
+            });
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @return The attribute value that must be contained for the predicate to match or <code>null</code> if the
+     * predicate can't be expressed as containment without changing its result. String and number predicates compare
+     * the text of the value (so "21" matches the number 21 and the other way round) and integer predicates truncate
+     * the value, only a boolean predicate compares the JSON value itself.
+     */
+    protected Value getContainedValue(ValuePredicate valuePredicate) {
+        if (valuePredicate instanceof BooleanPredicate) {
+            return Values.create(((BooleanPredicate) valuePredicate).value);
+        }
+        return null;
+    }
+
     protected boolean addAttributePredicateGroupQuery(StringBuilder sb, List<ParameterBinder> binders, AtomicInteger joinCounter, LogicGroup<AttributePredicate> attributePredicateGroup) {
 
         boolean containsCalendarPredicate = false;
@@ -1773,8 +2150,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         }
 
         if (query.select == null || !query.select.excludeAttributes) {
-            if (rs.getString("ATTRIBUTES") != null) {
-                asset.setAttributes(Values.instance().<ObjectValue>parse(rs.getString("ATTRIBUTES")).orElse(null));
+            // Parse the UTF-8 bytes of the column directly instead of decoding them to a String first
+            try (InputStream attributes = rs.getBinaryStream("ATTRIBUTES")) {
+                if (attributes != null) {
+                    asset.setAttributes(Values.<ObjectValue>parse(attributes).orElse(null));
+                }
+            } catch (IOException e) {
+                throw new SQLException("Error reading attributes of asset: " + asset.getId(), e);
             }
         }
 
@@ -1789,6 +2171,21 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     }
 
     public boolean storeAttributeValue(EntityManager em, String assetId, String attributeName, Value value, String timestamp) {
+        if (attributeStateTable) {
+            long valueTimestamp;
+            try {
+                valueTimestamp = Long.parseLong(timestamp);
+            } catch (NumberFormatException ex) {
+                valueTimestamp = -1;
+            }
+            // Anything but a plain timestamp is stored in the attributes document
+            if (valueTimestamp >= 0) {
+                return storeAttributeState(em, assetId, Collections.singletonList(
+                    new AttributeEvent(assetId, attributeName, value, valueTimestamp)
+                ));
+            }
+        }
+
         return em.unwrap(Session.class).doReturningWork(connection -> {
             String update =
                 "update ASSET" +
@@ -1836,11 +2233,183 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     + "' attribute '" + attributeName
                     + "' (affected rows: " + updatedRows + ") value: "
                     + (value != null ? value.toJson() : "null"));
+
+                if (updatedRows == 1) {
+                    try {
+                        AttributeEvent attributeEvent = new AttributeEvent(assetId, attributeName, value, Long.parseLong(timestamp));
+                        afterCommit(em, () -> assetCache.updateAttributeValues(assetId, Collections.singletonList(attributeEvent)));
+                    } catch (NumberFormatException ex) {
+                        afterCommit(em, () -> assetCache.invalidate(assetId));
+                    }
+                }
+                return updatedRows == 1;
+            }
+        });
+    }
+
+    /**
+     * Stores the values and value timestamps of several attributes of the same asset with a single update statement;
+     * the update is only applied if all the attributes exist on the asset. Each {@link AttributeEvent} must have a
+     * timestamp greater than zero.
+     */
+    public boolean storeAttributeValues(EntityManager em, String assetId, Collection<AttributeEvent> attributeEvents) {
+        if (attributeEvents.isEmpty()) {
+            return true;
+        }
+
+        if (attributeStateTable) {
+            return storeAttributeState(em, assetId, attributeEvents);
+        }
+
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+
+            // Check we don't have a SQL injection hole in any of the attribute names!
+            for (AttributeEvent attributeEvent : attributeEvents) {
+                if (!AssetAttribute.ATTRIBUTE_NAME_VALIDATOR.test(attributeEvent.getAttributeName())) {
+                    LOG.fine(
+                        "Invalid attribute name (must match '" + AssetAttribute.ATTRIBUTE_NAME_PATTERN + "'): " + attributeEvent.getAttributeName()
+                    );
+                    return false;
+                }
+            }
+
+            StringBuilder attributesExpression = new StringBuilder("ATTRIBUTES");
+            for (int i = 0; i < attributeEvents.size(); i++) {
+                attributesExpression.insert(0, "jsonb_set(jsonb_set(").append(", ?, ?, true), ?, ?, true)");
+            }
+
+            String update =
+                "update ASSET" +
+                    " set ATTRIBUTES = " + attributesExpression +
+                    " where ID = ? and jsonb_exists_all(ATTRIBUTES, ?)";
+
+            try (PreparedStatement statement = connection.prepareStatement(update)) {
+
+                int paramIndex = 1;
+                List<String> attributeNames = new ArrayList<>(attributeEvents.size());
+
+                // Innermost jsonb_set is bound first so a later event for the same attribute wins
+                for (AttributeEvent attributeEvent : attributeEvents) {
+                    String attributeName = attributeEvent.getAttributeName();
+                    Value value = attributeEvent.getValue().orElse(null);
+                    attributeNames.add(attributeName);
+
+                    statement.setArray(paramIndex++, connection.createArrayOf("text", new String[]{attributeName, "value"}));
+                    PGobject pgJsonValue = new PGobject();
+                    pgJsonValue.setType("jsonb");
+                    // Careful, do not set Java null (as returned by value.toJson()) here! It will erase your whole SQL column!
+                    pgJsonValue.setValue(value == null ? "null" : value.toJson());
+                    statement.setObject(paramIndex++, pgJsonValue);
+
+                    statement.setArray(paramIndex++, connection.createArrayOf("text", new String[]{attributeName, "valueTimestamp"}));
+                    PGobject pgJsonValueTimestamp = new PGobject();
+                    pgJsonValueTimestamp.setType("jsonb");
+                    pgJsonValueTimestamp.setValue(Long.toString(attributeEvent.getTimestamp()));
+                    statement.setObject(paramIndex++, pgJsonValueTimestamp);
+                }
+
+                statement.setString(paramIndex++, assetId);
+                statement.setArray(paramIndex, connection.createArrayOf("text", attributeNames.toArray(new String[0])));
+
+                int updatedRows = statement.executeUpdate();
+                LOG.fine("Stored asset '" + assetId
+                    + "' attributes " + attributeNames
+                    + " (affected rows: " + updatedRows + ")");
+
+                if (updatedRows == 1) {
+                    List<AttributeEvent> storedEvents = new ArrayList<>(attributeEvents);
+                    afterCommit(em, () -> assetCache.updateAttributeValues(assetId, storedEvents));
+                }
                 return updatedRows == 1;
             }
         });
     }
 
+    /**
+     * Stores the values and value timestamps of the attributes in the attribute state table with a single statement,
+     * the update is only applied if all the attributes exist on the asset. Rows are only inserted or updated, as the
+     * attribute names are the primary key the updates are HOT updates that don't touch the attributes document.
+     */
+    protected boolean storeAttributeState(EntityManager em, String assetId, Collection<AttributeEvent> attributeEvents) {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+
+            // A row can only be updated once per statement, a later event for the same attribute wins
+            Map<String, AttributeEvent> eventsByName = new LinkedHashMap<>();
+            for (AttributeEvent attributeEvent : attributeEvents) {
+                if (!AssetAttribute.ATTRIBUTE_NAME_VALIDATOR.test(attributeEvent.getAttributeName())) {
+                    LOG.fine(
+                        "Invalid attribute name (must match '" + AssetAttribute.ATTRIBUTE_NAME_PATTERN + "'): " + attributeEvent.getAttributeName()
+                    );
+                    return false;
+                }
+                eventsByName.put(attributeEvent.getAttributeName(), attributeEvent);
+            }
+
+            String[] names = new String[eventsByName.size()];
+            String[] values = new String[eventsByName.size()];
+            Long[] timestamps = new Long[eventsByName.size()];
+            int i = 0;
+            for (AttributeEvent attributeEvent : eventsByName.values()) {
+                names[i] = attributeEvent.getAttributeName();
+                // JSON null, not SQL null
+                values[i] = attributeEvent.getValue().map(Value::toJson).orElse(Values.NULL_LITERAL);
+                timestamps[i] = attributeEvent.getTimestamp();
+                i++;
+            }
+
+            String upsert =
+                "insert into ASSET_ATTRIBUTE_STATE (ASSET_ID, NAME, VALUE, VALUE_TIMESTAMP)" +
+                    " select A.ID, S.NAME, cast(S.VALUE as jsonb), S.VALUE_TIMESTAMP" +
+                    " from ASSET A, unnest(?, ?, ?) as S(NAME, VALUE, VALUE_TIMESTAMP)" +
+                    " where A.ID = ? and jsonb_exists_all(A.ATTRIBUTES, ?)" +
+                    " on conflict (ASSET_ID, NAME) do update" +
+                    " set VALUE = excluded.VALUE, VALUE_TIMESTAMP = excluded.VALUE_TIMESTAMP";
+
+            try (PreparedStatement statement = connection.prepareStatement(upsert)) {
+                statement.setArray(1, connection.createArrayOf("text", names));
+                statement.setArray(2, connection.createArrayOf("text", values));
+                statement.setArray(3, connection.createArrayOf("int8", timestamps));
+                statement.setString(4, assetId);
+                statement.setArray(5, connection.createArrayOf("text", names));
+
+                int updatedRows = statement.executeUpdate();
+                LOG.fine("Stored asset '" + assetId
+                    + "' attribute state " + Arrays.toString(names)
+                    + " (affected rows: " + updatedRows + ")");
+
+                if (updatedRows == names.length) {
+                    List<AttributeEvent> storedEvents = new ArrayList<>(attributeEvents);
+                    afterCommit(em, () -> assetCache.updateAttributeValues(assetId, storedEvents));
+                }
+                return updatedRows == names.length;
+            }
+        });
+    }
+
+    /**
+     * Applies the stored attribute state of the asset to its attributes document and deletes the state.
+     */
+    protected void moveAttributeState(EntityManager em, String assetId) {
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                "update ASSET set ATTRIBUTES = MERGE_ASSET_ATTRIBUTE_STATE(ID, ATTRIBUTES)" +
+                    " where ID = ? and exists(select 1 from ASSET_ATTRIBUTE_STATE S where S.ASSET_ID = ?)"
+            )) {
+                statement.setString(1, assetId);
+                statement.setString(2, assetId);
+                if (statement.executeUpdate() == 0) {
+                    return;
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                "delete from ASSET_ATTRIBUTE_STATE where ASSET_ID = ?"
+            )) {
+                statement.setString(1, assetId);
+                statement.executeUpdate();
+            }
+        });
+    }
+
     // TODO: Remove AssetTreeModifiedEvent once GWT client replaced
     protected void publishModificationEvents(PersistenceEvent<Asset> persistenceEvent) {
         Asset asset = persistenceEvent.getEntity();
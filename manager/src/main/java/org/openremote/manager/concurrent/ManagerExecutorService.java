@@ -41,6 +41,7 @@ public class ManagerExecutorService implements ProtocolExecutorService {
     public static final int SCHEDULED_TASKS_THREADS_MAX_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
 
     protected ScheduledExecutorService scheduledTasksExecutor;
+    protected TimingWheelScheduler timingWheelScheduler;
 
     @Override
     public int getPriority() {
@@ -52,6 +53,7 @@ public class ManagerExecutorService implements ProtocolExecutorService {
         int scheduledTasksThreadsMax =
             getInteger(container.getConfig(), SCHEDULED_TASKS_THREADS_MAX, SCHEDULED_TASKS_THREADS_MAX_DEFAULT);
         scheduledTasksExecutor = new ContainerScheduledExecutor("Scheduled task", scheduledTasksThreadsMax);
+        timingWheelScheduler = new TimingWheelScheduler("Timer wheel", scheduledTasksExecutor);
     }
 
     @Override
@@ -60,6 +62,7 @@ public class ManagerExecutorService implements ProtocolExecutorService {
 
     @Override
     public void stop(Container container) throws Exception {
+        timingWheelScheduler.stop();
         scheduledTasksExecutor.shutdownNow();
     }
 
@@ -78,6 +81,30 @@ public class ManagerExecutorService implements ProtocolExecutorService {
         return scheduledTasksExecutor.scheduleWithFixedDelay(runnable, initialDelayMillis, periodMillis, TimeUnit.MILLISECONDS);
     }
 
+    @Override
+    public ScheduledFuture<?> scheduleTimer(Object owner, Runnable runnable, long delayMillis) {
+        return timingWheelScheduler.schedule(owner, runnable, delayMillis);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleTimerAtFixedRate(Object owner, Runnable runnable, long initialDelayMillis, long periodMillis) {
+        return timingWheelScheduler.scheduleAtFixedRate(owner, runnable, initialDelayMillis, periodMillis);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleTimerWithFixedDelay(Object owner, Runnable runnable, long initialDelayMillis, long periodMillis) {
+        return timingWheelScheduler.scheduleWithFixedDelay(owner, runnable, initialDelayMillis, periodMillis);
+    }
+
+    @Override
+    public int cancelTimers(Object owner) {
+        return timingWheelScheduler.cancelAll(owner);
+    }
+
+    public TimingWheelScheduler getTimingWheelScheduler() {
+        return timingWheelScheduler;
+    }
+
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
         return scheduledTasksExecutor.schedule(command, delay, unit);
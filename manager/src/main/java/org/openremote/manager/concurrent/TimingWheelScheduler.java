@@ -0,0 +1,307 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.concurrent;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import org.openremote.container.concurrent.ContainerThreadFactory;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scheduler for large numbers of coarse grained timers (polling, replay, rule validity etc.) based on a hashed
+ * timing wheel; scheduling and cancelling a timer are O(1) and cancelled timers are removed from the wheel instead of
+ * lingering in a priority queue until their deadline. Timers fire with tick resolution (default
+ * {@link #DEFAULT_TICK_MILLIS}) and the tasks are executed on the supplied {@link Executor} so the wheel thread is never
+ * blocked. A period shorter than the tick is rounded up to the tick, a warning is logged when such a timer is scheduled.
+ * <p>
+ * Every timer belongs to an owner (e.g. a protocol instance) so that all timers of the owner can be cancelled with
+ * {@link #cancelAll}; the number of active/fired/cancelled timers and the lateness of fired timers are recorded.
+ */
+public class TimingWheelScheduler {
+
+    private static final Logger LOG = Logger.getLogger(TimingWheelScheduler.class.getName());
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+    protected static final Object NO_OWNER = new Object();
+
+    protected class WheelTimer implements ScheduledFuture<Object>, TimerTask {
+        protected final Object owner;
+        protected final Runnable runnable;
+        protected final long periodMillis;
+        protected final boolean fixedRate;
+        protected volatile long deadlineMillis;
+        protected volatile Timeout timeout;
+        protected volatile boolean cancelled;
+        protected volatile boolean done;
+        protected volatile Throwable failure;
+
+        protected WheelTimer(Object owner, Runnable runnable, long delayMillis, long periodMillis, boolean fixedRate) {
+            this.owner = owner;
+            this.runnable = runnable;
+            this.periodMillis = periodMillis;
+            this.fixedRate = fixedRate;
+            this.deadlineMillis = System.currentTimeMillis() + Math.max(0, delayMillis);
+        }
+
+        protected void start() {
+            timeout = wheel.newTimeout(this, Math.max(0, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            if (cancelled) {
+                return;
+            }
+
+            long latenessMillis = Math.max(0, System.currentTimeMillis() - deadlineMillis);
+            firedCount.incrementAndGet();
+            totalLatenessMillis.addAndGet(latenessMillis);
+            maxLatenessMillis.accumulate(latenessMillis);
+
+            try {
+                executor.execute(this::execute);
+            } catch (RejectedExecutionException e) {
+                LOG.fine("Executor rejected timer task (shutting down?)");
+                complete(e);
+            }
+        }
+
+        protected void execute() {
+            if (cancelled) {
+                return;
+            }
+
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                // Same as a scheduled executor, a failing periodic task is not executed again
+                LOG.log(Level.WARNING, "Timer task threw an exception", t);
+                complete(t);
+                return;
+            }
+
+            if (periodMillis <= 0) {
+                complete(null);
+                return;
+            }
+
+            if (!cancelled) {
+                deadlineMillis = fixedRate ? deadlineMillis + periodMillis : System.currentTimeMillis() + periodMillis;
+                start();
+            }
+        }
+
+        protected void complete(Throwable failure) {
+            this.failure = failure;
+            done = true;
+            removeTimer(this);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+            cancelledCount.incrementAndGet();
+            removeTimer(this);
+            synchronized (this) {
+                notifyAll();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public synchronized Object get() throws InterruptedException, ExecutionException {
+            while (!isDone()) {
+                wait();
+            }
+            return getResult();
+        }
+
+        @Override
+        public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long remainingMillis = unit.toMillis(timeout);
+            long end = System.currentTimeMillis() + remainingMillis;
+            while (!isDone()) {
+                if (remainingMillis <= 0) {
+                    throw new TimeoutException();
+                }
+                wait(remainingMillis);
+                remainingMillis = end - System.currentTimeMillis();
+            }
+            return getResult();
+        }
+
+        protected Object getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return null;
+        }
+    }
+
+    protected final HashedWheelTimer wheel;
+    protected final Executor executor;
+    protected final long tickMillis;
+    protected final Map<Object, Set<WheelTimer>> ownerTimers = new ConcurrentHashMap<>();
+    protected final AtomicLong scheduledCount = new AtomicLong();
+    protected final AtomicLong firedCount = new AtomicLong();
+    protected final AtomicLong cancelledCount = new AtomicLong();
+    protected final AtomicLong totalLatenessMillis = new AtomicLong();
+    protected final LongAccumulator maxLatenessMillis = new LongAccumulator(Math::max, 0);
+
+    public TimingWheelScheduler(String name, Executor executor) {
+        this(name, executor, DEFAULT_TICK_MILLIS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    public TimingWheelScheduler(String name, Executor executor, long tickMillis, int ticksPerWheel) {
+        this.executor = executor;
+        this.tickMillis = tickMillis;
+        this.wheel = new HashedWheelTimer(new ContainerThreadFactory(name), tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel);
+    }
+
+    public ScheduledFuture<?> schedule(Object owner, Runnable runnable, long delayMillis) {
+        return addTimer(new WheelTimer(owner != null ? owner : NO_OWNER, runnable, delayMillis, 0, false));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Object owner, Runnable runnable, long initialDelayMillis, long periodMillis) {
+        checkPeriod(periodMillis);
+        return addTimer(new WheelTimer(owner != null ? owner : NO_OWNER, runnable, initialDelayMillis, periodMillis, true));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Object owner, Runnable runnable, long initialDelayMillis, long delayMillis) {
+        checkPeriod(delayMillis);
+        return addTimer(new WheelTimer(owner != null ? owner : NO_OWNER, runnable, initialDelayMillis, delayMillis, false));
+    }
+
+    /**
+     * Cancel all timers of the owner and return how many were cancelled.
+     */
+    public int cancelAll(Object owner) {
+        Set<WheelTimer> timers = ownerTimers.remove(owner != null ? owner : NO_OWNER);
+        if (timers == null) {
+            return 0;
+        }
+        int count = 0;
+        for (WheelTimer timer : timers) {
+            if (timer.cancel(false)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public int getActiveCount() {
+        return ownerTimers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    public ObjectValue getStats() {
+        long fired = firedCount.get();
+        ObjectValue stats = Values.createObject();
+        stats.put("owners", ownerTimers.size());
+        stats.put("active", getActiveCount());
+        stats.put("scheduled", scheduledCount.get());
+        stats.put("fired", fired);
+        stats.put("cancelled", cancelledCount.get());
+        stats.put("averageLatenessMillis", fired > 0 ? totalLatenessMillis.get() / fired : 0);
+        stats.put("maxLatenessMillis", maxLatenessMillis.get());
+        return stats;
+    }
+
+    public void stop() {
+        wheel.stop();
+        ownerTimers.clear();
+    }
+
+    protected ScheduledFuture<?> addTimer(WheelTimer timer) {
+        ownerTimers.compute(timer.owner, (owner, timers) -> {
+            if (timers == null) {
+                timers = ConcurrentHashMap.newKeySet();
+            }
+            timers.add(timer);
+            return timers;
+        });
+        scheduledCount.incrementAndGet();
+        timer.start();
+        return timer;
+    }
+
+    protected void removeTimer(WheelTimer timer) {
+        ownerTimers.computeIfPresent(timer.owner, (owner, timers) -> {
+            timers.remove(timer);
+            return timers.isEmpty() ? null : timers;
+        });
+    }
+
+    protected void checkPeriod(long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be greater than zero");
+        }
+        if (periodMillis < tickMillis) {
+            LOG.warning("Timer period of " + periodMillis + "ms is shorter than the tick of " + tickMillis
+                + "ms and will be rounded up to the tick, use a scheduled executor for shorter periods");
+        }
+    }
+}
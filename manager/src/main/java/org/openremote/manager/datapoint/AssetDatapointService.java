@@ -116,7 +116,7 @@ public class AssetDatapointService implements ContainerService, AssetUpdateProce
                                       Asset asset,
                                       AssetAttribute attribute,
                                       Source source) throws AssetProcessingException {
-        if (attribute.isStoreDatapoints()
+        if (attribute.getCompiled().isStoreDatapoints()
                 && attribute.getStateEvent().isPresent()
                 && attribute.getStateEvent().get().getValue().isPresent()) { // Don't store datapoints with null value
             LOG.finest("Storing datapoint for: " + attribute);
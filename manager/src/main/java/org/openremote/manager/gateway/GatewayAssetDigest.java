@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.gateway;
+
+import org.openremote.model.AbstractValueTimestampHolder;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.value.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Digest of the state of an asset that is synchronised between a gateway and the central manager, used to find the
+ * assets that changed whilst the gateway was disconnected. The digest is the same for the asset on the gateway and its
+ * copy on the central manager: it covers the name, type, public read access, parent and attributes (names, types and
+ * meta items) and not the identity, version, realm, path or creation time which are different in the copy.
+ * <p>
+ * Attribute values and value timestamps are not part of this digest, otherwise assets with frequently changing values
+ * would never match and would be requested again on every reconnect. They have a separate digest (see
+ * {@link #digestValues}), so the values that changed whilst the link was down are refreshed even if the event queue of
+ * the gateway couldn't replay them (e.g. it is disabled, was full or its messages expired).
+ * <p>
+ * Object keys are digested in sorted order, the order of the keys in the JSON document stored in the database
+ * doesn't matter.
+ */
+public class GatewayAssetDigest {
+
+    protected static final int DIGEST_BYTES = 16;
+    protected static final String VALUE_FIELD_NAME = "value";
+
+    protected final MessageDigest messageDigest;
+
+    protected GatewayAssetDigest() {
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param gatewayId The gateway asset of the central manager, top level gateway assets are stored under it; can be
+     *                  <code>null</code> on the gateway.
+     * @return Asset ID to digest of each asset.
+     */
+    public static Map<String, String> digest(Collection<Asset> assets, String gatewayId) {
+        GatewayAssetDigest digest = new GatewayAssetDigest();
+        Map<String, String> digests = new HashMap<>(assets.size() * 2);
+        for (Asset asset : assets) {
+            digests.put(asset.getId(), digest.digest(asset, gatewayId));
+        }
+        return digests;
+    }
+
+    /**
+     * @return Asset ID to digest of the attribute values and value timestamps of each asset.
+     */
+    public static Map<String, String> digestValues(Collection<Asset> assets) {
+        GatewayAssetDigest digest = new GatewayAssetDigest();
+        Map<String, String> digests = new HashMap<>(assets.size() * 2);
+        for (Asset asset : assets) {
+            digests.put(asset.getId(), digest.digestValues(asset));
+        }
+        return digests;
+    }
+
+    protected String digestValues(Asset asset) {
+        messageDigest.reset();
+        ObjectValue attributes = asset.getAttributes();
+        if (attributes != null) {
+            String[] names = attributes.keys();
+            Arrays.sort(names);
+            for (String name : names) {
+                update(name);
+                ObjectValue attribute = attributes.getObject(name).orElse(null);
+                if (attribute == null) {
+                    update((Value) null);
+                    continue;
+                }
+                update(attribute.get(VALUE_FIELD_NAME).orElse(null));
+                update(attribute.get(AbstractValueTimestampHolder.VALUE_TIMESTAMP_FIELD_NAME).orElse(null));
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(messageDigest.digest(), DIGEST_BYTES));
+    }
+
+    protected String digest(Asset asset, String gatewayId) {
+        messageDigest.reset();
+        String parentId = asset.getParentId() != null && !asset.getParentId().equals(gatewayId) ? asset.getParentId() : null;
+        update(asset.getName());
+        update(asset.getType());
+        update(parentId);
+        messageDigest.update((byte) (asset.isAccessPublicRead() ? 1 : 0));
+        updateAttributes(asset.getAttributes());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(messageDigest.digest(), DIGEST_BYTES));
+    }
+
+    protected void updateAttributes(ObjectValue attributes) {
+        if (attributes == null) {
+            messageDigest.update((byte) 'n');
+            return;
+        }
+        String[] names = attributes.keys();
+        Arrays.sort(names);
+        messageDigest.update((byte) '{');
+        for (String name : names) {
+            update(name);
+            Value attribute = attributes.get(name).orElse(null);
+            if (attribute == null || attribute.getType() != ValueType.OBJECT) {
+                update(attribute);
+                continue;
+            }
+            ObjectValue object = (ObjectValue) attribute;
+            String[] keys = object.keys();
+            Arrays.sort(keys);
+            messageDigest.update((byte) '{');
+            for (String key : keys) {
+                if (VALUE_FIELD_NAME.equals(key) || AbstractValueTimestampHolder.VALUE_TIMESTAMP_FIELD_NAME.equals(key)) {
+                    continue;
+                }
+                update(key);
+                update(object.get(key).orElse(null));
+            }
+            messageDigest.update((byte) '}');
+        }
+        messageDigest.update((byte) '}');
+    }
+
+    protected void update(Value value) {
+        if (value == null) {
+            messageDigest.update((byte) 'n');
+            return;
+        }
+        switch (value.getType()) {
+            case OBJECT:
+                ObjectValue object = (ObjectValue) value;
+                String[] keys = object.keys();
+                Arrays.sort(keys);
+                messageDigest.update((byte) '{');
+                for (String key : keys) {
+                    update(key);
+                    update(object.get(key).orElse(null));
+                }
+                messageDigest.update((byte) '}');
+                break;
+            case ARRAY:
+                ArrayValue array = (ArrayValue) value;
+                messageDigest.update((byte) '[');
+                for (int i = 0; i < array.length(); i++) {
+                    update(array.get(i).orElse(null));
+                }
+                messageDigest.update((byte) ']');
+                break;
+            case STRING:
+                update(((StringValue) value).getString());
+                break;
+            case NUMBER:
+                messageDigest.update((byte) 'd');
+                updateLong(Double.doubleToLongBits(((NumberValue) value).getNumber()));
+                break;
+            case BOOLEAN:
+                messageDigest.update((byte) (((BooleanValue) value).getBoolean() ? 't' : 'f'));
+                break;
+        }
+    }
+
+    protected void update(String string) {
+        if (string == null) {
+            messageDigest.update((byte) 'n');
+            return;
+        }
+        // Length prefixed so that adjacent strings can't be confused
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        messageDigest.update((byte) 's');
+        updateLong(bytes.length);
+        messageDigest.update(bytes);
+    }
+
+    protected void updateLong(long value) {
+        for (int i = 56; i >= 0; i -= 8) {
+            messageDigest.update((byte) (value >>> i));
+        }
+    }
+}
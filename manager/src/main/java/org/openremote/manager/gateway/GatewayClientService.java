@@ -43,11 +43,14 @@ import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.event.shared.EventSubscription;
 import org.openremote.model.event.shared.SharedEvent;
 import org.openremote.model.event.shared.TenantFilter;
+import org.openremote.model.gateway.GatewayBatchEvent;
 import org.openremote.model.gateway.GatewayConnection;
 import org.openremote.model.gateway.GatewayConnectionStatusEvent;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.filter.TenantPredicate;
 import org.openremote.model.syslog.SyslogEvent;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
 
 import java.util.*;
 import java.util.logging.Level;
@@ -71,8 +74,11 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
     protected TimerService timerService;
     protected ManagerExecutorService executorService;
     protected ManagerIdentityService identityService;
+    protected Map<String, String> config;
     protected final Map<String, GatewayConnection> connectionRealmMap = new HashMap<>();
     protected final Map<String, WebsocketIoClient<String>> clientRealmMap = new HashMap<>();
+    protected final Map<String, GatewayEventQueue> queueRealmMap = new HashMap<>();
+    protected final Map<String, GatewayEventBatcher> batcherRealmMap = new HashMap<>();
 
     @Override
     public int getPriority() {
@@ -88,6 +94,7 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
         timerService = container.getService(TimerService.class);
         executorService = container.getService(ManagerExecutorService.class);
         identityService = container.getService(ManagerIdentityService.class);
+        config = container.getConfig();
 
         container.getService(ManagerWebService.class).getApiSingletons().add(
             new GatewayClientResourceImpl(timerService, identityService, this)
@@ -137,6 +144,17 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
         });
         clientRealmMap.clear();
         connectionRealmMap.clear();
+
+        // The events that haven't been sent are queued, before the queues are closed
+        synchronized (batcherRealmMap) {
+            batcherRealmMap.values().forEach(GatewayEventBatcher::clear);
+            batcherRealmMap.clear();
+        }
+
+        synchronized (queueRealmMap) {
+            queueRealmMap.values().forEach(GatewayEventQueue::close);
+            queueRealmMap.clear();
+        }
     }
 
     @Override
@@ -177,6 +195,12 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                     if (client != null) {
                         destroyGatewayClient(connection, client);
                     }
+                    synchronized (queueRealmMap) {
+                        GatewayEventQueue queue = queueRealmMap.remove(connection.getLocalRealm());
+                        if (queue != null) {
+                            queue.delete();
+                        }
+                    }
                     break;
             }
         }
@@ -191,6 +215,30 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
 
         LOG.info("Creating gateway IO client: " + connection);
 
+        synchronized (queueRealmMap) {
+            queueRealmMap.computeIfAbsent(connection.getLocalRealm(), realm -> GatewayEventQueue.create(config, "realms", realm));
+        }
+
+        int batchWindowMillis = GatewayEventBatcher.getWindowMillis(config, GatewayEventBatcher.GATEWAY_LINK_BATCH_MILLIS_DEFAULT);
+        if (batchWindowMillis > 0) {
+            String realm = connection.getLocalRealm();
+            synchronized (batcherRealmMap) {
+                batcherRealmMap.put(realm, new GatewayEventBatcher(
+                    executorService,
+                    batchWindowMillis,
+                    event -> {
+                        WebsocketIoClient<String> client = getClient(realm);
+                        if (client == null || client.getConnectionStatus() != ConnectionStatus.CONNECTED) {
+                            return false;
+                        }
+                        client.sendMessage(messageFromSharedEvent(event));
+                        return true;
+                    },
+                    event -> requeueEvent(realm, event)
+                ));
+            }
+        }
+
         try {
             WebsocketIoClient<String> client = new WebsocketIoClient<>(
                 new URIBuilder()
@@ -232,7 +280,7 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                     triggeredEventSubscription ->
                         triggeredEventSubscription.getEvents()
                             .forEach(event ->
-                                sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(event)))));
+                                sendCentralManagerEvent(connection.getLocalRealm(), event))));
 
             clientEventService.getEventSubscriptions().createOrUpdate(
                 getClientSessionKey(connection),
@@ -243,7 +291,7 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                     triggeredEventSubscription ->
                         triggeredEventSubscription.getEvents()
                             .forEach(event ->
-                                sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(event)))));
+                                sendAttributeEvent(connection.getLocalRealm(), event))));
 
             client.connect();
             return client;
@@ -267,59 +315,229 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
             LOG.log(Level.WARNING, "An exception occurred whilst trying to disconnect the gateway IO client", e);
         }
         clientEventService.getEventSubscriptions().cancelAll(getClientSessionKey(connection));
+
+        synchronized (batcherRealmMap) {
+            GatewayEventBatcher batcher = batcherRealmMap.remove(connection.getLocalRealm());
+            if (batcher != null) {
+                batcher.clear();
+            }
+        }
     }
 
     protected void onGatewayClientConnectionStatusChanged(GatewayConnection connection, ConnectionStatus connectionStatus) {
         LOG.info("Connection status change for gateway IO client '" + connectionStatus + "': " + connection);
         clientEventService.publishEvent(new GatewayConnectionStatusEvent(timerService.getCurrentTimeMillis(), connection.getLocalRealm(), connectionStatus));
+
+        if (connectionStatus == ConnectionStatus.CONNECTED) {
+            if (getBatcher(connection.getLocalRealm()) != null) {
+                // Let the central manager know it can send batches before anything else is sent
+                sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(GatewayEventBatcher.createAnnouncement(timerService.getCurrentTimeMillis())));
+            }
+            replayQueuedEvents(connection.getLocalRealm());
+        }
+    }
+
+    /**
+     * Send the attribute event to the central manager; whilst the connection is down (or queued events are being
+     * replayed) the event is queued and only the latest event of each attribute is sent when it is connected again.
+     */
+    protected void sendAttributeEvent(String realm, AttributeEvent event) {
+        GatewayEventQueue queue = getQueue(realm);
+        String message = messageFromSharedEvent(event);
+
+        if (queue == null) {
+            sendCentralManagerEvent(realm, event);
+            return;
+        }
+
+        WebsocketIoClient<String> client = getClient(realm);
+        boolean connected = client != null && client.getConnectionStatus() == ConnectionStatus.CONNECTED;
+
+        // The queue isn't empty until all replayed events have been sent, so this event isn't sent before them
+        if (connected && queue.isEmpty()) {
+            sendCentralManagerEvent(realm, event);
+            return;
+        }
+
+        queue.add(event.getEntityId() + ":" + event.getAttributeName(), message, timerService.getCurrentTimeMillis());
+
+        if (connected) {
+            // The connection status change was missed (e.g. whilst the client was created), if events are being
+            // replayed this event is sent by that replay
+            replayQueuedEvents(realm);
+        }
+    }
+
+    protected void replayQueuedEvents(String realm) {
+        GatewayEventQueue queue = getQueue(realm);
+
+        if (queue == null) {
+            return;
+        }
+
+        WebsocketIoClient<String> client = getClient(realm);
+        if (queue.isEmpty() || client == null || client.getConnectionStatus() != ConnectionStatus.CONNECTED) {
+            return;
+        }
+        LOG.info("Replaying " + queue.size() + " queued attribute event(s) to central manager: Realm=" + realm);
+        flushBatcher(realm);
+        // Events are only removed from the queue once they have been sent, if the link drops the rest stay queued; the
+        // events are sent without holding the lock of the queue
+        queue.drain(timerService.getCurrentTimeMillis(), message -> {
+            if (client.getConnectionStatus() != ConnectionStatus.CONNECTED) {
+                return false;
+            }
+            client.sendMessage(message);
+            return true;
+        });
+    }
+
+    /**
+     * Queue an event of a batch that couldn't be sent, it is replayed with the other queued events when the connection
+     * is established again. Attribute events are queued with the time they occurred, so a newer event of the same
+     * attribute that was already queued is kept.
+     */
+    protected void requeueEvent(String realm, SharedEvent event) {
+        GatewayEventQueue queue = getQueue(realm);
+
+        if (queue == null) {
+            LOG.info("Gateway queue is disabled so dropping event that couldn't be sent: Realm=" + realm + ", Event=" + event);
+            return;
+        }
+
+        String key = event instanceof AttributeEvent
+            ? ((AttributeEvent) event).getEntityId() + ":" + ((AttributeEvent) event).getAttributeName()
+            : null;
+        queue.add(key, messageFromSharedEvent(event), event.getTimestamp() > 0 ? event.getTimestamp() : timerService.getCurrentTimeMillis());
+    }
+
+    protected GatewayEventQueue getQueue(String realm) {
+        synchronized (queueRealmMap) {
+            return queueRealmMap.get(realm);
+        }
+    }
+
+    protected GatewayEventBatcher getBatcher(String realm) {
+        synchronized (batcherRealmMap) {
+            return batcherRealmMap.get(realm);
+        }
+    }
+
+    protected void flushBatcher(String realm) {
+        GatewayEventBatcher batcher = getBatcher(realm);
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
+    protected WebsocketIoClient<String> getClient(String realm) {
+        synchronized (clientRealmMap) {
+            return clientRealmMap.get(realm);
+        }
+    }
+
+    /**
+     * @return The backlog of the event queue of each gateway connection.
+     */
+    public ObjectValue getQueueStats() {
+        ObjectValue stats = Values.createObject();
+        synchronized (queueRealmMap) {
+            queueRealmMap.forEach((realm, queue) -> stats.put(realm, queue.getStats()));
+        }
+        return stats;
+    }
+
+    /**
+     * @return The batching stats of each gateway connection that has batching enabled.
+     */
+    public ObjectValue getLinkStats() {
+        ObjectValue stats = Values.createObject();
+        synchronized (batcherRealmMap) {
+            batcherRealmMap.forEach((realm, batcher) -> stats.put(realm, batcher.getStats()));
+        }
+        return stats;
     }
 
     protected void onCentralManagerMessage(GatewayConnection connection, String message) {
         if (message.startsWith(SharedEvent.MESSAGE_PREFIX)) {
             SharedEvent event = messageToSharedEvent(message);
 
-            if (event instanceof AttributeEvent) {
-                assetProcessingService.sendAttributeEvent((AttributeEvent)event, AttributeEvent.Source.INTERNAL);
-            } else if (event instanceof AssetEvent) {
-                AssetEvent assetEvent = (AssetEvent)event;
-                if (assetEvent.getCause() == AssetEvent.Cause.CREATE || assetEvent.getCause() == AssetEvent.Cause.UPDATE) {
-                    Asset asset = assetEvent.getAsset();
-                    asset.setRealm(connection.getLocalRealm());
-                    LOG.fine("Request from central manager to create/update an asset: Realm=" + connection.getLocalRealm() + ", Asset ID=" + asset.getId());
-                    try {
-                        asset = assetStorageService.merge(asset, true);
-                    } catch (Exception e) {
-                        LOG.log(Level.INFO, "Request from central manager to create/update an asset failed: Realm=" + connection.getLocalRealm() + ", Asset ID=" + asset.getId(), e);
+            if (event instanceof GatewayBatchEvent) {
+                try {
+                    for (SharedEvent batchedEvent : GatewayEventBatcher.decode((GatewayBatchEvent) event)) {
+                        onCentralManagerEvent(connection, batchedEvent);
                     }
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Failed to decode event batch from central manager: Realm=" + connection.getLocalRealm(), e);
                 }
-            } else if (event instanceof DeleteAssetsRequestEvent) {
-                DeleteAssetsRequestEvent deleteRequest = (DeleteAssetsRequestEvent)event;
-                LOG.fine("Request from central manager to delete asset(s): Realm=" + connection.getLocalRealm() + ", Asset IDs=" + Arrays.toString(deleteRequest.getAssetIds().toArray()));
-                boolean success = false;
+            } else {
+                onCentralManagerEvent(connection, event);
+            }
+        }
+    }
+
+    protected void onCentralManagerEvent(GatewayConnection connection, SharedEvent event) {
+        if (event instanceof AttributeEvent) {
+            assetProcessingService.sendAttributeEvent((AttributeEvent)event, AttributeEvent.Source.INTERNAL);
+        } else if (event instanceof AssetEvent) {
+            AssetEvent assetEvent = (AssetEvent)event;
+            if (assetEvent.getCause() == AssetEvent.Cause.CREATE || assetEvent.getCause() == AssetEvent.Cause.UPDATE) {
+                Asset asset = assetEvent.getAsset();
+                asset.setRealm(connection.getLocalRealm());
+                LOG.fine("Request from central manager to create/update an asset: Realm=" + connection.getLocalRealm() + ", Asset ID=" + asset.getId());
                 try {
-                    success = assetStorageService.delete(deleteRequest.getAssetIds());
+                    asset = assetStorageService.merge(asset, true);
                 } catch (Exception e) {
-                    LOG.log(Level.INFO, "Request from central manager to create/update an asset failed: Realm=" + connection.getLocalRealm() + ", Asset IDs=" + Arrays.toString(deleteRequest.getAssetIds().toArray()), e);
-                } finally {
-                    sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(new DeleteAssetsResponseEvent(deleteRequest.getName(), success)));
+                    LOG.log(Level.INFO, "Request from central manager to create/update an asset failed: Realm=" + connection.getLocalRealm() + ", Asset ID=" + asset.getId(), e);
                 }
-            } else if (event instanceof ReadAssetsEvent) {
-                ReadAssetsEvent readAssets = (ReadAssetsEvent)event;
-                AssetQuery query = readAssets.getAssetQuery();
-                // Force realm to be the one that this client is associated with
-                query.tenant(new TenantPredicate(connection.getLocalRealm()));
-                List<Asset> assets = assetStorageService.findAll(readAssets.getAssetQuery());
-                sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(new AssetsEvent(readAssets.getName(), assets)));
             }
+        } else if (event instanceof DeleteAssetsRequestEvent) {
+            DeleteAssetsRequestEvent deleteRequest = (DeleteAssetsRequestEvent)event;
+            LOG.fine("Request from central manager to delete asset(s): Realm=" + connection.getLocalRealm() + ", Asset IDs=" + Arrays.toString(deleteRequest.getAssetIds().toArray()));
+            boolean success = false;
+            try {
+                success = assetStorageService.delete(deleteRequest.getAssetIds());
+            } catch (Exception e) {
+                LOG.log(Level.INFO, "Request from central manager to create/update an asset failed: Realm=" + connection.getLocalRealm() + ", Asset IDs=" + Arrays.toString(deleteRequest.getAssetIds().toArray()), e);
+            } finally {
+                sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(new DeleteAssetsResponseEvent(deleteRequest.getName(), success)));
+            }
+        } else if (event instanceof ReadAssetsEvent) {
+            ReadAssetsEvent readAssets = (ReadAssetsEvent)event;
+            AssetQuery query = readAssets.getAssetQuery();
+            // Force realm to be the one that this client is associated with
+            query.tenant(new TenantPredicate(connection.getLocalRealm()));
+            List<Asset> assets = assetStorageService.findAll(readAssets.getAssetQuery());
+            Map<String, String> digests = null;
+            Map<String, String> valueDigests = null;
+            if (readAssets.isIncludeDigests()) {
+                // The digests cover the complete assets, not just what was selected
+                query.select(new AssetQuery.Select().excludeParentInfo(true).excludePath(true));
+                List<Asset> digestAssets = assetStorageService.findAll(query);
+                digests = GatewayAssetDigest.digest(digestAssets, null);
+                valueDigests = GatewayAssetDigest.digestValues(digestAssets);
+            }
+            sendCentralManagerMessage(connection.getLocalRealm(), messageFromSharedEvent(new AssetsEvent(readAssets.getName(), assets, digests, valueDigests)));
         }
     }
 
-    protected void sendCentralManagerMessage(String realm, String message) {
-        WebsocketIoClient<String> client;
+    /**
+     * Send an asset or attribute event to the central manager, in a batch if batching is enabled.
+     */
+    protected void sendCentralManagerEvent(String realm, SharedEvent event) {
+        GatewayEventBatcher batcher = getBatcher(realm);
 
-        synchronized (clientRealmMap) {
-            client = clientRealmMap.get(realm);
+        if (batcher != null) {
+            batcher.add(event);
+        } else {
+            sendCentralManagerMessage(realm, messageFromSharedEvent(event));
         }
+    }
+
+    protected void sendCentralManagerMessage(String realm, String message) {
+        // Events waiting in the batch were sent first
+        flushBatcher(realm);
+        WebsocketIoClient<String> client = getClient(realm);
 
         if (client != null) {
             client.sendMessage(message);
@@ -19,6 +19,8 @@
  */
 package org.openremote.manager.gateway;
 
+import org.openremote.container.Container;
+import org.openremote.container.timer.TimerService;
 import org.openremote.container.util.UniqueIdentifierGenerator;
 import org.openremote.manager.asset.AssetProcessingService;
 import org.openremote.manager.asset.AssetStorageService;
@@ -51,13 +53,17 @@ public class GatewayConnector {
     public static long ASSET_CRUD_TIMEOUT_MILLIS = 10000; // How long to wait for a response when merging an asset before throwing an exception
     public static int MAX_SYNC_RETRIES = 5;
     public static int SYNC_ASSET_BATCH_SIZE = 20;
+    public static int SYNC_MAX_BATCHES_IN_FLIGHT = 4; // Batch requests sent before the first response when syncing incrementally
     public static final String ASSET_READ_EVENT_NAME_INITIAL = "INITIAL";
     public static final String ASSET_READ_EVENT_NAME_BATCH = "BATCH";
+    public static final String ASSET_READ_EVENT_NAME_CHANGED_BATCH = "CHANGED";
     protected final String realm;
     protected final String gatewayId;
     protected final AssetStorageService assetStorageService;
     protected final ManagerExecutorService executorService;
     protected final AssetProcessingService assetProcessingService;
+    protected final TimerService timerService;
+    protected final GatewayEventQueue queue;
     protected final Map<String, Asset> pendingAssetMerges = new HashMap<>();
     protected final AtomicReference<DeleteAssetsRequestEvent> pendingAssetDelete = new AtomicReference<>();
     protected List<AssetEvent> cachedAssetEvents;
@@ -71,16 +77,40 @@ public class GatewayConnector {
     int syncIndex;
     int syncErrors;
     String expectedSyncResponseName;
+    // Incremental sync state, only used if the gateway returned digests with the initial response
+    List<String> changedAssetIds;
+    // The assets of which only the attribute values changed
+    Set<String> changedValueAssetIds;
+    int changedIndex;
+    final Map<String, List<String>> pendingBatches = new LinkedHashMap<>();
+    final Map<String, List<Asset>> receivedBatches = new HashMap<>();
 
     public GatewayConnector(
         AssetStorageService assetStorageService,
         AssetProcessingService assetProcessingService,
         ManagerExecutorService executorService,
+        TimerService timerService,
+        Asset gateway) {
+        this(assetStorageService, assetProcessingService, executorService, timerService, null, gateway);
+    }
+
+    /**
+     * @param queue Holds attribute events for the gateway whilst it is not connected or synchronising, can be
+     *              <code>null</code>.
+     */
+    public GatewayConnector(
+        AssetStorageService assetStorageService,
+        AssetProcessingService assetProcessingService,
+        ManagerExecutorService executorService,
+        TimerService timerService,
+        GatewayEventQueue queue,
         Asset gateway) {
 
         this.assetStorageService = assetStorageService;
         this.assetProcessingService = assetProcessingService;
         this.executorService = executorService;
+        this.timerService = timerService;
+        this.queue = queue;
         boolean disabled = gateway.getAttribute("disabled").flatMap(AssetAttribute::getValueAsBoolean).orElse(false);
         this.realm = gateway.getRealm();
         this.gatewayId = gateway.getId();
@@ -88,12 +118,84 @@ public class GatewayConnector {
     }
 
     public void sendMessageToGateway(Object message) {
+        trySendMessageToGateway(message);
+    }
+
+    /**
+     * @return <code>false</code> if the gateway isn't connected or the message couldn't be sent.
+     */
+    protected boolean trySendMessageToGateway(Object message) {
+        Consumer<Object> gatewayMessageConsumer = this.gatewayMessageConsumer;
+        if (gatewayMessageConsumer == null) {
+            return false;
+        }
         try {
-            if (gatewayMessageConsumer != null) {
-                gatewayMessageConsumer.accept(message);
-            }
+            gatewayMessageConsumer.accept(message);
+            return true;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Failed to send message to gateway: " + gatewayId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Send the attribute event to the gateway; whilst the gateway is not connected or the initial sync is in progress the
+     * event is queued and replayed (only the latest event of each attribute) when the initial sync completes.
+     *
+     * @return <code>false</code> if the event couldn't be sent or queued.
+     */
+    synchronized public boolean sendAttributeEvent(AttributeEvent event) {
+        if (isConnected() && !initialSyncInProgress) {
+            sendMessageToGateway(event);
+            return true;
+        }
+
+        if (queueAttributeEvent(event, timerService.getCurrentTimeMillis())) {
+            return true;
+        }
+
+        if (isConnected()) {
+            sendMessageToGateway(event);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Queue the attribute event to be replayed when the initial sync completes, e.g. an event of a batch that couldn't
+     * be sent because the gateway disconnected.
+     *
+     * @return <code>false</code> if the event couldn't be queued.
+     */
+    synchronized public boolean queueAttributeEvent(AttributeEvent event, long timestamp) {
+        if (queue == null) {
+            return false;
+        }
+        try {
+            String key = event.getEntityId() + ":" + event.getAttributeName();
+            return queue.add(key, Container.JSON.writeValueAsString(event), timestamp);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to queue attribute event for gateway: Gateway ID=" + gatewayId, e);
+            return false;
+        }
+    }
+
+    public GatewayEventQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Release the queue, the queued events are removed if the gateway has been deleted.
+     */
+    public void closeQueue(boolean delete) {
+        if (queue == null) {
+            return;
+        }
+        if (delete) {
+            queue.delete();
+        } else {
+            queue.close();
         }
     }
 
@@ -118,6 +220,11 @@ public class GatewayConnector {
         syncAssetIds = null;
         syncIndex = 0;
         syncErrors = 0;
+        changedAssetIds = null;
+        changedValueAssetIds = null;
+        changedIndex = 0;
+        pendingBatches.clear();
+        receivedBatches.clear();
 
         startSync();
     }
@@ -211,7 +318,9 @@ public class GatewayConnector {
     }
 
     /**
-     * Get list of gateway assets (get basic details and then batch load them to minimise load)
+     * Get list of gateway assets (get basic details and then batch load them to minimise load); the digests of the
+     * assets are requested too, a gateway that returns them is synchronised incrementally (see {@link
+     * #startIncrementalSync}).
      */
     synchronized protected void startSync() {
 
@@ -221,7 +330,7 @@ public class GatewayConnector {
 
         expectedSyncResponseName = ASSET_READ_EVENT_NAME_INITIAL;
         sendMessageToGateway(new ReadAssetsEvent(
-            ASSET_READ_EVENT_NAME_INITIAL, new AssetQuery().select(selectExcludeAll()).recursive(true)
+            ASSET_READ_EVENT_NAME_INITIAL, new AssetQuery().select(selectExcludeAll()).recursive(true), true
         ));
         syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, SYNC_TIMEOUT_MILLIS);
     }
@@ -244,6 +353,8 @@ public class GatewayConnector {
         if (syncAssetIds == null) {
             // Haven't received initial list of assets so retry
             startSync();
+        } else if (changedAssetIds != null) {
+            resendChangedAssetBatches();
         } else {
             requestAssets();
         }
@@ -289,6 +400,11 @@ public class GatewayConnector {
             return;
         }
 
+        if (changedAssetIds != null) {
+            onChangedAssetsResponse(e);
+            return;
+        }
+
         if (!expectedSyncResponseName.equalsIgnoreCase(e.getName())) {
             LOG.info("Unexpected response from gateway so ignoring (expected=" + expectedSyncResponseName + ", actual =" + e.getName() + "): " + e);
             return;
@@ -325,6 +441,11 @@ public class GatewayConnector {
                 return;
             }
 
+            if (e.getDigests() != null) {
+                startIncrementalSync(e.getDigests(), e.getValueDigests());
+                return;
+            }
+
             requestAssets();
 
         } else {
@@ -352,60 +473,217 @@ public class GatewayConnector {
 
             // Merge returned assets ensuring the latest version of each is merged
             returnedAssets.stream()
-                .map(returnedAsset -> {
-                    final AtomicReference<Asset> latestAssetVersion = new AtomicReference<>(returnedAsset);
-                    cachedAssetEvents.removeIf(
-                        assetEvent -> {
-                            boolean remove = assetEvent.getEntityId().equals(returnedAsset.getId()) && (assetEvent.getCause() == AssetEvent.Cause.UPDATE || assetEvent.getCause() == AssetEvent.Cause.READ);
-                            if (remove && assetEvent.getAsset().getVersion() > latestAssetVersion.get().getVersion()) {
-                                latestAssetVersion.set(assetEvent.getAsset());
-                            }
-                            return remove;
-                        });
-                    return latestAssetVersion.get();
-                }).forEach(this::saveAssetLocally);
+                .map(this::getLatestAssetVersion)
+                .forEach(this::saveAssetLocally);
 
 
             // Request next batch or move on
             syncIndex += requestedAssetIds.size();
             if (syncIndex >= syncAssetIds.size()) {
-                LOG.info("All requested gateway assets retrieved");
-
-                Set<String> refreshAssets = new HashSet<>();
-
-                cachedAssetEvents.forEach(
-                    assetEvent -> {
-                        if (assetEvent.getCause() == AssetEvent.Cause.DELETE) {
-                            syncAssetIds.remove(assetEvent.getEntityId());
-                        } else if (assetEvent.getCause() == AssetEvent.Cause.CREATE) {
-                            syncAssetIds.add(assetEvent.getEntityId());
-                            try {
-                                saveAssetLocally(assetEvent.getAsset());
-                            } catch (Exception ex) {
-                                LOG.log(Level.SEVERE, "Failed to add new gateway asset (Gateway ID=" + gatewayId + ", Asset=" + assetEvent.getAsset(), ex);
-                            }
-                        } else {
-                            refreshAssets.add(assetEvent.getEntityId());
-                        }
-                    }
-                );
+                onAllAssetsRetrieved();
+            } else {
+                requestAssets();
+            }
+        }
+    }
 
-                deleteObsoleteLocalAssets();
-                onInitialSyncComplete();
+    /**
+     * Only request the assets that are new or have a different digest than the local copy, in level order so parents
+     * are merged before their children. Up to {@link #SYNC_MAX_BATCHES_IN_FLIGHT} batches are requested at a time.
+     * <p>
+     * The attribute values of the other assets are refreshed when the sync completes if their value digest is different
+     * (or the gateway didn't return value digests), the values that changed whilst the gateway was disconnected might
+     * not have been replayed by the event queue of the gateway.
+     */
+    protected void startIncrementalSync(Map<String, String> gatewayDigests, Map<String, String> gatewayValueDigests) {
+        List<Asset> localAssets = assetStorageService.findAll(new AssetQuery().parents(gatewayId).recursive(true));
+        Map<String, String> localDigests = GatewayAssetDigest.digest(localAssets, gatewayId);
+        Map<String, String> localValueDigests = GatewayAssetDigest.digestValues(localAssets);
+
+        changedAssetIds = syncAssetIds.stream()
+            .filter(id -> {
+                String digest = gatewayDigests.get(id);
+                return digest == null || !digest.equals(localDigests.get(id));
+            })
+            .collect(Collectors.toList());
+        changedIndex = 0;
+
+        Set<String> changedIds = new HashSet<>(changedAssetIds);
+        changedValueAssetIds = localDigests.keySet().stream()
+            .filter(id -> syncAssetIds.contains(id) && !changedIds.contains(id))
+            .filter(id -> {
+                String valueDigest = gatewayValueDigests != null ? gatewayValueDigests.get(id) : null;
+                return valueDigest == null || !valueDigest.equals(localValueDigests.get(id));
+            })
+            .collect(Collectors.toSet());
+
+        LOG.info("Gateway incremental sync, changed assets=" + changedAssetIds.size() + ", changed values=" + changedValueAssetIds.size() + " of " + syncAssetIds.size() + ": Gateway ID=" + gatewayId);
+
+        if (changedAssetIds.isEmpty()) {
+            onAllAssetsRetrieved();
+            return;
+        }
+
+        requestChangedAssetBatches();
+    }
+
+    protected void requestChangedAssetBatches() {
+        while (pendingBatches.size() < SYNC_MAX_BATCHES_IN_FLIGHT && changedIndex < changedAssetIds.size()) {
+            List<String> batchAssetIds = new ArrayList<>(changedAssetIds.subList(changedIndex, Math.min(changedIndex + SYNC_ASSET_BATCH_SIZE, changedAssetIds.size())));
+            String name = ASSET_READ_EVENT_NAME_CHANGED_BATCH + changedIndex;
+            changedIndex += batchAssetIds.size();
+            pendingBatches.put(name, batchAssetIds);
+            sendChangedAssetBatchRequest(name, batchAssetIds);
+        }
+        rescheduleSyncTimeout();
+    }
+
+    protected void resendChangedAssetBatches() {
+        if (syncAborted()) {
+            return;
+        }
+        pendingBatches.forEach((name, batchAssetIds) -> {
+            if (!receivedBatches.containsKey(name)) {
+                sendChangedAssetBatchRequest(name, batchAssetIds);
+            }
+        });
+        rescheduleSyncTimeout();
+    }
+
+    protected void sendChangedAssetBatchRequest(String name, List<String> batchAssetIds) {
+        LOG.fine("Synchronising changed gateway assets (" + name + "), count=" + batchAssetIds.size() + ": Gateway ID=" + gatewayId);
+        sendMessageToGateway(
+            new ReadAssetsEvent(
+                name,
+                new AssetQuery()
+                    .select(new AssetQuery.Select().excludeParentInfo(true).excludePath(true))
+                    .ids(batchAssetIds.toArray(new String[0]))
+            )
+        );
+    }
+
+    protected void rescheduleSyncTimeout() {
+        if (syncProcessorFuture != null) {
+            syncProcessorFuture.cancel(false);
+        }
+        syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, SYNC_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Batches are merged in the order they were requested, a response that arrives early is held until the batches
+     * before it have been merged.
+     */
+    protected void onChangedAssetsResponse(AssetsEvent e) {
+        if (!pendingBatches.containsKey(e.getName())) {
+            LOG.info("Unexpected response from gateway so ignoring (actual =" + e.getName() + "): " + e);
+            return;
+        }
+
+        receivedBatches.put(e.getName(), e.getAssets() != null ? e.getAssets() : new ArrayList<>());
+
+        Iterator<Map.Entry<String, List<String>>> it = pendingBatches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, List<String>> batch = it.next();
+            List<Asset> returnedAssets = receivedBatches.get(batch.getKey());
+            if (returnedAssets == null) {
+                break;
+            }
+
+            // Assets that have been deleted since requested are not returned
+            List<String> requestedAssetIds = batch.getValue();
+            requestedAssetIds.removeIf(id ->
+                cachedAssetEvents.stream().anyMatch(assetEvent -> id.equals(assetEvent.getEntityId()) && assetEvent.getCause() == AssetEvent.Cause.DELETE));
+
+            if (returnedAssets.size() != requestedAssetIds.size() || !returnedAssets.stream().allMatch(asset -> requestedAssetIds.contains(asset.getId()))) {
+                LOG.warning("Retrieved changed gateway asset batch count or ID mismatch, attempting to re-send the request");
+                syncErrors++;
+                receivedBatches.remove(batch.getKey());
+                if (!syncAborted()) {
+                    sendChangedAssetBatchRequest(batch.getKey(), requestedAssetIds);
+                    rescheduleSyncTimeout();
+                }
+                return;
+            }
 
-                // Refresh attributes that have changed
-                cachedAttributeEvents.stream().filter(attributeEvent -> syncAssetIds.contains(attributeEvent.getEntityId())).collect(Collectors.groupingBy(AttributeEvent::getEntityId)).forEach(
-                    (assetId, attributeEvents) -> {
-                        LOG.info("1 or more gateway asset attribute values have changed so requesting latest values (Gateway ID=" + gatewayId + ", Asset ID=" + assetId);
-                        sendMessageToGateway(new ReadAssetAttributesEvent(assetId, attributeEvents.stream().map(AttributeEvent::getAttributeName).toArray(String[]::new)));
+            returnedAssets.stream()
+                .map(this::getLatestAssetVersion)
+                .forEach(this::saveAssetLocally);
+
+            receivedBatches.remove(batch.getKey());
+            it.remove();
+        }
+
+        if (pendingBatches.isEmpty() && changedIndex >= changedAssetIds.size()) {
+            syncProcessorFuture.cancel(false);
+            syncProcessorFuture = null;
+            onAllAssetsRetrieved();
+        } else {
+            requestChangedAssetBatches();
+        }
+    }
+
+    /**
+     * @return The asset or the newer version of the asset from the asset events received during the sync.
+     */
+    protected Asset getLatestAssetVersion(Asset returnedAsset) {
+        final AtomicReference<Asset> latestAssetVersion = new AtomicReference<>(returnedAsset);
+        cachedAssetEvents.removeIf(
+            assetEvent -> {
+                boolean remove = assetEvent.getEntityId().equals(returnedAsset.getId()) && (assetEvent.getCause() == AssetEvent.Cause.UPDATE || assetEvent.getCause() == AssetEvent.Cause.READ);
+                if (remove && assetEvent.getAsset().getVersion() > latestAssetVersion.get().getVersion()) {
+                    latestAssetVersion.set(assetEvent.getAsset());
+                }
+                return remove;
+            });
+        return latestAssetVersion.get();
+    }
+
+    /**
+     * Apply the asset events received during the sync, remove obsolete assets and request the latest attribute values
+     * and assets that changed during the sync.
+     */
+    protected void onAllAssetsRetrieved() {
+        LOG.info("All requested gateway assets retrieved");
+
+        Set<String> refreshAssets = new HashSet<>();
+
+        cachedAssetEvents.forEach(
+            assetEvent -> {
+                if (assetEvent.getCause() == AssetEvent.Cause.DELETE) {
+                    syncAssetIds.remove(assetEvent.getEntityId());
+                } else if (assetEvent.getCause() == AssetEvent.Cause.CREATE) {
+                    syncAssetIds.add(assetEvent.getEntityId());
+                    try {
+                        saveAssetLocally(assetEvent.getAsset());
+                    } catch (Exception ex) {
+                        LOG.log(Level.SEVERE, "Failed to add new gateway asset (Gateway ID=" + gatewayId + ", Asset=" + assetEvent.getAsset(), ex);
                     }
-                );
+                } else {
+                    refreshAssets.add(assetEvent.getEntityId());
+                }
+            }
+        );
 
-                // Refresh assets that have changed
-                refreshAssets.forEach(id -> sendMessageToGateway(new ReadAssetEvent(id)));
-            } else {
-                requestAssets();
+        deleteObsoleteLocalAssets();
+        onInitialSyncComplete();
+
+        // Refresh attributes that have changed
+        cachedAttributeEvents.stream().filter(attributeEvent -> syncAssetIds.contains(attributeEvent.getEntityId())).collect(Collectors.groupingBy(AttributeEvent::getEntityId)).forEach(
+            (assetId, attributeEvents) -> {
+                LOG.info("1 or more gateway asset attribute values have changed so requesting latest values (Gateway ID=" + gatewayId + ", Asset ID=" + assetId);
+                sendMessageToGateway(new ReadAssetAttributesEvent(assetId, attributeEvents.stream().map(AttributeEvent::getAttributeName).toArray(String[]::new)));
             }
+        );
+
+        // Refresh assets that have changed
+        refreshAssets.forEach(id -> sendMessageToGateway(new ReadAssetEvent(id)));
+
+        // Refresh the attribute values of assets of which only the values changed whilst disconnected
+        if (changedValueAssetIds != null) {
+            changedValueAssetIds.stream()
+                .filter(id -> syncAssetIds.contains(id) && !refreshAssets.contains(id))
+                .forEach(id -> sendMessageToGateway(new ReadAssetAttributesEvent(id)));
+            changedValueAssetIds = null;
         }
     }
 
@@ -437,6 +715,31 @@ public class GatewayConnector {
         cachedAssetEvents.clear();
         cachedAttributeEvents.clear();
         assetProcessingService.sendAttributeEvent(new AttributeEvent(gatewayId, "status", Values.create(ConnectionStatus.CONNECTED.name())), AttributeEvent.Source.GATEWAY);
+        replayQueuedEvents();
+    }
+
+    protected void replayQueuedEvents() {
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Replaying " + queue.size() + " queued attribute event(s) to gateway: Gateway ID=" + gatewayId);
+
+        // Events are only removed from the queue once they have been sent, if the link drops the rest stay queued
+        int sent = queue.drain(timerService.getCurrentTimeMillis(), message -> {
+            SharedEvent event;
+            try {
+                event = Container.JSON.readValue(message, SharedEvent.class);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to read queued attribute event so it is dropped: Gateway ID=" + gatewayId, e);
+                return true;
+            }
+            return isConnected() && trySendMessageToGateway(event);
+        });
+
+        if (!queue.isEmpty()) {
+            LOG.info("Replayed " + sent + " queued attribute event(s) before the gateway disconnected, " + queue.size() + " remain queued: Gateway ID=" + gatewayId);
+        }
     }
 
     protected Asset mergeGatewayAsset(Asset asset, boolean isUpdate) {
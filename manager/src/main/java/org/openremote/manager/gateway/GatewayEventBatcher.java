@@ -0,0 +1,264 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.gateway;
+
+import org.openremote.container.Container;
+import org.openremote.manager.concurrent.ManagerExecutorService;
+import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.gateway.GatewayBatchEvent;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.openremote.container.util.MapAccess.getInteger;
+
+/**
+ * Collects the events sent over a gateway link during a time window and sends them as one compressed
+ * {@link GatewayBatchEvent}; a window with a single event sends the event as is. Other messages sent over the link
+ * must {@link #flush} first so the order is kept.
+ * <p>
+ * Batching is enabled with {@link #GATEWAY_LINK_BATCH_MILLIS} on the gateway, which then announces it to the central
+ * manager when it connects; the central manager only batches the events it sends to gateways that announced it, with
+ * its own configured window (or {@link #GATEWAY_LINK_BATCH_MILLIS_CENTRAL_DEFAULT}).
+ * <p>
+ * Events that couldn't be sent (e.g. the link dropped before the window ended) and the events that are cleared when the
+ * link is closed are handed to the unsent handler, so they can be queued again instead of being lost.
+ */
+public class GatewayEventBatcher {
+
+    private static final Logger LOG = Logger.getLogger(GatewayEventBatcher.class.getName());
+    public static final String GATEWAY_LINK_BATCH_MILLIS = "GATEWAY_LINK_BATCH_MILLIS";
+    public static final int GATEWAY_LINK_BATCH_MILLIS_DEFAULT = 0;
+    public static final int GATEWAY_LINK_BATCH_MILLIS_CENTRAL_DEFAULT = 100;
+    public static final int MAX_BATCH_EVENTS = 1000;
+    // Limits the memory used to decode a batch, the JSON of a batch of events is far smaller
+    public static final int MAX_BATCH_INFLATED_BYTES = 16 * 1024 * 1024;
+
+    protected final ManagerExecutorService executorService;
+    protected final long windowMillis;
+    protected final Predicate<SharedEvent> sender;
+    protected final Consumer<SharedEvent> unsentHandler;
+    protected final List<SharedEvent> events = new ArrayList<>();
+    protected ScheduledFuture<?> flushFuture;
+    protected long frames;
+    protected long eventCount;
+    protected long bytes;
+    protected long compressedBytes;
+
+    public GatewayEventBatcher(ManagerExecutorService executorService, long windowMillis, Consumer<SharedEvent> sender) {
+        this(executorService, windowMillis, event -> {
+            sender.accept(event);
+            return true;
+        }, null);
+    }
+
+    /**
+     * @param sender        Sends an event or a batch, returns <code>false</code> if it couldn't be sent (e.g. the link
+     *                      is down).
+     * @param unsentHandler Receives each event that couldn't be sent or was cleared, in the order they were added; can
+     *                      be <code>null</code> to discard them.
+     */
+    public GatewayEventBatcher(ManagerExecutorService executorService, long windowMillis, Predicate<SharedEvent> sender, Consumer<SharedEvent> unsentHandler) {
+        this.executorService = executorService;
+        this.windowMillis = windowMillis;
+        this.sender = sender;
+        this.unsentHandler = unsentHandler;
+    }
+
+    /**
+     * @return The configured batch window, 0 if batching is disabled.
+     */
+    public static int getWindowMillis(Map<String, String> config, int defaultValue) {
+        return Math.max(getInteger(config, GATEWAY_LINK_BATCH_MILLIS, defaultValue), 0);
+    }
+
+    /**
+     * A batch without events that announces to the other side of the link that batches can be sent.
+     */
+    public static GatewayBatchEvent createAnnouncement(long timestamp) {
+        return new GatewayBatchEvent(timestamp, 0, null);
+    }
+
+    public void add(SharedEvent event) {
+        boolean full;
+        synchronized (this) {
+            events.add(event);
+            full = events.size() >= MAX_BATCH_EVENTS;
+            if (!full && flushFuture == null) {
+                flushFuture = executorService.schedule(this::flush, windowMillis);
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        SharedEvent[] unsentBatch = null;
+
+        synchronized (this) {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+
+            if (events.isEmpty()) {
+                return;
+            }
+
+            SharedEvent[] batch = events.toArray(new SharedEvent[0]);
+            events.clear();
+
+            boolean sent = false;
+            try {
+                SharedEvent message = batch.length == 1 ? batch[0] : encode(batch);
+                sent = sender.test(message);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to send gateway event batch, events=" + batch.length, e);
+            }
+
+            if (sent) {
+                frames++;
+                eventCount += batch.length;
+            } else {
+                unsentBatch = batch;
+            }
+        }
+
+        // Outside of the lock, the handler might lock the owner of the batcher
+        unsent(unsentBatch);
+    }
+
+    /**
+     * Hand the events that haven't been sent to the unsent handler, when the link is closed.
+     */
+    public void clear() {
+        SharedEvent[] batch;
+        synchronized (this) {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            batch = events.toArray(new SharedEvent[0]);
+            events.clear();
+        }
+        unsent(batch);
+    }
+
+    protected void unsent(SharedEvent[] batch) {
+        if (unsentHandler == null || batch == null || batch.length == 0) {
+            return;
+        }
+        LOG.fine("Gateway event batch not sent so handing over its events, events=" + batch.length);
+        for (SharedEvent event : batch) {
+            try {
+                unsentHandler.accept(event);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to hand over unsent gateway event: " + event, e);
+            }
+        }
+    }
+
+    synchronized public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("windowMillis", windowMillis);
+        stats.put("frames", frames);
+        stats.put("events", eventCount);
+        stats.put("eventsPerFrame", frames > 0 ? (double) eventCount / frames : 0);
+        stats.put("bytes", bytes);
+        stats.put("compressedBytes", compressedBytes);
+        stats.put("compressionRatio", compressedBytes > 0 ? (double) bytes / compressedBytes : 0);
+        return stats;
+    }
+
+    protected GatewayBatchEvent encode(SharedEvent[] batch) throws IOException {
+        byte[] json = Container.JSON.writerFor(SharedEvent[].class).writeValueAsBytes(batch);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater)) {
+            deflaterStream.write(json);
+        } finally {
+            deflater.end();
+        }
+        byte[] payload = compressed.toByteArray();
+        bytes += json.length;
+        compressedBytes += payload.length;
+        // The batch is sent at the time of the last event
+        return new GatewayBatchEvent(batch[batch.length - 1].getTimestamp(), batch.length, Base64.getEncoder().encodeToString(payload));
+    }
+
+    /**
+     * @return The events of the batch in the order they occurred; an event without a timestamp gets the timestamp of
+     * the batch, the same as a single event received without a timestamp.
+     * @throws IOException If the batch can't be decoded or has more than {@link #MAX_BATCH_EVENTS} events or
+     *                     {@link #MAX_BATCH_INFLATED_BYTES} bytes of JSON.
+     */
+    public static SharedEvent[] decode(GatewayBatchEvent batchEvent) throws IOException {
+        if (batchEvent.getCount() == 0 || batchEvent.getPayload() == null) {
+            return new SharedEvent[0];
+        }
+        if (batchEvent.getCount() < 0 || batchEvent.getCount() > MAX_BATCH_EVENTS) {
+            throw new IOException("Gateway event batch has too many events: " + batchEvent.getCount());
+        }
+        byte[] payload = Base64.getDecoder().decode(batchEvent.getPayload());
+        SharedEvent[] batch;
+        try (InflaterInputStream inflaterStream = new InflaterInputStream(new ByteArrayInputStream(payload))) {
+            batch = Container.JSON.readValue(inflate(inflaterStream, MAX_BATCH_INFLATED_BYTES), SharedEvent[].class);
+        }
+        if (batch.length > MAX_BATCH_EVENTS) {
+            throw new IOException("Gateway event batch has too many events: " + batch.length);
+        }
+        for (SharedEvent event : batch) {
+            if (event.getTimestamp() <= 0) {
+                event.setTimestamp(batchEvent.getTimestamp());
+            }
+        }
+        return batch;
+    }
+
+    protected static byte[] inflate(InputStream inflaterStream, int maxBytes) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inflaterStream.read(buffer)) >= 0) {
+            if (json.size() + read > maxBytes) {
+                throw new IOException("Gateway event batch is bigger than " + maxBytes + " bytes when inflated");
+            }
+            json.write(buffer, 0, read);
+        }
+        return json.toByteArray();
+    }
+}
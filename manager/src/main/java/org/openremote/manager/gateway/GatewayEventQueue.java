@@ -0,0 +1,568 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.gateway;
+
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.container.util.MapAccess.getInteger;
+import static org.openremote.container.util.MapAccess.getString;
+
+/**
+ * Bounded outbound message queue of one side of a gateway link, used to hold messages while the link is down. Messages
+ * are appended to segment files in the queue directory so they survive a restart; when the total size exceeds the
+ * limit the oldest segment is dropped and messages older than the max age are not replayed.
+ * <p>
+ * Messages can have a key (the attribute they update), on {@link #drain} only the latest message of each key is sent
+ * (the one with the newest timestamp, or added last if they have the same timestamp); all messages are sent in the
+ * order they were added. Messages are only removed once they have been sent, the
+ * messages that couldn't be sent stay queued. A removed message is marked as consumed in its segment, a segment is
+ * deleted once all its messages are consumed; the other messages are never rewritten.
+ * <p>
+ * A record is <code>[int length][long timestamp][short key length][key][message]</code> (UTF-8), a negative length
+ * marks a consumed record and a length of 0 marks the end of the records in a segment.
+ */
+public class GatewayEventQueue {
+
+    private static final Logger LOG = Logger.getLogger(GatewayEventQueue.class.getName());
+    public static final String GATEWAY_QUEUE_PATH = "GATEWAY_QUEUE_PATH";
+    public static final String GATEWAY_QUEUE_PATH_DEFAULT = "deployment/gateway/queue";
+    public static final String GATEWAY_QUEUE_MAX_MB = "GATEWAY_QUEUE_MAX_MB";
+    public static final int GATEWAY_QUEUE_MAX_MB_DEFAULT = 16;
+    public static final String GATEWAY_QUEUE_MAX_AGE_MINUTES = "GATEWAY_QUEUE_MAX_AGE_MINUTES";
+    public static final int GATEWAY_QUEUE_MAX_AGE_MINUTES_DEFAULT = 24 * 60;
+    protected static final String SEGMENT_SUFFIX = ".segment";
+    // Timestamp and key length, following the length of the record
+    protected static final int HEADER_BYTES = 8 + 2;
+    protected static final int SEGMENT_BYTES_DEFAULT = 1024 * 1024;
+
+    protected static class Segment {
+        final long index;
+        final Path path;
+        final FileChannel channel;
+        // Where the next record is appended
+        int position;
+        // The records before this position are consumed
+        int readPosition;
+        int records;
+        long lastTimestamp;
+
+        protected Segment(long index, Path path, FileChannel channel) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    protected static class Record {
+        final Segment segment;
+        final int position;
+        final int length;
+        final long timestamp;
+        final String key;
+        final String message;
+
+        protected Record(Segment segment, int position, int length, long timestamp, String key, String message) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.timestamp = timestamp;
+            this.key = key;
+            this.message = message;
+        }
+    }
+
+    protected final Path directory;
+    protected final long maxBytes;
+    protected final long maxAgeMillis;
+    protected final int segmentBytes;
+    protected final Deque<Segment> segments = new ArrayDeque<>();
+    protected int records;
+    protected long droppedRecords;
+    protected long expiredRecords;
+    protected boolean draining;
+
+    public GatewayEventQueue(Path directory, long maxBytes, long maxAgeMillis) throws IOException {
+        this(directory, maxBytes, maxAgeMillis, (int) Math.min(SEGMENT_BYTES_DEFAULT, Math.max(maxBytes / 4, 4096)));
+    }
+
+    public GatewayEventQueue(Path directory, long maxBytes, long maxAgeMillis, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Open the queue in the named sub directory of {@link #GATEWAY_QUEUE_PATH}.
+     *
+     * @return <code>null</code> if queueing is disabled ({@link #GATEWAY_QUEUE_MAX_MB} is 0) or the queue can't be
+     * opened.
+     */
+    public static GatewayEventQueue create(Map<String, String> config, String first, String... more) {
+        int maxMb = getInteger(config, GATEWAY_QUEUE_MAX_MB, GATEWAY_QUEUE_MAX_MB_DEFAULT);
+        if (maxMb <= 0) {
+            return null;
+        }
+        Path directory = Paths.get(getString(config, GATEWAY_QUEUE_PATH, GATEWAY_QUEUE_PATH_DEFAULT)).resolve(Paths.get(first, more));
+        long maxAgeMillis = getInteger(config, GATEWAY_QUEUE_MAX_AGE_MINUTES, GATEWAY_QUEUE_MAX_AGE_MINUTES_DEFAULT) * 60000L;
+        try {
+            return new GatewayEventQueue(directory, maxMb * 1024L * 1024L, maxAgeMillis);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to open gateway queue so messages will not be queued: " + directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * Append the message, a message bigger than a segment is dropped.
+     *
+     * @param key Messages with the same key are coalesced on {@link #drain}, can be <code>null</code>.
+     * @return <code>false</code> if the message couldn't be stored.
+     */
+    synchronized public boolean add(String key, String message, long timestamp) {
+        if (!append(key, message, timestamp)) {
+            return false;
+        }
+        enforceLimits(timestamp);
+        return true;
+    }
+
+    /**
+     * Send the queued messages in the order they were added, only the latest message of each key and without messages
+     * that are older than the max age. Sending stops at the first message that couldn't be sent; the sent messages are
+     * removed from the queue and the rest stay queued, to be sent by the next drain. Messages added whilst draining are
+     * sent by the same drain.
+     * <p>
+     * The messages are sent without holding the lock of the queue, so messages can be added whilst sending. Only one
+     * drain runs at a time, a drain whilst another one is running returns immediately as the running drain also sends
+     * the added messages.
+     *
+     * @param sender Sends a message, returns <code>false</code> if it couldn't be sent (e.g. the link is down).
+     * @return The number of messages sent.
+     */
+    public int drain(long currentTimestamp, Predicate<String> sender) {
+        List<Record> queued;
+        synchronized (this) {
+            if (draining || records == 0) {
+                return 0;
+            }
+            draining = true;
+            queued = readQueued();
+        }
+
+        int sent = 0;
+        try {
+            while (true) {
+                List<Record> consumed = new ArrayList<>(queued.size());
+                List<Record> expired = new ArrayList<>();
+                List<Record> pending = getPending(queued, currentTimestamp, consumed, expired);
+
+                int roundSent = 0;
+                while (roundSent < pending.size() && sender.test(pending.get(roundSent).message)) {
+                    consumed.add(pending.get(roundSent));
+                    roundSent++;
+                }
+                sent += roundSent;
+
+                synchronized (this) {
+                    consume(consumed, expired);
+                    enforceLimits(currentTimestamp);
+                    if (roundSent < pending.size() || records == 0) {
+                        draining = false;
+                        return sent;
+                    }
+                    // Send the messages that were added whilst sending
+                    queued = readQueued();
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                draining = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The messages that haven't been consumed, in the order they were added.
+     */
+    protected List<Record> readQueued() {
+        List<Record> queued = new ArrayList<>(records);
+        for (Segment segment : segments) {
+            try {
+                readRecords(segment, queued);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to read gateway queue segment so its messages are dropped: " + segment.path, e);
+                droppedRecords += segment.records;
+                segment.records = 0;
+            }
+        }
+        records = 0;
+        for (Segment segment : segments) {
+            records += segment.records;
+        }
+        return queued;
+    }
+
+    /**
+     * @param superseded Receives the messages which are superseded by a later message with the same key.
+     * @param expired    Receives the messages which are older than the max age.
+     * @return The messages to send.
+     */
+    protected List<Record> getPending(List<Record> queued, long currentTimestamp, List<Record> superseded, List<Record> expired) {
+        Map<String, Integer> latestIndex = new HashMap<>();
+        for (int i = 0; i < queued.size(); i++) {
+            Record record = queued.get(i);
+            if (record.key != null) {
+                Integer latest = latestIndex.get(record.key);
+                if (latest == null || queued.get(latest).timestamp <= record.timestamp) {
+                    latestIndex.put(record.key, i);
+                }
+            }
+        }
+
+        List<Record> pending = new ArrayList<>(queued.size());
+        for (int i = 0; i < queued.size(); i++) {
+            Record record = queued.get(i);
+            if (record.key != null && latestIndex.get(record.key) != i) {
+                superseded.add(record);
+            } else if (isExpired(record.timestamp, currentTimestamp)) {
+                expired.add(record);
+            } else {
+                pending.add(record);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Mark the records as consumed and delete the segments of which all records are consumed; records of segments
+     * that have been dropped or cleared in the meantime are ignored.
+     */
+    protected void consume(List<Record> consumed, List<Record> expired) {
+        for (Record record : consumed) {
+            markConsumed(record);
+        }
+        for (Record record : expired) {
+            if (markConsumed(record)) {
+                expiredRecords++;
+            }
+        }
+
+        Iterator<Segment> it = segments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment.records == 0) {
+                it.remove();
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    protected boolean markConsumed(Record record) {
+        Segment segment = record.segment;
+        if (!segments.contains(segment) || !segment.channel.isOpen()) {
+            return false;
+        }
+        try {
+            // A single write of the length, a crash before it only means the message is sent again
+            write(segment.channel, (ByteBuffer) ByteBuffer.allocate(4).putInt(-record.length).flip(), record.position);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to mark gateway queue message as consumed so it might be sent again: " + segment.path, e);
+        }
+        segment.records--;
+        records--;
+        return true;
+    }
+
+    protected boolean append(String key, String message, long timestamp) {
+        byte[] keyBytes = key != null ? key.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + keyBytes.length + messageBytes.length;
+
+        if (keyBytes.length > Short.MAX_VALUE || length + 4 > segmentBytes) {
+            LOG.warning("Gateway queue message is too big so it is dropped: " + directory);
+            droppedRecords++;
+            return false;
+        }
+
+        try {
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.position + length + 4 > segmentBytes) {
+                segment = createSegment(segment != null ? segment.index + 1 : 0);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            buffer.putLong(timestamp);
+            buffer.putShort((short) keyBytes.length);
+            buffer.put(keyBytes);
+            buffer.put(messageBytes);
+            buffer.flip();
+            // Write the length last so a partly written record is never read
+            write(segment.channel, buffer, segment.position + 4);
+            write(segment.channel, (ByteBuffer) ByteBuffer.allocate(4).putInt(length).flip(), segment.position);
+            segment.position += 4 + length;
+            segment.records++;
+            segment.lastTimestamp = timestamp;
+            records++;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to write to gateway queue so message is dropped: " + directory, e);
+            droppedRecords++;
+            return false;
+        }
+        return true;
+    }
+
+    synchronized public boolean isEmpty() {
+        return records == 0;
+    }
+
+    synchronized public int size() {
+        return records;
+    }
+
+    synchronized public void clear() {
+        while (!segments.isEmpty()) {
+            deleteSegment(segments.removeFirst());
+        }
+        records = 0;
+    }
+
+    /**
+     * Release the segments, the queued messages stay on disk.
+     */
+    synchronized public void close() {
+        while (!segments.isEmpty()) {
+            closeSegment(segments.removeFirst(), true);
+        }
+        records = 0;
+    }
+
+    /**
+     * Close the queue and remove its directory.
+     */
+    synchronized public void delete() {
+        clear();
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Failed to delete gateway queue directory: " + directory, e);
+        }
+    }
+
+    synchronized public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        long sizeBytes = 0;
+        for (Segment segment : segments) {
+            sizeBytes += segment.position;
+        }
+        stats.put("depth", records);
+        stats.put("segments", segments.size());
+        stats.put("sizeBytes", sizeBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("dropped", droppedRecords);
+        stats.put("expired", expiredRecords);
+        return stats;
+    }
+
+    protected void open() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+
+        Map<Long, Path> indexedPaths = new TreeMap<>();
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            try {
+                indexedPaths.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path);
+            } catch (NumberFormatException e) {
+                LOG.info("Ignoring unknown file in gateway queue directory: " + path);
+            }
+        }
+
+        for (Map.Entry<Long, Path> entry : indexedPaths.entrySet()) {
+            Segment segment = new Segment(entry.getKey(), entry.getValue(), openChannel(entry.getValue()));
+            List<Record> existing = new ArrayList<>();
+            try {
+                readRecords(segment, existing);
+            } catch (IOException e) {
+                closeSegment(segment, false);
+                throw e;
+            }
+            if (existing.isEmpty()) {
+                // All records were consumed before the segment could be deleted
+                deleteSegment(segment);
+                continue;
+            }
+            segment.lastTimestamp = existing.get(existing.size() - 1).timestamp;
+            records += segment.records;
+            segments.addLast(segment);
+        }
+
+        if (records > 0) {
+            LOG.info("Gateway queue opened with " + records + " queued message(s): " + directory);
+        }
+    }
+
+    /**
+     * Read the records of the segment that aren't consumed, starting after the consumed records at the start of the
+     * segment. Sets the number of records of the segment and the position of the segment after the last record, where
+     * the next record is appended.
+     */
+    protected void readRecords(Segment segment, List<Record> records) throws IOException {
+        int start = segment.readPosition;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(segment.channel.size(), segmentBytes) - start));
+        int read;
+        do {
+            read = segment.channel.read(buffer, start + buffer.position());
+        } while (read >= 0 && buffer.hasRemaining());
+        buffer.flip();
+        int position = 0;
+        int count = 0;
+        boolean consumedPrefix = true;
+
+        while (position + 4 <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            boolean consumed = length < 0;
+            if (consumed) {
+                length = -length;
+            }
+            if (length < HEADER_BYTES || position + 4 + length > buffer.limit()) {
+                break;
+            }
+            if (consumed) {
+                if (consumedPrefix) {
+                    segment.readPosition = start + position + 4 + length;
+                }
+                position += 4 + length;
+                continue;
+            }
+            consumedPrefix = false;
+            long timestamp = buffer.getLong(position + 4);
+            int keyLength = buffer.getShort(position + 12);
+            if (keyLength < 0 || HEADER_BYTES + keyLength > length) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            byte[] messageBytes = new byte[length - HEADER_BYTES - keyLength];
+            buffer.position(position + 4 + HEADER_BYTES);
+            buffer.get(keyBytes);
+            buffer.get(messageBytes);
+            records.add(new Record(
+                segment,
+                start + position,
+                length,
+                timestamp,
+                keyLength > 0 ? new String(keyBytes, StandardCharsets.UTF_8) : null,
+                new String(messageBytes, StandardCharsets.UTF_8)
+            ));
+            count++;
+            position += 4 + length;
+        }
+
+        segment.position = start + position;
+        segment.records = count;
+    }
+
+    protected Segment createSegment(long index) throws IOException {
+        Path path = directory.resolve(String.format("%019d", index) + SEGMENT_SUFFIX);
+        Files.deleteIfExists(path);
+        Segment segment = new Segment(index, path, openChannel(path));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    protected FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    protected static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Drop the oldest segments whilst the queue is over the size limit or the newest message of the segment has expired;
+     * the segment that is written to is never dropped.
+     */
+    protected void enforceLimits(long currentTimestamp) {
+        while (segments.size() > 1) {
+            Segment oldest = segments.peekFirst();
+            boolean overSize = (long) segments.size() * segmentBytes > maxBytes;
+            if (!overSize && !isExpired(oldest.lastTimestamp, currentTimestamp)) {
+                break;
+            }
+            if (overSize) {
+                LOG.info("Gateway queue is full so dropping " + oldest.records + " oldest message(s): " + directory);
+                droppedRecords += oldest.records;
+            } else {
+                expiredRecords += oldest.records;
+            }
+            segments.removeFirst();
+            records -= oldest.records;
+            deleteSegment(oldest);
+        }
+    }
+
+    protected boolean isExpired(long timestamp, long currentTimestamp) {
+        return maxAgeMillis > 0 && currentTimestamp - timestamp > maxAgeMillis;
+    }
+
+    protected void closeSegment(Segment segment, boolean force) {
+        try {
+            if (force) {
+                segment.channel.force(false);
+            }
+            segment.channel.close();
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Failed to close gateway queue segment: " + segment.path, e);
+        }
+    }
+
+    /**
+     * Close the segment before deleting its file, an open file can't be deleted on all platforms.
+     */
+    protected void deleteSegment(Segment segment) {
+        closeSegment(segment, false);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            LOG.log(Level.INFO, "Failed to delete gateway queue segment: " + segment.path, e);
+        }
+    }
+}
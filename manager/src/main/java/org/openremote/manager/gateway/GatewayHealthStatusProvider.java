@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.gateway;
+
+import org.openremote.container.Container;
+import org.openremote.container.ContainerHealthStatusProvider;
+import org.openremote.container.ContainerService;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Value;
+import org.openremote.model.value.Values;
+
+public class GatewayHealthStatusProvider implements ContainerHealthStatusProvider {
+
+    public static final String NAME = "gateways";
+    public static final String VERSION = "1.0";
+    protected GatewayService gatewayService;
+    protected GatewayClientService gatewayClientService;
+
+    @Override
+    public int getPriority() {
+        return ContainerService.DEFAULT_PRIORITY;
+    }
+
+    @Override
+    public void init(Container container) throws Exception {
+        if (container.hasService(GatewayService.class)) {
+            gatewayService = container.getService(GatewayService.class);
+        }
+        if (container.hasService(GatewayClientService.class)) {
+            gatewayClientService = container.getService(GatewayClientService.class);
+        }
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+
+    }
+
+    @Override
+    public String getHealthStatusName() {
+        return NAME;
+    }
+
+    @Override
+    public String getHealthStatusVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Value getHealthStatus() {
+        ObjectValue value = Values.createObject();
+        if (gatewayService != null) {
+            value.put("gatewayQueues", gatewayService.getQueueStats());
+            value.put("gatewayLinks", gatewayService.getLinkStats());
+        }
+        if (gatewayClientService != null) {
+            value.put("clientQueues", gatewayClientService.getQueueStats());
+            value.put("clientLinks", gatewayClientService.getLinkStats());
+        }
+        return value;
+    }
+}
@@ -26,6 +26,7 @@ import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceEvent;
+import org.openremote.container.timer.TimerService;
 import org.openremote.container.web.ClientRequestInfo;
 import org.openremote.container.web.ConnectionConstants;
 import org.openremote.manager.asset.AssetProcessingException;
@@ -42,9 +43,11 @@ import org.openremote.model.asset.AssetAttribute;
 import org.openremote.model.asset.AssetType;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.gateway.GatewayBatchEvent;
 import org.openremote.model.gateway.GatewayDisconnectEvent;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.util.TextUtil;
+import org.openremote.model.value.ObjectValue;
 import org.openremote.model.value.Values;
 
 import javax.persistence.EntityManager;
@@ -75,8 +78,13 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
     protected ManagerKeycloakIdentityProvider identityProvider;
     protected ClientEventService clientEventService;
     protected ManagerExecutorService executorService;
+    protected TimerService timerService;
+    protected Map<String, String> config;
     protected final Map<String, GatewayConnector> gatewayConnectorMap = new HashMap<>();
     protected final Map<String, String> assetIdGatewayIdMap = new HashMap<>();
+    protected final Map<String, GatewayEventBatcher> gatewayBatcherMap = new HashMap<>();
+    protected final Set<String> batchingGatewayIds = new HashSet<>();
+    protected int linkBatchMillis;
     protected boolean active;
 
     public static final String GATEWAY_EVENT_TOPIC = "seda://GatewayEventTopic?multipleConsumers=false&waitForTaskToComplete=NEVER&purgeWhenStopping=true&discardIfNoConsumers=true&limitConcurrentConsumers=false&size=10000";
@@ -101,6 +109,9 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
         identityService = container.getService(ManagerIdentityService.class);
         clientEventService = container.getService(ClientEventService.class);
         executorService = container.getService(ManagerExecutorService.class);
+        timerService = container.getService(TimerService.class);
+        config = container.getConfig();
+        linkBatchMillis = GatewayEventBatcher.getWindowMillis(config, GatewayEventBatcher.GATEWAY_LINK_BATCH_MILLIS_CENTRAL_DEFAULT);
 
         if (!identityService.isKeycloakEnabled()) {
             LOG.warning("Gateways are not supported when not using Keycloak identity provider");
@@ -135,7 +146,7 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
                 }
 
                 // Create connector
-                GatewayConnector connector = new GatewayConnector(assetStorageService, assetProcessingService, executorService, gateway);
+                GatewayConnector connector = createConnector(gateway);
                 gatewayConnectorMap.put(gateway.getId(), connector);
 
                 // Get IDs of all assets under this gateway
@@ -154,9 +165,18 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
     @Override
     public void stop(Container container) throws Exception {
         // TODO: Stop all connectors
-        gatewayConnectorMap.values().forEach(GatewayConnector::disconnect);
+        gatewayConnectorMap.values().forEach(connector -> {
+            connector.disconnect();
+            connector.closeQueue(false);
+        });
         gatewayConnectorMap.clear();
         assetIdGatewayIdMap.clear();
+
+        synchronized (gatewayBatcherMap) {
+            gatewayBatcherMap.values().forEach(GatewayEventBatcher::clear);
+            gatewayBatcherMap.clear();
+            batchingGatewayIds.clear();
+        }
     }
 
     @Override
@@ -250,17 +270,18 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
                 if (connector == null) {
                     LOG.warning("Gateway not found for descendant asset, this should not happen!!! (Asset ID=" + asset.getId() + ", Gateway ID=" + gatewayId + ")");
                 } else {
-                    if (!connector.isConnected()) {
+                    AttributeEvent event = new AttributeEvent(
+                        asset.getId(),
+                        attribute.getNameOrThrow(),
+                        attribute.getValue().orElse(null),
+                        attribute.getValueTimestamp().orElse(0L))
+                        .setParentId(asset.getParentId()).setRealm(asset.getRealm());
+
+                    // Events are queued whilst the gateway is not connected unless it is disabled or the queue is full
+                    if (connector.isDisabled() || !connector.sendAttributeEvent(event)) {
                         LOG.info("Gateway is not connected so attribute event for descendant asset will be dropped (Asset ID=" + asset.getId() + ", Gateway ID=" + gatewayId + "): " + attribute);
                         throw new AssetProcessingException(AssetProcessingException.Reason.GATEWAY_DISCONNECTED, "Gateway is not connected: Gateway ID=" + connector.gatewayId);
                     }
-                    connector.sendMessageToGateway(
-                        new AttributeEvent(
-                            asset.getId(),
-                            attribute.getNameOrThrow(),
-                            attribute.getValue().orElse(null),
-                            attribute.getValueTimestamp().orElse(0L))
-                            .setParentId(asset.getParentId()).setRealm(asset.getRealm()));
                 }
 
                 // Consume this event as it is for a gateway descendant and we've sent it to that gateway for processing
@@ -390,7 +411,7 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
             return;
         }
 
-        connector.connect(createConnectorMessageConsumer(sessionId), disconnectRunnable);
+        connector.connect(createConnectorMessageConsumer(gatewayId, sessionId), disconnectRunnable);
     }
 
     protected void processGatewayDisconnected(String gatewayClientId) {
@@ -402,6 +423,16 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
         String gatewayId = getGatewayIdFromClientId(gatewayClientId);
         GatewayConnector connector = gatewayConnectorMap.get(gatewayId);
 
+        GatewayEventBatcher batcher;
+        synchronized (gatewayBatcherMap) {
+            batchingGatewayIds.remove(gatewayId);
+            batcher = gatewayBatcherMap.remove(gatewayId);
+        }
+        // The unsent events are queued by the connector, which mustn't be done whilst holding the batcher map
+        if (batcher != null) {
+            batcher.clear();
+        }
+
         if (connector == null) {
             return;
         }
@@ -416,7 +447,7 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
             case CREATE:
                 createGatewayClient(gateway);
                 synchronized (gatewayConnectorMap) {
-                    GatewayConnector connector = new GatewayConnector(assetStorageService, assetProcessingService, executorService, gateway);
+                    GatewayConnector connector = createConnector(gateway);
                     gatewayConnectorMap.put(gateway.getId(), connector);
                 }
                 break;
@@ -443,6 +474,7 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
 
                     if (connector != null) {
                         connector.disconnect();
+                        connector.closeQueue(true);
                     }
                 }
 
@@ -480,6 +512,27 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
         return connected.get();
     }
 
+    protected GatewayConnector createConnector(Asset gateway) {
+        GatewayEventQueue queue = GatewayEventQueue.create(config, "gateways", gateway.getId());
+        return new GatewayConnector(assetStorageService, assetProcessingService, executorService, timerService, queue, gateway);
+    }
+
+    /**
+     * @return The backlog of the event queue of each gateway.
+     */
+    public ObjectValue getQueueStats() {
+        ObjectValue stats = Values.createObject();
+        synchronized (gatewayConnectorMap) {
+            gatewayConnectorMap.values().forEach(connector -> {
+                GatewayEventQueue queue = connector.getQueue();
+                if (queue != null) {
+                    stats.put(connector.getGatewayId(), queue.getStats());
+                }
+            });
+        }
+        return stats;
+    }
+
     protected void createGatewayClient(Asset gateway) {
         String id = UUID.randomUUID().toString();
         String secret = gateway.getAttribute("clientSecret").flatMap(ValueHolder::getValueAsString).map(UUID::fromString).orElseGet(UUID::randomUUID).toString();
@@ -532,8 +585,66 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
         return new ClientRequestInfo(null, accessToken);
     }
 
-    protected Consumer<Object> createConnectorMessageConsumer(String sessionId) {
-        return msg -> clientEventService.sendToSession(sessionId, msg);
+    /**
+     * Attribute events for a gateway that announced batching are sent in batches, other messages flush the batch first
+     * so the order is kept.
+     */
+    protected Consumer<Object> createConnectorMessageConsumer(String gatewayId, String sessionId) {
+        if (linkBatchMillis <= 0) {
+            return msg -> clientEventService.sendToSession(sessionId, msg);
+        }
+
+        GatewayEventBatcher batcher = new GatewayEventBatcher(
+            executorService,
+            linkBatchMillis,
+            event -> {
+                clientEventService.sendToSession(sessionId, event);
+                return true;
+            },
+            event -> {
+                // The batch of a gateway that disconnected is queued by its connector, to be replayed after the next sync
+                GatewayConnector connector = gatewayConnectorMap.get(gatewayId);
+                if (connector == null || !(event instanceof AttributeEvent) || !connector.queueAttributeEvent((AttributeEvent) event, event.getTimestamp())) {
+                    LOG.fine("Dropping gateway event that couldn't be sent: Gateway ID=" + gatewayId + ", Event=" + event);
+                }
+            }
+        );
+
+        GatewayEventBatcher previous;
+        synchronized (gatewayBatcherMap) {
+            previous = gatewayBatcherMap.put(gatewayId, batcher);
+        }
+        if (previous != null) {
+            previous.clear();
+        }
+
+        return msg -> {
+            boolean batching;
+            synchronized (gatewayBatcherMap) {
+                batching = batchingGatewayIds.contains(gatewayId);
+            }
+            if (batching && msg instanceof AttributeEvent) {
+                batcher.add((AttributeEvent) msg);
+            } else {
+                batcher.flush();
+                clientEventService.sendToSession(sessionId, msg);
+            }
+        };
+    }
+
+    /**
+     * @return The batching stats of the link of each connected gateway.
+     */
+    public ObjectValue getLinkStats() {
+        ObjectValue stats = Values.createObject();
+        synchronized (gatewayBatcherMap) {
+            gatewayBatcherMap.forEach((gatewayId, batcher) -> {
+                ObjectValue linkStats = batcher.getStats();
+                linkStats.put("batching", batchingGatewayIds.contains(gatewayId));
+                stats.put(gatewayId, linkStats);
+            });
+        }
+        return stats;
     }
 
     protected Runnable createDisconnectRunnable(String gatewayId, Session session) {
@@ -548,8 +659,25 @@ public class GatewayService extends RouteBuilder implements ContainerService, As
 
     protected void onGatewayEventReceived(String gatewayId, SharedEvent event) {
         GatewayConnector connector = gatewayConnectorMap.get(gatewayId);
-        if (connector != null) {
-            connector.onGatewayEvent(event);
+        if (connector == null) {
+            return;
         }
+
+        if (event instanceof GatewayBatchEvent) {
+            synchronized (gatewayBatcherMap) {
+                batchingGatewayIds.add(gatewayId);
+            }
+            try {
+                // Process the events of the batch in order, the same as when they are received one at a time
+                for (SharedEvent batchedEvent : GatewayEventBatcher.decode((GatewayBatchEvent) event)) {
+                    connector.onGatewayEvent(batchedEvent);
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to decode event batch from gateway: Gateway ID=" + gatewayId, e);
+            }
+            return;
+        }
+
+        connector.onGatewayEvent(event);
     }
 }
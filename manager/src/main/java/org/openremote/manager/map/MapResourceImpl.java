@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.map;
 
+import org.apache.commons.io.IOUtils;
 import org.openremote.container.web.WebResource;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.model.http.RequestParams;
@@ -26,10 +27,16 @@ import org.openremote.model.map.MapResource;
 import org.openremote.model.value.ObjectValue;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 public class MapResourceImpl extends WebResource implements MapResource {
 
+    protected static final String TILE_CACHE_CONTROL = "public, max-age=31536000, immutable";
     protected final MapService mapService;
     protected final ManagerIdentityService identityService;
 
@@ -54,13 +61,39 @@ public class MapResourceImpl extends WebResource implements MapResource {
         );
     }
 
+    /**
+     * Tiles are written as they are stored; gzip compressed tiles are sent with a gzip content encoding unless the
+     * client doesn't accept it. The tile URLs include the version of the tile data so the tiles never change.
+     */
     @Override
     public byte[] getTile(int zoom, int column, int row) {
-        byte[] tile = mapService.getMapTile(zoom, column, row);
-        if (tile != null) {
-            return tile;
-        } else {
+        MapTile tile = mapService.getTile(zoom, column, row);
+        if (tile == null) {
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
+
+        response.setHeader(HttpHeaders.ETAG, tile.getEtag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, TILE_CACHE_CONTROL);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (tile.getEtag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            throw new WebApplicationException(Response.notModified().build());
+        }
+
+        if (!tile.isGzipped()) {
+            return tile.getData();
+        }
+
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return tile.getData();
+        }
+
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(tile.getData()))) {
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+        }
     }
 }
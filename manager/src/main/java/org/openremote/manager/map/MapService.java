@@ -37,9 +37,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -64,9 +65,15 @@ public class MapService implements ContainerService {
     public static final String TILESERVER_TILE_PATH = "/styles/standard";
     public static final String MAP_TILESERVER_REQUEST_TIMEOUT = "MAP_TILESERVER_REQUEST_TIMEOUT";
     public static final int MAP_TILESERVER_REQUEST_TIMEOUT_DEFAULT = 10000;
+    public static final String MAP_TILES_CONNECTIONS = "MAP_TILES_CONNECTIONS";
+    public static final int MAP_TILES_CONNECTIONS_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    public static final String MAP_TILES_CACHE_MB = "MAP_TILES_CACHE_MB";
+    public static final int MAP_TILES_CACHE_MB_DEFAULT = 64;
     private static final Logger LOG = Logger.getLogger(MapService.class.getName());
-    // Shared SQL connection is fine concurrently in SQLite
-    protected Connection connection;
+    protected MbTilesReader tilesReader;
+    protected MapTileCache tileCache;
+    protected String tilesVersion;
+    protected int tilesConnections;
     protected Path mapTilesPath;
     protected Path mapSettingsPath;
     protected Metadata metadata;
@@ -144,6 +151,15 @@ public class MapService implements ContainerService {
         return ContainerService.DEFAULT_PRIORITY;
     }
 
+    /**
+     * Opening the tile data doesn't depend on other services, the map service only adds its resource to the web
+     * service which is initialized last.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
 
@@ -154,6 +170,9 @@ public class MapService implements ContainerService {
             );
         }
 
+        tilesConnections = Math.max(getInteger(container.getConfig(), MAP_TILES_CONNECTIONS, MAP_TILES_CONNECTIONS_DEFAULT), 1);
+        tileCache = new MapTileCache(Math.max(getInteger(container.getConfig(), MAP_TILES_CACHE_MB, MAP_TILES_CACHE_MB_DEFAULT), 0) * 1024L * 1024L);
+
         mapSettingsPath = Paths.get(getString(container.getConfig(), MAP_SETTINGS_PATH, MAP_SETTINGS_PATH_DEFAULT));
         if (!Files.isRegularFile(mapSettingsPath)) {
             throw new IllegalStateException(
@@ -201,10 +220,11 @@ public class MapService implements ContainerService {
     @Override
     public void start(Container container) throws Exception {
         LOG.info("Starting map service with tile data: " + mapTilesPath.toAbsolutePath());
-        Class.forName(org.sqlite.JDBC.class.getName());
-        connection = DriverManager.getConnection("jdbc:sqlite:" + mapTilesPath.toAbsolutePath());
+        tilesReader = new MbTilesReader(mapTilesPath, tilesConnections);
+        // Changes when the tile data is replaced, so tiles can be cached by clients for as long as the URL is the same
+        tilesVersion = Long.toHexString(Files.getLastModifiedTime(mapTilesPath).toMillis()) + "-" + Long.toHexString(Files.size(mapTilesPath));
 
-        metadata = getMetadata(connection);
+        metadata = tilesReader.withConnection(MapService::getMetadata);
         if (metadata.isValid()) {
             mapConfig = loadMapSettingsJson(mapSettingsPath);
             if (!mapConfig.hasKeys()) {
@@ -246,8 +266,11 @@ public class MapService implements ContainerService {
 
     @Override
     public void stop(Container container) throws Exception {
-        if (connection != null) {
-            connection.close();
+        if (tilesReader != null) {
+            tilesReader.close();
+        }
+        if (tileCache != null) {
+            tileCache.clear();
         }
     }
 
@@ -292,7 +315,7 @@ public class MapService implements ContainerService {
                             }));
 
                     ArrayValue tilesArray = Values.createArray();
-                    String tileUrl = baseUriBuilder.clone().replacePath(API_PATH).path(realm).path("map/tile").build().toString() + "/{z}/{x}/{y}";
+                    String tileUrl = baseUriBuilder.clone().replacePath(API_PATH).path(realm).path("map/tile").build().toString() + "/{z}/{x}/{y}?v=" + tilesVersion;
                     tilesArray.set(0, tileUrl);
                     vectorTilesObj.put("tiles", tilesArray);
 
@@ -358,35 +381,43 @@ public class MapService implements ContainerService {
     }
 
     public byte[] getMapTile(int zoom, int column, int row) {
-        // Flip y, oh why
-        row = new Double(Math.pow(2, zoom) - 1 - row).intValue();
+        MapTile tile = getTile(zoom, column, row);
+        return tile != null ? tile.getData() : null;
+    }
 
-        PreparedStatement query = null;
-        ResultSet result = null;
-        try {
-            query = connection.prepareStatement(
-                    "select TILE_DATA from TILES where ZOOM_LEVEL = ? and TILE_COLUMN = ? and TILE_ROW = ?"
-            );
+    /**
+     * @return The tile as it is stored, from the cache of recently used tiles if possible; <code>null</code> if there
+     * is no such tile.
+     */
+    public MapTile getTile(int zoom, int column, int row) {
+        if (!MbTilesReader.isValidTile(zoom, column, row)) {
+            return null;
+        }
 
-            int index = 0;
-            query.setInt(++index, zoom);
-            query.setInt(++index, column);
-            query.setInt(++index, row);
+        long key = MapTileCache.getKey(zoom, column, row);
+        MapTile tile = tileCache.get(key);
 
-            result = query.executeQuery();
+        if (tile != null) {
+            return tile;
+        }
 
-            if (result.next()) {
-                return result.getBytes(1);
-            } else {
+        try {
+            byte[] data = tilesReader.getTile(zoom, column, row);
+            if (data == null) {
                 return null;
             }
+            tile = new MapTile(data, "\"" + tilesVersion + "-" + zoom + "-" + column + "-" + row + "\"");
+            tileCache.put(key, tile);
+            return tile;
         } catch (Exception ex) {
             throw new RuntimeException(ex);
-        } finally {
-            closeQuietly(query, result);
         }
     }
 
+    public ObjectValue getTileCacheStats() {
+        return tileCache.getStats();
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.map;
+
+/**
+ * A tile of the mbtiles file as it is stored; vector tiles are usually stored gzip compressed and can be sent with a
+ * gzip content encoding as they are.
+ */
+public class MapTile {
+
+    protected final byte[] data;
+    protected final String etag;
+    protected final boolean gzipped;
+
+    public MapTile(byte[] data, String etag) {
+        this.data = data;
+        this.etag = etag;
+        this.gzipped = data.length > 1 && data[0] == (byte) 0x1f && data[1] == (byte) 0x8b;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public boolean isGzipped() {
+        return gzipped;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "etag='" + etag + '\'' +
+            ", gzipped=" + gzipped +
+            ", bytes=" + data.length +
+            '}';
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.map;
+
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used map tiles up to a maximum total size of tile data.
+ */
+public class MapTileCache {
+
+    protected final long maxBytes;
+    protected final LinkedHashMap<Long, MapTile> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    protected long bytes;
+    protected long hits;
+    protected long misses;
+    protected long evictions;
+
+    public MapTileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static long getKey(int zoom, int column, int row) {
+        // Column and row are less than 2^zoom and zoom is at most 29 (see MbTilesReader.MAX_ZOOM)
+        return ((long) zoom << 58) | ((long) column << 29) | row;
+    }
+
+    synchronized public MapTile get(long key) {
+        MapTile tile = tiles.get(key);
+        if (tile != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return tile;
+    }
+
+    synchronized public void put(long key, MapTile tile) {
+        if (tile.getData().length > maxBytes) {
+            return;
+        }
+
+        MapTile previous = tiles.put(key, tile);
+        if (previous != null) {
+            bytes -= previous.getData().length;
+        }
+        bytes += tile.getData().length;
+
+        Iterator<Map.Entry<Long, MapTile>> iterator = tiles.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().getData().length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    synchronized public void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    synchronized public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("tiles", tiles.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.map;
+
+import org.sqlite.SQLiteConfig;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Reads tiles from an mbtiles file with a pool of read-only SQLite connections, each with its tile query prepared
+ * once, so that concurrent tile requests don't queue up on one connection.
+ */
+public class MbTilesReader implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(MbTilesReader.class.getName());
+    public static final int MAX_ZOOM = 29;
+
+    protected static final class PooledConnection {
+        protected final Connection connection;
+        protected final PreparedStatement tileQuery;
+
+        protected PooledConnection(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.tileQuery = connection.prepareStatement(
+                "select TILE_DATA from TILES where ZOOM_LEVEL = ? and TILE_COLUMN = ? and TILE_ROW = ?"
+            );
+        }
+
+        protected void close() {
+            try {
+                tileQuery.close();
+                connection.close();
+            } catch (Exception ex) {
+                LOG.warning("Error closing mbtiles connection: " + ex);
+            }
+        }
+    }
+
+    protected final Path path;
+    protected final List<PooledConnection> connections = new ArrayList<>();
+    protected final BlockingQueue<PooledConnection> pool;
+
+    public MbTilesReader(Path path, int poolSize) throws SQLException {
+        this.path = path;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+
+        try {
+            Class.forName(org.sqlite.JDBC.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                PooledConnection connection = new PooledConnection(
+                    DriverManager.getConnection("jdbc:sqlite:" + path.toAbsolutePath(), config.toProperties())
+                );
+                connections.add(connection);
+                pool.add(connection);
+            }
+        } catch (SQLException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Run the callback with a connection of the pool, waiting for one to be available.
+     */
+    public <T> T withConnection(SqlFunction<Connection, T> callback) throws SQLException {
+        PooledConnection connection = borrow();
+        try {
+            return callback.apply(connection.connection);
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    /**
+     * @param row The row in the XYZ scheme used by map clients, it is flipped to the TMS scheme of mbtiles.
+     * @return The tile data as it is stored, <code>null</code> if there is no such tile.
+     */
+    public byte[] getTile(int zoom, int column, int row) throws SQLException {
+        if (!isValidTile(zoom, column, row)) {
+            return null;
+        }
+
+        int tmsRow = (1 << zoom) - 1 - row;
+        PooledConnection connection = borrow();
+
+        try {
+            PreparedStatement query = connection.tileQuery;
+            query.setInt(1, zoom);
+            query.setInt(2, column);
+            query.setInt(3, tmsRow);
+
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? result.getBytes(1) : null;
+            }
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    public static boolean isValidTile(int zoom, int column, int row) {
+        return zoom >= 0 && zoom <= MAX_ZOOM && column >= 0 && column < (1 << zoom) && row >= 0 && row < (1 << zoom);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() {
+        connections.forEach(PooledConnection::close);
+        connections.clear();
+        pool.clear();
+    }
+
+    protected PooledConnection borrow() throws SQLException {
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted whilst waiting for an mbtiles connection", e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface SqlFunction<T, R> {
+        R apply(T t) throws SQLException;
+    }
+}
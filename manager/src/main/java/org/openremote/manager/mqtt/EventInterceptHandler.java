@@ -21,6 +21,7 @@ package org.openremote.manager.mqtt;
 
 import io.moquette.interception.AbstractInterceptHandler;
 import io.moquette.interception.messages.*;
+import io.netty.buffer.ByteBufInputStream;
 import org.keycloak.adapters.rotation.AdapterTokenVerifier;
 import org.keycloak.common.VerificationException;
 import org.keycloak.exceptions.TokenNotActiveException;
@@ -43,6 +44,7 @@ import org.openremote.model.event.shared.EventSubscription;
 import org.openremote.model.event.shared.RenewEventSubscriptions;
 import org.openremote.model.value.Values;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -198,12 +200,16 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
             }
             if (attributeRef == null) {
                 if (connection.assetSubscriptions.containsKey(assetId)) {
-                    String payloadContent = msg.getPayload().toString(Charset.defaultCharset());
-                    Values.parse(payloadContent).flatMap(Values::getObject).ifPresent(objectValue -> {
-                        Map<String, Object> headers = prepareHeaders(connection);
-                        AttributeEvent attributeEvent = new AttributeEvent(assetId, objectValue.keys()[0], objectValue.get(objectValue.keys()[0]).orElse(null));
-                        messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, attributeEvent, headers);
-                    });
+                    // Parse the UTF-8 payload directly, a duplicate leaves the reader index of the payload untouched
+                    try (ByteBufInputStream payload = new ByteBufInputStream(msg.getPayload().duplicate())) {
+                        Values.parse(payload).flatMap(Values::getObject).ifPresent(objectValue -> {
+                            Map<String, Object> headers = prepareHeaders(connection);
+                            AttributeEvent attributeEvent = new AttributeEvent(assetId, objectValue.keys()[0], objectValue.get(objectValue.keys()[0]).orElse(null));
+                            messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, attributeEvent, headers);
+                        });
+                    } catch (IOException e) {
+                        LOG.log(Level.WARNING, "Couldn't read MQTT payload of client: " + msg.getClientID(), e);
+                    }
                 }
             } else {
                 if (connection.assetAttributeSubscriptions.containsKey(attributeRef)) {
@@ -25,6 +25,7 @@ import io.moquette.broker.Server;
 import io.moquette.broker.config.MemoryConfig;
 import io.moquette.interception.InterceptHandler;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.*;
 import org.apache.camel.builder.RouteBuilder;
@@ -37,9 +38,9 @@ import org.openremote.manager.security.ManagerKeycloakIdentityProvider;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.event.TriggeredEventSubscription;
 import org.openremote.model.value.ObjectValue;
-import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.logging.Level;
@@ -162,7 +163,17 @@ public class MqttBrokerService implements ContainerService {
     }
 
     public void sendAttributeValue(String clientId, AttributeEvent attributeEvent) {
-        ByteBuf payload = Unpooled.copiedBuffer(attributeEvent.getValue().map(Value::toString).orElse(""), Charset.defaultCharset());
+        // Write the JSON value directly into the payload buffer
+        ByteBuf payload = Unpooled.buffer();
+        if (attributeEvent.getValue().isPresent()) {
+            try (ByteBufOutputStream outputStream = new ByteBufOutputStream(payload)) {
+                Values.write(attributeEvent.getValue().get(), outputStream);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Couldn't send attribute value to MQTT client", e);
+                payload.release();
+                return;
+            }
+        }
 
         MqttPublishMessage publishMessage = MqttMessageBuilders.publish()
                 .qos(MqttQoS.AT_MOST_ONCE)
@@ -43,6 +43,7 @@ import org.simplejavamail.mailer.Mailer;
 import org.simplejavamail.mailer.MailerBuilder;
 import org.simplejavamail.mailer.config.TransportStrategy;
 
+import javax.mail.SendFailedException;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -309,10 +310,24 @@ public class EmailNotificationHandler implements NotificationHandler {
             return NotificationSendResult.success();
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Email send failed: " + e.getMessage(), e);
-            return NotificationSendResult.failure("Email send failed: " + e.getMessage());
+            return NotificationSendResult.failure("Email send failed: " + e.getMessage(), isRetryable(e));
         }
     }
 
+    /**
+     * Invalid addresses won't be accepted when sending again, anything else (e.g. the server not being available) can
+     * be temporary.
+     */
+    protected static boolean isRetryable(Throwable throwable) {
+        while (throwable != null) {
+            if (throwable instanceof SendFailedException) {
+                return false;
+            }
+            throwable = throwable.getCause();
+        }
+        return true;
+    }
+
     protected EmailNotificationMessage.Recipient getUserRecipient(String userId) {
         if (userEmails.containsKey(userId)) {
             return userEmails.get(userId);
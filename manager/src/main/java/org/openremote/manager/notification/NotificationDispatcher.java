@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.notification;
+
+import org.openremote.container.Container;
+import org.openremote.container.concurrent.ContainerExecutor;
+import org.openremote.container.concurrent.ContainerThreadFactory;
+import org.openremote.model.notification.AbstractNotificationMessage;
+import org.openremote.model.notification.Notification;
+import org.openremote.model.notification.NotificationSendResult;
+import org.openremote.model.util.TextUtil;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.container.concurrent.ContainerThreads.DEFAULT_REJECTED_EXECUTION_HANDLER;
+import static org.openremote.container.util.MapAccess.getInteger;
+
+/**
+ * Delivers notifications that have already been stored through their {@link NotificationHandler} on a pool of worker
+ * threads, so no database connection is held whilst waiting for the transport. The targets are split into batches
+ * which are passed to {@link NotificationHandler#sendMessages}; targets that fail with a
+ * {@link NotificationSendResult#isRetryable} result are sent again with an exponential backoff until the retries are
+ * used up. If the handler throws or doesn't return a result for a target, it isn't known whether the target has been
+ * delivered to, so it isn't sent again to avoid duplicates. The errors of the targets that couldn't be delivered are
+ * passed to the error consumer, which is called from a worker thread.
+ */
+public class NotificationDispatcher {
+
+    private static final Logger LOG = Logger.getLogger(NotificationDispatcher.class.getName());
+    public static final String NOTIFICATION_DISPATCH_THREADS = "NOTIFICATION_DISPATCH_THREADS";
+    public static final int NOTIFICATION_DISPATCH_THREADS_DEFAULT = 4;
+    public static final String NOTIFICATION_DISPATCH_BATCH_SIZE = "NOTIFICATION_DISPATCH_BATCH_SIZE";
+    public static final int NOTIFICATION_DISPATCH_BATCH_SIZE_DEFAULT = 100;
+    public static final String NOTIFICATION_DISPATCH_RETRIES = "NOTIFICATION_DISPATCH_RETRIES";
+    public static final int NOTIFICATION_DISPATCH_RETRIES_DEFAULT = 3;
+    public static final String NOTIFICATION_DISPATCH_RETRY_DELAY_MILLIS = "NOTIFICATION_DISPATCH_RETRY_DELAY_MILLIS";
+    public static final int NOTIFICATION_DISPATCH_RETRY_DELAY_MILLIS_DEFAULT = 1000;
+
+    protected final ExecutorService executor;
+    protected final ScheduledExecutorService scheduler;
+    protected final int batchSize;
+    protected final int retries;
+    protected final long retryDelayMillis;
+    protected final Consumer<Map<Long, String>> errorConsumer;
+    protected final AtomicInteger pending = new AtomicInteger();
+    protected final AtomicLong batches = new AtomicLong();
+    protected final AtomicLong sent = new AtomicLong();
+    protected final AtomicLong failed = new AtomicLong();
+    protected final AtomicLong retried = new AtomicLong();
+    protected final AtomicLong sendMillis = new AtomicLong();
+
+    protected class Batch {
+        protected final NotificationHandler handler;
+        protected final Notification.Source source;
+        protected final String sourceId;
+        protected final AbstractNotificationMessage message;
+        protected final CompletableFuture<Void> future = new CompletableFuture<>();
+        protected final Map<Long, String> errors = new HashMap<>();
+        protected List<Long> ids;
+        protected List<Notification.Target> targets;
+        protected int attempt;
+
+        protected Batch(NotificationHandler handler, Notification.Source source, String sourceId, AbstractNotificationMessage message, List<Long> ids, List<Notification.Target> targets) {
+            this.handler = handler;
+            this.source = source;
+            this.sourceId = sourceId;
+            this.message = message;
+            this.ids = ids;
+            this.targets = targets;
+        }
+    }
+
+    public NotificationDispatcher(ScheduledExecutorService scheduler, int threads, int batchSize, int retries, long retryDelayMillis, Consumer<Map<Long, String>> errorConsumer) {
+        this.executor = new ContainerExecutor(
+            new ContainerThreadFactory("Notification dispatch"),
+            DEFAULT_REJECTED_EXECUTION_HANDLER,
+            threads,
+            threads,
+            60L,
+            new LinkedBlockingQueue<>());
+        this.scheduler = scheduler;
+        this.batchSize = batchSize;
+        this.retries = retries;
+        this.retryDelayMillis = retryDelayMillis;
+        this.errorConsumer = errorConsumer;
+    }
+
+    public static NotificationDispatcher create(Map<String, String> config, ScheduledExecutorService scheduler, Consumer<Map<Long, String>> errorConsumer) {
+        return new NotificationDispatcher(
+            scheduler,
+            Math.max(getInteger(config, NOTIFICATION_DISPATCH_THREADS, NOTIFICATION_DISPATCH_THREADS_DEFAULT), 1),
+            Math.max(getInteger(config, NOTIFICATION_DISPATCH_BATCH_SIZE, NOTIFICATION_DISPATCH_BATCH_SIZE_DEFAULT), 1),
+            Math.max(getInteger(config, NOTIFICATION_DISPATCH_RETRIES, NOTIFICATION_DISPATCH_RETRIES_DEFAULT), 0),
+            Math.max(getInteger(config, NOTIFICATION_DISPATCH_RETRY_DELAY_MILLIS, NOTIFICATION_DISPATCH_RETRY_DELAY_MILLIS_DEFAULT), 0),
+            errorConsumer);
+    }
+
+    /**
+     * Deliver the message to the targets, the IDs are the stored notification of each target.
+     *
+     * @return Completes when all targets have been delivered or have failed.
+     */
+    public CompletableFuture<Void> dispatch(NotificationHandler handler, Notification.Source source, String sourceId, List<Long> ids, List<Notification.Target> targets, AbstractNotificationMessage message) {
+        int batchCount = (targets.size() + batchSize - 1) / batchSize;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[batchCount];
+        pending.addAndGet(targets.size());
+
+        for (int i = 0; i < batchCount; i++) {
+            int from = i * batchSize;
+            int to = Math.min(from + batchSize, targets.size());
+            // Handlers can modify the message whilst sending so batches that are sent at the same time need their own
+            Batch batch = new Batch(
+                handler,
+                source,
+                sourceId,
+                batchCount > 1 ? copyMessage(message) : message,
+                new ArrayList<>(ids.subList(from, to)),
+                new ArrayList<>(targets.subList(from, to)));
+            futures[i] = batch.future;
+            executor.execute(() -> send(batch));
+        }
+
+        return CompletableFuture.allOf(futures);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        long batchCount = batches.get();
+        stats.put("pending", pending.get());
+        stats.put("batches", batchCount);
+        stats.put("sent", sent.get());
+        stats.put("failed", failed.get());
+        stats.put("retried", retried.get());
+        stats.put("averageBatchMillis", batchCount > 0 ? (double) sendMillis.get() / batchCount : 0);
+        return stats;
+    }
+
+    protected void send(Batch batch) {
+        List<NotificationSendResult> results;
+        long start = System.currentTimeMillis();
+
+        try {
+            results = batch.handler.sendMessages(batch.ids, batch.source, batch.sourceId, batch.targets, batch.message);
+        } catch (Exception e) {
+            // Some targets might have been delivered to before the exception, handlers should return a result per target
+            LOG.log(Level.WARNING, "Notification handler threw an exception whilst sending notifications: " + batch.ids, e);
+            String error = TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage();
+            results = Collections.nCopies(batch.targets.size(), NotificationSendResult.failure(error));
+        }
+
+        batches.incrementAndGet();
+        sendMillis.addAndGet(System.currentTimeMillis() - start);
+
+        List<Long> retryIds = new ArrayList<>();
+        List<Notification.Target> retryTargets = new ArrayList<>();
+
+        for (int i = 0; i < batch.targets.size(); i++) {
+            long id = batch.ids.get(i);
+            Notification.Target target = batch.targets.get(i);
+            NotificationSendResult result = i < results.size() ? results.get(i) : NotificationSendResult.failure("No result");
+
+            if (result.isSuccess()) {
+                LOG.fine("Notification sent '" + id + "': " + target);
+                sent.incrementAndGet();
+                pending.decrementAndGet();
+            } else if (result.isRetryable() && batch.attempt < retries) {
+                retryIds.add(id);
+                retryTargets.add(target);
+            } else {
+                LOG.warning("Notification failed '" + id + "': " + target + ", reason=" + result.getMessage());
+                batch.errors.put(id, TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage());
+                failed.incrementAndGet();
+                pending.decrementAndGet();
+            }
+        }
+
+        if (!retryIds.isEmpty()) {
+            long delay = retryDelayMillis << batch.attempt;
+            batch.attempt++;
+            batch.ids = retryIds;
+            batch.targets = retryTargets;
+            retried.addAndGet(retryIds.size());
+            LOG.info("Retrying " + retryIds.size() + " notification(s) in " + delay + "ms, attempt " + batch.attempt + " of " + retries);
+            try {
+                scheduler.schedule(() -> executor.execute(() -> send(batch)), delay, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                retryIds.forEach(id -> batch.errors.put(id, "Retry cancelled"));
+                failed.addAndGet(retryIds.size());
+                pending.addAndGet(-retryIds.size());
+            }
+        }
+
+        if (!batch.errors.isEmpty()) {
+            try {
+                errorConsumer.accept(batch.errors);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to store notification errors: " + batch.errors.keySet(), e);
+            }
+        }
+        batch.future.complete(null);
+    }
+
+    protected AbstractNotificationMessage copyMessage(AbstractNotificationMessage message) {
+        try {
+            return Container.JSON.readValue(Container.JSON.writeValueAsString(message), AbstractNotificationMessage.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unable to copy notification message", e);
+        }
+    }
+}
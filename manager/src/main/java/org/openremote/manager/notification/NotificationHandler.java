@@ -24,7 +24,9 @@ import org.openremote.model.asset.AssetType;
 import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.Notification;
 import org.openremote.model.notification.NotificationSendResult;
+import org.openremote.model.util.TextUtil;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -76,4 +78,22 @@ public interface NotificationHandler extends ContainerService {
      * by calling {@link NotificationService#setNotificationDelivered} or {@link NotificationService#setNotificationAcknowleged}
      */
     NotificationSendResult sendMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message);
+
+    /**
+     * Send the specified {@link AbstractNotificationMessage} to several targets, the IDs and targets are in the same
+     * order and so must be the returned results. This is called from a worker thread outside of any transaction;
+     * handlers should override it when the transport can send several messages at once, by default the message is
+     * sent to each target in turn and an exception only fails the target it was thrown for.
+     */
+    default List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, AbstractNotificationMessage message) {
+        List<NotificationSendResult> results = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                results.add(sendMessage(ids.get(i), source, sourceId, targets.get(i), message));
+            } catch (Exception e) {
+                results.add(NotificationSendResult.failure(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage()));
+            }
+        }
+        return results;
+    }
 }
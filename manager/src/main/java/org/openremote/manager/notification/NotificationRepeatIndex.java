@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.notification;
+
+import org.openremote.model.notification.Notification;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The time each named notification was last sent from a source to a target, used to decide if a notification with a
+ * repeat interval or frequency can be sent again without querying the sent notifications. The index is loaded from the
+ * most recently sent notifications when the service starts and is updated whenever sent notifications are stored or
+ * removed.
+ * <p>
+ * The index holds at most the maximum entries, the least recently used entries are evicted. Once it doesn't hold all
+ * sent notifications, targets which aren't in the index are looked up with the loader and the result is added to the
+ * index, including that a notification hasn't been sent to a target.
+ */
+public class NotificationRepeatIndex {
+
+    protected static final class Key {
+        protected final String name;
+        protected final Notification.Source source;
+        protected final String sourceId;
+        protected final Notification.TargetType targetType;
+        protected final String targetId;
+        protected final int hashCode;
+
+        protected Key(String name, Notification.Source source, String sourceId, Notification.TargetType targetType, String targetId) {
+            this.name = name;
+            this.source = source;
+            this.sourceId = sourceId;
+            this.targetType = targetType;
+            this.targetId = targetId;
+            this.hashCode = Objects.hash(name, source, sourceId, targetType, targetId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(name, key.name) &&
+                source == key.source &&
+                Objects.equals(sourceId, key.sourceId) &&
+                targetType == key.targetType &&
+                Objects.equals(targetId, key.targetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Marks an entry of a notification which hasn't been sent to the target, any sent timestamp is greater.
+     */
+    protected static final long NOT_SENT = Long.MIN_VALUE;
+
+    protected final int maxEntries;
+    protected final LinkedHashMap<Key, Long> lastSentMap;
+    protected boolean complete = true;
+    protected long lookups;
+    protected long evictions;
+
+    public NotificationRepeatIndex(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.lastSentMap = new LinkedHashMap<Key, Long>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                if (size() > NotificationRepeatIndex.this.maxEntries) {
+                    evictions++;
+                    complete = false;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Replace the contents of the index.
+     *
+     * @param rows     Name, source, source ID, target type, target ID and the last sent {@link Date} of each entry,
+     *                 the most recently sent first.
+     * @param complete If the rows are all sent notifications, otherwise the rows must be at least the maximum entries.
+     */
+    synchronized public void load(List<Object[]> rows, boolean complete) {
+        lastSentMap.clear();
+        // Put the least recently sent first, so they are evicted first
+        for (int i = Math.min(rows.size(), maxEntries) - 1; i >= 0; i--) {
+            Object[] row = rows.get(i);
+            put(new Key((String) row[0], (Notification.Source) row[1], (String) row[2], (Notification.TargetType) row[3], (String) row[4]), ((Date) row[5]).getTime());
+        }
+        this.complete = complete && rows.size() <= maxEntries;
+    }
+
+    /**
+     * Record that the named notification was sent to the targets.
+     */
+    synchronized public void sent(String name, Notification.Source source, String sourceId, List<Notification.Target> targets, long timestamp) {
+        if (name == null) {
+            return;
+        }
+        for (Notification.Target target : targets) {
+            put(new Key(name, source, sourceId, target.getType(), target.getId()), timestamp);
+        }
+    }
+
+    /**
+     * Record that the sent notifications of the named notification to the target were removed.
+     *
+     * @param lastSent The time the remaining sent notifications were last sent, <code>null</code> if none remain.
+     */
+    synchronized public void removed(String name, Notification.Source source, String sourceId, Notification.TargetType targetType, String targetId, Long lastSent) {
+        if (name == null) {
+            return;
+        }
+        lastSentMap.put(new Key(name, source, sourceId, targetType, targetId), lastSent != null ? lastSent : NOT_SENT);
+    }
+
+    /**
+     * @param loader Called with the targets which aren't in the index, if the index doesn't hold all sent
+     *               notifications. Returns the target type, target ID and the last sent {@link Date} of the targets the
+     *               notification has been sent to.
+     * @return The time the named notification was last sent to each target, in the order of the targets;
+     * <code>null</code> if it hasn't been sent to the target.
+     */
+    public Long[] getLastSent(String name, Notification.Source source, String sourceId, List<Notification.Target> targets,
+                              Function<List<Notification.Target>, List<Object[]>> loader) {
+        Long[] lastSent = new Long[targets.size()];
+        List<Notification.Target> missingTargets = new ArrayList<>();
+
+        synchronized (this) {
+            for (int i = 0; i < targets.size(); i++) {
+                Notification.Target target = targets.get(i);
+                Long timestamp = lastSentMap.get(new Key(name, source, sourceId, target.getType(), target.getId()));
+                if (timestamp != null) {
+                    lastSent[i] = timestamp != NOT_SENT ? timestamp : null;
+                } else if (!complete) {
+                    missingTargets.add(target);
+                }
+            }
+            if (missingTargets.isEmpty()) {
+                return lastSent;
+            }
+            lookups++;
+        }
+
+        // Query outside of the lock, a notification sent meanwhile is merged with the result
+        Map<Key, Long> loaded = new HashMap<>();
+        for (Notification.Target target : missingTargets) {
+            loaded.put(new Key(name, source, sourceId, target.getType(), target.getId()), NOT_SENT);
+        }
+        for (Object[] row : loader.apply(missingTargets)) {
+            loaded.put(new Key(name, source, sourceId, (Notification.TargetType) row[0], (String) row[1]), ((Date) row[2]).getTime());
+        }
+
+        synchronized (this) {
+            loaded.forEach(this::put);
+            for (int i = 0; i < targets.size(); i++) {
+                Notification.Target target = targets.get(i);
+                if (lastSent[i] == null) {
+                    Long timestamp = loaded.get(new Key(name, source, sourceId, target.getType(), target.getId()));
+                    lastSent[i] = timestamp != null && timestamp != NOT_SENT ? timestamp : null;
+                }
+            }
+        }
+        return lastSent;
+    }
+
+    synchronized public int size() {
+        return lastSentMap.size();
+    }
+
+    synchronized public boolean isComplete() {
+        return complete;
+    }
+
+    synchronized public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("entries", lastSentMap.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("complete", complete);
+        stats.put("lookups", lookups);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    protected void put(Key key, long timestamp) {
+        lastSentMap.merge(key, timestamp, Math::max);
+    }
+}
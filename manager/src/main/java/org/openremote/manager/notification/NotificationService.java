@@ -29,7 +29,9 @@ import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.AuthContext;
 import org.openremote.container.timer.TimerService;
+import org.hibernate.Session;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.concurrent.ManagerExecutorService;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Constants;
@@ -40,12 +42,16 @@ import org.openremote.model.notification.RepeatFrequency;
 import org.openremote.model.notification.SentNotification;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.TimeUtil;
+import org.openremote.model.value.ObjectValue;
 
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -53,6 +59,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static java.time.temporal.ChronoUnit.*;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.notification.NotificationProcessingException.Reason.*;
 import static org.openremote.model.notification.Notification.HEADER_SOURCE;
 import static org.openremote.model.notification.Notification.Source.*;
@@ -62,12 +69,18 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
     public static final String NOTIFICATION_QUEUE = "seda://NotificationQueue?waitForTaskToComplete=IfReplyExpected&timeout=10000&purgeWhenStopping=true&discardIfNoConsumers=false&size=25000";
     private static final Logger LOG = Logger.getLogger(NotificationService.class.getName());
+    protected static final int PERSIST_BATCH_SIZE = 50;
+    protected static final long DELIVERY_WAIT_MILLIS = 9000;
+    public static final String NOTIFICATION_REPEAT_INDEX_MAX_ENTRIES = "NOTIFICATION_REPEAT_INDEX_MAX_ENTRIES";
+    public static final int NOTIFICATION_REPEAT_INDEX_MAX_ENTRIES_DEFAULT = 100000;
     protected TimerService timerService;
     protected PersistenceService persistenceService;
     protected AssetStorageService assetStorageService;
     protected ManagerIdentityService identityService;
     protected MessageBrokerService messageBrokerService;
     protected Map<String, NotificationHandler> notificationHandlerMap = new HashMap<>();
+    protected NotificationDispatcher dispatcher;
+    protected NotificationRepeatIndex repeatIndex;
 
     protected static Processor handleNotificationProcessingException(Logger logger) {
         return exchange -> {
@@ -114,6 +127,10 @@ public class NotificationService extends RouteBuilder implements ContainerServic
         this.assetStorageService = container.getService(AssetStorageService.class);
         this.identityService = container.getService(ManagerIdentityService.class);
         this.messageBrokerService = container.getService(MessageBrokerService.class);
+        this.repeatIndex = new NotificationRepeatIndex(
+            Math.max(getInteger(container.getConfig(), NOTIFICATION_REPEAT_INDEX_MAX_ENTRIES, NOTIFICATION_REPEAT_INDEX_MAX_ENTRIES_DEFAULT), 1)
+        );
+        this.dispatcher = NotificationDispatcher.create(container.getConfig(), container.getService(ManagerExecutorService.class), this::setNotificationErrors);
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
 
         container.getServices(NotificationHandler.class).forEach(notificationHandler ->
@@ -129,12 +146,14 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
     @Override
     public void start(Container container) throws Exception {
-
+        loadRepeatIndex();
     }
 
     @Override
     public void stop(Container container) throws Exception {
-
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
     }
 
     @Override
@@ -230,56 +249,26 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
                     // Filter targets based on repeat frequency
                     if (!TextUtil.isNullOrEmpty(notification.getName()) && (!TextUtil.isNullOrEmpty(notification.getRepeatInterval()) || notification.getRepeatFrequency() != null)) {
-                        mappedTargetsList = mappedTargetsList.stream()
-                            .filter(target -> okToSendNotification(source, sourceId.get(), target, notification))
-                            .collect(Collectors.toList());
+                        mappedTargetsList = getTargetsToSend(source, sourceId.get(), mappedTargetsList, notification);
+                    }
+
+                    if (mappedTargetsList.isEmpty()) {
+                        return;
                     }
 
-                    // Send message to each applicable target
-                    mappedTargetsList.forEach(
-                        target ->
-                            persistenceService.doTransaction(em -> {
-
-                                // commit the notification first to get the ID
-                                SentNotification sentNotification = new SentNotification()
-                                    .setName(notification.getName())
-                                    .setType(notification.getMessage().getType())
-                                    .setSource(source)
-                                    .setSourceId(sourceId.get())
-                                    .setTarget(target.getType())
-                                    .setTargetId(target.getId())
-                                    .setMessage(notification.getMessage().toValue())
-                                    .setSentOn(Date.from(timerService.getNow()));
-
-                                sentNotification = em.merge(sentNotification);
-                                long id = sentNotification.getId();
-
-                                try {
-                                    NotificationSendResult result = handler.sendMessage(
-                                        id,
-                                        source,
-                                        sourceId.get(),
-                                        target,
-                                        notification.getMessage());
-
-                                    if (result.isSuccess()) {
-                                        LOG.info("Notification sent '" + id + "': " + target);
-                                    } else {
-                                        LOG.warning("Notification failed '" + id + "': " + target + ", reason=" + result.getMessage());
-                                        sentNotification.setError(TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage());
-                                    }
-                                    // Merge the sent notification again with the message included just in case the handler modified the message
-                                    sentNotification.setMessage(notification.getMessage().toValue());
-                                    em.merge(sentNotification);
-                                } catch (Exception e) {
-                                    LOG.log(Level.SEVERE,
-                                        "Notification handler threw an exception whilst sending notification '" + id + "'",
-                                        e);
-                                    sentNotification.setError(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage());
-                                    em.merge(sentNotification);
-                                }
-                            })
-                    );
+                    // Store the notifications first to get the IDs, the message is sent to the targets outside of the transaction
+                    List<Notification.Target> targets = mappedTargetsList;
+                    List<Long> ids = persistSentNotifications(notification, source, sourceId.get(), targets);
+                    CompletableFuture<Void> delivery = dispatcher.dispatch(handler, source, sourceId.get(), ids, targets, notification.getMessage());
+
+                    // A client waiting for the reply gets it once the message has been sent to all targets
+                    if (exchange.getPattern().isOutCapable()) {
+                        try {
+                            delivery.get(DELIVERY_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException e) {
+                            LOG.info("Notification '" + notification.getName() + "' is still being sent to " + targets.size() + " target(s)");
+                        }
+                    }
                 })
                 .endDoTry()
                 .doCatch(NotificationProcessingException.class)
@@ -297,6 +286,99 @@ public class NotificationService extends RouteBuilder implements ContainerServic
         messageBrokerService.getProducerTemplate().sendBodyAndHeaders(NotificationService.NOTIFICATION_QUEUE, notification, headers);
     }
 
+    protected List<Long> persistSentNotifications(Notification notification, Notification.Source source, String sourceId, List<Notification.Target> targets) {
+        ObjectValue message = notification.getMessage().toValue();
+        Date sentOn = Date.from(timerService.getNow());
+
+        List<Long> sentIds = persistenceService.doReturningTransaction(em -> {
+            em.unwrap(Session.class).setJdbcBatchSize(PERSIST_BATCH_SIZE);
+            List<Long> ids = new ArrayList<>(targets.size());
+
+            for (int i = 0; i < targets.size(); i++) {
+                Notification.Target target = targets.get(i);
+                SentNotification sentNotification = new SentNotification()
+                    .setName(notification.getName())
+                    .setType(notification.getMessage().getType())
+                    .setSource(source)
+                    .setSourceId(sourceId)
+                    .setTarget(target.getType())
+                    .setTargetId(target.getId())
+                    .setMessage(message)
+                    .setSentOn(sentOn);
+
+                em.persist(sentNotification);
+                ids.add(sentNotification.getId());
+
+                if ((i + 1) % PERSIST_BATCH_SIZE == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            return ids;
+        });
+
+        repeatIndex.sent(notification.getName(), source, sourceId, targets, sentOn.getTime());
+        return sentIds;
+    }
+
+    /**
+     * Load the time each named notification was last sent to each target into the repeat index, the most recently sent
+     * up to the maximum entries of the index.
+     */
+    protected void loadRepeatIndex() {
+        int maxEntries = repeatIndex.maxEntries;
+        List<Object[]> rows = persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
+            "SELECT n.name, n.source, n.sourceId, n.target, n.targetId, max(n.sentOn) FROM SentNotification n WHERE n.name IS NOT NULL GROUP BY n.name, n.source, n.sourceId, n.target, n.targetId ORDER BY max(n.sentOn) DESC", Object[].class)
+            .setMaxResults(maxEntries + 1)
+            .getResultList());
+        repeatIndex.load(rows, rows.size() <= maxEntries);
+        LOG.fine("Loaded notification repeat index: entries=" + repeatIndex.size() + ", complete=" + repeatIndex.isComplete());
+    }
+
+    /**
+     * @return The target type, target ID and the last sent {@link Date} of the targets the named notification has
+     * been sent to, for the targets which aren't in the repeat index.
+     */
+    protected List<Object[]> getLastSent(String name, Notification.Source source, String sourceId, List<Notification.Target> targets) {
+        Map<Notification.TargetType, List<String>> targetIds = targets.stream().collect(
+            Collectors.groupingBy(Notification.Target::getType, Collectors.mapping(Notification.Target::getId, Collectors.toList()))
+        );
+
+        return persistenceService.doReturningTransaction(entityManager -> {
+            List<Object[]> rows = new ArrayList<>();
+            targetIds.forEach((targetType, ids) -> rows.addAll(entityManager.createQuery(
+                "SELECT n.target, n.targetId, max(n.sentOn) FROM SentNotification n WHERE n.name = :name AND n.source = :source AND n.sourceId = :sourceId AND n.target = :target AND n.targetId IN :targetIds GROUP BY n.target, n.targetId", Object[].class)
+                .setParameter("name", name)
+                .setParameter("source", source)
+                .setParameter("sourceId", sourceId)
+                .setParameter("target", targetType)
+                .setParameter("targetIds", ids)
+                .getResultList()));
+            return rows;
+        });
+    }
+
+    protected void setNotificationErrors(Map<Long, String> errors) {
+        // Group by error so there is one update per distinct error
+        Map<String, List<Long>> errorIds = errors.entrySet().stream()
+            .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+
+        persistenceService.doTransaction(entityManager ->
+            errorIds.forEach((error, ids) -> {
+                Query query = entityManager.createQuery("UPDATE SentNotification SET error=:error WHERE id IN :ids");
+                query.setParameter("error", error.length() > 4096 ? error.substring(0, 4096) : error);
+                query.setParameter("ids", ids);
+                query.executeUpdate();
+            }));
+    }
+
+    /**
+     * @return The delivery metrics of the notification workers.
+     */
+    public ObjectValue getDispatchStats() {
+        return dispatcher.getStats();
+    }
+
     public void setNotificationDelivered(long id) {
         setNotificationDelivered(id, timerService.getCurrentTimeMillis());
     }
@@ -343,11 +425,33 @@ public class NotificationService extends RouteBuilder implements ContainerServic
     }
 
     public void removeNotification(Long id) {
-        persistenceService.doTransaction(entityManager -> entityManager
+        persistenceService.doTransaction(entityManager -> {
+            SentNotification sentNotification = entityManager.find(SentNotification.class, id);
+            entityManager
                 .createQuery("delete SentNotification where id = :id")
                 .setParameter("id", id)
-                .executeUpdate()
-        );
+                .executeUpdate();
+
+            // Update the repeat index entry of the removed notification with the remaining sent notifications
+            if (sentNotification != null && sentNotification.getName() != null) {
+                Date lastSent = entityManager.createQuery(
+                    "SELECT max(n.sentOn) FROM SentNotification n WHERE n.name = :name AND n.source = :source AND n.sourceId = :sourceId AND n.target = :target AND n.targetId = :targetId", Date.class)
+                    .setParameter("name", sentNotification.getName())
+                    .setParameter("source", sentNotification.getSource())
+                    .setParameter("sourceId", sentNotification.getSourceId())
+                    .setParameter("target", sentNotification.getTarget())
+                    .setParameter("targetId", sentNotification.getTargetId())
+                    .getSingleResult();
+                repeatIndex.removed(
+                    sentNotification.getName(),
+                    sentNotification.getSource(),
+                    sentNotification.getSourceId(),
+                    sentNotification.getTarget(),
+                    sentNotification.getTargetId(),
+                    lastSent != null ? lastSent.getTime() : null
+                );
+            }
+        });
     }
 
     public void removeNotifications(List<Long> ids, List<String> types, Long fromTimestamp, Long toTimestamp, List<String> tenantIds, List<String> userIds, List<String> assetIds) throws IllegalArgumentException {
@@ -363,6 +467,7 @@ public class NotificationService extends RouteBuilder implements ContainerServic
                     .forEach(i -> query.setParameter(i + 1, parameters.get(i)));
             query.executeUpdate();
         });
+        loadRepeatIndex();
     }
 
     protected void processCriteria(StringBuilder builder, List<Object> parameters, List<Long> ids, List<String> types, Long fromTimestamp, Long toTimestamp, List<String> tenantIds, List<String> userIds, List<String> assetIds) {
@@ -550,24 +655,33 @@ public class NotificationService extends RouteBuilder implements ContainerServic
         });
     }
 
-    protected boolean okToSendNotification(Notification.Source source, String sourceId, Notification.Target target, Notification notification) {
+    /**
+     * @return The targets the notification can be sent to according to its repeat interval or frequency, answered from
+     * the repeat index in one pass over the targets.
+     */
+    protected List<Notification.Target> getTargetsToSend(Notification.Source source, String sourceId, List<Notification.Target> targets, Notification notification) {
 
         if (notification.getRepeatFrequency() == RepeatFrequency.ALWAYS) {
-            return true;
+            return targets;
         }
 
-        Date lastSend = persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
-                "SELECT n.sentOn FROM SentNotification n WHERE n.source =:source AND n.sourceId =:sourceId AND n.target =:target AND n.targetId =:targetId AND n.name =:name ORDER BY n.sentOn DESC", Date.class)
-                .setParameter("source", source)
-                .setParameter("sourceId", sourceId)
-                .setParameter("target", target.getType())
-                .setParameter("targetId", target.getId())
-                .setParameter("name", notification.getName())
-                .setMaxResults(1)
-                .getResultList()).stream().findFirst().orElse(null);
-
-        return lastSend == null ||
-                (notification.getRepeatFrequency() != RepeatFrequency.ONCE &&
-                        timerService.getNow().plusSeconds(1).isAfter(getRepeatAfterTimestamp(notification, lastSend.toInstant())));
+        Long[] lastSent = repeatIndex.getLastSent(notification.getName(), source, sourceId, targets,
+            missingTargets -> getLastSent(notification.getName(), source, sourceId, missingTargets));
+        Instant now = timerService.getNow().plusSeconds(1);
+        List<Notification.Target> targetsToSend = new ArrayList<>(targets.size());
+
+        for (int i = 0; i < targets.size(); i++) {
+            if (lastSent[i] == null ||
+                    (notification.getRepeatFrequency() != RepeatFrequency.ONCE &&
+                            now.isAfter(getRepeatAfterTimestamp(notification, Instant.ofEpochMilli(lastSent[i]))))) {
+                targetsToSend.add(targets.get(i));
+            }
+        }
+
+        return targetsToSend;
+    }
+
+    public ObjectValue getRepeatIndexStats() {
+        return repeatIndex.getStats();
     }
 }
\ No newline at end of file
@@ -337,7 +337,7 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
             return NotificationSendResult.success();
         } catch (FirebaseMessagingException e) {
             handleFcmException(e);
-            return NotificationSendResult.failure("FCM send failed: " + e.getErrorCode());
+            return NotificationSendResult.failure("FCM send failed: " + e.getErrorCode(), isRetryable(e));
         }
     }
 
@@ -472,11 +472,18 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         });
     }
 
+    /**
+     * Failures of the FCM service itself are temporary, the notification dispatcher sends these again with a backoff.
+     */
+    protected static boolean isRetryable(FirebaseMessagingException e) {
+        return "server-unavailable".equals(e.getErrorCode()) || "internal-error".equals(e.getErrorCode());
+    }
+
     protected void handleFcmException(FirebaseMessagingException e) {
 
         LOG.log(Level.WARNING, "FCM send failed: " + e.getErrorCode(), e);
 
-        // TODO: Implement backoff and blacklisting
+        // TODO: Implement blacklisting
         switch (e.getErrorCode()) {
 
             case "invalid-argument":
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.kohsuke.groovy.sandbox.SandboxTransformer;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Compiled Groovy script bytecode and JavaScript scripts of rulesets, keyed by a hash of their source, so that a
+ * ruleset which is deployed again without changes (e.g. when its engine is recreated or on restart) isn't compiled
+ * again. The least recently used entries are evicted when there are more than the maximum entries.
+ * <p>
+ * If a directory is configured, the bytecode of compiled Groovy scripts is also written to it and loaded from it
+ * after a restart. The hash of a Groovy script includes the Groovy, sandbox and manager versions, as the bytecode
+ * depends on them. The bytecode is signed with a key generated in the directory, bytecode which doesn't match its
+ * signature is compiled again. JavaScript is only cached in memory, a compiled Nashorn script can't be stored.
+ * <p>
+ * The bytecode of a Groovy script is defined in a new class loader for each deployment, so deployments of the same
+ * source, e.g. in tenant engines of different realms or after a redeployment, don't share the static fields of the
+ * classes declared by the ruleset. The classes of a deployment are unloaded with its class loader.
+ */
+public class CompiledRulesetCache {
+
+    private static final Logger LOG = Logger.getLogger(CompiledRulesetCache.class.getName());
+
+    public static final String GROOVY_CLASS_PREFIX = "Ruleset_";
+    public static final String SIGNATURE_FILE = "classes.sig";
+    public static final String KEY_FILE = ".key";
+    protected static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+
+    /**
+     * Defines the classes of a compiled Groovy script from their bytecode.
+     */
+    static class BytecodeClassLoader extends ClassLoader {
+
+        protected final Map<String, byte[]> classes;
+
+        BytecodeClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    protected final int maxEntries;
+    protected final Path directory;
+    protected final ClassLoader parentClassLoader;
+    protected final ScriptEngine javascriptEngine;
+    protected final LinkedHashMap<String, Object> entries;
+    protected final String buildVersion;
+    protected byte[] signatureKey;
+    protected long hits;
+    protected long diskHits;
+    protected long misses;
+    protected long evictions;
+    protected long invalidSignatures;
+
+    /**
+     * @param directory         The directory to store compiled Groovy scripts in, can be <code>null</code>.
+     * @param parentClassLoader The class loader of the classes used by Groovy scripts.
+     * @param javascriptEngine  The engine compiling all JavaScript scripts, must be {@link Compilable}.
+     */
+    public CompiledRulesetCache(int maxEntries, Path directory, ClassLoader parentClassLoader, ScriptEngine javascriptEngine) {
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        this.parentClassLoader = parentClassLoader;
+        this.javascriptEngine = javascriptEngine;
+        this.buildVersion = getBuildVersion();
+        this.entries = new LinkedHashMap<String, Object>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() > CompiledRulesetCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return The sandboxed script class of the Groovy source, defined in a new class loader for the deployment. The
+     * script class and the classes declared by the script are not shared with other deployments of the same source.
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends Script> getGroovyScript(String source) throws Exception {
+        // The bytecode depends on the build, so an upgrade must not load scripts from disk
+        String key = "groovy:" + hash(buildVersion + "\n" + source);
+        String className = GROOVY_CLASS_PREFIX + key.substring("groovy:".length());
+        Map<String, byte[]> classes = (Map<String, byte[]>) get(key);
+
+        if (classes == null) {
+            classes = readGroovyClasses(className);
+            if (classes != null) {
+                synchronized (this) {
+                    diskHits++;
+                }
+            } else {
+                classes = compileGroovy(className, source);
+                writeGroovyClasses(className, classes);
+            }
+            // The bytecode is shared by the class loaders of all deployments, so it must not be modified
+            classes = (Map<String, byte[]>) put(key, Collections.unmodifiableMap(classes));
+        }
+
+        return (Class<? extends Script>) new BytecodeClassLoader(parentClassLoader, classes).loadClass(className);
+    }
+
+    /**
+     * @return The compiled JavaScript source, evaluate it with new bindings of {@link CompiledScript#getEngine} for
+     * each deployment.
+     */
+    public CompiledScript getJavascript(String source) throws ScriptException {
+        String key = "javascript:" + hash(source);
+        Object cached = get(key);
+        if (cached != null) {
+            return (CompiledScript) cached;
+        }
+
+        CompiledScript compiledScript;
+        // Nashorn doesn't declare its engine thread-safe
+        synchronized (javascriptEngine) {
+            compiledScript = ((Compilable) javascriptEngine).compile(source);
+        }
+        return (CompiledScript) put(key, compiledScript);
+    }
+
+    synchronized public void clear() {
+        entries.clear();
+    }
+
+    synchronized public ObjectValue getStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits);
+        stats.put("diskHits", diskHits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("invalidSignatures", invalidSignatures);
+        return stats;
+    }
+
+    synchronized protected Object get(String key) {
+        Object cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cached;
+    }
+
+    /**
+     * @return The cached value if another deployment compiled the same source at the same time.
+     */
+    synchronized protected Object put(String key, Object value) {
+        Object cached = entries.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        entries.put(key, value);
+        return value;
+    }
+
+    protected Map<String, byte[]> compileGroovy(String className, String source) {
+        CompilerConfiguration configuration = new CompilerConfiguration().addCompilationCustomizers(new SandboxTransformer());
+        CompilationUnit compilationUnit = new CompilationUnit(
+            configuration, null, new GroovyClassLoader(parentClassLoader, configuration)
+        );
+        compilationUnit.addSource(className + ".groovy", source);
+        compilationUnit.compile(Phases.CLASS_GENERATION);
+
+        Map<String, byte[]> classes = new HashMap<>();
+        for (Object compiledClass : compilationUnit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass) compiledClass;
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        return classes;
+    }
+
+    protected Map<String, byte[]> readGroovyClasses(String className) {
+        if (directory == null || !Files.isDirectory(directory.resolve(className))) {
+            return null;
+        }
+
+        Map<String, byte[]> classes = new HashMap<>();
+        byte[] signature;
+        try (Stream<Path> files = Files.list(directory.resolve(className))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(".class")) {
+                    classes.put(fileName.substring(0, fileName.length() - ".class".length()), Files.readAllBytes(file));
+                }
+            }
+            Path signatureFile = directory.resolve(className).resolve(SIGNATURE_FILE);
+            signature = Files.exists(signatureFile) ? Files.readAllBytes(signatureFile) : null;
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Failed to read compiled ruleset, compiling again: " + className, ex);
+            return null;
+        }
+
+        byte[] expectedSignature = sign(classes);
+        if (expectedSignature == null) {
+            return null;
+        }
+        if (signature == null || !MessageDigest.isEqual(signature, expectedSignature)) {
+            LOG.warning("Compiled ruleset doesn't match its signature, compiling again: " + className);
+            synchronized (this) {
+                invalidSignatures++;
+            }
+            deleteDirectory(directory.resolve(className));
+            return null;
+        }
+        return classes.containsKey(className) ? classes : null;
+    }
+
+    protected void writeGroovyClasses(String className, Map<String, byte[]> classes) {
+        if (directory == null) {
+            return;
+        }
+
+        // Write to a temporary directory and then move it, so a directory of a class is always complete
+        Path temporary = null;
+        try {
+            byte[] signature = sign(classes);
+            if (signature == null) {
+                return;
+            }
+            temporary = Files.createTempDirectory(directory, className);
+            for (Map.Entry<String, byte[]> compiledClass : classes.entrySet()) {
+                Files.write(temporary.resolve(compiledClass.getKey() + ".class"), compiledClass.getValue());
+            }
+            Files.write(temporary.resolve(SIGNATURE_FILE), signature);
+            Files.move(temporary, directory.resolve(className), StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+            LOG.fine("Compiled ruleset has been written by another deployment: " + className);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Failed to write compiled ruleset: " + className, ex);
+        } finally {
+            if (temporary != null) {
+                deleteDirectory(temporary);
+            }
+        }
+    }
+
+    /**
+     * @return The signature of the classes, <code>null</code> if the key isn't available.
+     */
+    protected byte[] sign(Map<String, byte[]> classes) {
+        byte[] key = getSignatureKey();
+        if (key == null) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(key, SIGNATURE_ALGORITHM));
+            // Sign the names and lengths too, so classes can't be renamed, added or removed
+            for (String name : new TreeSet<>(classes.keySet())) {
+                byte[] bytes = classes.get(name);
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                mac.update(ByteBuffer.allocate(8).putInt(nameBytes.length).putInt(bytes.length).array());
+                mac.update(nameBytes);
+                mac.update(bytes);
+            }
+            return mac.doFinal();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return The key of the directory, which is generated when it doesn't exist and is only readable by the owner.
+     */
+    synchronized protected byte[] getSignatureKey() {
+        if (signatureKey != null) {
+            return signatureKey;
+        }
+        Path keyFile = directory.resolve(KEY_FILE);
+        try {
+            Files.createDirectories(directory);
+            if (!Files.exists(keyFile)) {
+                byte[] key = new byte[32];
+                new SecureRandom().nextBytes(key);
+                Path temporary = Files.createTempFile(directory, KEY_FILE, null);
+                try {
+                    try {
+                        Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-------"));
+                    } catch (UnsupportedOperationException ex) {
+                        LOG.fine("File permissions not supported, the key is readable according to the directory: " + keyFile);
+                    }
+                    Files.write(temporary, key);
+                    Files.move(temporary, keyFile);
+                } catch (FileAlreadyExistsException ex) {
+                    LOG.fine("Key has been written by another manager: " + keyFile);
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+            signatureKey = Files.readAllBytes(keyFile);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Failed to read or create key, compiled rulesets are not stored: " + keyFile, ex);
+        }
+        return signatureKey;
+    }
+
+    /**
+     * @return The Groovy, sandbox and manager versions.
+     */
+    protected static String getBuildVersion() {
+        return GroovySystem.getVersion() + "\n" + getVersion(SandboxTransformer.class) + "\n" + getManagerVersion();
+    }
+
+    /**
+     * @return The implementation version of the package of the class, otherwise the location of the class, e.g. the
+     * versioned JAR file.
+     */
+    protected static String getVersion(Class<?> clazz) {
+        String version = clazz.getPackage() != null ? clazz.getPackage().getImplementationVersion() : null;
+        if (version == null && clazz.getProtectionDomain().getCodeSource() != null) {
+            version = clazz.getProtectionDomain().getCodeSource().getLocation().toString();
+        }
+        return clazz.getName() + "=" + version;
+    }
+
+    protected static String getManagerVersion() {
+        try (InputStream resourceStream = CompiledRulesetCache.class.getClassLoader().getResourceAsStream("system.properties")) {
+            if (resourceStream != null) {
+                Properties properties = new Properties();
+                properties.load(resourceStream);
+                return "manager=" + properties.getProperty("version") + "\n" + getVersion(CompiledRulesetCache.class);
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Failed to read manager version properties file: system.properties", ex);
+        }
+        return getVersion(CompiledRulesetCache.class);
+    }
+
+    protected static void deleteDirectory(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Failed to delete directory: " + path, ex);
+        }
+    }
+
+    public static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -116,6 +116,7 @@ public class RulesEngine<T extends Ruleset> {
     final protected PredictedDatapoints predictedFacade;
     final protected HistoricDatapoints historicFacade;
     final protected AssetLocationPredicateProcessor assetLocationPredicatesConsumer;
+    final protected CompiledRulesetCache compiledRulesetCache;
 
     final protected Map<Long, RulesetDeployment> deployments = new LinkedHashMap<>();
     final protected RulesFacts facts;
@@ -145,7 +146,8 @@ public class RulesEngine<T extends Ruleset> {
                        AssetDatapointService assetDatapointService,
                        AssetPredictedDatapointService assetPredictedDatapointService,
                        RulesEngineId<T> id,
-                       AssetLocationPredicateProcessor assetLocationPredicatesConsumer) {
+                       AssetLocationPredicateProcessor assetLocationPredicatesConsumer,
+                       CompiledRulesetCache compiledRulesetCache) {
         this.timerService = timerService;
         this.executorService = executorService;
         this.assetStorageService = assetStorageService;
@@ -158,6 +160,7 @@ public class RulesEngine<T extends Ruleset> {
         this.historicFacade = new HistoricFacade<>(id, assetDatapointService);
         this.predictedFacade = new PredictedFacade<>(id, assetPredictedDatapointService);
         this.assetLocationPredicatesConsumer = assetLocationPredicatesConsumer;
+        this.compiledRulesetCache = compiledRulesetCache;
 
         this.facts = new RulesFacts(timerService, assetStorageService, assetsFacade, this, RULES_LOG);
         engine = new InferenceRulesEngine(
@@ -240,7 +243,7 @@ public class RulesEngine<T extends Ruleset> {
             removeRuleset(deployment.ruleset);
         }
 
-        deployment = new RulesetDeployment(ruleset, timerService, assetStorageService, executorService, assetsFacade, usersFacade, notificationFacade, historicFacade, predictedFacade);
+        deployment = new RulesetDeployment(ruleset, timerService, assetStorageService, executorService, assetsFacade, usersFacade, notificationFacade, historicFacade, predictedFacade, compiledRulesetCache);
         boolean compiled;
 
         if (TextUtil.isNullOrEmpty(ruleset.getRules())) {
@@ -374,9 +377,8 @@ public class RulesEngine<T extends Ruleset> {
             statsTimer.cancel(true);
             statsTimer = null;
         }
-        pauseTimers.values().forEach(pauseTimer -> pauseTimer.cancel(true));
+        executorService.cancelTimers(this);
         pauseTimers.clear();
-        unpauseTimers.values().forEach(unpauseTimer -> unpauseTimer.cancel(true));
         unpauseTimers.clear();
 
         deployments.values().forEach(this::stopRuleset);
@@ -666,7 +668,7 @@ public class RulesEngine<T extends Ruleset> {
     protected void schedulePause(RulesetDeployment deployment) {
         long delay = deployment.getValidTo() - timerService.getCurrentTimeMillis();
         LOG.info("Scheduling pause of ruleset at '" + new Date(deployment.getValidTo()).toString() + "' ("+ delay + "ms): " + deployment.ruleset.getName());
-        pauseTimers.put(deployment.getId(), executorService.schedule(() -> pauseRuleset(deployment), delay));
+        pauseTimers.put(deployment.getId(), executorService.scheduleTimer(this, () -> pauseRuleset(deployment), delay));
     }
 
     protected void pauseRuleset(RulesetDeployment deployment) {
@@ -696,7 +698,7 @@ public class RulesEngine<T extends Ruleset> {
     protected void scheduleUnpause(RulesetDeployment deployment) {
         long delay = deployment.getValidFrom() - timerService.getCurrentTimeMillis();
         LOG.info("Scheduling un-pause of ruleset at '" + new Date(deployment.getValidFrom()).toString() + "' ("+ delay + "ms): " + deployment.ruleset.getName());
-        unpauseTimers.put(deployment.getId(), executorService.schedule(() -> unPauseRuleset(deployment), delay));
+        unpauseTimers.put(deployment.getId(), executorService.scheduleTimer(this, () -> unPauseRuleset(deployment), delay));
     }
 
     protected void unPauseRuleset(RulesetDeployment deployment) {
@@ -117,6 +117,8 @@ public class RulesHealthStatusProvider implements ContainerHealthStatusProvider
         }
         objectValue.put("tenant", tenantEngines);
         objectValue.put("asset", assetEngines);
+        objectValue.put("warmUp", rulesService.getWarmUpStats());
+        objectValue.put("compiledRulesetCache", rulesService.compiledRulesetCache.getStats());
         return objectValue;
     }
 
@@ -22,6 +22,7 @@ package org.openremote.manager.rules;
 import org.apache.camel.builder.RouteBuilder;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
+import org.openremote.container.concurrent.ContainerThreadFactory;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceEvent;
 import org.openremote.container.persistence.PersistenceService;
@@ -42,6 +43,7 @@ import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Constants;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.asset.CompiledAssetAttribute;
 import org.openremote.model.attribute.AttributeEvent.Source;
 import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.query.AssetQuery;
@@ -55,9 +57,17 @@ import org.openremote.model.security.ClientRole;
 import org.openremote.model.security.Tenant;
 import org.openremote.model.util.Pair;
 import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Values;
 
 import javax.persistence.EntityManager;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -69,6 +79,7 @@ import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.container.concurrent.GlobalLock.withLockReturning;
 import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.model.asset.AssetAttribute.attributesFromJson;
 import static org.openremote.model.asset.AssetAttribute.getAddedOrModifiedAttributes;
@@ -98,6 +109,11 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
     public static final String RULE_EVENT_EXPIRES = "RULE_EVENT_EXPIRES";
     public static final String RULE_EVENT_EXPIRES_DEFAULT = "1h";
+    public static final String RULES_WARM_UP_THREADS = "RULES_WARM_UP_THREADS";
+    public static final int RULES_WARM_UP_THREADS_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    public static final String RULESET_CACHE_SIZE = "RULESET_CACHE_SIZE";
+    public static final int RULESET_CACHE_SIZE_DEFAULT = 1000;
+    public static final String RULESET_CACHE_PATH = "RULESET_CACHE_PATH";
     private static final Logger LOG = Logger.getLogger(RulesService.class.getName());
 
     protected List<GeofenceAssetAdapter> geofenceAssetAdapters = new ArrayList<>();
@@ -124,6 +140,19 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     // here means we can quickly insert facts into newly started engines
     protected Set<AssetState> assetStates = new HashSet<>();
     protected String configEventExpires;
+    protected int configWarmUpThreads;
+    protected CompiledRulesetCache compiledRulesetCache;
+    // Held whilst the asset states of a warm-up page are inserted into the engines without the global lock, taken after
+    // the global lock by everything that modifies the engines so they don't interfere with the insertion
+    protected final ReentrantLock warmUpInsertLock = new ReentrantLock();
+    // Engines are started once the asset states have been inserted on startup, guarded by the global lock
+    protected boolean warmingUp = true;
+    // Progress of inserting the asset states into the engines on startup
+    protected final AtomicInteger warmUpAssets = new AtomicInteger();
+    protected final AtomicInteger warmUpAssetStates = new AtomicInteger();
+    protected final AtomicInteger warmUpInsertedAssetStates = new AtomicInteger();
+    protected final Set<RulesEngineId<?>> warmUpEngines = ConcurrentHashMap.newKeySet();
+    protected volatile long warmUpMillis = -1;
 
     @Override
     public int getPriority() {
@@ -174,6 +203,12 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         geofenceAssetAdapters.sort(Comparator.comparingInt(GeofenceAssetAdapter::getPriority));
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
         configEventExpires = getString(container.getConfig(), RULE_EVENT_EXPIRES, RULE_EVENT_EXPIRES_DEFAULT);
+        configWarmUpThreads = getInteger(container.getConfig(), RULES_WARM_UP_THREADS, RULES_WARM_UP_THREADS_DEFAULT);
+        String rulesetCachePath = getString(container.getConfig(), RULESET_CACHE_PATH, null);
+        compiledRulesetCache = RulesetDeployment.createCompiledRulesetCache(
+            getInteger(container.getConfig(), RULESET_CACHE_SIZE, RULESET_CACHE_SIZE_DEFAULT),
+            rulesetCachePath != null ? Paths.get(rulesetCachePath) : null
+        );
 
         container.getService(ManagerWebService.class).getApiSingletons().add(
                 new FlowResourceImpl(
@@ -260,30 +295,22 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             .count();//Needed in order to execute the stream. TODO: can this be done differently?
 
         LOG.info("Loading all assets with fact attributes to initialize state of rules engines");
-        Stream<Pair<Asset, Stream<AssetAttribute>>> stateAttributes = findRuleStateAttributes();
-
-        // Push each attribute as an asset update through the rule engine chain
-        // that will ensure the insert only happens to the engines in scope
-        stateAttributes
-            .forEach(pair -> {
-                Asset asset = pair.key;
-                pair.value.forEach(ruleAttribute -> {
-                    AssetState assetState = new AssetState(asset, ruleAttribute, Source.INTERNAL);
-                    updateAssetState(assetState);
-                });
-            });
+        warmUpAssetStates();
 
         // Start the engines
-        if (globalEngine != null) {
-            globalEngine.start();
-        }
-        tenantEngines.values().forEach(RulesEngine::start);
-        assetEngines.values().forEach(RulesEngine::start);
+        withRulesLock(getClass().getSimpleName() + "::start", () -> {
+            warmingUp = false;
+            if (globalEngine != null) {
+                globalEngine.start();
+            }
+            tenantEngines.values().forEach(RulesEngine::start);
+            assetEngines.values().forEach(RulesEngine::start);
+        });
     }
 
     @Override
     public void stop(Container container) throws Exception {
-        withLock(getClass().getSimpleName() + "::stop", () -> {
+        withRulesLock(getClass().getSimpleName() + "::stop", () -> {
             for (GeofenceAssetAdapter geofenceAssetAdapter : geofenceAssetAdapters) {
                 try {
                     geofenceAssetAdapter.stop(container);
@@ -313,15 +340,17 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         // We might process two facts for a single attribute update, if that is what the user wants
 
         // First as asset state
-        if (attribute.isRuleState()) {
+        CompiledAssetAttribute compiledAttribute = attribute.getCompiled();
+
+        if (compiledAttribute.isRuleState()) {
             updateAssetState(new AssetState(asset, attribute, source));
         }
 
         // Then as asset event (if there wasn't an error), this will also fire the rules engines
-        if (attribute.isRuleEvent()) {
+        if (compiledAttribute.isRuleEvent()) {
             insertAssetEvent(
                 new AssetState(asset, attribute, source),
-                attribute.getRuleEventExpires().orElse(configEventExpires)
+                compiledAttribute.getRuleEventExpires().orElse(configEventExpires)
             );
         }
 
@@ -346,7 +375,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void processTenantChange(Tenant tenant, PersistenceEvent.Cause cause) {
-        withLock(getClass().getSimpleName() + "::processTenantChange", () -> {
+        withRulesLock(getClass().getSimpleName() + "::processTenantChange", () -> {
             // Check if enabled status has changed
             boolean wasEnabled = Arrays.stream(tenants).anyMatch(t -> tenant.getRealm().equals(t.getRealm()));
             boolean isEnabled = tenant.getEnabled() && cause != PersistenceEvent.Cause.DELETE;
@@ -402,7 +431,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void processAssetChange(Asset asset, PersistenceEvent persistenceEvent) {
-        withLock(getClass().getSimpleName() + "::processAssetChange", () -> {
+        withRulesLock(getClass().getSimpleName() + "::processAssetChange", () -> {
 
             // We must load the asset from database (only when required), as the
             // persistence event might not contain a completely loaded asset
@@ -492,7 +521,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void processRulesetChange(Ruleset ruleset, PersistenceEvent.Cause cause) {
-        withLock(getClass().getSimpleName() + "::processRulesetChange", () -> {
+        withRulesLock(getClass().getSimpleName() + "::processRulesetChange", () -> {
             if (cause == PersistenceEvent.Cause.DELETE || !ruleset.isEnabled()) {
                 if (ruleset instanceof GlobalRuleset) {
                     undeployGlobalRuleset((GlobalRuleset) ruleset);
@@ -512,7 +541,9 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                         assetStates.forEach(assetState -> engine.updateOrInsertAssetState(assetState, true));
                     }
 
-                    engine.start();
+                    if (!warmingUp) {
+                        engine.start();
+                    }
 
                 } else if (ruleset instanceof TenantRuleset) {
 
@@ -528,7 +559,9 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                         });
                     }
 
-                    engine.start();
+                    if (!warmingUp) {
+                        engine.start();
+                    }
 
                 } else if (ruleset instanceof AssetRuleset) {
 
@@ -543,7 +576,9 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                             .forEach(assetState -> engine.updateOrInsertAssetState(assetState, true));
                     }
 
-                    engine.start();
+                    if (!warmingUp) {
+                        engine.start();
+                    }
                 }
             }
         });
@@ -568,7 +603,8 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                     assetDatapointService,
                     assetPredictedDatapointService,
                     new RulesEngineId<>(),
-                    locationPredicateRulesConsumer
+                    locationPredicateRulesConsumer,
+                    compiledRulesetCache
                 );
             }
 
@@ -579,7 +615,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void undeployGlobalRuleset(GlobalRuleset ruleset) {
-        withLock(getClass().getSimpleName() + "::undeployGlobalRuleset", () -> {
+        withRulesLock(getClass().getSimpleName() + "::undeployGlobalRuleset", () -> {
             if (globalEngine == null) {
                 return;
             }
@@ -609,7 +645,8 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                         assetDatapointService,
                         assetPredictedDatapointService,
                         new RulesEngineId<>(realm),
-                        locationPredicateRulesConsumer
+                        locationPredicateRulesConsumer,
+                        compiledRulesetCache
                     ));
 
             tenantRulesEngine.addRuleset(ruleset);
@@ -619,7 +656,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void undeployTenantRuleset(TenantRuleset ruleset) {
-        withLock(getClass().getSimpleName() + "::undeployTenantRuleset", () -> {
+        withRulesLock(getClass().getSimpleName() + "::undeployTenantRuleset", () -> {
             RulesEngine<TenantRuleset> rulesEngine = tenantEngines.get(ruleset.getRealm());
             if (rulesEngine == null) {
                 return;
@@ -684,7 +721,8 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                         assetDatapointService,
                         assetPredictedDatapointService,
                         new RulesEngineId<>(ruleset.getRealm(), assetId),
-                        locationPredicateRulesConsumer
+                        locationPredicateRulesConsumer,
+                        compiledRulesetCache
                     ));
 
             assetRulesEngine.addRuleset(ruleset);
@@ -694,7 +732,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void undeployAssetRuleset(AssetRuleset ruleset) {
-        withLock(getClass().getSimpleName() + "::undeployAssetRuleset", () -> {
+        withRulesLock(getClass().getSimpleName() + "::undeployAssetRuleset", () -> {
             RulesEngine<AssetRuleset> rulesEngine = assetEngines.get(ruleset.getAssetId());
             if (rulesEngine == null) {
                 return;
@@ -708,7 +746,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void insertAssetEvent(AssetState assetState, String expires) {
-        withLock(getClass().getSimpleName() + "::insertAssetEvent", () -> {
+        withRulesLock(getClass().getSimpleName() + "::insertAssetEvent", () -> {
             // Get the chain of rule engines that we need to pass through
             List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState.getRealm(), assetState.getPath());
 
@@ -733,7 +771,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void updateAssetState(AssetState assetState) {
-        withLock(getClass().getSimpleName() + "::updateAssetState", () -> {
+        withRulesLock(getClass().getSimpleName() + "::updateAssetState", () -> {
             // TODO: implement rules processing error state handling
 
             LOG.fine("Updating asset state: " + assetState);
@@ -802,19 +840,120 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         return rulesEngines;
     }
 
-    protected Stream<Pair<Asset, Stream<AssetAttribute>>> findRuleStateAttributes() {
-        List<Asset> assets = assetStorageService.findAll(
-            new AssetQuery()
-                .attributeMeta(
-                    new MetaPredicate(
-                        MetaItemType.RULE_STATE,
-                        new BooleanPredicate(true))
-                ));
+    /**
+     * Inserts the {@link AssetState} of all attributes marked with {@link MetaItemType#RULE_STATE} into the engines in
+     * scope, before the engines are started. The assets are streamed with only their rule state attributes; for each
+     * page the asset states are added and grouped by engine whilst holding the global lock, then each engine receives
+     * its asset states on its own thread. Engines don't share facts and don't fire before they are started, so they
+     * can be loaded concurrently without the global lock. Asset state updates processed in the meantime wait for the
+     * page to be inserted (see {@link #withRulesLock}), they are newer than the loaded asset states and replace them.
+     * Engines deployed meanwhile receive the asset states inserted so far and are started with the other engines after
+     * the warm-up.
+     */
+    protected void warmUpAssetStates() {
+        long startTime = System.nanoTime();
+        MetaPredicate ruleStatePredicate = new MetaPredicate(MetaItemType.RULE_STATE, new BooleanPredicate(true));
+        ExecutorService warmUpExecutor = Executors.newFixedThreadPool(
+            Math.max(configWarmUpThreads, 1), new ContainerThreadFactory("Rules warm-up")
+        );
 
-        return assets.stream()
-            .map((Asset asset) ->
-                new Pair<>(asset, asset.getAttributesStream().filter(AssetAttribute::isRuleState))
-            );
+        try {
+            assetStorageService.streamAll(
+                new AssetQuery()
+                    .select(new AssetQuery.Select().attributeMeta(ruleStatePredicate))
+                    .attributeMeta(ruleStatePredicate),
+                assets -> {
+                    Map<RulesEngine<?>, List<AssetState>> engineAssetStates = new LinkedHashMap<>();
+                    withLock(getClass().getSimpleName() + "::warmUpAssetStates", () -> {
+                        engineAssetStates.putAll(addAssetStates(assets));
+                        // Taken before the global lock is released so no update can be applied before the page
+                        warmUpInsertLock.lock();
+                    });
+                    try {
+                        insertAssetStates(engineAssetStates, warmUpExecutor);
+                    } finally {
+                        warmUpInsertLock.unlock();
+                    }
+                    LOG.fine("Inserted " + warmUpInsertedAssetStates.get() + " asset states of " + warmUpAssets.get() + " assets");
+                });
+        } finally {
+            warmUpExecutor.shutdown();
+        }
+
+        warmUpMillis = (System.nanoTime() - startTime) / 1000000L;
+        LOG.info("Inserted " + warmUpInsertedAssetStates.get() + " asset states of " + warmUpAssets.get() + " assets into "
+            + warmUpEngines.size() + " rules engines in " + warmUpMillis + "ms");
+    }
+
+    /**
+     * Adds the asset states of the assets to the known asset states, must be called whilst holding the global lock.
+     *
+     * @return The added asset states of each engine in scope.
+     */
+    protected Map<RulesEngine<?>, List<AssetState>> addAssetStates(List<Asset> assets) {
+        Map<RulesEngine<?>, List<AssetState>> engineAssetStates = new LinkedHashMap<>();
+
+        for (Asset asset : assets) {
+            // The engines in scope are resolved once per asset
+            List<RulesEngine<?>> scope = getEnginesInScope(asset.getRealm(), asset.getPath());
+
+            asset.getAttributesStream().filter(AssetAttribute::isRuleState).forEach(attribute -> {
+                AssetState assetState = new AssetState(asset, attribute, Source.INTERNAL);
+                warmUpAssetStates.incrementAndGet();
+                // An asset state with the same attribute ref has been updated whilst loading
+                if (assetStates.add(assetState)) {
+                    for (RulesEngine<?> rulesEngine : scope) {
+                        engineAssetStates.computeIfAbsent(rulesEngine, engine -> new ArrayList<>()).add(assetState);
+                    }
+                    warmUpInsertedAssetStates.incrementAndGet();
+                }
+            });
+            warmUpAssets.incrementAndGet();
+        }
+
+        return engineAssetStates;
+    }
+
+    /**
+     * Inserts the asset states into each engine on its own thread and waits for all engines, must not be called whilst
+     * holding the global lock.
+     */
+    protected void insertAssetStates(Map<RulesEngine<?>, List<AssetState>> engineAssetStates, ExecutorService executor) {
+        CompletableFuture<?>[] futures = engineAssetStates.entrySet().stream()
+            .map(entry -> CompletableFuture.runAsync(() -> {
+                entry.getValue().forEach(assetState -> entry.getKey().updateOrInsertAssetState(assetState, true));
+                warmUpEngines.add(entry.getKey().getId());
+            }, executor))
+            .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Runs the code holding the global lock, and once the global lock is acquired, after the asset states of the warm-up
+     * page that is being inserted.
+     */
+    protected void withRulesLock(String name, Runnable runnable) {
+        withLock(name, () -> {
+            warmUpInsertLock.lock();
+            try {
+                runnable.run();
+            } finally {
+                warmUpInsertLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * @return The progress of inserting the asset states into the engines on startup.
+     */
+    public ObjectValue getWarmUpStats() {
+        ObjectValue stats = Values.createObject();
+        stats.put("assets", warmUpAssets.get());
+        stats.put("assetStates", warmUpAssetStates.get());
+        stats.put("insertedAssetStates", warmUpInsertedAssetStates.get());
+        stats.put("engines", warmUpEngines.size());
+        stats.put("millis", warmUpMillis);
+        return stats;
     }
 
     /**
@@ -824,7 +963,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
      * notify the {@link GeofenceAssetAdapter}s.
      */
     protected void onEngineLocationRulesChanged(RulesEngine<?> rulesEngine, List<RulesEngine.AssetStateLocationPredicates> newEngineAssetStateLocationPredicates) {
-        withLock(getClass().getSimpleName() + "::onEngineLocationRulesChanged", () -> {
+        withRulesLock(getClass().getSimpleName() + "::onEngineLocationRulesChanged", () -> {
             int initialModifiedCount = assetsWithModifiedLocationPredicates.size();
 
             if (newEngineAssetStateLocationPredicates == null) {
@@ -900,7 +1039,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     protected void processModifiedGeofences() {
-        withLock(getClass().getSimpleName() + "::processModifiedGeofences", () -> {
+        withRulesLock(getClass().getSimpleName() + "::processModifiedGeofences", () -> {
             LOG.finest("Processing geofence modifications: modified asset geofence count=" + assetsWithModifiedLocationPredicates.size());
 
             try {
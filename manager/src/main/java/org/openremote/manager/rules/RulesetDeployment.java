@@ -20,17 +20,15 @@
 package org.openremote.manager.rules;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
-import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jeasy.rules.api.Action;
 import org.jeasy.rules.api.Condition;
 import org.jeasy.rules.api.Rule;
 import org.jeasy.rules.api.Rules;
 import org.jeasy.rules.core.RuleBuilder;
 import org.kohsuke.groovy.sandbox.GroovyValueFilter;
-import org.kohsuke.groovy.sandbox.SandboxTransformer;
 import org.openremote.container.Container;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
@@ -41,12 +39,9 @@ import org.openremote.model.rules.flow.NodeCollection;
 import org.openremote.model.util.Pair;
 
 import javax.script.*;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Date;
-import java.util.List;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -95,8 +90,6 @@ public class RulesetDeployment {
     // Share one JS script engine manager, it's thread-safe
     static final protected ScriptEngineManager scriptEngineManager;
 
-    static final protected GroovyShell groovyShell;
-
     static {
         scriptEngineManager = new ScriptEngineManager();
 
@@ -104,20 +97,6 @@ public class RulesetDeployment {
         // TODO Use a different logger for each RulesEngine and show messages in Manager UI for that engine
         scriptEngineManager.put("LOG", RulesEngine.RULES_LOG);
         scriptEngineManager.put("console", new JsConsole(RulesEngine.RULES_LOG));
-
-        /* TODO Sharing a static GroovyShell doesn't work, redeploying a ruleset which defines classes (e.g. Flight) is broken:
-
-        java.lang.RuntimeException: Error evaluating condition of rule '-Update flight facts when estimated landing time of flight asset is updated':
-        No signature of method: org.openremote.manager.setup.database.Script1$_run_closure2$_closure14$_closure17.doCall() is applicable for argument types: (org.openremote.manager.setup.database.Flight) values: [...]
-        Possible solutions: doCall(org.openremote.manager.setup.database.Flight), findAll(), findAll(), isCase(java.lang.Object), isCase(java.lang.Object)
-        The following classes appear as argument class and as parameter class, but are defined by different class loader:
-        org.openremote.manager.setup.database.Flight (defined by 'groovy.lang.GroovyClassLoader$InnerLoader@2cc34cd5' and 'groovy.lang.GroovyClassLoader$InnerLoader@1af957bc')
-        If one of the method suggestions matches the method you wanted to call,
-        then check your class loader setup.
-         */
-        groovyShell = new GroovyShell(
-                new CompilerConfiguration().addCompilationCustomizers(new SandboxTransformer())
-        );
     }
 
     final protected Ruleset ruleset;
@@ -130,7 +109,7 @@ public class RulesetDeployment {
     final protected Notifications notificationsFacade;
     final protected HistoricDatapoints historicDatapointsFacade;
     final protected PredictedDatapoints predictedDatapointsFacade;
-    final protected List<ScheduledFuture<?>> scheduledRuleActions = new ArrayList<>();
+    final protected CompiledRulesetCache compiledRulesetCache;
     protected RulesetStatus status = RulesetStatus.READY;
     protected Throwable error;
     protected JsonRulesBuilder jsonRulesBuilder;
@@ -141,7 +120,8 @@ public class RulesetDeployment {
     public RulesetDeployment(Ruleset ruleset, TimerService timerService,
                              AssetStorageService assetStorageService, ManagerExecutorService executorService,
                              Assets assetsFacade, Users usersFacade, Notifications notificationsFacade,
-                             HistoricDatapoints historicDatapointsFacade, PredictedDatapoints predictedDatapointsFacade) {
+                             HistoricDatapoints historicDatapointsFacade, PredictedDatapoints predictedDatapointsFacade,
+                             CompiledRulesetCache compiledRulesetCache) {
         this.ruleset = ruleset;
         this.timerService = timerService;
         this.assetStorageService = assetStorageService;
@@ -151,6 +131,7 @@ public class RulesetDeployment {
         this.notificationsFacade = notificationsFacade;
         this.historicDatapointsFacade = historicDatapointsFacade;
         this.predictedDatapointsFacade = predictedDatapointsFacade;
+        this.compiledRulesetCache = compiledRulesetCache;
 
         if (ruleset.hasMeta(Ruleset.META_KEY_VALIDITY)) {
             validity = ruleset.getValidity();
@@ -161,6 +142,19 @@ public class RulesetDeployment {
         }
     }
 
+    /**
+     * Sharing compiled scripts of the same source between deployments also avoids defining the classes declared in a
+     * Groovy script (e.g. Flight) again with a different class loader on every deployment, as a shared GroovyShell does.
+     */
+    public static CompiledRulesetCache createCompiledRulesetCache(int maxEntries, Path directory) {
+        return new CompiledRulesetCache(
+            maxEntries,
+            directory,
+            RulesetDeployment.class.getClassLoader(),
+            scriptEngineManager.getEngineByName("nashorn")
+        );
+    }
+
     public long getId() {
         return ruleset.getId();
     }
@@ -237,10 +231,7 @@ public class RulesetDeployment {
      * during execution
      */
     public void stop(RulesFacts facts) {
-        scheduledRuleActions.removeIf(scheduledFuture -> {
-            scheduledFuture.cancel(true);
-            return true;
-        });
+        executorService.cancelTimers(this);
 
         if (jsonRulesBuilder != null) {
             jsonRulesBuilder.stop(facts);
@@ -255,12 +246,8 @@ public class RulesetDeployment {
 
     protected void scheduleRuleAction(Runnable action, long delayMillis) {
         withLock(toString() + "::scheduleRuleAction", () -> {
-            ScheduledFuture<?> future = executorService.schedule(() ->
-                    withLock(toString() + "::scheduledRuleActionFire", () -> {
-                        scheduledRuleActions.removeIf(Future::isDone);
-                        action.run();
-                    }), delayMillis);
-            scheduledRuleActions.add(future);
+            executorService.scheduleTimer(this, () ->
+                    withLock(toString() + "::scheduledRuleActionFire", action), delayMillis);
         });
     }
 
@@ -283,17 +270,6 @@ public class RulesetDeployment {
 
     protected boolean compileRulesJavascript(Ruleset ruleset, Assets assetsFacade, Users usersFacade, Notifications notificationsFacade, HistoricDatapoints historicDatapointsFacade, PredictedDatapoints predictedDatapointsFacade) {
         // TODO https://github.com/pfisterer/scripting-sandbox/blob/master/src/main/java/de/farberg/scripting/sandbox/ScriptingSandbox.java
-        ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("nashorn");
-        ScriptContext newContext = new SimpleScriptContext();
-        newContext.setBindings(scriptEngine.createBindings(), ScriptContext.ENGINE_SCOPE);
-        Bindings engineScope = newContext.getBindings(ScriptContext.ENGINE_SCOPE);
-
-        engineScope.put("assets", assetsFacade);
-        engineScope.put("users", usersFacade);
-        engineScope.put("notifications", notificationsFacade);
-        engineScope.put("historicDatapoints", historicDatapointsFacade);
-        engineScope.put("predictedDatapoints", predictedDatapointsFacade);
-
         String script = ruleset.getRules();
 
         // Default header/imports for all rules scripts
@@ -342,15 +318,28 @@ public class RulesetDeployment {
                 "\n"
                 + script;
 
+        Bindings engineScope = null;
         try {
-            scriptEngine.eval(script, engineScope);
+            // Each deployment evaluates the shared compiled script with its own bindings
+            CompiledScript compiledScript = compiledRulesetCache.getJavascript(script);
+            engineScope = compiledScript.getEngine().createBindings();
+
+            engineScope.put("assets", assetsFacade);
+            engineScope.put("users", usersFacade);
+            engineScope.put("notifications", notificationsFacade);
+            engineScope.put("historicDatapoints", historicDatapointsFacade);
+            engineScope.put("predictedDatapoints", predictedDatapointsFacade);
+
+            compiledScript.eval(engineScope);
 
             compileRulesJavascript((ScriptObjectMirror) engineScope.get("rules"));
             return true;
 
         } catch (Exception e) {
             setError(e);
-            engineScope.clear();
+            if (engineScope != null) {
+                engineScope.clear();
+            }
             return false;
         }
     }
@@ -428,7 +417,6 @@ public class RulesetDeployment {
         try {
             // TODO Implement sandbox
             // new DenyAll().register();
-            Script script = groovyShell.parse(ruleset.getRules());
             Binding binding = new Binding();
             RulesBuilder rulesBuilder = new RulesBuilder();
             binding.setVariable("LOG", RulesEngine.RULES_LOG);
@@ -438,7 +426,7 @@ public class RulesetDeployment {
             binding.setVariable("notifications", notificationFacade);
             binding.setVariable("historicDatapoints", historicDatapointsFacade);
             binding.setVariable("predictedDatapoints", predictedDatapointsFacade);
-            script.setBinding(binding);
+            Script script = InvokerHelper.createScript(compiledRulesetCache.getGroovyScript(ruleset.getRules()), binding);
             script.run();
             for (Rule rule : rulesBuilder.build()) {
                 RulesEngine.LOG.fine("Registering groovy rule: " + rule.getName());
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.security;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.openremote.container.persistence.PersistenceEvent;
+import org.openremote.container.persistence.PersistenceService;
+import org.openremote.container.timer.TimerService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.UserAsset;
+import org.openremote.model.security.Tenant;
+import org.openremote.model.util.TextUtil;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
+
+/**
+ * Caches the data needed for authorization decisions of client events and subscriptions: the {@link Tenant} of a
+ * realm, the restricted flag of a user's {@link UserConfiguration} and the {@link UserAsset} links of a user. Entries
+ * are invalidated by the {@link PersistenceEvent}s of these entities (and of deleted {@link Asset}s, as their links are
+ * removed by the database); the services modifying them also invalidate directly after committing so the next
+ * decision in the same thread doesn't depend on the asynchronous event delivery.
+ * <p>
+ * A load that overlaps with an invalidation is not cached, so a stale value can't replace the invalidated one.
+ * <p>
+ * Tenants and roles can also be changed directly in Keycloak, without any event, so entries also expire after
+ * {@link #IDENTITY_AUTHORIZATION_CACHE_SECONDS} and are then loaded again.
+ */
+public class AuthorizationCache extends RouteBuilder {
+
+    private static final Logger LOG = Logger.getLogger(AuthorizationCache.class.getName());
+    public static final int MAX_TENANTS = 1000;
+    public static final int MAX_USERS = 10000;
+    public static final String IDENTITY_AUTHORIZATION_CACHE_SECONDS = "IDENTITY_AUTHORIZATION_CACHE_SECONDS";
+    public static final int IDENTITY_AUTHORIZATION_CACHE_SECONDS_DEFAULT = 60;
+
+    protected static class CacheEntry<T> {
+        protected final T value;
+        protected final long expiresMillis;
+
+        protected CacheEntry(T value, long expiresMillis) {
+            this.value = value;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+
+    protected final PersistenceService persistenceService;
+    protected final TimerService timerService;
+    protected final long expiryMillis;
+    protected final Map<String, CacheEntry<Optional<Tenant>>> tenants = createLruMap(MAX_TENANTS);
+    protected final Map<String, CacheEntry<Boolean>> restrictedUsers = createLruMap(MAX_USERS);
+    protected final Map<String, CacheEntry<Set<String>>> userAssetIds = createLruMap(MAX_USERS);
+    protected final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param expirySeconds Time after which an entry is loaded again, even if it wasn't invalidated.
+     */
+    public AuthorizationCache(PersistenceService persistenceService, TimerService timerService, int expirySeconds) {
+        this.persistenceService = persistenceService;
+        this.timerService = timerService;
+        this.expiryMillis = expirySeconds * 1000L;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void configure() throws Exception {
+        from(PERSISTENCE_TOPIC)
+            .routeId("AuthorizationCacheInvalidation")
+            .filter(exchange ->
+                isPersistenceEventForEntityType(Tenant.class).matches(exchange)
+                    || isPersistenceEventForEntityType(UserConfiguration.class).matches(exchange)
+                    || isPersistenceEventForEntityType(UserAsset.class).matches(exchange)
+                    || isPersistenceEventForEntityType(Asset.class).matches(exchange))
+            .process(exchange -> onPersistenceEvent(exchange.getIn().getBody(PersistenceEvent.class)));
+    }
+
+    public Tenant getTenant(String realm) {
+        if (TextUtil.isNullOrEmpty(realm)) {
+            return null;
+        }
+        return get(tenants, realm, r -> Optional.ofNullable(ManagerIdentityProvider.getTenantFromDb(persistenceService, r)))
+            .orElse(null);
+    }
+
+    public boolean isRestrictedUser(String userId) {
+        if (TextUtil.isNullOrEmpty(userId)) {
+            return false;
+        }
+        return get(restrictedUsers, userId, id -> {
+            UserConfiguration userConfiguration = persistenceService.doReturningTransaction(em -> em.find(UserConfiguration.class, id));
+            return userConfiguration != null && userConfiguration.isRestricted();
+        });
+    }
+
+    /**
+     * @return <code>true</code> if the asset is linked to the user; the links of a user are loaded with a single query
+     * and subsequent checks for the user are answered from memory.
+     */
+    public boolean isUserAsset(String userId, String assetId) {
+        if (TextUtil.isNullOrEmpty(userId) || TextUtil.isNullOrEmpty(assetId)) {
+            return false;
+        }
+        return get(userAssetIds, userId, id -> persistenceService.doReturningTransaction(em ->
+            Collections.unmodifiableSet(new HashSet<>(
+                em.createQuery("select ua.id.assetId from UserAsset ua where ua.id.userId = :userId", String.class)
+                    .setParameter("userId", id)
+                    .getResultList()
+            ))
+        )).contains(assetId);
+    }
+
+    public void invalidateTenant(String realm) {
+        generation.incrementAndGet();
+        synchronized (tenants) {
+            tenants.remove(realm);
+        }
+    }
+
+    public void invalidateUser(String userId) {
+        generation.incrementAndGet();
+        synchronized (restrictedUsers) {
+            restrictedUsers.remove(userId);
+        }
+        synchronized (userAssetIds) {
+            userAssetIds.remove(userId);
+        }
+    }
+
+    public void invalidateUserAssets() {
+        generation.incrementAndGet();
+        synchronized (userAssetIds) {
+            userAssetIds.clear();
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        synchronized (tenants) {
+            tenants.clear();
+        }
+        synchronized (restrictedUsers) {
+            restrictedUsers.clear();
+        }
+        synchronized (userAssetIds) {
+            userAssetIds.clear();
+        }
+    }
+
+    protected void onPersistenceEvent(PersistenceEvent<?> persistenceEvent) {
+        Object entity = persistenceEvent.getEntity();
+
+        if (entity instanceof Tenant) {
+            invalidateTenant(((Tenant) entity).getRealm());
+            if (persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
+                // Links of the realm's users are deleted by the database
+                invalidateUserAssets();
+            }
+        } else if (entity instanceof UserConfiguration) {
+            invalidateUser(((UserConfiguration) entity).getUserId());
+        } else if (entity instanceof UserAsset) {
+            invalidateUser(((UserAsset) entity).getId().getUserId());
+        } else if (entity instanceof Asset && persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE) {
+            // Links of the asset are deleted by the database without events so we don't know the affected users
+            invalidateUserAssets();
+        }
+    }
+
+    protected <T> T get(Map<String, CacheEntry<T>> map, String key, Function<String, T> loader) {
+        long now = timerService.getCurrentTimeMillis();
+        synchronized (map) {
+            CacheEntry<T> entry = map.get(key);
+            if (entry != null) {
+                if (entry.expiresMillis > now) {
+                    return entry.value;
+                }
+                map.remove(key);
+            }
+        }
+
+        long loadGeneration = generation.get();
+        T value = loader.apply(key);
+
+        synchronized (map) {
+            if (loadGeneration == generation.get()) {
+                map.put(key, new CacheEntry<>(value, now + expiryMillis));
+            } else {
+                LOG.finest("Cache invalidated while loading, not caching value of: " + key);
+            }
+        }
+        return value;
+    }
+
+    protected static <T> Map<String, T> createLruMap(int maxSize) {
+        return new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
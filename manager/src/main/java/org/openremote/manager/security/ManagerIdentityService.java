@@ -20,6 +20,7 @@
 package org.openremote.manager.security;
 
 import org.openremote.container.Container;
+import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.IdentityService;
 import org.openremote.container.timer.TimerService;
@@ -30,17 +31,27 @@ import javax.persistence.EntityManager;
 import java.util.Locale;
 import java.util.logging.Logger;
 
+import static org.openremote.container.util.MapAccess.getInteger;
+import static org.openremote.manager.security.AuthorizationCache.IDENTITY_AUTHORIZATION_CACHE_SECONDS;
+import static org.openremote.manager.security.AuthorizationCache.IDENTITY_AUTHORIZATION_CACHE_SECONDS_DEFAULT;
+
 public class ManagerIdentityService extends IdentityService {
 
     private static final Logger LOG = Logger.getLogger(ManagerIdentityService.class.getName());
 
     protected ManagerIdentityProvider identityProvider;
     protected PersistenceService persistenceService;
+    protected AuthorizationCache authorizationCache;
 
     @Override
     public void init(Container container) throws Exception {
-        super.init(container);
         persistenceService = container.getService(PersistenceService.class);
+        authorizationCache = new AuthorizationCache(
+            persistenceService,
+            container.getService(TimerService.class),
+            getInteger(container.getConfig(), IDENTITY_AUTHORIZATION_CACHE_SECONDS, IDENTITY_AUTHORIZATION_CACHE_SECONDS_DEFAULT)
+        );
+        super.init(container);
 
         container.getService(ManagerWebService.class).getApiSingletons().add(
             new TenantResourceImpl(container.getService(TimerService.class), this)
@@ -51,6 +62,13 @@ public class ManagerIdentityService extends IdentityService {
 
     }
 
+    @Override
+    public void start(Container container) throws Exception {
+        super.start(container);
+        // Message broker is initialised after this service
+        container.getService(MessageBrokerService.class).getContext().addRoutes(authorizationCache);
+    }
+
     public ManagerIdentityProvider getIdentityProvider() {
         return identityProvider;
     }
@@ -61,7 +79,7 @@ public class ManagerIdentityService extends IdentityService {
             switch (identityProviderType.toLowerCase(Locale.ROOT)) {
                 case "keycloak":
                     LOG.info("Enabling Keycloak identity provider");
-                    this.identityProvider = new ManagerKeycloakIdentityProvider(getExternalServerUri(), container);
+                    this.identityProvider = new ManagerKeycloakIdentityProvider(getExternalServerUri(), container, authorizationCache);
                     break;
                 case "basic":
                     LOG.info("Enabling basic identity provider");
@@ -87,8 +105,14 @@ public class ManagerIdentityService extends IdentityService {
         return userConfiguration;
     }
 
+    public AuthorizationCache getAuthorizationCache() {
+        return authorizationCache;
+    }
+
     public UserConfiguration mergeUserConfiguration(UserConfiguration userConfiguration) {
-        return persistenceService.doReturningTransaction(entityManager -> mergeUserConfiguration(entityManager, userConfiguration));
+        UserConfiguration result = persistenceService.doReturningTransaction(entityManager -> mergeUserConfiguration(entityManager, userConfiguration));
+        authorizationCache.invalidateUser(result.getUserId());
+        return result;
     }
 
     protected UserConfiguration mergeUserConfiguration(EntityManager em, UserConfiguration userConfiguration) {
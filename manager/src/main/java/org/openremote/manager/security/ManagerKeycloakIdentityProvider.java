@@ -70,8 +70,9 @@ public class ManagerKeycloakIdentityProvider extends KeycloakIdentityProvider im
     final protected ClientEventService clientEventService;
     final protected ConsoleAppService consoleAppService;
     final protected String keycloakAdminPassword;
+    final protected AuthorizationCache authorizationCache;
 
-    public ManagerKeycloakIdentityProvider(UriBuilder externalServerUri, Container container) {
+    public ManagerKeycloakIdentityProvider(UriBuilder externalServerUri, Container container, AuthorizationCache authorizationCache) {
         super(KEYCLOAK_CLIENT_ID, externalServerUri, container);
 
         this.keycloakAdminPassword = container.getConfig().getOrDefault(SETUP_ADMIN_PASSWORD, SETUP_ADMIN_PASSWORD_DEFAULT);
@@ -81,6 +82,7 @@ public class ManagerKeycloakIdentityProvider extends KeycloakIdentityProvider im
         this.messageBrokerService = container.getService(MessageBrokerService.class);
         this.clientEventService = container.getService(ClientEventService.class);
         this.consoleAppService = container.getService(ConsoleAppService.class);
+        this.authorizationCache = authorizationCache;
 
         enableAuthProxy(container.getService(WebService.class));
     }
@@ -163,6 +165,8 @@ public class ManagerKeycloakIdentityProvider extends KeycloakIdentityProvider im
             );
         } else {
             response.close();
+            // User configuration and asset links are deleted by the database without events
+            authorizationCache.invalidateUser(userId);
         }
     }
 
@@ -251,7 +255,7 @@ public class ManagerKeycloakIdentityProvider extends KeycloakIdentityProvider im
 
     @Override
     public Tenant getTenant(String realm) {
-        return ManagerIdentityProvider.getTenantFromDb(persistenceService, realm);
+        return authorizationCache.getTenant(realm);
     }
 
     @Override
@@ -318,8 +322,7 @@ public class ManagerKeycloakIdentityProvider extends KeycloakIdentityProvider im
 
     @Override
     public boolean isRestrictedUser(String userId) {
-        UserConfiguration userConfiguration = persistenceService.doReturningTransaction(em -> em.find(UserConfiguration.class, userId));
-        return userConfiguration != null && userConfiguration.isRestricted();
+        return authorizationCache.isRestrictedUser(userId);
     }
 
     @Override
@@ -457,6 +460,8 @@ public class ManagerKeycloakIdentityProvider extends KeycloakIdentityProvider im
     }
 
     protected void publishModification(PersistenceEvent.Cause cause, Tenant tenant) {
+        authorizationCache.invalidateTenant(tenant.getRealm());
+
         // Fire persistence event although we don't use database for Tenant CUD but call Keycloak API
         PersistenceEvent persistenceEvent = new PersistenceEvent<>(cause, tenant, new String[0], null);
 
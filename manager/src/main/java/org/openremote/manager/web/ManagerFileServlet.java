@@ -26,6 +26,7 @@ import io.undertow.servlet.api.FilterInfo;
 import io.undertow.servlet.api.ServletInfo;
 import io.undertow.servlet.util.ImmediateInstanceHandle;
 import org.openremote.container.Container;
+import org.openremote.container.web.file.FileCache;
 import org.openremote.container.web.file.FileServlet;
 import org.openremote.container.web.file.GzipResponseFilter;
 
@@ -90,15 +91,34 @@ public class ManagerFileServlet extends FileServlet {
     public ManagerFileServlet(boolean devMode,
                               File base,
                               String[] requiredRoles) {
-        super(devMode, base, requiredRoles, MIME_TYPES, MIME_TYPES_EXPIRE_SECONDS, FILE_EXTENSIONS_ALREADY_ZIPPED);
+        this(devMode, base, requiredRoles, null);
+    }
+
+    public ManagerFileServlet(boolean devMode,
+                              File base,
+                              String[] requiredRoles,
+                              FileCache fileCache) {
+        super(devMode, base, requiredRoles, MIME_TYPES, MIME_TYPES_EXPIRE_SECONDS, FILE_EXTENSIONS_ALREADY_ZIPPED, fileCache);
+    }
+
+    /**
+     * @param maxBytes The maximum total size of the cached files and their compressed variants, files larger than a
+     *                 quarter of this are streamed from disk.
+     */
+    public static FileCache createFileCache(long maxBytes) {
+        return new FileCache(maxBytes, maxBytes / 4, MIME_TYPES_TO_ZIP);
     }
 
     public static DeploymentInfo createDeploymentInfo(boolean devMode, String contextPath, Path docRoot, String[] requiredRoles) {
+        return createDeploymentInfo(devMode, contextPath, docRoot, requiredRoles, null);
+    }
+
+    public static DeploymentInfo createDeploymentInfo(boolean devMode, String contextPath, Path docRoot, String[] requiredRoles, FileCache fileCache) {
         if (!Files.isDirectory(docRoot)) {
             throw new IllegalArgumentException("Document root does not exist: " + docRoot.toAbsolutePath());
         }
 
-        ManagerFileServlet fileServlet = new ManagerFileServlet(devMode, docRoot.toFile(), requiredRoles);
+        ManagerFileServlet fileServlet = new ManagerFileServlet(devMode, docRoot.toFile(), requiredRoles, fileCache);
         ServletInfo servletInfo = Servlets.servlet("Manager File Servlet", FileServlet.class, () -> new ImmediateInstanceHandle<>(fileServlet));
         servletInfo.addMapping("/*");
 
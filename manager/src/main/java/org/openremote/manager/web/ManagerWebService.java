@@ -33,6 +33,7 @@ import org.jboss.resteasy.spi.ResteasyDeployment;
 import org.openremote.container.Container;
 import org.openremote.container.security.IdentityService;
 import org.openremote.container.web.WebService;
+import org.openremote.container.web.file.FileCache;
 import org.openremote.container.web.jsapi.JSAPIServlet;
 
 import javax.ws.rs.WebApplicationException;
@@ -43,7 +44,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -52,6 +53,7 @@ import static io.undertow.util.RedirectBuilder.redirect;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 import static javax.ws.rs.core.UriBuilder.fromUri;
 import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.model.Constants.REQUEST_HEADER_REALM;
 
@@ -64,6 +66,8 @@ public class ManagerWebService extends WebService {
     public static final String CONSOLE_USE_STATIC_BOWER_COMPONENTS = "CONSOLE_USE_STATIC_BOWER_COMPONENTS";
     public static final boolean CONSOLE_USE_STATIC_BOWER_COMPONENTS_DEFAULT = true;
     public static final String APP_DEFAULT = "APP_DEFAULT";
+    public static final String STATIC_CACHE_MB = "STATIC_CACHE_MB";
+    public static final int STATIC_CACHE_MB_DEFAULT = 64;
     public static final String APP_DEFAULT_DEFAULT = "manager";
     public static final String API_PATH = "/api";
     public static final String JSAPI_PATH = "/jsapi";
@@ -76,8 +80,10 @@ public class ManagerWebService extends WebService {
 
     protected Path appDocRoot;
     protected Path sharedDocRoot;
-    protected Collection<Class<?>> apiClasses = new HashSet<>();
-    protected Collection<Object> apiSingletons = new HashSet<>();
+    protected FileCache fileCache;
+    // Services add resources when they are initialized, possibly concurrently
+    protected Collection<Class<?>> apiClasses = ConcurrentHashMap.newKeySet();
+    protected Collection<Object> apiSingletons = ConcurrentHashMap.newKeySet();
 
     /**
      * Start web service after other services.
@@ -134,6 +140,9 @@ public class ManagerWebService extends WebService {
             };
         }
 
+        int staticCacheMb = getInteger(container.getConfig(), STATIC_CACHE_MB, STATIC_CACHE_MB_DEFAULT);
+        fileCache = staticCacheMb > 0 ? ManagerFileServlet.createFileCache(staticCacheMb * 1024L * 1024L) : null;
+
         // Serve deployment files unsecured (explicitly map deployment folders to request paths)
         appDocRoot = Paths.get(getString(container.getConfig(), APP_DOCROOT, APP_DOCROOT_DEFAULT));
         sharedDocRoot = Paths.get(getString(container.getConfig(), SHARED_DOCROOT, SHARED_DOCROOT_DEFAULT));
@@ -312,7 +321,7 @@ public class ManagerWebService extends WebService {
     // TODO: Switch to use PathResourceManager
     public HttpHandler createFileHandler(boolean devMode, IdentityService identityService, Path filePath, String[] requiredRoles) {
         requiredRoles = requiredRoles == null ? new String[0] : requiredRoles;
-        DeploymentInfo deploymentInfo = ManagerFileServlet.createDeploymentInfo(devMode, "", filePath, requiredRoles);
+        DeploymentInfo deploymentInfo = ManagerFileServlet.createDeploymentInfo(devMode, "", filePath, requiredRoles, fileCache);
         return new CanonicalPathHandler(addServletDeployment(identityService, deploymentInfo, requiredRoles.length != 0));
     }
 
@@ -0,0 +1,62 @@
+/*
+  ############################# ASSET PATH #############################
+
+  Materialised asset tree path, the identifier of the asset followed by its parent identifiers up to the root asset.
+  The path is set by trigger when an asset is inserted or reparented, reparenting also rewrites the paths of all
+  descendants. GET_ASSET_TREE_PATH now simply reads the column.
+ */
+
+alter table ASSET
+  add column PATH text[];
+
+update ASSET set PATH = GET_ASSET_TREE_PATH(ID);
+
+alter table ASSET
+  alter column PATH set not null;
+
+create index ASSET_PATH on ASSET using gin (PATH);
+
+create or replace function GET_ASSET_TREE_PATH(ASSET_ID text)
+  returns text [] as
+$$
+  select PATH from ASSET where ID = ASSET_ID;
+$$
+language sql stable;
+
+create or replace function SET_ASSET_PATH()
+  returns trigger as
+$$
+begin
+  if (TG_OP = 'INSERT' or NEW.PARENT_ID is distinct from OLD.PARENT_ID) then
+    NEW.PATH = array [text(NEW.ID)] || coalesce((select P.PATH from ASSET P where P.ID = NEW.PARENT_ID), array [] :: text []);
+  else
+    NEW.PATH = OLD.PATH;
+  end if;
+  return NEW;
+end;
+$$
+language plpgsql;
+
+create or replace function UPDATE_ASSET_DESCENDANT_PATHS()
+  returns trigger as
+$$
+begin
+  if (NEW.PARENT_ID is distinct from OLD.PARENT_ID) then
+    update ASSET
+    set PATH = PATH [1 : array_position(PATH, text(NEW.ID)) - 1] || NEW.PATH
+    where PATH @> array [text(NEW.ID)] and ID != NEW.ID;
+  end if;
+  return null;
+end;
+$$
+language plpgsql;
+
+create trigger ASSET_PATH
+  before insert or update of PARENT_ID
+  on ASSET
+  for each row execute procedure SET_ASSET_PATH();
+
+create trigger ASSET_DESCENDANT_PATHS
+  after update of PARENT_ID
+  on ASSET
+  for each row execute procedure UPDATE_ASSET_DESCENDANT_PATHS();
@@ -0,0 +1,8 @@
+/*
+  ############################# ASSET ATTRIBUTES INDEX #############################
+
+  Containment index of the attributes, used by asset queries with attribute value equality predicates which are
+  rewritten to an ATTRIBUTES @> '{"name": {"value": ...}}' pre-filter.
+ */
+
+create index ASSET_ATTRIBUTES on ASSET using gin (ATTRIBUTES jsonb_path_ops);
@@ -0,0 +1,51 @@
+/*
+  ############################# ASSET ATTRIBUTE STATE #############################
+
+  Optional storage of attribute values and value timestamps outside the ATTRIBUTES document, enabled with
+  ASSET_ATTRIBUTE_STATE_TABLE. Updating a row only rewrites the small row (a HOT update, the indexed columns don't
+  change) instead of the whole ATTRIBUTES document of the asset.
+
+  MERGE_ASSET_ATTRIBUTE_STATE returns the ATTRIBUTES document with the stored values and timestamps applied; when the
+  ATTRIBUTES document of an asset is updated, the state of attributes that were removed or that got a different value
+  or timestamp is deleted as the document is then newer.
+ */
+
+create table ASSET_ATTRIBUTE_STATE (
+  ASSET_ID        varchar(43)  not null,
+  NAME            varchar(255) not null,
+  VALUE           jsonb,
+  VALUE_TIMESTAMP int8         not null,
+  primary key (ASSET_ID, NAME),
+  foreign key (ASSET_ID) references ASSET (ID) on delete cascade
+) with (fillfactor = 50);
+
+create or replace function MERGE_ASSET_ATTRIBUTE_STATE(ASSET_ID text, ATTRIBUTES jsonb)
+  returns jsonb as
+$$
+  select coalesce($2 || (
+    select jsonb_object_agg(S.NAME, ($2 -> S.NAME) || jsonb_build_object('value', S.VALUE, 'valueTimestamp', S.VALUE_TIMESTAMP))
+    from ASSET_ATTRIBUTE_STATE S
+    where S.ASSET_ID = $1 and jsonb_exists($2, S.NAME)
+  ), $2);
+$$
+language sql stable;
+
+create or replace function CLEAR_ASSET_ATTRIBUTE_STATE()
+  returns trigger as
+$$
+begin
+  delete from ASSET_ATTRIBUTE_STATE S
+  where S.ASSET_ID = NEW.ID
+    and (NEW.ATTRIBUTES is null
+      or not jsonb_exists(NEW.ATTRIBUTES, S.NAME)
+      or (NEW.ATTRIBUTES -> S.NAME -> 'value') is distinct from (OLD.ATTRIBUTES -> S.NAME -> 'value')
+      or (NEW.ATTRIBUTES -> S.NAME -> 'valueTimestamp') is distinct from (OLD.ATTRIBUTES -> S.NAME -> 'valueTimestamp'));
+  return null;
+end;
+$$
+language plpgsql;
+
+create trigger CLEAR_ASSET_ATTRIBUTE_STATE
+  after update of ATTRIBUTES
+  on ASSET
+  for each row execute procedure CLEAR_ASSET_ATTRIBUTE_STATE();
@@ -0,0 +1,11 @@
+/*
+  ############################# ASSET ATTRIBUTES INDEX #############################
+
+  Asset queries also pre-filter on attribute existence with ATTRIBUTES ? 'name', which a jsonb_path_ops index can't
+  answer (it only supports @>, and a containment query without a value such as '{"name": {}}' would scan the whole
+  index). The default jsonb_ops operator class supports both key existence and containment.
+ */
+
+drop index ASSET_ATTRIBUTES;
+
+create index ASSET_ATTRIBUTES on ASSET using gin (ATTRIBUTES);
@@ -23,7 +23,6 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.hibernate.annotations.Check;
-import org.hibernate.annotations.Formula;
 import org.openremote.model.AbstractValueHolder;
 import org.openremote.model.IdentifiableEntity;
 import org.openremote.model.ValidationFailure;
@@ -43,7 +42,9 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -77,9 +78,9 @@ import static org.openremote.model.attribute.AttributeType.LOCATION;
  * <p>
  * The {@link #path} is a list of parent asset identifiers, starting with the identifier of
  * this asset, followed by parent asset identifiers, and ending with the identifier of the
- * root asset in the tree. This is a transient property and only resolved and usable when
- * the asset is loaded from storage and as calculating it is costly, might be empty when
- * certain optimized loading operations are used.
+ * root asset in the tree. This is a read-only property maintained by the database when an
+ * asset is stored or moved, it is only usable when the asset is loaded from storage and
+ * might be empty when certain optimized loading operations are used.
  * An asset may have dynamically-typed {@link #attributes} with an underlying
  * {@link ObjectValue} model. Use the {@link Attribute} etc. class to work with this API.
  * This property can be empty when certain optimized loading operations are used.
@@ -271,9 +272,13 @@ public class Asset implements IdentifiableEntity {
     @JsonIgnore
     protected ObservableList<AssetAttribute> attributeList;
 
-    // The following are expensive to query, so if they are null, they might not have been loaded
+    @Transient
+    @JsonIgnore
+    protected Map<String, CompiledAssetAttribute> compiledAttributes;
 
-    @Formula("get_asset_tree_path(ID)")
+    // The following might be excluded from queries, so if they are null, they might not have been loaded
+
+    @Column(name = "PATH", columnDefinition = "text[]", insertable = false, updatable = false)
     @org.hibernate.annotations.Type(type = "org.openremote.container.persistence.ArrayUserType")
     protected String[] path;
 
@@ -503,7 +508,7 @@ public class Asset implements IdentifiableEntity {
     }
 
     /**
-     * NOTE: This is a transient and optional property, set only in database query results.
+     * NOTE: This is a read-only and optional property, set only in database query results.
      * <p>
      * The identifiers of all parents representing the path in the tree. The first element
      * is the identifier of this instance, the last is the root asset without a parent.
@@ -563,9 +568,20 @@ public class Asset implements IdentifiableEntity {
         return getAttribute(descriptor.getAttributeName());
     }
 
+    /**
+     * The compiled view (see {@link AssetAttribute#getCompiled}) of the returned attribute is shared with the other
+     * instances returned for the attribute, it is compiled again only when the meta items of the attribute change.
+     */
     public Optional<AssetAttribute> getAttribute(String name) {
         return attributes == null ? Optional.empty() : attributes.getObject(name)
-            .flatMap(objectValue -> AssetAttribute.attributeFromJson(objectValue, id, name));
+            .flatMap(objectValue -> AssetAttribute.attributeFromJson(objectValue, id, name))
+            .map(attribute -> {
+                if (compiledAttributes == null) {
+                    compiledAttributes = new HashMap<>();
+                }
+                attribute.assetCompiledAttributes = compiledAttributes;
+                return attribute;
+            });
     }
 
     public Asset setAttributes(ObjectValue attributes) {
@@ -23,9 +23,11 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.openremote.model.AbstractValueHolder;
+import org.openremote.model.HasUniqueResourceName;
 import org.openremote.model.ValidationFailure;
 import org.openremote.model.attribute.*;
 import org.openremote.model.util.Pair;
+import org.openremote.model.value.ArrayValue;
 import org.openremote.model.value.ObjectValue;
 import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
@@ -44,6 +46,11 @@ import static org.openremote.model.util.TextUtil.requireNonNullAndNonEmpty;
 public class AssetAttribute extends Attribute {
 
     protected String assetId;
+    @JsonIgnore
+    protected CompiledAssetAttribute compiled;
+    // Compiled views of the attributes of the asset this attribute was read from, see Asset#getAttribute
+    @JsonIgnore
+    protected Map<String, CompiledAssetAttribute> assetCompiledAttributes;
 
     public AssetAttribute() {
         super(Values.createObject());
@@ -172,6 +179,111 @@ public class AssetAttribute extends Attribute {
         return super.getMetaItemValidationFailures(item, metaItemDescriptor);
     }
 
+    /**
+     * Discards the compiled view, the returned list might be modified by the caller. If the meta JSON array is shared
+     * (see {@link ArrayValue#share}) with another version of this attribute (see {@link #withValue}) or a compiled view,
+     * it is copied first; this applies to every holder of the array, also other instances reading the same attribute
+     * JSON.
+     */
+    @JsonIgnore
+    @Override
+    public Meta getMeta() {
+        compiled = null;
+        ArrayValue metaArray = getObjectValue().getArray(META_FIELD_NAME).orElse(null);
+        if (metaArray != null && metaArray.isShared()) {
+            super.setMeta(new Meta(metaArray.deepCopy()));
+        }
+        return super.getMeta();
+    }
+
+    /**
+     * Returns a new version of this attribute with the given value and timestamp. Instead of copying the whole
+     * attribute like {@link #deepCopy}, the new version shares the type, meta items and compiled view with this
+     * attribute. The meta JSON array is marked as shared, so whichever holder accesses its meta items through
+     * {@link #getMeta}, {@link #getMetaStream}, {@link #getMetaItem} or {@link #getMetaItems} gets its own copy of
+     * them, as these items might be modified in place.
+     * The meta JSON array must not be modified through {@link #getObjectValue} directly.
+     */
+    public AssetAttribute withValue(Value value, long timestamp) {
+        ObjectValue objectValue = Values.createObject();
+        ObjectValue current = getObjectValue();
+        for (String key : current.keys()) {
+            current.get(key).ifPresent(fieldValue -> objectValue.put(key, fieldValue));
+        }
+        AssetAttribute attribute = new AssetAttribute(objectValue);
+        attribute.name = name;
+        attribute.assetId = assetId;
+        attribute.setValue(value, timestamp);
+
+        current.getArray(META_FIELD_NAME).ifPresent(ArrayValue::share);
+        attribute.compiled = compiled;
+        return attribute;
+    }
+
+    /**
+     * Returns the compiled view of the meta items of this attribute, it is compiled on first use and reused until the
+     * meta items might have been modified: accessing {@link #getMeta}, {@link #getMetaStream}, {@link #getMetaItem} or
+     * {@link #getMetaItems}, or replacing the meta JSON array, discards it.
+     * Use this instead of the meta item methods of this class when inspecting the same attribute repeatedly (e.g. in
+     * the processing chain).
+     */
+    @JsonIgnore
+    public CompiledAssetAttribute getCompiled() {
+        if (compiled == null || !compiled.isCompiledFrom(this)) {
+            CompiledAssetAttribute assetCompiled = assetCompiledAttributes != null && name != null
+                ? assetCompiledAttributes.get(name)
+                : null;
+            if (assetCompiled != null && assetCompiled.isCompiledFrom(this)) {
+                compiled = assetCompiled;
+            } else {
+                compiled = new CompiledAssetAttribute(this);
+                if (assetCompiledAttributes != null && name != null) {
+                    assetCompiledAttributes.put(name, compiled);
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Discards the compiled view and copies shared meta items like {@link #getMeta}, the returned items (also those of
+     * {@link #getMetaItem} and {@link #getMetaItems}) might be modified in place by the caller.
+     */
+    @Override
+    public Stream<MetaItem> getMetaStream() {
+        return getMeta().stream();
+    }
+
+    @Override
+    public boolean hasMetaItem(String metaName) {
+        return readMetaStream().anyMatch(isMetaNameEqualTo(metaName));
+    }
+
+    @Override
+    public boolean hasMetaItem(HasUniqueResourceName metaName) {
+        return readMetaStream().anyMatch(isMetaNameEqualTo(metaName));
+    }
+
+    /**
+     * Only reads the meta items, the compiled view stays valid and shared meta items aren't copied. The items must not
+     * be modified or returned to callers of this class.
+     */
+    protected Stream<MetaItem> readMetaStream() {
+        return super.getMeta().stream();
+    }
+
+    @Override
+    public List<ValidationFailure> getMetaItemsValidationFailures() {
+        // Only reads the meta items, the compiled view stays valid
+        List<ValidationFailure> failures = new ArrayList<>();
+        if (hasMetaItems()) {
+            for (MetaItem metaItem : super.getMeta()) {
+                failures.addAll(getMetaItemValidationFailures(metaItem, Optional.empty()));
+            }
+        }
+        return failures;
+    }
+
     @JsonIgnore
     @Override
     public AssetAttribute setMeta(Meta meta) {
@@ -221,11 +333,11 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean hasLabel() {
-        return getMetaStream().anyMatch(isMetaNameEqualTo(LABEL));
+        return readMetaStream().anyMatch(isMetaNameEqualTo(LABEL));
     }
 
     public Optional<String> getLabel() {
-        return Optional.ofNullable(getMetaStream()
+        return Optional.ofNullable(readMetaStream()
             .filter(isMetaNameEqualTo(LABEL))
             .findFirst()
             .flatMap(AbstractValueHolder::getValueAsString)
@@ -246,7 +358,7 @@ public class AssetAttribute extends Attribute {
 
     @JsonIgnore
     public boolean isExecutable() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(EXECUTABLE))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -263,12 +375,12 @@ public class AssetAttribute extends Attribute {
 
     @JsonIgnore
     public boolean hasAgentLink() {
-        return getMetaStream().anyMatch(isMetaNameEqualTo(AGENT_LINK));
+        return readMetaStream().anyMatch(isMetaNameEqualTo(AGENT_LINK));
     }
 
     @JsonIgnore
     public boolean isProtocolConfiguration() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(PROTOCOL_CONFIGURATION))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -277,7 +389,7 @@ public class AssetAttribute extends Attribute {
 
     @JsonIgnore
     public boolean isShowOnDashboard() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(SHOW_ON_DASHBOARD))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -294,11 +406,11 @@ public class AssetAttribute extends Attribute {
 
     @JsonIgnore
     public boolean hasFormat() {
-        return getMetaStream().anyMatch(isMetaNameEqualTo(FORMAT));
+        return readMetaStream().anyMatch(isMetaNameEqualTo(FORMAT));
     }
 
     public Optional<String> getFormat() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(FORMAT))
             .findFirst()
             .flatMap(AbstractValueHolder::getValueAsString);
@@ -313,11 +425,11 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean hasDescription() {
-        return getMetaStream().anyMatch(isMetaNameEqualTo(DESCRIPTION));
+        return readMetaStream().anyMatch(isMetaNameEqualTo(DESCRIPTION));
     }
 
     public Optional<String> getDescription() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(DESCRIPTION))
             .findFirst()
             .flatMap(AbstractValueHolder::getValueAsString);
@@ -335,7 +447,7 @@ public class AssetAttribute extends Attribute {
      * Defaults to <code>true</code> if there is no {@link MetaItemType#DISABLED} item.
      */
     public boolean isEnabled() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(DISABLED))
             .findFirst()
             .map(metaItem -> !metaItem.getValueAsBoolean().orElse(false))
@@ -351,7 +463,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isAccessRestrictedRead() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(MetaItemType.ACCESS_RESTRICTED_READ))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -359,7 +471,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isAccessRestrictedWrite() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(MetaItemType.ACCESS_RESTRICTED_WRITE))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -367,7 +479,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isAccessPublicRead() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(MetaItemType.ACCESS_PUBLIC_READ))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -375,7 +487,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isReadOnly() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(READ_ONLY))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -391,7 +503,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isStoreDatapoints() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(STORE_DATA_POINTS))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -407,7 +519,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isRuleState() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(RULE_STATE))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -423,7 +535,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public boolean isRuleEvent() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(RULE_EVENT))
             .findFirst()
             .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
@@ -439,7 +551,7 @@ public class AssetAttribute extends Attribute {
     }
 
     public Optional<String> getRuleEventExpires() {
-        return getMetaStream()
+        return readMetaStream()
             .filter(isMetaNameEqualTo(RULE_EVENT_EXPIRES))
             .findFirst()
             .flatMap(AbstractValueHolder::getValueAsString);
@@ -457,6 +569,14 @@ public class AssetAttribute extends Attribute {
         AssetAttribute copy = new AssetAttribute(getObjectValue().deepCopy());
         copy.name = name;
         copy.assetId = assetId;
+        if (compiled != null && compiled.isCompiledFrom(this)) {
+            // The compiled view doesn't depend on the value so the copy can share it, together with the (shared) meta
+            // JSON array it was compiled from
+            if (compiled.meta != null) {
+                copy.getObjectValue().put(META_FIELD_NAME, compiled.meta);
+            }
+            copy.compiled = compiled;
+        }
         return copy;
     }
 
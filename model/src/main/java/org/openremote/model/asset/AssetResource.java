@@ -19,6 +19,7 @@
  */
 package org.openremote.model.asset;
 
+import com.google.gwt.core.shared.GwtIncompatible;
 import jsinterop.annotations.JsType;
 import org.openremote.model.Constants;
 import org.openremote.model.attribute.AttributeRef;
@@ -30,6 +31,7 @@ import org.openremote.model.query.AssetQuery;
 import javax.annotation.security.RolesAllowed;
 import javax.validation.Valid;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
 
 import java.util.List;
 
@@ -263,6 +265,22 @@ public interface AssetResource {
     @SuppressWarnings("unusable-by-js")
     Asset[] queryAssets(@BeanParam RequestParams requestParams, AssetQuery query);
 
+    /**
+     * Retrieve assets using an {@link AssetQuery}, same as {@link #queryAssets} but the JSON array is written to the
+     * response page by page while the assets are read from the database, use this to export or synchronise large
+     * numbers of assets.
+     * Use {@link AssetQuery#limit} and {@link AssetQuery#after} with the ID of the last received asset to page through
+     * the result.
+     */
+    @POST
+    @Path("query/stream")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @RolesAllowed({Constants.READ_ASSETS_ROLE})
+    @SuppressWarnings("unusable-by-js")
+    @GwtIncompatible
+    Response streamAssets(@BeanParam RequestParams requestParams, AssetQuery query);
+
     /**
      * Retrieve public assets using an {@link AssetQuery}.
      * <p>
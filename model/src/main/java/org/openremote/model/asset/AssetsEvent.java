@@ -24,20 +24,35 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.openremote.model.event.shared.SharedEvent;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
- * This event is used in response to a {@link ReadAssetsEvent}.
+ * This event is used in response to a {@link ReadAssetsEvent}, the digests (asset ID to digest) are only present if
+ * they were requested. The digests cover the structure of each asset, the value digests cover the attribute values and
+ * value timestamps.
  */
 public class AssetsEvent extends SharedEvent {
 
     protected String name;
     protected List<Asset> assets;
+    protected Map<String, String> digests;
+    protected Map<String, String> valueDigests;
+
+    public AssetsEvent(String name, List<Asset> assets) {
+        this(name, assets, null);
+    }
+
+    public AssetsEvent(String name, List<Asset> assets, Map<String, String> digests) {
+        this(name, assets, digests, null);
+    }
 
     @JsonCreator
-    public AssetsEvent(@JsonProperty("name") String name, @JsonProperty("assets") List<Asset> assets) {
+    public AssetsEvent(@JsonProperty("name") String name, @JsonProperty("assets") List<Asset> assets, @JsonProperty("digests") Map<String, String> digests, @JsonProperty("valueDigests") Map<String, String> valueDigests) {
         this.name = name;
         this.assets = assets;
+        this.digests = digests;
+        this.valueDigests = valueDigests;
     }
 
     public String getName() {
@@ -48,6 +63,14 @@ public class AssetsEvent extends SharedEvent {
         return assets;
     }
 
+    public Map<String, String> getDigests() {
+        return digests;
+    }
+
+    public Map<String, String> getValueDigests() {
+        return valueDigests;
+    }
+
     @Override
     public String toString() {
         return AssetsEvent.class.getSimpleName() + "{" +
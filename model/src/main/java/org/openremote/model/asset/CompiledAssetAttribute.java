@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.asset;
+
+import org.openremote.model.AbstractValueHolder;
+import org.openremote.model.attribute.*;
+import org.openremote.model.util.AssetModelUtil;
+import org.openremote.model.value.ArrayValue;
+
+import java.util.*;
+
+import static org.openremote.model.attribute.MetaItemType.*;
+
+/**
+ * Immutable view of the meta items of an {@link AssetAttribute}, compiled once so that checking a flag or looking up a
+ * meta item is a field read or hash lookup instead of a scan over the meta JSON array. The well known
+ * {@link AttributeDescriptor} and {@link AttributeValueDescriptor} are resolved when compiling.
+ * <p>
+ * The view doesn't include the value of the attribute, it stays valid while the meta items of the attribute are not
+ * replaced. The view holds the {@link MetaItem}s of the meta JSON array of the attribute, which is marked as shared
+ * (see {@link ArrayValue#share}) so the attribute copies the array before the items can be modified; the items returned
+ * must not be modified.
+ */
+public class CompiledAssetAttribute {
+
+    protected final String name;
+    protected final ArrayValue meta;
+    protected final int metaLength;
+    protected final AttributeDescriptor attributeDescriptor;
+    protected final AttributeValueDescriptor valueDescriptor;
+    protected final Map<String, List<MetaItem>> metaItems;
+    protected final boolean executable;
+    protected final boolean readOnly;
+    protected final boolean storeDatapoints;
+    protected final boolean ruleState;
+    protected final boolean ruleEvent;
+    protected final boolean accessRestrictedRead;
+    protected final boolean accessRestrictedWrite;
+    protected final boolean accessPublicRead;
+    protected final boolean accessPublicWrite;
+    protected final boolean enabled;
+    protected final boolean protocolConfiguration;
+    protected final AttributeRef agentLink;
+    protected final String ruleEventExpires;
+
+    public CompiledAssetAttribute(AssetAttribute attribute) {
+        this.name = attribute.getName().orElse(null);
+        this.attributeDescriptor = AssetModelUtil.getAttributeDescriptor(name).orElse(null);
+        this.valueDescriptor = attribute.getType().orElse(null);
+        this.meta = attribute.getObjectValue().getArray(Attribute.META_FIELD_NAME).map(ArrayValue::share).orElse(null);
+        this.metaLength = meta != null ? meta.length() : 0;
+
+        Map<String, List<MetaItem>> metaItems = new HashMap<>();
+        if (meta != null) {
+            // Reads without discarding the compiled view of the attribute, the shared items aren't copied
+            new Meta(meta).forEach(metaItem ->
+                metaItem.getName().ifPresent(metaName ->
+                    metaItems.computeIfAbsent(metaName, n -> new ArrayList<>(1)).add(metaItem)
+                )
+            );
+        }
+        metaItems.replaceAll((metaName, items) -> Collections.unmodifiableList(items));
+        this.metaItems = Collections.unmodifiableMap(metaItems);
+
+        this.executable = getBoolean(EXECUTABLE, false);
+        this.readOnly = getBoolean(READ_ONLY, false);
+        this.storeDatapoints = getBoolean(STORE_DATA_POINTS, false);
+        this.ruleState = getBoolean(RULE_STATE, false);
+        this.ruleEvent = getBoolean(RULE_EVENT, false);
+        this.accessRestrictedRead = getBoolean(ACCESS_RESTRICTED_READ, false);
+        this.accessRestrictedWrite = getBoolean(ACCESS_RESTRICTED_WRITE, false);
+        this.accessPublicRead = getBoolean(ACCESS_PUBLIC_READ, false);
+        this.accessPublicWrite = hasMetaItem(ACCESS_PUBLIC_WRITE);
+        this.enabled = !getBoolean(DISABLED, false);
+        this.protocolConfiguration = getBoolean(PROTOCOL_CONFIGURATION, false);
+        this.agentLink = getMetaItem(AGENT_LINK)
+            .flatMap(AbstractValueHolder::getValue)
+            .flatMap(AttributeRef::fromValue)
+            .orElse(null);
+        this.ruleEventExpires = getMetaItem(RULE_EVENT_EXPIRES)
+            .flatMap(AbstractValueHolder::getValueAsString)
+            .orElse(null);
+    }
+
+    /**
+     * @return <code>true</code> if this view was compiled from the current meta JSON array of the attribute.
+     */
+    public boolean isCompiledFrom(AssetAttribute attribute) {
+        ArrayValue attributeMeta = attribute.getObjectValue().getArray(Attribute.META_FIELD_NAME).orElse(null);
+        return attributeMeta == meta
+            && (meta == null || meta.length() == metaLength)
+            && Objects.equals(attribute.name, name);
+    }
+
+    public Optional<String> getName() {
+        return Optional.ofNullable(name);
+    }
+
+    public Optional<AttributeDescriptor> getAttributeDescriptor() {
+        return Optional.ofNullable(attributeDescriptor);
+    }
+
+    public Optional<AttributeValueDescriptor> getValueDescriptor() {
+        return Optional.ofNullable(valueDescriptor);
+    }
+
+    public boolean hasMetaItem(String metaName) {
+        return metaItems.containsKey(metaName);
+    }
+
+    public boolean hasMetaItem(HasUniqueResourceName metaName) {
+        return hasMetaItem(metaName.getUrn());
+    }
+
+    /**
+     * @return The first meta item with the name, the same as {@link Attribute#getMetaItem}.
+     */
+    public Optional<MetaItem> getMetaItem(String metaName) {
+        List<MetaItem> items = metaItems.get(metaName);
+        return items != null ? Optional.of(items.get(0)) : Optional.empty();
+    }
+
+    public Optional<MetaItem> getMetaItem(HasUniqueResourceName metaName) {
+        return getMetaItem(metaName.getUrn());
+    }
+
+    /**
+     * @return All meta items with the name, for multi-valued meta items.
+     */
+    public List<MetaItem> getMetaItems(String metaName) {
+        return metaItems.getOrDefault(metaName, Collections.emptyList());
+    }
+
+    public List<MetaItem> getMetaItems(HasUniqueResourceName metaName) {
+        return getMetaItems(metaName.getUrn());
+    }
+
+    public boolean isExecutable() {
+        return executable;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isStoreDatapoints() {
+        return storeDatapoints;
+    }
+
+    public boolean isRuleState() {
+        return ruleState;
+    }
+
+    public boolean isRuleEvent() {
+        return ruleEvent;
+    }
+
+    public Optional<String> getRuleEventExpires() {
+        return Optional.ofNullable(ruleEventExpires);
+    }
+
+    public boolean isAccessRestrictedRead() {
+        return accessRestrictedRead;
+    }
+
+    public boolean isAccessRestrictedWrite() {
+        return accessRestrictedWrite;
+    }
+
+    public boolean isAccessPublicRead() {
+        return accessPublicRead;
+    }
+
+    public boolean isAccessPublicWrite() {
+        return accessPublicWrite;
+    }
+
+    /**
+     * Defaults to <code>true</code> if there is no {@link MetaItemType#DISABLED} item.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isProtocolConfiguration() {
+        return protocolConfiguration;
+    }
+
+    public boolean hasAgentLink() {
+        return hasMetaItem(AGENT_LINK);
+    }
+
+    public Optional<AttributeRef> getAgentLink() {
+        return Optional.ofNullable(agentLink);
+    }
+
+    protected boolean getBoolean(HasUniqueResourceName metaName, boolean defaultValue) {
+        return getMetaItem(metaName)
+            .map(metaItem -> metaItem.getValueAsBoolean().orElse(false))
+            .orElse(defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + name + '\'' +
+            ", meta=" + metaItems.keySet() +
+            '}';
+    }
+}
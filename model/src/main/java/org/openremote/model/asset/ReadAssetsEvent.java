@@ -27,16 +27,25 @@ import org.openremote.model.query.AssetQuery;
 /**
  * A client sends this event to the server to query assets, expecting
  * the server to answer "soon" with an {@link AssetsEvent} with the results.
+ * <p>
+ * With {@link #isIncludeDigests} the server also returns a digest of the complete state of each asset found, which
+ * allows the client to only load the assets that it doesn't have in the same state.
  */
 public class ReadAssetsEvent extends SharedEvent {
 
     protected String name;
     protected AssetQuery assetQuery;
+    protected boolean includeDigests;
+
+    public ReadAssetsEvent(String name, AssetQuery assetQuery) {
+        this(name, assetQuery, false);
+    }
 
     @JsonCreator
-    public ReadAssetsEvent(@JsonProperty("name") String name, @JsonProperty("assetQuery") AssetQuery assetQuery) {
+    public ReadAssetsEvent(@JsonProperty("name") String name, @JsonProperty("assetQuery") AssetQuery assetQuery, @JsonProperty("includeDigests") boolean includeDigests) {
         this.name = name;
         this.assetQuery = assetQuery;
+        this.includeDigests = includeDigests;
     }
 
     public ReadAssetsEvent(AssetQuery assetQuery) {
@@ -51,11 +60,16 @@ public class ReadAssetsEvent extends SharedEvent {
         return name;
     }
 
+    public boolean isIncludeDigests() {
+        return includeDigests;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
             "name='" + name + '\'' +
             "query='" + assetQuery + '\'' +
+            ", includeDigests=" + includeDigests +
             '}';
     }
 }
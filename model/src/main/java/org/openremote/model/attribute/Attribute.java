@@ -239,10 +239,7 @@ public abstract class Attribute extends AbstractValueTimestampHolder {
 //        if (!getValueTimestamp().isPresent())
 //            failures.add(new ValidationFailure(ATTRIBUTE_VALUE_TIMESTAMP_MISSING));
 
-        // Value can be empty, if it's not it must validate with the type
-        getValue().flatMap(value ->
-            getType().flatMap(AttributeValueDescriptor::getValidator).flatMap(v -> v.apply(value))
-        ).ifPresent(failures::add);
+        getValueValidationFailure().ifPresent(failures::add);
 
         if (includeMeta) {
             failures.addAll(getMetaItemsValidationFailures());
@@ -251,6 +248,17 @@ public abstract class Attribute extends AbstractValueTimestampHolder {
         return failures;
     }
 
+    /**
+     * Validates only the value of this attribute with its type, use this instead of {@link #getValidationFailures}
+     * when only the value changed.
+     */
+    public Optional<ValidationFailure> getValueValidationFailure() {
+        // Value can be empty, if it's not it must validate with the type
+        return getValue().flatMap(value ->
+            getType().flatMap(AttributeValueDescriptor::getValidator).flatMap(v -> v.apply(value))
+        );
+    }
+
     public List<ValidationFailure> getMetaItemsValidationFailures() {
         List<ValidationFailure> failures = new ArrayList<>();
         if (hasMetaItems()) {
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.attribute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of {@link AttributeEvent}s that were produced together (e.g. from a single message received by a protocol)
+ * and should be processed as one unit; events are processed in list order.
+ */
+public class AttributeEventBatch {
+
+    protected List<AttributeEvent> events;
+
+    protected AttributeEventBatch() {
+    }
+
+    public AttributeEventBatch(Collection<AttributeEvent> events) {
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    public List<AttributeEvent> getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "events=" + events +
+            "}";
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.gateway;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.Date;
+
+/**
+ * Several {@link SharedEvent}s sent between a gateway and the central manager in one message; the {@link #payload} is
+ * the Base64 encoded, deflate compressed JSON array of the events in the order they occurred. Each event keeps its own
+ * timestamp.
+ */
+public class GatewayBatchEvent extends SharedEvent {
+
+    protected int count;
+    protected String payload;
+
+    @JsonCreator
+    public GatewayBatchEvent(@JsonProperty("timestamp") Date timestamp, @JsonProperty("count") int count, @JsonProperty("payload") String payload) {
+        super(timestamp != null ? timestamp.getTime() : new Date().getTime());
+        this.count = count;
+        this.payload = payload;
+    }
+
+    public GatewayBatchEvent(long timestamp, int count, String payload) {
+        super(timestamp);
+        this.count = count;
+        this.payload = payload;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "timestamp=" + getTimestamp() +
+            ", count=" + count +
+            ", payloadLength=" + (payload != null ? payload.length() : 0) +
+            '}';
+    }
+}
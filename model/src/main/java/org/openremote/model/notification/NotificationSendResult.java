@@ -23,10 +23,16 @@ public class NotificationSendResult {
 
     protected boolean success;
     protected String message;
+    protected boolean retryable;
 
     protected NotificationSendResult(boolean success, String message) {
+        this(success, message, false);
+    }
+
+    protected NotificationSendResult(boolean success, String message, boolean retryable) {
         this.success = success;
         this.message = message;
+        this.retryable = retryable;
     }
 
     public boolean isSuccess() {
@@ -37,6 +43,13 @@ public class NotificationSendResult {
         return message;
     }
 
+    /**
+     * Indicates the failure is temporary (e.g. the transport is unavailable) and sending can be tried again.
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+
     public static NotificationSendResult success() {
         return new NotificationSendResult(true, null);
     }
@@ -44,4 +57,8 @@ public class NotificationSendResult {
     public static NotificationSendResult failure(String message) {
         return new NotificationSendResult(false, message);
     }
+
+    public static NotificationSendResult failure(String message, boolean retryable) {
+        return new NotificationSendResult(false, message, retryable);
+    }
 }
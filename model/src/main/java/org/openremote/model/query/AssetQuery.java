@@ -37,6 +37,7 @@ public class AssetQuery {
 
         public String[] attributes;
         public String[] meta;
+        public MetaPredicate[] attributeMeta;
         public boolean excludePath;
         public boolean excludeAttributeMeta;
         public boolean excludeAttributes;
@@ -92,6 +93,15 @@ public class AssetQuery {
             return meta(Arrays.stream(meta).map(MetaItemDescriptor::getUrn).toArray(String[]::new));
         }
 
+        /**
+         * Only select the attributes that have a meta item matching any of the predicates, the meta of the selected
+         * attributes is not filtered.
+         */
+        public Select attributeMeta(MetaPredicate... attributeMetaPredicates) {
+            this.attributeMeta = attributeMetaPredicates;
+            return this;
+        }
+
         public Select excludeAttributes(boolean exclude) {
             this.excludeAttributes = exclude;
             return this;
@@ -138,6 +148,7 @@ public class AssetQuery {
                     ", excludePath=" + excludePath +
                     ", excludeParentInfo=" + excludeParentInfo +
                     ", attributeNames=" + Arrays.toString(attributes) +
+                    ", attributeMeta=" + Arrays.toString(attributeMeta) +
                     '}';
         }
     }
@@ -250,6 +261,8 @@ public class AssetQuery {
     // Ordering
     public OrderBy orderBy;
     public int limit;
+    // Keyset pagination, ID of the last asset of the previous page
+    public String after;
 
     public AssetQuery() {
     }
@@ -422,6 +435,21 @@ public class AssetQuery {
         return this;
     }
 
+    public AssetQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Only return assets that are ordered after the specified asset, use the ID of the last asset of the previous
+     * page together with a {@link #limit} to page through large result sets without offset scans. Results are ordered
+     * by {@link #orderBy} and then by asset ID so the order is stable.
+     */
+    public AssetQuery after(String assetId) {
+        this.after = assetId;
+        return this;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
@@ -436,6 +464,8 @@ public class AssetQuery {
                 ", attribute=" + (attributes != null ? attributes.toString() : "null") +
                 ", attributeMeta=" + Arrays.toString(attributeMeta) +
                 ", orderBy=" + orderBy +
+                ", limit=" + limit +
+                ", after='" + after + '\'' +
                 ", recursive=" + recursive +
                 '}';
     }
@@ -29,7 +29,11 @@ import org.openremote.model.attribute.AttributeValueDescriptor;
 import org.openremote.model.attribute.MetaItem;
 import org.openremote.model.attribute.MetaItemDescriptor;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static org.openremote.model.util.TextUtil.isNullOrEmpty;
 
@@ -47,6 +51,10 @@ public class AssetModelUtil {
     protected static AttributeDescriptor[] attributeDescriptors = new AttributeDescriptor[0];
     protected static AttributeValueDescriptor[] attributeValueDescriptors = new AttributeValueDescriptor[0];
     protected static MetaItemDescriptor[] metaItemDescriptors = new MetaItemDescriptor[0];
+    // Case insensitive lookup indexes of the descriptors, see createIndex()
+    protected static Map<String, AttributeDescriptor> attributeDescriptorIndex = new HashMap<>();
+    protected static Map<String, AttributeValueDescriptor> attributeValueDescriptorIndex = new HashMap<>();
+    protected static Map<String, MetaItemDescriptor> metaItemDescriptorIndex = new HashMap<>();
 
     private AssetModelUtil() {}
 
@@ -64,6 +72,7 @@ public class AssetModelUtil {
     @JsMethod
     public static void setAttributeDescriptors(AttributeDescriptor[] attributeDescriptors) {
         AssetModelUtil.attributeDescriptors = attributeDescriptors;
+        AssetModelUtil.attributeDescriptorIndex = createIndex(attributeDescriptors, AttributeDescriptor::getAttributeName);
     }
 
     /**
@@ -72,6 +81,7 @@ public class AssetModelUtil {
     @JsMethod
     public static void setAttributeValueDescriptors(AttributeValueDescriptor[] attributeValueDescriptors) {
         AssetModelUtil.attributeValueDescriptors = attributeValueDescriptors;
+        AssetModelUtil.attributeValueDescriptorIndex = createIndex(attributeValueDescriptors, AttributeValueDescriptor::getName);
     }
 
     /**
@@ -80,6 +90,7 @@ public class AssetModelUtil {
     @JsMethod
     public static void setMetaItemDescriptors(MetaItemDescriptor[] metaItemDescriptors) {
         AssetModelUtil.metaItemDescriptors = metaItemDescriptors;
+        AssetModelUtil.metaItemDescriptorIndex = createIndex(metaItemDescriptors, MetaItemDescriptor::getUrn);
     }
 
     @JsMethod
@@ -105,11 +116,7 @@ public class AssetModelUtil {
     public static Optional<MetaItemDescriptor> getMetaItemDescriptor(String urn) {
         if (isNullOrEmpty(urn))
             return Optional.empty();
-        for (MetaItemDescriptor metaItemDescriptor : metaItemDescriptors) {
-            if (metaItemDescriptor.getUrn().equalsIgnoreCase(urn))
-                return Optional.of(metaItemDescriptor);
-        }
-        return Optional.empty();
+        return lookup(metaItemDescriptorIndex, urn);
     }
 
     public static Optional<AssetDescriptor> getAssetDescriptor(String assetType) {
@@ -126,23 +133,13 @@ public class AssetModelUtil {
     public static Optional<AttributeDescriptor> getAttributeDescriptor(String name) {
         if (name == null)
             return Optional.empty();
-
-        for (AttributeDescriptor attributeDescriptor : attributeDescriptors) {
-            if (name.equalsIgnoreCase(attributeDescriptor.getAttributeName()))
-                return Optional.of(attributeDescriptor);
-        }
-        return Optional.empty();
+        return lookup(attributeDescriptorIndex, name);
     }
 
     public static Optional<AttributeValueDescriptor> getAttributeValueDescriptor(String name) {
         if (name == null)
             return Optional.empty();
-
-        for (AttributeValueDescriptor attributeValueDescriptor : attributeValueDescriptors) {
-            if (name.equalsIgnoreCase(attributeValueDescriptor.getName()))
-                return Optional.of(attributeValueDescriptor);
-        }
-        return Optional.empty();
+        return lookup(attributeValueDescriptorIndex, name);
     }
 
     public static boolean isMetaItemRestrictedRead(MetaItem metaItem) {
@@ -175,4 +172,30 @@ public class AssetModelUtil {
 //
 //        return list.toArray(new AssetDescriptor[list.size()]);
 //    }
+
+    /**
+     * Index the descriptors by their name as is and upper case; the first descriptor wins, as with the case insensitive
+     * scan of the array this replaces.
+     */
+    protected static <T> Map<String, T> createIndex(T[] descriptors, Function<T, String> nameFunction) {
+        Map<String, T> index = new HashMap<>();
+        if (descriptors != null) {
+            for (T descriptor : descriptors) {
+                String name = nameFunction.apply(descriptor);
+                if (name != null) {
+                    index.putIfAbsent(name, descriptor);
+                    index.putIfAbsent(name.toUpperCase(Locale.ROOT), descriptor);
+                }
+            }
+        }
+        return index;
+    }
+
+    protected static <T> Optional<T> lookup(Map<String, T> index, String name) {
+        T descriptor = index.get(name);
+        if (descriptor == null) {
+            descriptor = index.get(name.toUpperCase(Locale.ROOT));
+        }
+        return Optional.ofNullable(descriptor);
+    }
 }
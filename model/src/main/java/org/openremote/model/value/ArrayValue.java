@@ -70,6 +70,14 @@ public interface ArrayValue extends Value {
 
     ArrayValue deepCopy();
 
+    /**
+     * Marks this array as shared by several holders (e.g. versions of an attribute), from now on a holder must modify
+     * a {@link #deepCopy} instead of this array. Copies aren't shared.
+     */
+    ArrayValue share();
+
+    boolean isShared();
+
     boolean contains(String string, boolean ignoreCase);
 
     boolean contains(String string);
@@ -80,6 +80,13 @@ public interface ObjectValue extends Value {
 
     ObjectValue deepCopy();
 
+    /**
+     * A copy that shares the object and array values of this object until they are read or replaced in the copy, so
+     * only the values that are accessed (and may be modified) are copied and writing the copy as JSON copies nothing.
+     * This object must not be modified while the copy is in use.
+     */
+    ObjectValue lazyCopy();
+
     /**
      * @param ignoreKeyPredicate Ignore given keys in the comparison.
      */
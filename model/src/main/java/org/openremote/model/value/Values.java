@@ -24,8 +24,13 @@ import jsinterop.base.Any;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.MetaItem;
 import org.openremote.model.attribute.MetaItemDescriptor;
+import org.openremote.model.value.impl.Utf8ValueReader;
+import org.openremote.model.value.impl.Utf8ValueWriter;
 import org.openremote.model.value.impl.ValueFactoryImpl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -83,6 +88,24 @@ public class Values {
         return instance().parse(jsonString);
     }
 
+    /**
+     * Parses UTF-8 encoded JSON directly from the stream, see {@link Utf8ValueReader}.
+     */
+    @JsIgnore
+    @GwtIncompatible
+    public static <T extends Value> Optional<T> parse(InputStream inputStream) throws IOException, ValueException {
+        return Optional.ofNullable(new Utf8ValueReader(instance(), inputStream).<T>read());
+    }
+
+    /**
+     * Writes the value as UTF-8 encoded JSON directly to the stream, see {@link Utf8ValueWriter}.
+     */
+    @JsIgnore
+    @GwtIncompatible
+    public static void write(Value value, OutputStream outputStream) throws IOException, ValueException {
+        new Utf8ValueWriter(outputStream).write(value);
+    }
+
     public static native <T extends Value> Optional<T> fromAny(Any any) /*-{
         // TODO This makes a copy which is inefficient, need twice the memory. We need a better JSON API to share with Java and JS.
         return @org.openremote.model.value.Values::parse(Ljava/lang/String;)(JSON.stringify(any));
@@ -28,6 +28,7 @@ public class ArrayValueImpl extends ValueImpl implements ArrayValue {
 
     final private transient ValueFactory factory;
     private transient ArrayList<Value> values = new ArrayList<>();
+    private transient boolean shared;
 
     public ArrayValueImpl(ValueFactory factory) {
         this.factory = factory;
@@ -206,6 +207,17 @@ public class ArrayValueImpl extends ValueImpl implements ArrayValue {
         return Values.<ArrayValue>parse(toJson()).orElseThrow(() -> new IllegalStateException("Error copying array value"));
     }
 
+    @Override
+    public ArrayValue share() {
+        shared = true;
+        return this;
+    }
+
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
     @Override
     public boolean contains(String string, boolean ignoreCase) {
         if (ignoreCase) {
@@ -28,26 +28,52 @@ import java.util.stream.Stream;
 @JsonSerialize(using = ModelModule.ValueJsonSerializer.class)
 public class ObjectValueImpl extends ValueImpl implements ObjectValue {
 
-    private static List<String> stringifyOrder(String[] keys) {
-        List<String> toReturn = new ArrayList<>();
-        List<String> nonNumeric = new ArrayList<>();
-        for (String key : keys) {
+    static List<String> stringifyOrder(String[] keys) {
+        List<String> toReturn = null;
+        List<String> nonNumeric = null;
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
             if (key == null) {
                 throw new IllegalStateException("Null key in JSON object: " + Arrays.toString(keys));
             }
-            if (key.matches("\\d+")) {
+            if (isDigits(key)) {
+                if (toReturn == null) {
+                    // Keys before this one are all non-numeric
+                    toReturn = new ArrayList<>();
+                    nonNumeric = new ArrayList<>(Arrays.asList(keys).subList(0, i));
+                }
                 toReturn.add(key);
-            } else {
+            } else if (nonNumeric != null) {
                 nonNumeric.add(key);
             }
         }
+        if (toReturn == null) {
+            // The common case, no numeric keys so the insertion order is kept
+            return Arrays.asList(keys);
+        }
         Collections.sort(toReturn);
         toReturn.addAll(nonNumeric);
         return toReturn;
     }
 
+    private static boolean isDigits(String key) {
+        int length = key.length();
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private transient ValueFactory factory;
     private transient Map<String, Value> map = new LinkedHashMap<>();
+    // Keys of values that are still shared with the object this was copied from, see lazyCopy()
+    private transient Set<String> sharedKeys;
 
     public ObjectValueImpl(ValueFactory factory) {
         this.factory = factory;
@@ -55,7 +81,30 @@ public class ObjectValueImpl extends ValueImpl implements ObjectValue {
 
     @Override
     public Optional<Value> get(String key) {
-        return map.containsKey(key) ? Optional.ofNullable(map.get(key)) : Optional.empty();
+        return map.containsKey(key) ? Optional.ofNullable(getOwned(key)) : Optional.empty();
+    }
+
+    /**
+     * @return The value of the key, a shared value is copied first as the caller may modify it.
+     */
+    private Value getOwned(String key) {
+        Value value = map.get(key);
+        if (sharedKeys != null && sharedKeys.remove(key)) {
+            if (value instanceof ObjectValueImpl) {
+                value = ((ObjectValueImpl) value).lazyCopy();
+            } else if (value instanceof ArrayValue) {
+                value = ((ArrayValue) value).deepCopy();
+            }
+            map.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The value of the key without copying a shared value, the caller must not modify it.
+     */
+    Value getShared(String key) {
+        return map.get(key);
     }
 
     @Override
@@ -118,6 +167,7 @@ public class ObjectValueImpl extends ValueImpl implements ObjectValue {
         if (key == null) {
             throw new NullPointerException("Null keys are not allowed in JSON objects");
         }
+        unshare(key);
         map.put(key, value);
         return this;
     }
@@ -127,6 +177,7 @@ public class ObjectValueImpl extends ValueImpl implements ObjectValue {
         if (key == null) {
             throw new NullPointerException("Null keys are not allowed in JSON objects");
         }
+        unshare(key);
         map.put(key, value == null ? null : factory.create(value));
         return this;
     }
@@ -157,6 +208,7 @@ public class ObjectValueImpl extends ValueImpl implements ObjectValue {
 
     @Override
     public ObjectValue remove(String key) {
+        unshare(key);
         map.remove(key);
         return this;
     }
@@ -166,6 +218,27 @@ public class ObjectValueImpl extends ValueImpl implements ObjectValue {
         return Values.<ObjectValue>parse(toJson()).orElseThrow(() -> new IllegalStateException("Error copying object value"));
     }
 
+    @Override
+    public ObjectValue lazyCopy() {
+        ObjectValueImpl copy = new ObjectValueImpl(factory);
+        copy.map.putAll(map);
+        for (Map.Entry<String, Value> entry : map.entrySet()) {
+            if (entry.getValue() instanceof ObjectValue || entry.getValue() instanceof ArrayValue) {
+                if (copy.sharedKeys == null) {
+                    copy.sharedKeys = new HashSet<>();
+                }
+                copy.sharedKeys.add(entry.getKey());
+            }
+        }
+        return copy;
+    }
+
+    private void unshare(String key) {
+        if (sharedKeys != null) {
+            sharedKeys.remove(key);
+        }
+    }
+
     @Override
     public String toJson() throws ValueException {
         return ValueUtil.stringify(this);
@@ -178,8 +251,7 @@ public class ObjectValueImpl extends ValueImpl implements ObjectValue {
             for (String key : stringifyOrder(keys())) {
                 objCtx.setCurrentKey(key);
                 if (visitor.visitKey(objCtx.getCurrentKey(), objCtx)) {
-                    Optional<Value> value = get(key);
-                    visitor.accept(value.orElse(null), objCtx);
+                    visitor.accept(getShared(key), objCtx);
                     objCtx.setFirst(false);
                 }
             }
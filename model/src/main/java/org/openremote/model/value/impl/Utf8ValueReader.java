@@ -0,0 +1,377 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.value.impl;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.openremote.model.value.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses UTF-8 encoded JSON from an {@link InputStream} into {@link Value}s, decoding the bytes directly into the
+ * values without first reading the whole document into a {@link String}. Accepts the same lenient JSON as
+ * {@link ValueTokenizer}: single quoted strings, unquoted object keys and <code>undefined</code>/<code>NaN</code>
+ * literals as <code>null</code>.
+ */
+@GwtIncompatible
+public class Utf8ValueReader {
+
+    protected static final int END = -1;
+    // Integers with up to 15 digits are exactly representable as double
+    protected static final int MAX_FAST_DIGITS = 15;
+
+    protected final ValueFactory valueFactory;
+    protected final InputStream inputStream;
+    protected final byte[] buffer;
+    protected int position;
+    protected int limit;
+    protected char[] chars = new char[64];
+    protected int charsLength;
+
+    public Utf8ValueReader(ValueFactory valueFactory, InputStream inputStream) {
+        this(valueFactory, inputStream, 8192);
+    }
+
+    public Utf8ValueReader(ValueFactory valueFactory, InputStream inputStream, int bufferSize) {
+        this.valueFactory = valueFactory;
+        this.inputStream = inputStream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return The value or <code>null</code> if the stream is empty or contains a <code>null</code> literal.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Value> T read() throws IOException, ValueException {
+        int b = nextNonWhitespace();
+        if (b == END) {
+            return null;
+        }
+        return (T) readValue(b);
+    }
+
+    protected Value readValue(int b) throws IOException, ValueException {
+        switch (b) {
+            case '"':
+            case '\'':
+                return valueFactory.create(readString(b));
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '-':
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                return readNumber(b);
+            case END:
+                throw new ValueException("Missing value");
+            default:
+                return readLiteral(b);
+        }
+    }
+
+    protected ObjectValue readObject() throws IOException, ValueException {
+        ObjectValue object = valueFactory.createObject();
+        while (true) {
+            int b = nextNonWhitespace();
+            String key;
+            switch (b) {
+                case '}':
+                    return object;
+                case ',':
+                    continue;
+                case '"':
+                case '\'':
+                    key = readString(b);
+                    break;
+                default:
+                    if (b == END || !isUnquotedKeyChar(b)) {
+                        throw new ValueException("Invalid object: expecting key or }");
+                    }
+                    key = readUnquotedKey(b);
+            }
+            if (nextNonWhitespace() != ':') {
+                throw new ValueException("Invalid object: expecting \":\"");
+            }
+            object.put(key, readValue(nextNonWhitespace()));
+            switch (nextNonWhitespace()) {
+                case ',':
+                    break;
+                case '}':
+                    return object;
+                default:
+                    throw new ValueException("Invalid object: expecting } or ,");
+            }
+        }
+    }
+
+    protected ArrayValue readArray() throws IOException, ValueException {
+        ArrayValue array = valueFactory.createArray();
+        int b = nextNonWhitespace();
+        if (b == ']') {
+            return array;
+        }
+        while (true) {
+            array.add(readValue(b));
+            switch (nextNonWhitespace()) {
+                case ',':
+                    b = nextNonWhitespace();
+                    break;
+                case ']':
+                    return array;
+                default:
+                    throw new ValueException("Invalid array: expected , or ]");
+            }
+        }
+    }
+
+    protected String readString(int quote) throws IOException, ValueException {
+        charsLength = 0;
+        while (true) {
+            int b = next();
+            if (b == quote) {
+                return new String(chars, 0, charsLength);
+            }
+            switch (b) {
+                case END:
+                    throw new ValueException("Invalid string: closing " + (char) quote + " is not found");
+                case '\\':
+                    readEscape();
+                    break;
+                default:
+                    if (b < 0x80) {
+                        append((char) b);
+                    } else {
+                        readMultiByte(b);
+                    }
+            }
+        }
+    }
+
+    protected void readEscape() throws IOException, ValueException {
+        int b = next();
+        switch (b) {
+            case 'b':
+                append('\b');
+                break;
+            case 't':
+                append('\t');
+                break;
+            case 'n':
+                append('\n');
+                break;
+            case 'f':
+                append('\f');
+                break;
+            case 'r':
+                append('\r');
+                break;
+            case 'u':
+                int c = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw new ValueException("Invalid string: bad unicode escape");
+                    }
+                    c = (c << 4) | digit;
+                }
+                append((char) c);
+                break;
+            case END:
+                throw new ValueException("Invalid string: incomplete escape");
+            default:
+                if (b < 0x80) {
+                    append((char) b);
+                } else {
+                    readMultiByte(b);
+                }
+        }
+    }
+
+    protected void readMultiByte(int b) throws IOException, ValueException {
+        int codePoint;
+        int continuation;
+        if ((b & 0xE0) == 0xC0) {
+            codePoint = b & 0x1F;
+            continuation = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+            codePoint = b & 0x0F;
+            continuation = 2;
+        } else if ((b & 0xF8) == 0xF0) {
+            codePoint = b & 0x07;
+            continuation = 3;
+        } else {
+            throw new ValueException("Invalid UTF-8 byte: " + b);
+        }
+        for (int i = 0; i < continuation; i++) {
+            int c = next();
+            if (c == END || (c & 0xC0) != 0x80) {
+                throw new ValueException("Invalid UTF-8 sequence");
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        } else {
+            append((char) codePoint);
+        }
+    }
+
+    protected String readUnquotedKey(int b) throws IOException {
+        charsLength = 0;
+        append((char) b);
+        while (true) {
+            b = next();
+            if (b == END || !isUnquotedKeyChar(b)) {
+                back();
+                return new String(chars, 0, charsLength);
+            }
+            append((char) b);
+        }
+    }
+
+    protected NumberValue readNumber(int b) throws IOException, ValueException {
+        charsLength = 0;
+        boolean integral = true;
+        int digits = 0;
+        long integer = 0;
+        do {
+            if (b >= '0' && b <= '9') {
+                digits++;
+                integer = integer * 10 + (b - '0');
+            } else if (b != '-' || charsLength > 0) {
+                integral = false;
+            }
+            append((char) b);
+            b = next();
+        } while (b != END && isNumberChar(b));
+        back();
+
+        if (integral && digits > 0 && digits <= MAX_FAST_DIGITS) {
+            // Same as Double.parseDouble() for these, without creating a String; keep the sign of -0
+            return valueFactory.create(chars[0] == '-' ? (integer == 0 ? -0d : -integer) : integer);
+        }
+        try {
+            return valueFactory.create(Double.parseDouble(new String(chars, 0, charsLength)));
+        } catch (NumberFormatException e) {
+            throw new ValueException("Invalid number literal: " + new String(chars, 0, charsLength));
+        }
+    }
+
+    protected Value readLiteral(int b) throws IOException, ValueException {
+        charsLength = 0;
+        while (b != END && isLiteralChar(b)) {
+            append((char) b);
+            b = next();
+        }
+        back();
+
+        if (matches("null") || matches("undefined")) {
+            return null;
+        }
+        if (matches("true")) {
+            return valueFactory.create(true);
+        }
+        if (matches("false")) {
+            return valueFactory.create(false);
+        }
+        // Be tolerant of bad JSON with NaN
+        if (charsLength == 3
+            && Character.toLowerCase(chars[0]) == 'n'
+            && Character.toLowerCase(chars[1]) == 'a'
+            && Character.toLowerCase(chars[2]) == 'n') {
+            return null;
+        }
+        throw new ValueException("Invalid literal: \"" + new String(chars, 0, charsLength) + "\"");
+    }
+
+    protected boolean matches(String literal) {
+        if (charsLength != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < charsLength; i++) {
+            if (chars[i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void append(char c) {
+        if (charsLength == chars.length) {
+            char[] grown = new char[chars.length * 2];
+            System.arraycopy(chars, 0, grown, 0, charsLength);
+            chars = grown;
+        }
+        chars[charsLength++] = c;
+    }
+
+    protected int nextNonWhitespace() throws IOException {
+        while (true) {
+            int b = next();
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+        }
+    }
+
+    protected int next() throws IOException {
+        if (position == limit) {
+            limit = inputStream.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return END;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Un-read the last byte returned by {@link #next}, doesn't do anything at the end of the stream.
+     */
+    protected void back() {
+        if (position > 0) {
+            position--;
+        }
+    }
+
+    protected static boolean isNumberChar(int b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    protected static boolean isLiteralChar(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    protected static boolean isUnquotedKeyChar(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+}
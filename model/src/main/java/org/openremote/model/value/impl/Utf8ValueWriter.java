@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.value.impl;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.openremote.model.value.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes {@link Value}s as UTF-8 encoded JSON to an {@link OutputStream}, encoding directly into a byte buffer without
+ * building the document as a {@link String} first. The output is the same as {@link ValueUtil#stringify(Value)}.
+ * <p>
+ * Instead of tracking visited values to detect cycles, values nested deeper than {@link #MAX_DEPTH} are rejected.
+ */
+@GwtIncompatible
+public class Utf8ValueWriter {
+
+    public static final int MAX_DEPTH = 1000;
+    protected static final byte[] NULL_BYTES = {'n', 'u', 'l', 'l'};
+    protected static final byte[] TRUE_BYTES = {'t', 'r', 'u', 'e'};
+    protected static final byte[] FALSE_BYTES = {'f', 'a', 'l', 's', 'e'};
+    protected static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    // Double.toString() switches to scientific notation at 10^7
+    protected static final double MAX_PLAIN_INTEGER = 1e7;
+
+    protected final OutputStream outputStream;
+    protected final byte[] buffer;
+    protected int position;
+
+    public Utf8ValueWriter(OutputStream outputStream) {
+        this(outputStream, 8192);
+    }
+
+    public Utf8ValueWriter(OutputStream outputStream, int bufferSize) {
+        this.outputStream = outputStream;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Writes the value and flushes the buffered bytes to the stream, a <code>null</code> value is written as
+     * <code>null</code>.
+     */
+    public void write(Value value) throws IOException, ValueException {
+        writeValue(value, 0);
+        flush();
+    }
+
+    public void flush() throws IOException {
+        if (position > 0) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+        outputStream.flush();
+    }
+
+    protected void writeValue(Value value, int depth) throws IOException, ValueException {
+        if (value == null) {
+            writeBytes(NULL_BYTES);
+            return;
+        }
+        switch (value.getType()) {
+            case OBJECT:
+                writeObject((ObjectValue) value, depth + 1);
+                break;
+            case ARRAY:
+                writeArray((ArrayValue) value, depth + 1);
+                break;
+            case STRING:
+                writeString(((StringValue) value).getString());
+                break;
+            case NUMBER:
+                writeNumber(((NumberValue) value).getNumber());
+                break;
+            case BOOLEAN:
+                writeBytes(((BooleanValue) value).getBoolean() ? TRUE_BYTES : FALSE_BYTES);
+                break;
+        }
+    }
+
+    protected void writeObject(ObjectValue object, int depth) throws IOException, ValueException {
+        checkDepth(depth);
+        writeByte('{');
+        boolean first = true;
+        for (String key : ObjectValueImpl.stringifyOrder(object.keys())) {
+            if (ValueUtil.isSkippedKey(key)) {
+                continue;
+            }
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+            writeString(key);
+            writeByte(':');
+            writeValue(object instanceof ObjectValueImpl ? ((ObjectValueImpl) object).getShared(key) : object.get(key).orElse(null), depth);
+        }
+        writeByte('}');
+    }
+
+    protected void writeArray(ArrayValue array, int depth) throws IOException, ValueException {
+        checkDepth(depth);
+        writeByte('[');
+        int length = array.length();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            writeValue(array.get(i).orElse(null), depth);
+        }
+        writeByte(']');
+    }
+
+    protected void writeNumber(double number) throws IOException {
+        if (Double.isInfinite(number) || Double.isNaN(number)) {
+            writeBytes(NULL_BYTES);
+        } else if (number == (long) number && Math.abs(number) < MAX_PLAIN_INTEGER
+            && !(number == 0 && Double.doubleToRawLongBits(number) != 0)) {
+            writeLong((long) number);
+        } else {
+            // Rare enough to go through the same formatting as ValueUtil
+            String n = String.valueOf(number);
+            if (n.endsWith(".0")) {
+                n = n.substring(0, n.length() - 2);
+            }
+            ensureCapacity(n.length());
+            for (int i = 0; i < n.length(); i++) {
+                buffer[position++] = (byte) n.charAt(i);
+            }
+        }
+    }
+
+    protected void writeLong(long value) throws IOException {
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // Digits were written in reverse
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    /**
+     * Escapes the same characters as {@link ValueUtil#quote}.
+     */
+    protected void writeString(String string) throws IOException {
+        writeByte('"');
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            ensureCapacity(6);
+            switch (c) {
+                case '\b':
+                    writeEscape('b');
+                    break;
+                case '\t':
+                    writeEscape('t');
+                    break;
+                case '\n':
+                    writeEscape('n');
+                    break;
+                case '\f':
+                    writeEscape('f');
+                    break;
+                case '\r':
+                    writeEscape('r');
+                    break;
+                case '"':
+                    writeEscape('"');
+                    break;
+                case '\\':
+                    writeEscape('\\');
+                    break;
+                default:
+                    if (c < 0x80 && !ValueUtil.isControlChar(c)) {
+                        buffer[position++] = (byte) c;
+                    } else if (ValueUtil.isControlChar(c)) {
+                        buffer[position++] = '\\';
+                        buffer[position++] = 'u';
+                        buffer[position++] = HEX[(c >> 12) & 0xF];
+                        buffer[position++] = HEX[(c >> 8) & 0xF];
+                        buffer[position++] = HEX[(c >> 4) & 0xF];
+                        buffer[position++] = HEX[c & 0xF];
+                    } else if (c < 0x800) {
+                        buffer[position++] = (byte) (0xC0 | (c >> 6));
+                        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                        buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                        buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                    } else if (Character.isSurrogate(c)) {
+                        // Unpaired surrogate, same replacement as String.getBytes(UTF_8)
+                        buffer[position++] = '?';
+                    } else {
+                        buffer[position++] = (byte) (0xE0 | (c >> 12));
+                        buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                    }
+            }
+        }
+        writeByte('"');
+    }
+
+    protected void writeEscape(char c) {
+        buffer[position++] = '\\';
+        buffer[position++] = (byte) c;
+    }
+
+    protected void writeByte(char c) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    protected void writeBytes(byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    protected void ensureCapacity(int length) throws IOException {
+        if (buffer.length - position < length) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    protected static void checkDepth(int depth) throws ValueException {
+        if (depth > MAX_DEPTH) {
+            throw new ValueException("Cycled detected during stringify");
+        }
+    }
+}
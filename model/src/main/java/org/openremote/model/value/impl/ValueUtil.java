@@ -29,17 +29,18 @@ import java.util.Set;
  */
 public class ValueUtil {
 
+    private static final Set<String> skipKeys;
+
+    static {
+        Set<String> toSkip = new HashSet<>();
+        toSkip.add("$H");
+        toSkip.add("__gwt_ObjectId");
+        skipKeys = Collections.unmodifiableSet(toSkip);
+    }
+
     private static class StringifyValueVisitor extends ValueVisitor {
 
         private static final String NULL_LITERAL = "null";
-        private static final Set<String> skipKeys;
-
-        static {
-            Set<String> toSkip = new HashSet<>();
-            toSkip.add("$H");
-            toSkip.add("__gwt_ObjectId");
-            skipKeys = Collections.unmodifiableSet(toSkip);
-        }
 
         private String indentLevel;
 
@@ -137,11 +138,7 @@ public class ValueUtil {
 
         @Override
         public boolean visitKey(String key, ValueContext ctx) {
-            if ("".equals(key)) {
-                return false;
-            }
-            // skip properties injected by GWT runtime on JSOs
-            if (skipKeys.contains(key)) {
+            if (isSkippedKey(key)) {
                 return false;
             }
             commaIfNotFirst(ctx);
@@ -280,6 +277,13 @@ public class ValueUtil {
         return sb.toString();
     }
 
+    /**
+     * Empty keys and properties injected by GWT runtime on JSOs are not stringified.
+     */
+    static boolean isSkippedKey(String key) {
+        return "".equals(key) || skipKeys.contains(key);
+    }
+
     /**
      * Turn a single unicode character into a 32-bit unicode hex literal.
      */
@@ -289,7 +293,7 @@ public class ValueUtil {
         return "\\u" + ("0000".substring(0, padding)) + hexValue;
     }
 
-    private static boolean isControlChar(char c) {
+    static boolean isControlChar(char c) {
         return (c >= 0x00 && c <= 0x1f)
             || (c >= 0x7f && c <= 0x9f)
             || c == '\u00ad' || c == '\u070f' || c == '\u17b4' || c == '\u17b5'
@@ -0,0 +1,77 @@
+package org.openremote.test.assets
+
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import java.util.logging.Logger
+
+import static org.openremote.model.asset.AssetType.THING
+import static org.openremote.model.attribute.AttributeValueType.NUMBER
+import static org.openremote.model.attribute.MetaItemType.*
+
+class AssetAttributeBenchmarkTest extends Specification {
+
+    private static final Logger LOG = Logger.getLogger(AssetAttributeBenchmarkTest.class.getName())
+    static final int ATTRIBUTES = 20
+    static final int EVENTS = 100000
+
+    /**
+     * @return Attribute lookups per second.
+     */
+    static double measureThroughput(Closure<Boolean> inspectAttribute) {
+        // Warm up the JIT before measuring
+        (EVENTS.intdiv(10)).times { inspectAttribute(it % ATTRIBUTES) }
+        def start = System.nanoTime()
+        EVENTS.times { inspectAttribute(it % ATTRIBUTES) }
+        EVENTS / ((System.nanoTime() - start) / 1_000_000_000d)
+    }
+
+    def "Measure the per-event cost of inspecting the meta items of asset attributes"() {
+
+        given: "an asset with attributes with the meta items of linked sensor attributes"
+        def asset = new Asset("Benchmark Asset", THING)
+        asset.setAttributes((0..<ATTRIBUTES).collect {
+            new AssetAttribute("sensor$it", NUMBER, Values.create(it)).setMeta(
+                new MetaItem(LABEL, Values.create("Sensor $it")),
+                new MetaItem(AGENT_LINK, new AttributeRef("agent123", "protocolConfig").toArrayValue()),
+                new MetaItem(STORE_DATA_POINTS, Values.create(true)),
+                new MetaItem(RULE_STATE, Values.create(true)),
+                new MetaItem(READ_ONLY, Values.create(it % 2 == 0)),
+                new MetaItem(UNIT_TYPE, Values.create("CELSIUS"))
+            )
+        })
+
+        and: "the checks of the processing chain on an attribute, with and without the compiled view"
+        def inspectMeta = { int i ->
+            def attribute = asset.getAttribute("sensor$i").get()
+            attribute.isReadOnly() || attribute.isExecutable() || !attribute.isEnabled() ||
+                (attribute.hasAgentLink() && attribute.isStoreDatapoints() && attribute.isRuleState())
+        }
+        def inspectCompiled = { int i ->
+            def compiled = asset.getAttribute("sensor$i").get().getCompiled()
+            compiled.isReadOnly() || compiled.isExecutable() || !compiled.isEnabled() ||
+                (compiled.hasAgentLink() && compiled.isStoreDatapoints() && compiled.isRuleState())
+        }
+
+        when: "the throughput of each is measured"
+        def metaThroughput = measureThroughput(inspectMeta)
+        def compiledThroughput = measureThroughput(inspectCompiled)
+
+        LOG.info(String.format("Asset attribute meta inspection: meta items %.0f/s, compiled %.0f/s (%.1fx)",
+            metaThroughput, compiledThroughput, compiledThroughput / metaThroughput))
+
+        then: "both should give the same result"
+        (0..<ATTRIBUTES).every { inspectMeta(it) == inspectCompiled(it) }
+        metaThroughput > 0
+        compiledThroughput > 0
+
+        and: "each attribute should only have been compiled once"
+        (0..<ATTRIBUTES).every { i ->
+            asset.getAttribute("sensor$i").get().getCompiled().is(asset.getAttribute("sensor$i").get().getCompiled())
+        }
+    }
+}
@@ -138,6 +138,27 @@ class AssetIntegrityTest extends Specification implements ManagerContainerTrait
         ex = thrown()
         ex.response.status == 400
 
+        when: "a child asset is created"
+        def childAsset = new Asset("Test Child", AssetType.THING, testAsset)
+        childAsset = assetResource.create(null, childAsset)
+        childAsset = assetResource.get(null, childAsset.getId())
+
+        then: "the path of the child should include the parent"
+        childAsset.path == [childAsset.id, testAsset.id] as String[]
+
+        when: "the parent asset is moved to another parent"
+        def newParentAsset = new Asset("Test Building", AssetType.BUILDING, null, keycloakDemoSetup.masterTenant.realm)
+        newParentAsset = assetResource.create(null, newParentAsset)
+        testAsset = assetResource.get(null, testAsset.getId())
+        testAsset.setParentId(newParentAsset.getId())
+        assetResource.update(null, testAsset.id, testAsset)
+        testAsset = assetResource.get(null, testAsset.getId())
+        childAsset = assetResource.get(null, childAsset.getId())
+
+        then: "the paths of the asset and its descendants should be updated"
+        testAsset.path == [testAsset.id, newParentAsset.id] as String[]
+        childAsset.path == [childAsset.id, testAsset.id, newParentAsset.id] as String[]
+
         when: "an asset is deleted but has children"
         assetResource.delete(null, [managerDemoSetup.apartment1Id])
 
@@ -3,6 +3,8 @@ package org.openremote.test.assets
 import org.openremote.container.util.UniqueIdentifierGenerator
 import org.openremote.model.asset.Asset
 import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
 import org.openremote.model.value.Values
 import spock.lang.Specification
 
@@ -12,6 +14,7 @@ import static org.openremote.model.AbstractValueTimestampHolder.VALUE_TIMESTAMP_
 import static org.openremote.model.asset.AssetAttribute.getAddedOrModifiedAttributes
 import static org.openremote.model.asset.AssetType.THING
 import static org.openremote.model.attribute.AttributeValueType.STRING
+import static org.openremote.model.attribute.MetaItemType.*
 
 class AssetModelTest extends Specification {
 
@@ -139,4 +142,141 @@ class AssetModelTest extends Specification {
         addedOrModifiedAttributes.size() == 0
     }
 
+    def "Compiled asset attribute view"() {
+
+        when: "an attribute with meta items is compiled"
+        def attribute = new AssetAttribute("foo", STRING, Values.create("bar")).setMeta(
+                new MetaItem(READ_ONLY, Values.create(true)),
+                new MetaItem(STORE_DATA_POINTS, Values.create(true)),
+                new MetaItem(AGENT_LINK, new AttributeRef("agent123", "protocolConfig").toArrayValue()),
+                new MetaItem(LABEL, Values.create("Foo"))
+        )
+        def compiled = attribute.getCompiled()
+
+        then: "the flags should match the meta items of the attribute"
+        compiled.readOnly == attribute.isReadOnly()
+        compiled.storeDatapoints == attribute.isStoreDatapoints()
+        compiled.executable == attribute.isExecutable()
+        compiled.enabled
+        !compiled.accessRestrictedRead
+        compiled.agentLink.get() == new AttributeRef("agent123", "protocolConfig")
+        compiled.getMetaItem(LABEL).get().getValueAsString().get() == "Foo"
+        !compiled.hasMetaItem(DESCRIPTION)
+
+        and: "the compiled view should be reused"
+        attribute.getCompiled().is(compiled)
+        attribute.deepCopy().getCompiled().is(compiled)
+
+        and: "reading the meta items should keep the compiled view"
+        attribute.isReadOnly()
+        attribute.hasMetaItem(LABEL)
+        attribute.getLabel().get() == "Foo"
+        attribute.getCompiled().is(compiled)
+
+        when: "a meta item of the attribute is modified in place"
+        attribute.getMetaItem(LABEL).get().setValue(Values.create("Bar"))
+
+        then: "the attribute should be compiled again"
+        !attribute.getCompiled().is(compiled)
+        attribute.getCompiled().getMetaItem(LABEL).get().getValueAsString().get() == "Bar"
+        compiled.getMetaItem(LABEL).get().getValueAsString().get() == "Foo"
+
+        when: "the meta items of the attribute are modified"
+        attribute.removeMeta(READ_ONLY)
+        attribute.addMeta(new MetaItem(DISABLED, Values.create(true)))
+
+        then: "the attribute should be compiled again"
+        !attribute.getCompiled().is(compiled)
+        !attribute.getCompiled().readOnly
+        !attribute.getCompiled().enabled
+        attribute.getCompiled().storeDatapoints
+    }
+
+    def "Attributes read from an asset share the compiled view and copy shared meta items"() {
+
+        given: "an asset with an attribute with meta items"
+        def asset = new Asset("Test Asset", THING)
+        asset.setAttributes(new AssetAttribute("foo", STRING, Values.create("bar")).setMeta(
+            new MetaItem(LABEL, Values.create("Foo")),
+            new MetaItem(READ_ONLY, Values.create(true))
+        ))
+
+        when: "the attribute is read and compiled"
+        def compiled = asset.getAttribute("foo").get().getCompiled()
+
+        then: "other reads of the attribute should reuse the compiled view"
+        asset.getAttribute("foo").get().getCompiled().is(compiled)
+
+        and: "the compiled view should hold the meta items of the asset without copying them"
+        compiled.getMetaItem(LABEL).get().getObjectValue().is(
+            asset.getAttributes().getObject("foo").get().getArray("meta").get().getObject(0).get()
+        )
+
+        when: "a new version is created from one read and a meta item is modified in place through another read"
+        def attribute1 = asset.getAttribute("foo").get()
+        def attribute2 = asset.getAttribute("foo").get()
+        attribute1.getCompiled()
+        def updatedAttribute = attribute1.withValue(Values.create("baz"), 2000)
+        attribute2.getMetaItem(LABEL).get().setValue(Values.create("Bar"))
+
+        then: "the new version and the compiled view should be unchanged"
+        updatedAttribute.getLabel().get() == "Foo"
+        updatedAttribute.getCompiled().is(compiled)
+        compiled.getMetaItem(LABEL).get().getValueAsString().get() == "Foo"
+
+        and: "the asset should have the modified meta item and compile it again"
+        asset.getAttribute("foo").get().getLabel().get() == "Bar"
+        !asset.getAttribute("foo").get().getCompiled().is(compiled)
+        asset.getAttribute("foo").get().getCompiled().getMetaItem(LABEL).get().getValueAsString().get() == "Bar"
+    }
+
+    def "New attribute version with a value"() {
+
+        given: "an attribute with meta items"
+        def attribute = new AssetAttribute("foo", STRING, Values.create("bar"), 1000).setMeta(
+                new MetaItem(LABEL, Values.create("Foo")),
+                new MetaItem(READ_ONLY, Values.create(true))
+        )
+        def compiled = attribute.getCompiled()
+
+        when: "a new version of the attribute is created with a new value"
+        def updatedAttribute = attribute.withValue(Values.create("baz"), 2000)
+
+        then: "the new version should have the new value and the same meta items"
+        updatedAttribute.getValueAsString().get() == "baz"
+        updatedAttribute.getValueTimestamp().get() == 2000
+        updatedAttribute.getType().get() == STRING
+        updatedAttribute.getLabel().get() == "Foo"
+        updatedAttribute.getCompiled().is(compiled)
+
+        and: "the old version should be unchanged"
+        attribute.getValueAsString().get() == "bar"
+        attribute.getValueTimestamp().get() == 1000
+
+        when: "the meta items of the new version are modified"
+        updatedAttribute.removeMeta(READ_ONLY)
+
+        then: "the meta items of the old version should be unchanged"
+        !updatedAttribute.isReadOnly()
+        attribute.isReadOnly()
+        attribute.getMeta().size() == 2
+        updatedAttribute.getMeta().size() == 1
+
+        when: "another version is created and a meta item of it is modified in place"
+        def nextAttribute = attribute.withValue(Values.create("qux"), 3000)
+        nextAttribute.getMetaItem(LABEL).get().setValue(Values.create("Bar"))
+
+        then: "the meta items of the other versions should be unchanged"
+        nextAttribute.getLabel().get() == "Bar"
+        attribute.getLabel().get() == "Foo"
+        attribute.getCompiled().getMetaItem(LABEL).get().getValueAsString().get() == "Foo"
+
+        when: "a meta item of the old version is modified in place"
+        attribute.getMetaItem(READ_ONLY).get().setValue(Values.create(false))
+
+        then: "the new version should be unchanged"
+        !attribute.isReadOnly()
+        nextAttribute.isReadOnly()
+        nextAttribute.getCompiled().readOnly
+    }
 }
@@ -1,6 +1,8 @@
 package org.openremote.test.assets
 
 import org.openremote.agent.protocol.AbstractProtocol
+import org.openremote.container.message.MessageBrokerService
+import org.openremote.container.persistence.PersistenceService
 import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.*
 import org.openremote.manager.datapoint.AssetDatapointService
@@ -14,6 +16,7 @@ import org.openremote.model.asset.AssetType
 import org.openremote.model.asset.agent.ProtocolConfiguration
 import org.openremote.model.attribute.*
 import org.openremote.model.datapoint.Datapoint
+import org.openremote.model.query.AssetQuery
 import org.openremote.model.value.Value
 import org.openremote.model.value.Values
 import org.openremote.test.ManagerContainerTrait
@@ -23,6 +26,8 @@ import spock.util.concurrent.PollingConditions
 import javax.persistence.EntityManager
 import java.util.logging.Logger
 
+import static org.openremote.manager.asset.AssetStorageService.ASSET_ATTRIBUTE_STATE_TABLE
+
 class AssetProcessingTest extends Specification implements ManagerContainerTrait {
 
     Logger LOG = Logger.getLogger(AssetProcessingTest.class.getName())
@@ -306,4 +311,182 @@ class AssetProcessingTest extends Specification implements ManagerContainerTrait
         cleanup: "the server should be stopped"
         stopContainer(container)
     }
+
+    def "Check the asset cache is kept up to date by attribute events and asset updates"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 1)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+        def assetId = managerDemoSetup.apartment2LivingroomId
+
+        when: "an asset is loaded completely twice"
+        persistenceService.doTransaction { em -> assetStorageService.find(em, assetId, true) }
+        def hits = assetStorageService.getAssetCache().getStats().getNumber("hits").orElse(0d)
+        def asset = persistenceService.doReturningTransaction { em -> assetStorageService.find(em, assetId, true) }
+
+        then: "the second load should be served by the cache"
+        asset.id == assetId
+        assetStorageService.getAssetCache().getStats().getNumber("hits").orElse(0d) > hits
+
+        when: "the cached copy is modified by the caller"
+        asset.getAttribute("plantsWaterLevels").get().setValue(Values.createObject().put("cactus", 0.1))
+
+        then: "the cache should not be affected"
+        persistenceService.doReturningTransaction { em -> assetStorageService.find(em, assetId, true) }
+            .getAttribute("plantsWaterLevels").get().valueAsObject.get().getNumber("cactus").orElse(0d) == 0.8d
+
+        when: "an attribute event is processed while a copy of the cached asset hasn't been read yet"
+        def unreadAsset = persistenceService.doReturningTransaction { em -> assetStorageService.find(em, assetId, true) }
+        assetProcessingService.sendAttributeEvent(
+            new AttributeEvent(assetId, "plantsWaterLevels", Values.createObject().put("cactus", 0.5))
+        )
+
+        then: "the cached asset should have the new value, the same as the stored asset"
+        conditions.eventually {
+            def cachedAsset = persistenceService.doReturningTransaction { em -> assetStorageService.find(em, assetId, true) }
+            assert cachedAsset.getAttribute("plantsWaterLevels").get().valueAsObject.get().getNumber("cactus").orElse(0d) == 0.5d
+            def storedAsset = assetStorageService.find(assetId, true)
+            assert storedAsset.getAttribute("plantsWaterLevels").get().valueTimestamp.get() == cachedAsset.getAttribute("plantsWaterLevels").get().valueTimestamp.get()
+        }
+
+        and: "the earlier copy should still have the value of when it was returned"
+        unreadAsset.getAttribute("plantsWaterLevels").get().valueAsObject.get().getNumber("cactus").orElse(0d) == 0.8d
+
+        when: "the asset is updated"
+        asset = assetStorageService.find(assetId, true)
+        asset.setName("Living Room 2 Renamed")
+        asset = assetStorageService.merge(asset)
+
+        then: "the cached asset should have the new name and version"
+        def cachedAsset = persistenceService.doReturningTransaction { em -> assetStorageService.find(em, assetId, true) }
+        cachedAsset.name == "Living Room 2 Renamed"
+        cachedAsset.version == asset.version
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
+
+    def "Check attribute values are stored in the attribute state table when enabled"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 1)
+
+        and: "the container is started with the attribute state table enabled"
+        def container = startContainer(defaultConfig() << [(ASSET_ATTRIBUTE_STATE_TABLE): "true"], defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+        def assetId = managerDemoSetup.apartment2LivingroomId
+        def storedCactusLevel = {
+            persistenceService.doReturningTransaction { em ->
+                em.createNativeQuery("select ATTRIBUTES #>> '{plantsWaterLevels,value,cactus}' from ASSET where ID = :id")
+                    .setParameter("id", assetId)
+                    .getSingleResult()
+            }
+        }
+        def stateRows = {
+            persistenceService.doReturningTransaction { em ->
+                em.createNativeQuery("select count(*) from ASSET_ATTRIBUTE_STATE where ASSET_ID = :id")
+                    .setParameter("id", assetId)
+                    .getSingleResult() as Long
+            }
+        }
+
+        when: "an attribute event is processed"
+        assetProcessingService.sendAttributeEvent(
+            new AttributeEvent(assetId, "plantsWaterLevels", Values.createObject().put("cactus", 0.3))
+        )
+
+        then: "the value should be stored in the attribute state table and merged when reading the asset"
+        conditions.eventually {
+            assert stateRows() == 1
+            def asset = assetStorageService.find(new AssetQuery().ids(assetId))
+            assert asset.getAttribute("plantsWaterLevels").get().valueAsObject.get().getNumber("cactus").orElse(0d) == 0.3d
+        }
+
+        and: "entities should be loaded from the attributes document without merging the state"
+        persistenceService.doReturningTransaction { em -> em.find(Asset.class, assetId) }
+            .getAttribute("plantsWaterLevels").get().valueAsObject.get().getNumber("cactus").orElse(0d) == 0.8d
+
+        and: "the attributes document should not have been updated"
+        storedCactusLevel() == "0.8"
+
+        when: "the asset is updated"
+        def asset = assetStorageService.find(assetId, true)
+        asset.setName("Living Room 2 Renamed")
+        assetStorageService.merge(asset)
+
+        then: "the attributes document should have the current value and the attribute state should be cleared"
+        storedCactusLevel() == "0.3"
+        stateRows() == 0
+        persistenceService.doReturningTransaction { em -> em.find(Asset.class, assetId) }
+            .getAttribute("plantsWaterLevels").get().valueAsObject.get().getNumber("cactus").orElse(0d) == 0.3d
+        assetStorageService.find(new AssetQuery().ids(assetId)).getAttribute("plantsWaterLevels").get()
+            .valueAsObject.get().getNumber("cactus").orElse(0d) == 0.3d
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
+
+    def "Check a failed event of a batch leaves nothing behind and doesn't affect the other events"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 1)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+        def messageBrokerService = container.getService(MessageBrokerService.class)
+        def powerConsumptionRef = new AttributeRef(managerDemoSetup.thingId, "light1PowerConsumption")
+
+        and: "a processor after the datapoint service which fails on a bad value"
+        def badValue = Values.create(99d)
+        AssetUpdateProcessor failingProcessor = new AssetUpdateProcessor() {
+            @Override
+            boolean processAssetUpdate(EntityManager em, Asset asset, AssetAttribute attribute, AttributeEvent.Source source) throws AssetProcessingException {
+                if (attribute.getValue().orElse(null) == badValue) {
+                    throw new AssetProcessingException(AssetProcessingException.Reason.PROCESSOR_FAILURE, "bad value")
+                }
+                false
+            }
+        }
+        assetProcessingService.processors.add(assetProcessingService.processors.findIndexOf {it instanceof AssetDatapointService}+1, failingProcessor)
+
+        when: "a sensor batch with a bad event between two good events is processed"
+        def now = getClockTimeOf(container)
+        def batch = new AttributeEventBatch([
+            new AttributeEvent(powerConsumptionRef, Values.create(20d), now - 300),
+            new AttributeEvent(powerConsumptionRef, badValue, now - 200),
+            new AttributeEvent(managerDemoSetup.thingId, "light1Dimmer", Values.create(50), now - 100)
+        ])
+        messageBrokerService.getProducerTemplate().sendBodyAndHeader(
+            AssetProcessingService.ASSET_QUEUE, batch, AttributeEvent.HEADER_SOURCE, AttributeEvent.Source.SENSOR
+        )
+
+        then: "the values of the good events should be stored"
+        conditions.eventually {
+            def thing = assetStorageService.find(managerDemoSetup.thingId, true)
+            assert thing.getAttribute("light1PowerConsumption").flatMap { it.getValueAsNumber() }.orElse(null) == 20d
+            assert thing.getAttribute("light1Dimmer").flatMap { it.getValueAsNumber() }.orElse(null) == 50d
+        }
+
+        and: "only the good event should have a datapoint"
+        def datapoints = assetDatapointService.getDatapoints(powerConsumptionRef)
+        datapoints.any { it.timestamp == now - 300 && Values.getNumber(it.value).orElse(null) == 20d }
+        !datapoints.any { it.timestamp == now - 200 }
+
+        cleanup: "the server should be stopped"
+        assetProcessingService.processors.remove(failingProcessor)
+        stopContainer(container)
+    }
 }
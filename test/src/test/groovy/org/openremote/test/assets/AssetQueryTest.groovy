@@ -1,5 +1,7 @@
 package org.openremote.test.assets
 
+import org.hibernate.Session
+import org.hibernate.jdbc.ReturningWork
 import org.openremote.container.Container
 import org.openremote.container.persistence.PersistenceService
 import org.openremote.manager.asset.AssetProcessingService
@@ -27,6 +29,8 @@ import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
 
 import javax.persistence.EntityManager
+import java.sql.Connection
+import java.sql.SQLException
 import java.time.Instant
 import java.time.ZoneOffset
 import java.time.ZonedDateTime
@@ -754,6 +758,242 @@ class AssetQueryTest extends Specification implements ManagerContainerTrait {
         assert asset == null
     }
 
+    def "Keyset paginated and streamed queries"() {
+
+        when: "all assets of a realm are queried"
+        def allAssets = assetStorageService.findAll(
+            new AssetQuery()
+                .select(Select.selectExcludeAll())
+                .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                .orderBy(new OrderBy(NAME))
+        )
+
+        and: "the same assets are queried in pages of 3 using the last asset of the previous page"
+        List<Asset> pagedAssets = []
+        List<Asset> page = []
+        while (pagedAssets.isEmpty() || page.size() == 3) {
+            page = assetStorageService.findAll(
+                new AssetQuery()
+                    .select(Select.selectExcludeAll())
+                    .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                    .orderBy(new OrderBy(NAME))
+                    .limit(3)
+                    .after(pagedAssets.isEmpty() ? null : pagedAssets.last().id)
+            )
+            pagedAssets.addAll(page)
+        }
+
+        then: "the pages should contain all assets in the same order"
+        allAssets.size() > 3
+        pagedAssets.collect { it.id } == allAssets.collect { it.id }
+
+        when: "the assets are streamed"
+        List<Asset> streamedAssets = []
+        def count = assetStorageService.streamAll(
+            new AssetQuery()
+                .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                .orderBy(new OrderBy(NAME)),
+            { List<Asset> assets -> streamedAssets.addAll(assets) }
+        )
+
+        then: "all assets should have been passed to the consumer"
+        count == allAssets.size()
+        streamedAssets.collect { it.id } == allAssets.collect { it.id }
+        streamedAssets.every { it.path != null }
+
+        when: "a limited number of assets are streamed in small pages"
+        List<List<Asset>> streamedPages = []
+        def query = new AssetQuery()
+            .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+            .orderBy(new OrderBy(NAME))
+            .limit(5)
+        count = assetStorageService.streamAll(query, 3, { List<Asset> assets -> streamedPages.add(new ArrayList<>(assets)) })
+
+        then: "the assets should have been passed in pages up to the limit"
+        count == 5
+        streamedPages.collect { it.size() } == [3, 2]
+        streamedPages.flatten().collect { it.id } == allAssets.take(5).collect { it.id }
+
+        and: "the query should not have been changed"
+        query.limit == 5
+        query.after == null
+    }
+
+    def "Continue streaming when the last asset of a page is deleted"() {
+
+        given: "assets which are streamed in pages of two"
+        def assets = (1..4).collect {
+            def asset = new Asset("Stream Test Asset " + it, THING)
+            asset.setRealm(keycloakDemoSetup.masterTenant.realm)
+            assetStorageService.merge(asset)
+        }
+        def query = new AssetQuery()
+            .select(Select.selectExcludeAll())
+            .names(new StringPredicate(Match.BEGIN, "Stream Test Asset"))
+
+        when: "the assets are streamed and the last asset of the first page is deleted before the next page"
+        List<List<Asset>> streamedPages = []
+        def count = assetStorageService.streamAll(query, 2, { List<Asset> page ->
+            streamedPages.add(new ArrayList<>(page))
+            if (streamedPages.size() == 1) {
+                assetStorageService.delete([page.last().id])
+            }
+        })
+
+        then: "all assets should have been passed to the consumer"
+        count == 4
+        streamedPages.collect { it.size() } == [2, 2]
+        streamedPages.flatten().collect { it.id }.sort() == assets.collect { it.id }.sort()
+
+        and: "the query should not have been changed"
+        query.orderBy == null
+        query.limit == 0
+
+        cleanup: "the assets should be removed"
+        assetStorageService.delete(assets.collect { it.id }.findAll { assetStorageService.find(it) != null })
+    }
+
+    /**
+     * @return The lines of the query plan.
+     */
+    static List<String> explainWithoutSequentialScans(def preparedQuery) {
+        persistenceService.doReturningTransaction(new Function<EntityManager, List<String>>() {
+            @Override
+            List<String> apply(EntityManager em) {
+                em.unwrap(Session.class).doReturningWork(new ReturningWork<List<String>>() {
+                    @Override
+                    List<String> execute(Connection connection) throws SQLException {
+                        connection.createStatement().execute("set local enable_seqscan = off")
+                        def st = connection.prepareStatement("explain " + preparedQuery.querySql)
+                        preparedQuery.apply(st)
+                        def rs = st.executeQuery()
+                        List<String> lines = []
+                        while (rs.next()) {
+                            lines.add(rs.getString(1))
+                        }
+                        return lines
+                    }
+                })
+            }
+        })
+    }
+
+    def "Attribute value equality queries use the attributes index"() {
+
+        given: "a query with an attribute value equality predicate"
+        def query = new AssetQuery()
+            .select(Select.selectExcludeAll())
+            .attributeValue("windowOpen", false)
+            .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+        def preparedQuery = assetStorageService.buildQuery(query).key
+
+        when: "the query plan is explained with sequential scans disabled (the demo data is too small to prefer an index)"
+        def plan = explainWithoutSequentialScans(preparedQuery)
+
+        then: "the attributes index should be used"
+        plan.any { it.toLowerCase().contains("asset_attributes") }
+
+        and: "the query should still return the matching assets"
+        assetStorageService.findAll(query).size() > 0
+    }
+
+    def "Attribute existence queries use the attributes index"() {
+
+        given: "a query with an attribute existence predicate"
+        def query = new AssetQuery()
+            .select(Select.selectExcludeAll())
+            .attributes(new AttributePredicate("windowOpen"))
+            .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+        def preparedQuery = assetStorageService.buildQuery(query).key
+
+        when: "the query plan is explained with sequential scans disabled"
+        def plan = explainWithoutSequentialScans(preparedQuery)
+
+        then: "the key existence pre-filter should use the attributes index"
+        preparedQuery.querySql.contains("A.ATTRIBUTES ?? ?")
+        plan.any { it.toLowerCase().contains("asset_attributes") }
+
+        and: "the query should still return the matching assets"
+        assetStorageService.findAll(query).size() > 0
+    }
+
+    def "Attribute value equality queries compare numbers and strings as before the index"() {
+
+        given: "an asset with numbers stored as numbers and as strings"
+        def asset = new Asset("Number Test Asset", THING)
+        asset.setRealm(keycloakDemoSetup.masterTenant.realm)
+        asset.setAttributes(
+            new AssetAttribute("integerNumber", AttributeValueType.NUMBER, Values.create(21)),
+            new AssetAttribute("stringNumber", AttributeValueType.STRING, Values.create("21")),
+            new AssetAttribute("flag", AttributeValueType.BOOLEAN, Values.create(true))
+        )
+        asset = assetStorageService.merge(asset)
+        def queryFor = { AttributePredicate... attributePredicates ->
+            assetStorageService.findAll(new AssetQuery().ids(asset.id).attributes(attributePredicates))
+        }
+
+        expect: "a number predicate to match a number stored as a string"
+        queryFor(new AttributePredicate(new StringPredicate("stringNumber"), new NumberPredicate(21))).size() == 1
+        queryFor(new AttributePredicate(new StringPredicate("stringNumber"), new NumberPredicate(21, NumberType.INTEGER))).size() == 1
+
+        and: "an integer number predicate to match with the value truncated"
+        queryFor(new AttributePredicate(new StringPredicate("integerNumber"), new NumberPredicate(21.5, NumberType.INTEGER))).size() == 1
+        queryFor(new AttributePredicate(new StringPredicate("integerNumber"), new NumberPredicate(21.5))).size() == 0
+
+        and: "a string predicate to match the text of a number"
+        queryFor(new AttributePredicate(new StringPredicate("integerNumber"), new StringPredicate("21.0"))).size() == 1
+
+        and: "a boolean predicate to match only the stored boolean"
+        queryFor(new AttributePredicate(new StringPredicate("flag"), new BooleanPredicate(true))).size() == 1
+        queryFor(new AttributePredicate(new StringPredicate("flag"), new BooleanPredicate(false))).size() == 0
+
+        and: "all predicates to be combined"
+        queryFor(
+            new AttributePredicate(new StringPredicate("stringNumber"), new NumberPredicate(21)),
+            new AttributePredicate(new StringPredicate("integerNumber"), new NumberPredicate(21.5, NumberType.INTEGER)),
+            new AttributePredicate(new StringPredicate("flag"), new BooleanPredicate(true))
+        ).size() == 1
+
+        cleanup: "the asset should be removed"
+        if (asset?.id) {
+            assetStorageService.delete([asset.id])
+        }
+    }
+
+    def "Queries of the same shape reuse the cached SQL"() {
+
+        given: "the current query shape stats"
+        def hits = assetStorageService.getQueryShapeStats().getNumber("hits").orElse(0d)
+
+        when: "queries of the same shape with different values are built"
+        def preparedQuery1 = assetStorageService.buildQuery(new AssetQuery()
+            .ids(managerDemoSetup.apartment1Id, managerDemoSetup.apartment2Id)
+            .limit(2)).key
+        def preparedQuery2 = assetStorageService.buildQuery(new AssetQuery()
+            .ids(managerDemoSetup.apartment1LivingroomId)
+            .limit(1)).key
+
+        then: "the cached SQL of the shape should be used, so the prepared statement of the connection can be reused"
+        preparedQuery1.querySql.is(preparedQuery2.querySql)
+        preparedQuery1.binders.size() == preparedQuery2.binders.size()
+        assetStorageService.getQueryShapeStats().getNumber("hits").orElse(0d) > hits
+
+        when: "a query of another shape is built"
+        def misses = assetStorageService.getQueryShapeStats().getNumber("misses").orElse(0d)
+        def preparedQuery3 = assetStorageService.buildQuery(new AssetQuery()
+            .ids(managerDemoSetup.apartment1LivingroomId)
+            .names("Living Room")
+            .limit(1)).key
+
+        then: "it should not use the cached SQL"
+        preparedQuery3.querySql != preparedQuery1.querySql
+        assetStorageService.getQueryShapeStats().getNumber("misses").orElse(0d) > misses
+
+        and: "the queries should return the assets of their values"
+        assetStorageService.findAll(new AssetQuery().ids(managerDemoSetup.apartment1Id, managerDemoSetup.apartment2Id).limit(2)).size() == 2
+        assetStorageService.findAll(new AssetQuery().ids(managerDemoSetup.apartment1LivingroomId).limit(1))[0].id == managerDemoSetup.apartment1LivingroomId
+    }
+
     def "Location queries"() {
 
         given: "polling conditions"
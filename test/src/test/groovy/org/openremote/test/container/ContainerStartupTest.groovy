@@ -0,0 +1,121 @@
+package org.openremote.test.container
+
+import org.openremote.container.Container
+import org.openremote.container.ContainerService
+import org.openremote.container.ContainerStartup
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ContainerStartupTest extends Specification {
+
+    static class TestService implements ContainerService {
+        String name
+        Collection<Class<? extends ContainerService>> dependencies
+        long initMillis
+
+        @Override
+        int getPriority() {
+            DEFAULT_PRIORITY
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            dependencies
+        }
+
+        @Override
+        void init(Container container) throws Exception {
+            Thread.sleep(initMillis)
+        }
+
+        @Override
+        void start(Container container) throws Exception {
+        }
+
+        @Override
+        void stop(Container container) throws Exception {
+        }
+
+        @Override
+        String toString() {
+            name
+        }
+    }
+
+    static class DatabaseService extends TestService {}
+
+    static class IdentityService extends TestService {}
+
+    static class SetupService extends TestService {}
+
+    static class MapService extends TestService {}
+
+    static class WebService extends TestService {}
+
+    def "Run services concurrently when their dependencies have completed"() {
+
+        given: "services where two slow services and the map service don't depend on other services"
+        def database = new DatabaseService(name: "database", dependencies: [], initMillis: 500)
+        def identity = new IdentityService(name: "identity", dependencies: [], initMillis: 500)
+        def setup = new SetupService(name: "setup", dependencies: [DatabaseService, IdentityService])
+        def map = new MapService(name: "map", dependencies: [], initMillis: 200)
+        def web = new WebService(name: "web")
+        def services = [database, identity, setup, map, web] as List<ContainerService>
+        def startup = new ContainerStartup(4, services)
+        def started = new ConcurrentLinkedQueue<String>()
+        def completed = new ConcurrentLinkedQueue<String>()
+
+        when: "the services are initialized"
+        startup.run("init", { service ->
+            started.add(service.toString())
+            service.init(null)
+            completed.add(service.toString())
+        })
+
+        then: "the independent services should have been initialized concurrently"
+        startup.getPhaseMillis("init") < 1000
+        started.take(3).toSet() == ["database", "identity", "map"].toSet()
+
+        and: "the services with dependencies after their dependencies"
+        completed.toList().indexOf("setup") > completed.toList().indexOf("database")
+        completed.toList().indexOf("setup") > completed.toList().indexOf("identity")
+        completed.toList().last() == "web"
+
+        and: "the time of each service should be reported"
+        startup.getTotalMillis(database) >= 500
+        startup.report.contains(DatabaseService.name)
+
+        when: "a service fails whilst another is running"
+        def failing = new ContainerStartup(4, services)
+        def mapRunning = new CountDownLatch(1)
+        def initialized = new ConcurrentLinkedQueue<String>()
+        failing.run("init", { service ->
+            if (service.is(database)) {
+                throw new IllegalStateException("Database not available")
+            }
+            if (service.is(map)) {
+                assert mapRunning.await(5, TimeUnit.SECONDS)
+            }
+            if (service.is(identity)) {
+                mapRunning.countDown()
+            }
+            initialized.add(service.toString())
+        })
+
+        then: "the failure should be thrown after the independent services completed"
+        def ex = thrown(IllegalStateException)
+        ex.message == "Database not available"
+        initialized.toSet() == ["identity", "map"].toSet()
+
+        when: "the services are run with one thread"
+        def serial = new ContainerStartup(1, services)
+        def order = []
+        serial.run("start", { service -> order.add(service.toString()) })
+
+        then: "they should run in container order"
+        order == ["database", "identity", "setup", "map", "web"]
+    }
+}
@@ -0,0 +1,192 @@
+package org.openremote.test.container
+
+import org.openremote.manager.concurrent.TimingWheelScheduler
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.logging.Handler
+import java.util.logging.Level
+import java.util.logging.LogRecord
+import java.util.logging.Logger
+
+class TimingWheelSchedulerTest extends Specification {
+
+    static final long TICK_MILLIS = 10
+    static final int TICKS_PER_WHEEL = 8
+    // The wheel measures time with a monotonic clock, allow for the difference to the wall clock
+    static final long CLOCK_TOLERANCE_MILLIS = 2
+
+    ExecutorService executor
+    TimingWheelScheduler scheduler
+
+    def setup() {
+        executor = Executors.newFixedThreadPool(2)
+        scheduler = new TimingWheelScheduler("Test timer wheel", executor, TICK_MILLIS, TICKS_PER_WHEEL)
+    }
+
+    def cleanup() {
+        scheduler.stop()
+        executor.shutdownNow()
+    }
+
+    def "Schedule one-shot and periodic timers"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 5, delay: 0.05)
+
+        when: "a one-shot timer is scheduled"
+        def fired = new CopyOnWriteArrayList<Long>()
+        def start = System.currentTimeMillis()
+        def timer = scheduler.schedule(this, { fired.add(System.currentTimeMillis()) }, 50)
+
+        then: "it should fire once, not before its delay, and be done"
+        conditions.eventually {
+            assert timer.isDone()
+            assert fired.size() == 1
+        }
+        fired[0] - start >= 50 - CLOCK_TOLERANCE_MILLIS
+        scheduler.activeCount == 0
+
+        when: "a periodic timer is scheduled"
+        def count = new CopyOnWriteArrayList<Long>()
+        def periodicTimer = scheduler.scheduleWithFixedDelay(this, { count.add(System.currentTimeMillis()) }, 0, 20)
+
+        then: "it should fire repeatedly until it is cancelled"
+        conditions.eventually {
+            assert count.size() >= 3
+        }
+        scheduler.activeCount == 1
+        periodicTimer.cancel(false)
+        !periodicTimer.cancel(false)
+        scheduler.activeCount == 0
+        scheduler.stats.getNumber("fired").orElse(0) >= 4
+    }
+
+    def "Cancel timers"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 5, delay: 0.05)
+
+        and: "two owners"
+        def owner = new Object()
+        def otherOwner = new Object()
+
+        when: "timers of both owners are scheduled"
+        def fired = new CopyOnWriteArrayList<String>()
+        def timer = scheduler.schedule(owner, { fired.add("single") }, 200)
+        scheduler.schedule(owner, { fired.add("owner") }, 200)
+        scheduler.scheduleAtFixedRate(owner, { fired.add("ownerPeriodic") }, 200, 100)
+        scheduler.schedule(otherOwner, { fired.add("otherOwner") }, 200)
+
+        and: "a single timer is cancelled"
+        timer.cancel(false)
+
+        then: "it should be cancelled"
+        timer.isCancelled()
+        timer.isDone()
+
+        when: "waiting for its result"
+        timer.get()
+
+        then: "a cancellation should be thrown"
+        thrown(CancellationException)
+
+        when: "all remaining timers of the owner are cancelled"
+        def cancelled = scheduler.cancelAll(owner)
+
+        then: "only the timers of the owner should have been cancelled"
+        cancelled == 2
+        scheduler.activeCount == 1
+        scheduler.cancelAll(owner) == 0
+
+        and: "only the timer of the other owner should fire"
+        conditions.eventually {
+            assert fired == ["otherOwner"]
+        }
+        scheduler.stats.getNumber("cancelled").orElse(0) == 3
+    }
+
+    def "Fire timers with delays longer than one turn of the wheel"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 5, delay: 0.05)
+
+        when: "a timer is scheduled with a delay of more than three turns of the wheel"
+        def delayMillis = TICK_MILLIS * TICKS_PER_WHEEL * 3 + 25
+        def fired = new CopyOnWriteArrayList<Long>()
+        def start = System.currentTimeMillis()
+        def timer = scheduler.schedule(this, { fired.add(System.currentTimeMillis()) }, delayMillis)
+
+        and: "a timer with a short delay which falls into the same bucket of the wheel"
+        def shortFired = new CopyOnWriteArrayList<Long>()
+        scheduler.schedule(this, { shortFired.add(System.currentTimeMillis()) }, 25)
+
+        then: "the short timer should fire first, the long timer should not fire on an earlier turn of the wheel"
+        conditions.eventually {
+            assert shortFired.size() == 1
+            assert fired.size() == 1
+        }
+        fired[0] - start >= delayMillis - CLOCK_TOLERANCE_MILLIS
+        shortFired[0] < fired[0]
+        timer.get(1, TimeUnit.SECONDS) == null
+    }
+
+    def "Warn about periods shorter than the tick"() {
+
+        given: "a handler recording warnings of the scheduler"
+        def warnings = new CopyOnWriteArrayList<String>()
+        def handler = new Handler() {
+            @Override
+            void publish(LogRecord record) {
+                if (record.level == Level.WARNING) {
+                    warnings.add(record.message)
+                }
+            }
+
+            @Override
+            void flush() {
+            }
+
+            @Override
+            void close() throws SecurityException {
+            }
+        }
+        def logger = Logger.getLogger(TimingWheelScheduler.class.getName())
+        logger.addHandler(handler)
+
+        and: "expected conditions"
+        def conditions = new PollingConditions(timeout: 5, delay: 0.05)
+
+        when: "a periodic timer is scheduled with a period of one tick"
+        def fired = new CopyOnWriteArrayList<Long>()
+        scheduler.scheduleAtFixedRate(this, { fired.add(System.currentTimeMillis()) }, 0, TICK_MILLIS)
+
+        then: "there should be no warning"
+        warnings.isEmpty()
+
+        when: "a periodic timer is scheduled with a period shorter than the tick"
+        def subTickFired = new CopyOnWriteArrayList<Long>()
+        scheduler.scheduleWithFixedDelay(this, { subTickFired.add(System.currentTimeMillis()) }, 0, 2)
+
+        then: "a warning should be logged and the timer should still fire"
+        warnings.size() == 1
+        warnings[0].contains("rounded up")
+        conditions.eventually {
+            assert subTickFired.size() >= 3
+        }
+
+        when: "a timer is scheduled without a period"
+        scheduler.scheduleAtFixedRate(this, {}, 0, 0)
+
+        then: "it should be rejected"
+        thrown(IllegalArgumentException)
+
+        cleanup:
+        logger.removeHandler(handler)
+    }
+}
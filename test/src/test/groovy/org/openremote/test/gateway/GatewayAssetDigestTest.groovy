@@ -0,0 +1,86 @@
+package org.openremote.test.gateway
+
+import org.openremote.container.util.UniqueIdentifierGenerator
+import org.openremote.manager.gateway.GatewayAssetDigest
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.attribute.MetaItemType
+import org.openremote.model.value.ObjectValue
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+class GatewayAssetDigestTest extends Specification {
+
+    def "Digest of gateway assets and their central manager copies"() {
+
+        given: "an asset on a gateway"
+        def gatewayId = UniqueIdentifierGenerator.generateId("Gateway")
+        def asset = new Asset("Room", AssetType.ROOM)
+        asset.setId(UniqueIdentifierGenerator.generateId("Room"))
+        asset.setRealm("master")
+        asset.addAttributes(
+            new AssetAttribute("temp", AttributeValueType.TEMPERATURE, Values.create(20), 1000)
+                .addMeta(MetaItemType.READ_ONLY),
+            new AssetAttribute("tempSetpoint", AttributeValueType.TEMPERATURE, Values.create(21), 1000)
+        )
+
+        and: "its copy on the central manager in another realm, under the gateway, with a different version and key order"
+        def copy = new Asset("Room", AssetType.ROOM)
+        copy.setId(asset.getId())
+        copy.setRealm("building")
+        copy.setParentId(gatewayId)
+        copy.setVersion(5)
+        copy.setAttributes(Values.<ObjectValue>parse(asset.getAttributes().toJson()).map { parsed ->
+            def attributes = Values.createObject()
+            parsed.keys().reverse().each { key -> attributes.put(key, parsed.get(key).orElse(null)) }
+            attributes
+        }.orElse(null))
+
+        when: "the digests are calculated"
+        def assetDigest = GatewayAssetDigest.digest([asset], null).get(asset.getId())
+        def copyDigest = GatewayAssetDigest.digest([copy], gatewayId).get(copy.getId())
+        def copyValueDigest = GatewayAssetDigest.digestValues([copy]).get(copy.getId())
+
+        then: "they should be the same"
+        assetDigest != null
+        assetDigest == copyDigest
+        GatewayAssetDigest.digestValues([asset]).get(asset.getId()) == copyValueDigest
+
+        when: "an attribute value of the gateway asset changes"
+        asset.getAttribute("temp").get().setValue(Values.create(22), 2000)
+
+        then: "the digest should be the same, values are not digested"
+        GatewayAssetDigest.digest([asset], null).get(asset.getId()) == copyDigest
+
+        and: "the value digest should be different"
+        GatewayAssetDigest.digestValues([asset]).get(asset.getId()) != copyValueDigest
+
+        when: "only the value timestamp of the copy changes"
+        copy.getAttribute("temp").get().setValue(Values.create(20), 3000)
+
+        then: "the value digest of the copy should be different"
+        GatewayAssetDigest.digestValues([copy]).get(copy.getId()) != copyValueDigest
+
+        when: "a meta item of the gateway asset changes"
+        asset.getAttribute("temp").get().addMeta(MetaItemType.STORE_DATA_POINTS)
+
+        then: "the digest should be different"
+        GatewayAssetDigest.digest([asset], null).get(asset.getId()) != copyDigest
+
+        when: "an attribute is added to the copy"
+        def extendedCopyDigest = GatewayAssetDigest.digest([copy.addAttributes(
+            new AssetAttribute("humidity", AttributeValueType.HUMIDITY, Values.create(50), 1000)
+        )], gatewayId).get(copy.getId())
+
+        then: "the digest should be different"
+        extendedCopyDigest != copyDigest
+
+        when: "the copy is moved under another parent"
+        copy.setParentId(UniqueIdentifierGenerator.generateId("Building"))
+
+        then: "the digest should be different"
+        GatewayAssetDigest.digest([copy], gatewayId).get(copy.getId()) != copyDigest
+    }
+}
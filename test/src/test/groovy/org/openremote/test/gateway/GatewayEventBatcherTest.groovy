@@ -0,0 +1,140 @@
+package org.openremote.test.gateway
+
+import org.openremote.manager.concurrent.ManagerExecutorService
+import org.openremote.manager.gateway.GatewayEventBatcher
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.event.shared.SharedEvent
+import org.openremote.model.gateway.GatewayBatchEvent
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledFuture
+import java.util.zip.DeflaterOutputStream
+
+class GatewayEventBatcherTest extends Specification {
+
+    def "Batch, compress and decode events sent over a gateway link"() {
+
+        given: "a batcher that captures what is sent"
+        def executorService = Mock(ManagerExecutorService)
+        def sent = []
+        def batcher = new GatewayEventBatcher(executorService, 100, { SharedEvent event -> sent.add(event) })
+
+        when: "events are added within the window"
+        (1..50).each { batcher.add(new AttributeEvent("asset" + (it % 5), "temp", Values.create(it), 1000 + it)) }
+
+        then: "a flush should have been scheduled once and nothing sent yet"
+        1 * executorService.schedule(_ as Runnable, 100) >> Stub(ScheduledFuture)
+        sent.isEmpty()
+
+        when: "the window ends"
+        batcher.flush()
+
+        then: "one compressed batch should have been sent"
+        sent.size() == 1
+        sent[0] instanceof GatewayBatchEvent
+        ((GatewayBatchEvent) sent[0]).count == 50
+        sent[0].timestamp == 1050
+
+        and: "the stats should show the frame and compression"
+        def stats = batcher.getStats()
+        stats.getNumber("frames").orElse(0) == 1
+        stats.getNumber("events").orElse(0) == 50
+        stats.getNumber("eventsPerFrame").orElse(0) == 50
+        stats.getNumber("compressedBytes").orElse(0) < stats.getNumber("bytes").orElse(0)
+
+        when: "the batch is decoded"
+        def events = GatewayEventBatcher.decode((GatewayBatchEvent) sent[0])
+
+        then: "the events should be in order with their own timestamps and values"
+        events.length == 50
+        events.every { it instanceof AttributeEvent }
+        events.collect { it.timestamp } == (1001..1050).toList()
+        events.collect { ((AttributeEvent) it).value.flatMap { Values.getNumber(it) }.orElse(0) } == (1..50).collect { it as double }
+
+        when: "a single event is added and the window ends"
+        sent.clear()
+        batcher.add(new AttributeEvent("asset1", "temp", Values.create(1), 2000))
+        batcher.flush()
+
+        then: "it should be sent as is"
+        1 * executorService.schedule(_ as Runnable, 100) >> Stub(ScheduledFuture)
+        sent.size() == 1
+        sent[0] instanceof AttributeEvent
+
+        and: "an announcement should decode to no events"
+        GatewayEventBatcher.decode(GatewayEventBatcher.createAnnouncement(3000)).length == 0
+    }
+
+    def "Hand over the events that could not be sent"() {
+
+        given: "a batcher of a link that is down"
+        def executorService = Stub(ManagerExecutorService) {
+            schedule(_ as Runnable, _) >> Stub(ScheduledFuture)
+        }
+        def connected = false
+        def sent = []
+        def unsent = []
+        def batcher = new GatewayEventBatcher(
+            executorService,
+            100,
+            { SharedEvent event -> connected ? sent.add(event) : false },
+            { SharedEvent event -> unsent.add(event) }
+        )
+
+        when: "events are added and the window ends"
+        (1..3).each { batcher.add(new AttributeEvent("asset1", "temp" + it, Values.create(it), 1000 + it)) }
+        batcher.flush()
+
+        then: "the events should have been handed over in order and not counted as sent"
+        sent.isEmpty()
+        unsent.collect { ((AttributeEvent) it).attributeName } == ["temp1", "temp2", "temp3"]
+        batcher.getStats().getNumber("frames").orElse(0) == 0
+
+        when: "events are added and the link is closed before the window ends"
+        unsent.clear()
+        batcher.add(new AttributeEvent("asset1", "temp4", Values.create(4), 2000))
+        batcher.clear()
+
+        then: "the events should have been handed over"
+        unsent.collect { ((AttributeEvent) it).attributeName } == ["temp4"]
+
+        when: "the link is up again"
+        unsent.clear()
+        connected = true
+        batcher.add(new AttributeEvent("asset1", "temp5", Values.create(5), 3000))
+        batcher.flush()
+
+        then: "the event should have been sent"
+        sent.size() == 1
+        unsent.isEmpty()
+    }
+
+    def "Reject batches that are too big"() {
+
+        given: "a batch with more events than allowed"
+        def batcher = new GatewayEventBatcher(Stub(ManagerExecutorService), 100, { SharedEvent event -> })
+        def events = (1..2).collect { new AttributeEvent("asset1", "temp", Values.create(it), 1000 + it) } as SharedEvent[]
+        def batch = batcher.encode(events)
+
+        when: "a batch claiming too many events is decoded"
+        GatewayEventBatcher.decode(new GatewayBatchEvent(batch.timestamp, GatewayEventBatcher.MAX_BATCH_EVENTS + 1, batch.payload))
+
+        then: "it should be rejected"
+        thrown(IOException)
+
+        when: "a batch that inflates to more than the maximum is decoded"
+        def compressed = new ByteArrayOutputStream()
+        new DeflaterOutputStream(compressed).withStream { stream ->
+            def zeros = new byte[1024 * 1024]
+            (GatewayEventBatcher.MAX_BATCH_INFLATED_BYTES.intdiv(zeros.length) + 1).times { stream.write(zeros) }
+        }
+        GatewayEventBatcher.decode(new GatewayBatchEvent(1000, 2, Base64.getEncoder().encodeToString(compressed.toByteArray())))
+
+        then: "it should be rejected"
+        thrown(IOException)
+
+        and: "a valid batch should still be decoded"
+        GatewayEventBatcher.decode(batch).length == 2
+    }
+}
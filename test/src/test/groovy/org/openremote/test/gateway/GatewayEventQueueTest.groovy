@@ -0,0 +1,212 @@
+package org.openremote.test.gateway
+
+import org.openremote.manager.gateway.GatewayEventQueue
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class GatewayEventQueueTest extends Specification {
+
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("gateway-queue")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    static List<String> drain(GatewayEventQueue queue, long currentTimestamp) {
+        def messages = []
+        queue.drain(currentTimestamp, { messages.add(it) })
+        messages
+    }
+
+    def "Queue and replay messages with coalescing per key"() {
+
+        given: "a queue"
+        def queue = new GatewayEventQueue(directory, 1024 * 1024, 60000)
+
+        when: "messages are added with and without keys"
+        queue.add("asset1:temp", "temp1", 1000)
+        queue.add("asset1:light", "light1", 1001)
+        queue.add(null, "other1", 1002)
+        queue.add("asset1:temp", "temp2", 1003)
+        queue.add("asset2:temp", "temp3", 1004)
+
+        then: "the backlog should contain all messages"
+        queue.size() == 5
+        queue.getStats().getNumber("depth").orElse(0) == 5
+
+        when: "the queue is closed and opened again"
+        queue.close()
+        queue = new GatewayEventQueue(directory, 1024 * 1024, 60000)
+
+        then: "the messages should still be queued"
+        queue.size() == 5
+
+        when: "the queue is drained"
+        def messages = drain(queue, 2000)
+
+        then: "only the latest message of each key should be returned in the order they were added"
+        messages == ["light1", "other1", "temp2", "temp3"]
+        queue.isEmpty()
+        drain(queue, 2000).isEmpty()
+
+        when: "a message is added with an earlier timestamp than a message with the same key, e.g. a batch that wasn't sent"
+        queue.add("asset1:temp", "temp5", 2500)
+        queue.add("asset1:temp", "temp4", 2400)
+
+        then: "the message with the latest timestamp should be replayed"
+        drain(queue, 2500) == ["temp5"]
+
+        when: "more messages are added after draining"
+        queue.add("asset1:temp", "temp4", 3000)
+
+        then: "they should be replayed"
+        drain(queue, 3000) == ["temp4"]
+
+        cleanup:
+        queue.close()
+    }
+
+    def "Queue size and age limits"() {
+
+        given: "a queue of at most three segments that hold four messages each"
+        def queue = new GatewayEventQueue(directory, 3 * 4096, 60000, 4096)
+        def message = "x" * 1000
+
+        when: "more messages are added than fit in the queue"
+        (1..20).each { queue.add("key" + it, message + it, 1000) }
+
+        then: "the oldest messages should have been dropped"
+        queue.size() == 12
+        queue.getStats().getNumber("dropped").orElse(0) == 8
+        queue.getStats().getNumber("segments").orElse(0) == 3
+
+        when: "the queue is drained"
+        def messages = drain(queue, 1000)
+
+        then: "the remaining messages should be returned in order"
+        messages.size() == 12
+        messages.first() == message + 9
+        messages.last() == message + 20
+
+        when: "messages are drained after the max age"
+        queue.add("key1", "old", 1000)
+        queue.add("key2", "new", 50000)
+        messages = drain(queue, 70000)
+
+        then: "the expired messages should not be returned"
+        messages == ["new"]
+        queue.getStats().getNumber("expired").orElse(0) == 1
+
+        when: "a message is bigger than a segment"
+        def added = queue.add("key", "x" * 5000, 1000)
+
+        then: "it should be dropped"
+        !added
+        queue.isEmpty()
+
+        cleanup:
+        queue.close()
+    }
+
+    def "Keep messages that could not be sent"() {
+
+        given: "a queue with messages"
+        def queue = new GatewayEventQueue(directory, 1024 * 1024, 60000)
+        (1..5).each { queue.add("key" + it, "message" + it, 1000) }
+        queue.add("key1", "message6", 1001)
+
+        when: "the link drops after two messages have been sent"
+        def sent = []
+        def sentCount = queue.drain(2000, { message ->
+            if (sent.size() == 2) {
+                return false
+            }
+            sent.add(message)
+            true
+        })
+
+        then: "the sent messages should have been removed and the rest should stay queued"
+        sentCount == 2
+        sent == ["message2", "message3"]
+        queue.size() == 3
+
+        when: "the queue is closed and opened again"
+        queue.close()
+        queue = new GatewayEventQueue(directory, 1024 * 1024, 60000)
+
+        then: "the remaining messages should be sent in order"
+        queue.size() == 3
+        drain(queue, 2000) == ["message4", "message5", "message6"]
+        queue.isEmpty()
+
+        when: "the queue is deleted"
+        queue.add("key1", "message7", 3000)
+        queue.delete()
+
+        then: "the segment files and the directory should have been removed"
+        !directory.toFile().exists()
+    }
+
+    def "Only remove the sent messages and send without holding the queue"() {
+
+        given: "a queue of segments that hold four messages each"
+        def queue = new GatewayEventQueue(directory, 1024 * 1024, 60000, 4096)
+        def message = "x" * 1000
+        (1..10).each { queue.add("key" + it, message + it, 1000) }
+        def segmentFiles = { directory.toFile().list().findAll { it.endsWith(".segment") }.sort() }
+        def initialSegments = segmentFiles()
+        def lastSegmentModified = directory.resolve(initialSegments.last()).toFile().lastModified()
+
+        when: "the link drops after five messages have been sent"
+        def sent = []
+        queue.drain(2000, { queued ->
+            if (sent.size() == 5) {
+                return false
+            }
+            sent.add(queued)
+            true
+        })
+
+        then: "only the segment of which all messages were sent should have been deleted"
+        sent.size() == 5
+        queue.size() == 5
+        segmentFiles() == initialSegments.drop(1)
+
+        and: "the segment of messages which weren't sent should not have been written"
+        directory.resolve(initialSegments.last()).toFile().lastModified() == lastSegmentModified
+
+        when: "the queue is closed and opened again"
+        queue.close()
+        queue = new GatewayEventQueue(directory, 1024 * 1024, 60000, 4096)
+
+        then: "the remaining messages should still be queued"
+        queue.size() == 5
+
+        when: "messages are added and drained whilst the queue is drained"
+        sent.clear()
+        def nestedSent = -1
+        queue.drain(3000, { queued ->
+            if (sent.isEmpty()) {
+                queue.add("key11", message + 11, 3000)
+                nestedSent = queue.drain(3000, { throw new IllegalStateException("Unexpected drain") })
+            }
+            sent.add(queued)
+            true
+        })
+
+        then: "the other drain should return immediately and the added message should be sent by the running drain"
+        nestedSent == 0
+        sent == (6..11).collect { message + it }
+        queue.isEmpty()
+        segmentFiles().isEmpty()
+
+        cleanup:
+        queue.close()
+    }
+}
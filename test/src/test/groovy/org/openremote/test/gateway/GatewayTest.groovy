@@ -14,6 +14,7 @@ import org.openremote.container.web.ClientRequestInfo
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.concurrent.ManagerExecutorService
+import org.openremote.manager.gateway.GatewayAssetDigest
 import org.openremote.manager.gateway.GatewayClientService
 import org.openremote.manager.gateway.GatewayConnector
 import org.openremote.manager.gateway.GatewayService
@@ -982,4 +983,219 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
         cleanup: "the server should be stopped"
         stopContainer(container)
     }
+
+    def "Gateway incremental sync of changed assets"() {
+
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 10, delay: 1)
+        def serverPort = findEphemeralPort()
+        def container = startContainer(defaultConfig(serverPort), defaultServices())
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def executorService = container.getService(ManagerExecutorService.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def gatewayService = container.getService(GatewayService.class)
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+
+        expect: "the container should be running and initialised"
+        conditions.eventually {
+            assert container.isRunning()
+            assert noEventProcessedIn(assetProcessingService, 300)
+        }
+
+        when: "a gateway is provisioned in this manager"
+        def gateway = assetStorageService.merge(new Asset("Test gateway", AssetType.GATEWAY, null, managerDemoSetup.realmBuildingTenant))
+
+        then: "credentials should have been created for the gateway"
+        conditions.eventually {
+            gateway = assetStorageService.find(gateway.getId(), true)
+            assert !isNullOrEmpty(gateway.getAttribute("clientId").flatMap{it.getValueAsString()}.orElse(""))
+            assert !isNullOrEmpty(gateway.getAttribute("clientSecret").flatMap{it.getValueAsString()}.orElse(""))
+            assert gatewayService.gatewayConnectorMap.get(gateway.getId()) != null
+        }
+
+        when: "the gateway assets are defined, three buildings with fifteen rooms each so the changed assets need three batches"
+        List<Asset> assets = []
+        IntStream.rangeClosed(1, 3).forEach { i ->
+            def buildingId = UniqueIdentifierGenerator.generateId("Incremental Building $i")
+            assets.add(
+                new Asset(
+                    buildingId,
+                    0L,
+                    new Date(),
+                    "Incremental Building $i",
+                    AssetType.BUILDING.type,
+                    false,
+                    (String)null,
+                    (String)null,
+                    (String)null,
+                    "master",
+                    (String[])[buildingId].toArray(new String[0]),
+                    null).addAttributes(
+                    new AssetAttribute(AttributeType.SURFACE_AREA, Values.create(1000), new Date().getTime())
+                )
+            )
+            IntStream.rangeClosed(1, 15).forEach { j ->
+                def roomId = UniqueIdentifierGenerator.generateId("Incremental Building $i Room $j")
+                assets.add(
+                    new Asset(
+                        roomId,
+                        0L,
+                        new Date(),
+                        "Incremental Building $i Room $j",
+                        AssetType.ROOM.type,
+                        false,
+                        buildingId,
+                        (String)null,
+                        (String)null,
+                        "master",
+                        (String[])[roomId, buildingId].toArray(new String[0]),
+                        null).addAttributes(
+                        new AssetAttribute("temp", AttributeValueType.TEMPERATURE, Values.create(20), new Date().getTime())
+                    )
+                )
+            }
+        }
+
+        and: "the gateway client is created"
+        def gatewayClient = new WebsocketIoClient<String>(
+            new URIBuilder("ws://localhost:$serverPort/websocket/events?Auth-Realm=$managerDemoSetup.realmBuildingTenant").build(),
+            null,
+            new OAuthClientCredentialsGrant("http://localhost:$serverPort/auth/realms/$managerDemoSetup.realmBuildingTenant/protocol/openid-connect/token",
+                gateway.getAttribute("clientId").flatMap{it.getValueAsString()}.orElse(""),
+                gateway.getAttribute("clientSecret").flatMap{it.getValueAsString()}.orElse(""),
+                null).setBasicAuthHeader(true),
+            executorService)
+        gatewayClient.setEncoderDecoderProvider({
+            [new AbstractNettyIoClient.MessageToMessageDecoder<String>(String.class, gatewayClient)].toArray(new ChannelHandler[0])
+        })
+        List<String> clientReceivedMessages = []
+        gatewayClient.addMessageConsumer({
+            message -> clientReceivedMessages.add(message)
+        })
+        def readRequests = {
+            new ArrayList<String>(clientReceivedMessages)
+                .findAll { it.startsWith(SharedEvent.MESSAGE_PREFIX) && it.contains("read-assets") }
+                .collect { Container.JSON.readValue(it.substring(SharedEvent.MESSAGE_PREFIX.length()), ReadAssetsEvent.class) }
+        }
+        def readAttributeRequests = {
+            new ArrayList<String>(clientReceivedMessages)
+                .findAll { it.startsWith(SharedEvent.MESSAGE_PREFIX) && it.contains("read-asset-attributes") }
+                .collect { Container.JSON.readValue(it.substring(SharedEvent.MESSAGE_PREFIX.length()), ReadAssetAttributesEvent.class) }
+        }
+        def reply = { String name, List<Asset> replyAssets, Map<String, String> digests, Map<String, String> valueDigests = null ->
+            gatewayClient.sendMessage(SharedEvent.MESSAGE_PREFIX + Container.JSON.writeValueAsString(new AssetsEvent(name, replyAssets, digests, valueDigests)))
+        }
+        def requestedAssets = { ReadAssetsEvent request ->
+            request.assetQuery.ids.collect { id -> assets.find { it.id == id } }
+        }
+        def syncedAssets = {
+            assetStorageService.findAll(new AssetQuery().parents(gateway.getId()).recursive(true))
+        }
+
+        and: "the gateway connects to this manager"
+        gatewayClient.connect()
+
+        then: "the central manager should request the assets and their digests"
+        conditions.eventually {
+            assert readRequests().size() == 1
+            assert readRequests()[0].name == GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL
+        }
+
+        when: "the gateway replies with its assets and their digests"
+        clientReceivedMessages.clear()
+        reply(GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL, assets, GatewayAssetDigest.digest(assets, null))
+
+        then: "all assets should be requested as changed, in three batches sent without waiting for a response"
+        List<ReadAssetsEvent> batchRequests = null
+        conditions.eventually {
+            batchRequests = readRequests()
+            assert batchRequests.size() == 3
+            assert batchRequests*.name == [
+                GatewayConnector.ASSET_READ_EVENT_NAME_CHANGED_BATCH + "0",
+                GatewayConnector.ASSET_READ_EVENT_NAME_CHANGED_BATCH + GatewayConnector.SYNC_ASSET_BATCH_SIZE,
+                GatewayConnector.ASSET_READ_EVENT_NAME_CHANGED_BATCH + (GatewayConnector.SYNC_ASSET_BATCH_SIZE * 2)
+            ]
+            assert batchRequests.sum { it.assetQuery.ids.length } == assets.size()
+        }
+
+        and: "the buildings should be requested in the first batch, before their rooms"
+        assets.findAll { it.parentId == null }.every { building -> batchRequests[0].assetQuery.ids.contains(building.id) }
+
+        when: "the gateway returns the last two batches first"
+        reply(batchRequests[2].name, requestedAssets(batchRequests[2]), null)
+        reply(batchRequests[1].name, requestedAssets(batchRequests[1]), null)
+
+        then: "they should be held until the first batch has been merged"
+        Thread.sleep(2000)
+        syncedAssets().isEmpty()
+        gatewayService.gatewayConnectorMap.get(gateway.getId()).isInitialSyncInProgress()
+
+        when: "the gateway returns the first batch"
+        reply(batchRequests[0].name, requestedAssets(batchRequests[0]), null)
+
+        then: "all batches should be merged in order and the gateway should become connected"
+        conditions.eventually {
+            gateway = assetStorageService.find(gateway.getId())
+            assert gateway.getAttribute("status").flatMap{it.getValueAsString()}.orElse(null) == ConnectionStatus.CONNECTED.name()
+            assert syncedAssets().size() == assets.size()
+        }
+        def building1Room1 = assetStorageService.find(assets[1].id, true)
+        building1Room1.getParentId() == assets[0].id
+        building1Room1.getAttribute("temp").flatMap{it.getValueAsNumber()}.orElse(0d) == 20d
+
+        when: "the gateway disconnects"
+        gatewayClient.disconnect()
+
+        then: "the gateway connector should be disconnected"
+        conditions.eventually {
+            assert !gatewayService.gatewayConnectorMap.get(gateway.getId()).isConnected()
+        }
+
+        when: "attribute values of all rooms change and a building is renamed on the gateway whilst it is disconnected"
+        assets.findAll { it.parentId != null }.each {
+            it.getAttribute("temp").get().setValue(Values.create(25), new Date().getTime())
+        }
+        assets[0].setName("Incremental Building 1 Renamed")
+        assets[0].setVersion(2L)
+
+        and: "the gateway reconnects and replies with its assets and their digests"
+        clientReceivedMessages.clear()
+        gatewayClient.connect()
+        conditions.eventually {
+            assert readRequests().size() == 1
+            assert readRequests()[0].name == GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL
+        }
+        clientReceivedMessages.clear()
+        reply(GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL, assets, GatewayAssetDigest.digest(assets, null), GatewayAssetDigest.digestValues(assets))
+
+        then: "only the renamed building should be requested, the value changes don't change the digests"
+        conditions.eventually {
+            batchRequests = readRequests()
+            assert batchRequests.size() == 1
+            assert batchRequests[0].name == GatewayConnector.ASSET_READ_EVENT_NAME_CHANGED_BATCH + "0"
+            assert batchRequests[0].assetQuery.ids as List == [assets[0].id]
+        }
+
+        when: "the gateway returns the renamed building"
+        reply(batchRequests[0].name, requestedAssets(batchRequests[0]), null)
+
+        then: "the building should be updated and the gateway should become connected"
+        conditions.eventually {
+            gateway = assetStorageService.find(gateway.getId())
+            assert gateway.getAttribute("status").flatMap{it.getValueAsString()}.orElse(null) == ConnectionStatus.CONNECTED.name()
+            assert assetStorageService.find(assets[0].id).getName() == "Incremental Building 1 Renamed"
+        }
+
+        and: "the attribute values of the rooms should be requested as their value digests changed"
+        conditions.eventually {
+            def roomIds = assets.findAll { it.parentId != null }*.id
+            def requests = readAttributeRequests()
+            assert requests*.assetId.containsAll(roomIds)
+            assert !requests*.assetId.contains(assets[0].id)
+        }
+
+        cleanup: "the gateway client and the server should be stopped"
+        gatewayClient?.disconnect()
+        stopContainer(container)
+    }
 }
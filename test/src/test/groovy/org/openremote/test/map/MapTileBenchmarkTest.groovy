@@ -0,0 +1,157 @@
+package org.openremote.test.map
+
+import org.openremote.manager.map.MapTile
+import org.openremote.manager.map.MapTileCache
+import org.openremote.manager.map.MbTilesReader
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.DriverManager
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.logging.Logger
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+class MapTileBenchmarkTest extends Specification {
+
+    private static final Logger LOG = Logger.getLogger(MapTileBenchmarkTest.class.getName())
+    static final int MAX_ZOOM = 6
+    static final int THREADS = 8
+    static final int REQUESTS_PER_THREAD = 5000
+
+    Path directory
+    Path mbtiles
+
+    def setup() {
+        directory = Files.createTempDirectory("map-tiles")
+        mbtiles = directory.resolve("sample.mbtiles")
+        createSampleMbTiles(mbtiles)
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    /**
+     * A sample mbtiles file with a gzip compressed tile for each tile up to {@link #MAX_ZOOM}, the tile data contains
+     * its own zoom, column and TMS row.
+     */
+    static void createSampleMbTiles(Path path) {
+        Class.forName(org.sqlite.JDBC.class.getName())
+        DriverManager.getConnection("jdbc:sqlite:" + path.toAbsolutePath()).withCloseable { connection ->
+            connection.autoCommit = false
+            connection.createStatement().withCloseable { statement ->
+                statement.executeUpdate("create table METADATA (NAME text, VALUE text)")
+                statement.executeUpdate("create table TILES (ZOOM_LEVEL integer, TILE_COLUMN integer, TILE_ROW integer, TILE_DATA blob)")
+                statement.executeUpdate("create unique index TILE_INDEX on TILES (ZOOM_LEVEL, TILE_COLUMN, TILE_ROW)")
+            }
+            connection.prepareStatement("insert into TILES values (?, ?, ?, ?)").withCloseable { insert ->
+                def padding = "feature " * 250
+                (0..MAX_ZOOM).each { zoom ->
+                    (0..<(1 << zoom)).each { column ->
+                        (0..<(1 << zoom)).each { row ->
+                            def compressed = new ByteArrayOutputStream()
+                            new GZIPOutputStream(compressed).withCloseable {
+                                it.write("$zoom/$column/$row $padding".getBytes("UTF-8"))
+                            }
+                            insert.setInt(1, zoom)
+                            insert.setInt(2, column)
+                            insert.setInt(3, row)
+                            insert.setBytes(4, compressed.toByteArray())
+                            insert.addBatch()
+                        }
+                    }
+                    insert.executeBatch()
+                }
+            }
+            connection.commit()
+        }
+    }
+
+    static String decode(byte[] data) {
+        new GZIPInputStream(new ByteArrayInputStream(data)).withCloseable { it.text }.split(" ")[0]
+    }
+
+    /**
+     * @return Tiles read per second by all threads, reading random tiles of the most detailed zooms with the given
+     * reader function.
+     */
+    static double measureThroughput(Closure<MapTile> readTile) {
+        def executor = Executors.newFixedThreadPool(THREADS)
+        def start = System.nanoTime()
+        def futures = (1..THREADS).collect {
+            executor.submit {
+                def random = ThreadLocalRandom.current()
+                REQUESTS_PER_THREAD.times {
+                    // Most requests are for a small area, as when a dashboard loads
+                    def zoom = MAX_ZOOM - random.nextInt(2)
+                    def column = random.nextInt(4)
+                    def row = random.nextInt(4)
+                    assert readTile(zoom, column, row) != null
+                }
+            }
+        }
+        futures*.get()
+        def seconds = (System.nanoTime() - start) / 1_000_000_000d
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+        (THREADS * REQUESTS_PER_THREAD) / seconds
+    }
+
+    def "Read tiles from an mbtiles file with a connection pool and tile cache"() {
+
+        given: "a reader with a connection pool and a cache"
+        def reader = new MbTilesReader(mbtiles, THREADS)
+        def cache = new MapTileCache(1024 * 1024)
+
+        when: "a tile is read with XYZ coordinates"
+        def data = reader.getTile(2, 1, 0)
+
+        then: "the tile with the flipped TMS row should be returned as it is stored"
+        data != null
+        def tile = new MapTile(data, "\"test\"")
+        tile.gzipped
+        decode(tile.data) == "2/1/3"
+
+        and: "tiles that don't exist should not be returned"
+        reader.getTile(MAX_ZOOM + 1, 0, 0) == null
+        reader.getTile(2, 4, 0) == null
+        reader.getTile(-1, 0, 0) == null
+
+        when: "the throughput of reading tiles with and without the cache is measured"
+        def uncached = measureThroughput { int zoom, int column, int row ->
+            new MapTile(reader.getTile(zoom, column, row), "")
+        }
+        def cached = measureThroughput { int zoom, int column, int row ->
+            def key = MapTileCache.getKey(zoom, column, row)
+            def cachedTile = cache.get(key)
+            if (cachedTile == null) {
+                cachedTile = new MapTile(reader.getTile(zoom, column, row), "")
+                cache.put(key, cachedTile)
+            }
+            cachedTile
+        }
+        LOG.info(String.format("Map tile throughput with %d threads: pooled reader %.0f tiles/s, with cache %.0f tiles/s, cache %s",
+            THREADS, uncached, cached, cache.stats.toJson()))
+
+        then: "the hot tiles should have been served from the cache"
+        cache.stats.getNumber("tiles").orElse(0) == 32
+        cache.stats.getNumber("hits").orElse(0) > cache.stats.getNumber("misses").orElse(0)
+
+        when: "the cache is smaller than the tiles"
+        def smallCache = new MapTileCache(3 * data.length)
+        (0..3).each { smallCache.put(MapTileCache.getKey(2, it, 0), new MapTile(reader.getTile(2, it, 0), "")) }
+
+        then: "the least recently used tiles should have been evicted"
+        smallCache.stats.getNumber("evictions").orElse(0) >= 1
+        smallCache.stats.getNumber("bytes").orElse(Double.MAX_VALUE) <= 3 * data.length
+        smallCache.get(MapTileCache.getKey(2, 3, 0)) != null
+        smallCache.get(MapTileCache.getKey(2, 0, 0)) == null
+
+        cleanup:
+        reader?.close()
+    }
+}
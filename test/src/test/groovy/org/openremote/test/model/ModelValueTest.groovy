@@ -39,6 +39,56 @@ class ModelValueTest extends Specification {
         sampleArr.toJson() == '[null]'
     }
 
+    def "Read and write UTF-8 JSON streams"() {
+        given:
+        def json = '{"2":"two","10":"ten","text":"\u00e9\u20ac\ud83d\ude00 \\"quoted\\"\\n\\u0001","number":123.45,"integer":-42,' +
+            '"large":12345678,"zero":0,"bool":false,"nothing":null,"array":[1,"a",null,{"nested":true}],"empty":{}}'
+        def value = Values.<ObjectValue>parse(json).get()
+
+        when: "the value is written to a stream"
+        def out = new ByteArrayOutputStream()
+        Values.write(value, out)
+
+        then: "the bytes should be the UTF-8 encoding of the stringified value"
+        new String(out.toByteArray(), "UTF-8") == value.toJson()
+
+        when: "the bytes are parsed"
+        ObjectValue parsedValue = Values.<ObjectValue>parse(new ByteArrayInputStream(out.toByteArray())).get()
+
+        then: "the value should be the same"
+        parsedValue == value
+        parsedValue.getString("text").get() == "\u00e9\u20ac\ud83d\ude00 \"quoted\"\n\u0001"
+        parsedValue.getNumber("integer").get() == -42d
+        parsedValue.keyContainsNull("nothing")
+        parsedValue.getArray("array").get().indexContainsNull(2)
+
+        and: "empty or null streams should not have a value"
+        !Values.parse(new ByteArrayInputStream(new byte[0])).isPresent()
+        !Values.parse(new ByteArrayInputStream("null".getBytes("UTF-8"))).isPresent()
+    }
+
+    def "Copy values when they are read from a lazy copy"() {
+        given:
+        def original = Values.<ObjectValue>parse('{"attribute1":{"value":{"level":1},"meta":[{"name":"label"}]},"attribute2":{"value":2},"name":"test"}').get()
+
+        when: "a lazy copy is created"
+        def copy = original.lazyCopy()
+
+        then: "it should be equal and be written without reading its values"
+        copy == original
+        copy.toJson() == original.toJson()
+
+        when: "nested values of the copy are read and modified"
+        copy.getObject("attribute1").get().getObject("value").get().put("level", 2)
+        copy.getObject("attribute1").get().getArray("meta").get().add(Values.createObject().put("name", "description"))
+        copy.put("attribute2", Values.createObject().put("value", 3))
+        copy.remove("name")
+
+        then: "the original should not be modified"
+        original.toJson() == '{"attribute1":{"value":{"level":1},"meta":[{"name":"label"}]},"attribute2":{"value":2},"name":"test"}'
+        copy.toJson() == '{"attribute1":{"value":{"level":2},"meta":[{"name":"label"},{"name":"description"}]},"attribute2":{"value":3}}'
+    }
+
     def "Compare scalar values"() {
         expect:
         Values.create(true) == Values.create(true)
@@ -0,0 +1,108 @@
+package org.openremote.test.notification
+
+import org.openremote.manager.notification.NotificationDispatcher
+import org.openremote.manager.notification.NotificationHandler
+import org.openremote.model.notification.Notification
+import org.openremote.model.notification.NotificationSendResult
+import org.openremote.model.notification.PushNotificationMessage
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class NotificationDispatcherTest extends Specification {
+
+    def "Dispatch notifications in batches with retries through a stub transport"() {
+
+        given: "a stub transport that is unavailable the first time it is used for one of the targets"
+        def sentIds = new CopyOnWriteArrayList<Long>()
+        def batchSizes = new CopyOnWriteArrayList<Integer>()
+        def attempts = new ConcurrentHashMap<Long, Integer>()
+        def handler = Stub(NotificationHandler) {
+            sendMessages(_, _, _, _, _) >> { List<Long> ids, source, sourceId, List<Notification.Target> targets, message ->
+                batchSizes.add(ids.size())
+                ids.collect { id ->
+                    def attempt = attempts.merge(id, 1, { a, b -> a + b })
+                    if (targets[ids.indexOf(id)].id == "invalid") {
+                        return NotificationSendResult.failure("Invalid target")
+                    }
+                    if (id == 3L && attempt == 1) {
+                        return NotificationSendResult.failure("Unavailable", true)
+                    }
+                    sentIds.add(id)
+                    NotificationSendResult.success()
+                }
+            }
+        }
+
+        and: "a dispatcher that stores the errors"
+        def scheduler = Executors.newSingleThreadScheduledExecutor()
+        def errors = new ConcurrentHashMap<Long, String>()
+        def dispatcher = new NotificationDispatcher(scheduler, 2, 2, 2, 10, { errors.putAll(it) })
+
+        when: "a notification is dispatched to five targets"
+        def targets = ["console1", "console2", "console3", "invalid", "console5"].collect {
+            new Notification.Target(Notification.TargetType.ASSET, it)
+        }
+        dispatcher.dispatch(handler, Notification.Source.INTERNAL, "", [1L, 2L, 3L, 4L, 5L], targets,
+            new PushNotificationMessage().setTitle("Test")).get(5, TimeUnit.SECONDS)
+
+        then: "the targets should have been sent in batches and the unavailable target sent again"
+        batchSizes.sort() == [1, 1, 2, 2]
+        sentIds.sort() == [1L, 2L, 3L, 5L]
+        attempts[3L] == 2
+
+        and: "the target that failed should have an error"
+        errors == [(4L): "Invalid target"]
+
+        and: "the metrics should have been updated"
+        def stats = dispatcher.getStats()
+        stats.getNumber("pending").orElse(-1) == 0
+        stats.getNumber("batches").orElse(0) == 4
+        stats.getNumber("sent").orElse(0) == 4
+        stats.getNumber("failed").orElse(0) == 1
+        stats.getNumber("retried").orElse(0) == 1
+
+        cleanup:
+        dispatcher.shutdown()
+        scheduler.shutdownNow()
+    }
+
+    def "Don't send again to the targets of a batch that failed with an exception"() {
+
+        given: "a stub transport that delivers to the first target of a batch and then throws"
+        def sentIds = new CopyOnWriteArrayList<Long>()
+        def handler = Stub(NotificationHandler) {
+            sendMessages(_, _, _, _, _) >> { List<Long> ids, source, sourceId, List<Notification.Target> targets, message ->
+                sentIds.add(ids[0])
+                throw new IllegalStateException("Connection lost")
+            }
+        }
+
+        and: "a dispatcher that stores the errors"
+        def scheduler = Executors.newSingleThreadScheduledExecutor()
+        def errors = new ConcurrentHashMap<Long, String>()
+        def dispatcher = new NotificationDispatcher(scheduler, 1, 3, 2, 10, { errors.putAll(it) })
+
+        when: "a notification is dispatched to three targets"
+        def targets = ["console1", "console2", "console3"].collect {
+            new Notification.Target(Notification.TargetType.ASSET, it)
+        }
+        dispatcher.dispatch(handler, Notification.Source.INTERNAL, "", [1L, 2L, 3L], targets,
+            new PushNotificationMessage().setTitle("Test")).get(5, TimeUnit.SECONDS)
+
+        then: "the batch should not have been sent again, so the delivered target doesn't get a duplicate"
+        sentIds == [1L]
+
+        and: "all targets of the batch should have an error"
+        errors == [(1L): "Connection lost", (2L): "Connection lost", (3L): "Connection lost"]
+        dispatcher.getStats().getNumber("retried").orElse(-1) == 0
+        dispatcher.getStats().getNumber("failed").orElse(0) == 3
+
+        cleanup:
+        dispatcher.shutdown()
+        scheduler.shutdownNow()
+    }
+}
@@ -0,0 +1,105 @@
+package org.openremote.test.notification
+
+import org.openremote.manager.notification.NotificationRepeatIndex
+import org.openremote.model.notification.Notification
+import spock.lang.Specification
+
+import static org.openremote.model.notification.Notification.Source.INTERNAL
+import static org.openremote.model.notification.Notification.TargetType.ASSET
+
+class NotificationRepeatIndexTest extends Specification {
+
+    static List<Notification.Target> targets(String... ids) {
+        ids.collect { new Notification.Target(ASSET, it) }
+    }
+
+    def "Bound the index and look up evicted entries"() {
+
+        given: "sent notifications stored in the database"
+        def stored = [
+            "console1": new Date(3000),
+            "console2": new Date(2000),
+            "console3": new Date(1000)
+        ]
+
+        and: "a loader which counts the lookups"
+        def loadedTargets = []
+        def loader = { List<Notification.Target> missingTargets ->
+            loadedTargets.addAll(missingTargets*.id)
+            missingTargets.findAll { stored.containsKey(it.id) }.collect { [it.type, it.id, stored[it.id]] as Object[] }
+        }
+
+        and: "an index with two entries"
+        def index = new NotificationRepeatIndex(2)
+
+        when: "all sent notifications are loaded"
+        index.load(stored.take(2).collect { id, sentOn -> ["Test", INTERNAL, "", ASSET, id, sentOn] as Object[] }, true)
+
+        then: "the index should hold them all and answer without the loader"
+        index.isComplete()
+        index.getLastSent("Test", INTERNAL, "", targets("console1", "console2", "console4"), loader) == [3000L, 2000L, null] as Long[]
+        loadedTargets.isEmpty()
+
+        when: "the most recent sent notifications are loaded, more than the maximum entries"
+        index.load(stored.collect { id, sentOn -> ["Test", INTERNAL, "", ASSET, id, sentOn] as Object[] }, false)
+
+        then: "the index should hold the most recent entries"
+        !index.isComplete()
+        index.size() == 2
+        index.getLastSent("Test", INTERNAL, "", targets("console1", "console2"), loader) == [3000L, 2000L] as Long[]
+        loadedTargets.isEmpty()
+
+        when: "targets which aren't in the index are checked"
+        def lastSent = index.getLastSent("Test", INTERNAL, "", targets("console1", "console3", "console4"), loader)
+
+        then: "they should be looked up with the loader"
+        lastSent == [3000L, 1000L, null] as Long[]
+        loadedTargets == ["console3", "console4"]
+        index.size() == 2
+        index.stats.getNumber("lookups").orElse(0) == 1
+        index.stats.getNumber("evictions").orElse(0) == 2
+
+        when: "the target which hasn't been sent to is checked again"
+        loadedTargets.clear()
+        lastSent = index.getLastSent("Test", INTERNAL, "", targets("console4"), loader)
+
+        then: "the index should remember that it hasn't been sent"
+        lastSent == [null] as Long[]
+        loadedTargets.isEmpty()
+
+        when: "the notification is sent to a target"
+        index.sent("Test", INTERNAL, "", targets("console5"), 4000L)
+
+        then: "the index should be bounded and answer from the entry"
+        index.size() == 2
+        index.getLastSent("Test", INTERNAL, "", targets("console5"), loader) == [4000L] as Long[]
+        loadedTargets.isEmpty()
+    }
+
+    def "Update entries of removed sent notifications"() {
+
+        given: "an index with sent notifications"
+        def index = new NotificationRepeatIndex(10)
+        index.load([], true)
+        index.sent("Test", INTERNAL, "", targets("console1", "console2"), 2000L)
+        def loader = { List<Notification.Target> missingTargets -> throw new IllegalStateException("Unexpected lookup") }
+
+        when: "the last sent notification of a target is removed and an earlier one remains"
+        index.removed("Test", INTERNAL, "", ASSET, "console1", 1000L)
+
+        then: "the entry should have the earlier time"
+        index.getLastSent("Test", INTERNAL, "", targets("console1", "console2"), loader) == [1000L, 2000L] as Long[]
+
+        when: "all sent notifications of a target are removed"
+        index.removed("Test", INTERNAL, "", ASSET, "console2", null)
+
+        then: "the notification should not have been sent to the target"
+        index.getLastSent("Test", INTERNAL, "", targets("console1", "console2"), loader) == [1000L, null] as Long[]
+
+        when: "the notification is sent again"
+        index.sent("Test", INTERNAL, "", targets("console2"), 3000L)
+
+        then: "the entry should have the new time"
+        index.getLastSent("Test", INTERNAL, "", targets("console2"), loader) == [3000L] as Long[]
+    }
+}
@@ -0,0 +1,129 @@
+package org.openremote.test.protocol
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import org.openremote.agent.protocol.ProtocolExecutorService
+import org.openremote.agent.protocol.artnet.ArtnetFrameBuffer
+import org.openremote.agent.protocol.artnet.ArtnetLight
+import org.openremote.agent.protocol.artnet.ArtnetLightState
+import org.openremote.agent.protocol.artnet.ArtnetPacket
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledFuture
+
+class ArtnetFrameBufferTest extends Specification {
+
+    static final int HEADER_LENGTH = 18
+
+    static ArtnetLight light(int lightId, int amountOfLeds, Integer... values) {
+        def receivedValues = new LinkedHashMap<String, Integer>()
+        values.eachWithIndex { value, i -> receivedValues.put("c" + i, value) }
+        new ArtnetLight(lightId, 0, 0, amountOfLeds, receivedValues.keySet() as String[], new ArtnetLightState(lightId, receivedValues, 100, true), null)
+    }
+
+    static byte[] dmxData(ArtnetPacket packet) {
+        ByteBuf buf = Unpooled.buffer()
+        try {
+            packet.toByteBuf(buf)
+            int length = buf.getUnsignedShort(HEADER_LENGTH - 2)
+            assert buf.writerIndex() == HEADER_LENGTH + length
+            byte[] data = new byte[length]
+            buf.getBytes(HEADER_LENGTH, data)
+            data
+        } finally {
+            buf.release()
+        }
+    }
+
+    def "Send dirty universes and re-send unchanged universes as keep-alive"() {
+
+        given: "a started frame buffer which records the sent packets"
+        def sentData = []
+        def frameBuffer = new ArtnetFrameBuffer({ ArtnetPacket packet -> sentData.add(dmxData(packet)) })
+        frameBuffer.start(Stub(ProtocolExecutorService) {
+            scheduleAtFixedRate(_, _, _) >> Stub(ScheduledFuture)
+        }, 30)
+
+        when: "a light of a universe is updated and the frame buffer is refreshed"
+        frameBuffer.update(0, [light(1, 2, 10, 20)])
+        frameBuffer.refresh(10000L)
+
+        then: "the universe should be sent with the channels of each LED"
+        sentData.size() == 1
+        sentData[0] == [10, 20, 10, 20] as byte[]
+
+        when: "the frame buffer is refreshed again before the keep-alive period"
+        frameBuffer.refresh(10000L + ArtnetFrameBuffer.KEEP_ALIVE_MILLIS - 1)
+
+        then: "nothing should be sent"
+        sentData.size() == 1
+
+        when: "the light is updated several times before a refresh"
+        frameBuffer.update(0, [light(1, 2, 30, 40)])
+        frameBuffer.update(0, [light(1, 2, 50, 60)])
+        frameBuffer.refresh(10500L)
+
+        then: "only the latest state should be sent once"
+        sentData.size() == 2
+        sentData[1] == [50, 60, 50, 60] as byte[]
+
+        when: "the keep-alive period has passed since the last send"
+        frameBuffer.refresh(10500L + ArtnetFrameBuffer.KEEP_ALIVE_MILLIS)
+
+        then: "the unchanged universe should be sent again"
+        sentData.size() == 3
+        sentData[2] == [50, 60, 50, 60] as byte[]
+
+        when: "the frame buffer is stopped"
+        frameBuffer.stop()
+        frameBuffer.update(0, [light(1, 2, 70, 80)])
+        frameBuffer.refresh(20000L)
+
+        then: "nothing should be sent"
+        sentData.size() == 3
+    }
+
+    def "Pad the DMX data of a universe"() {
+
+        given: "a universe buffer"
+        def universe = new ArtnetFrameBuffer.Universe(1)
+
+        when: "lights with an odd number of channels are applied"
+        universe.update([light(1, 1, 1, 2, 3)])
+
+        then: "the data should be padded to an even length"
+        dmxData(new ArtnetPacket(universe)) == [1, 2, 3, 0] as byte[]
+
+        when: "lights without state are applied"
+        def lightWithoutState = light(1, 1, 1, 2, 3)
+        lightWithoutState.setLightState(null)
+        universe.update([lightWithoutState])
+
+        then: "the data should be padded to the minimum length"
+        dmxData(new ArtnetPacket(universe)) == new byte[ArtnetFrameBuffer.MIN_DMX_DATA_LENGTH]
+
+        cleanup:
+        universe.release()
+    }
+
+    def "Discard channels beyond the channels of a universe"() {
+
+        given: "a universe buffer"
+        def universe = new ArtnetFrameBuffer.Universe(2)
+
+        when: "lights with more channels than a universe are applied"
+        universe.update([light(1, 200, 1, 2), light(2, 100, 3, 4, 5)])
+
+        then: "the data should be truncated to the channels of a universe"
+        def data = dmxData(new ArtnetPacket(universe))
+        data.length == ArtnetFrameBuffer.DMX_CHANNELS
+        data[0..399] as byte[] == ([1, 2] * 200) as byte[]
+        data[400..511] as byte[] == ([3, 4, 5] * 38)[0..111] as byte[]
+
+        and: "the truncated universe should be sent"
+        universe.requiresSend(0L)
+
+        cleanup:
+        universe.release()
+    }
+}
@@ -0,0 +1,119 @@
+package org.openremote.test.protocol
+
+import com.jayway.jsonpath.Configuration
+import com.jayway.jsonpath.JsonPath
+import com.jayway.jsonpath.Option
+import com.jayway.jsonpath.ParseContext
+import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider
+import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider
+import org.openremote.agent.protocol.AttributeValuePipeline
+import org.openremote.agent.protocol.Protocol
+import org.openremote.container.util.Util
+import org.openremote.manager.agent.AgentService
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.*
+import spock.lang.Specification
+
+import java.util.logging.Logger
+
+class AttributeValuePipelineBenchmarkTest extends Specification {
+
+    private static final Logger LOG = Logger.getLogger(AttributeValuePipelineBenchmarkTest.class.getName())
+    static final int EVENTS = 20000
+
+    static final String PAYLOAD = """
+        {
+            "name": "Sensor",
+            "readings": [
+                {"room": "Kitchen", "value": "21.5"},
+                {"room": "Bathroom", "value": "23"},
+                {"room": "Bedroom", "value": "18.5"}
+            ]
+        }
+    """
+
+    /**
+     * The per-event processing before pipelines were compiled: the meta items are read and the filters are
+     * deserialised for each event, and the JSON path is evaluated on the value serialised to JSON.
+     */
+    static Value processUncompiled(AssetAttribute attribute, Value value, ParseContext jsonPathParser) {
+        ValueFilter[] filters = Protocol.getLinkedAttributeValueFilters(attribute).orElse(null)
+        filters.each { filter ->
+            def path = (filter as JsonPathFilter).path
+            Object obj = jsonPathParser.parse(value.toJson()).read(path)
+            value = obj != null ? Values.parse(obj.toString()).orElse(null) : null
+        }
+        Values.getMetaItemValueOrThrow(attribute, Protocol.META_ATTRIBUTE_VALUE_CONVERTER, false, false)
+        def valueType = attribute.getType().map({ it.getValueType() }).orElse(null)
+        value != null && valueType != value.type ? Values.convertToValue(value, valueType).orElse(null) : value
+    }
+
+    /**
+     * @return Events per second.
+     */
+    static double measureThroughput(Closure<Value> process) {
+        // Warm up the JIT before measuring
+        (EVENTS.intdiv(10)).times { process() }
+        def start = System.nanoTime()
+        EVENTS.times { process() }
+        EVENTS / ((System.nanoTime() - start) / 1_000_000_000d)
+    }
+
+    def "Measure the per-event cost of compiled linked attribute value processing"() {
+
+        given: "a linked attribute with a JSON path filter and a numeric value type"
+        def attribute = new AssetAttribute("asset123", "temperature", AttributeValueType.NUMBER).setMeta(
+            new MetaItem(
+                Protocol.META_ATTRIBUTE_VALUE_FILTERS,
+                Values.createArray().add(Util.objectToValue(new JsonPathFilter("\$.readings[1].value", false, false)).get())
+            )
+        )
+
+        and: "a sensor update payload"
+        def payload = Values.parse(PAYLOAD).get()
+
+        and: "the uncompiled and the compiled processing"
+        def agentService = new AgentService()
+        def jsonPathParser = JsonPath.using(
+            Configuration.builder()
+                .jsonProvider(new JacksonJsonNodeJsonProvider())
+                .mappingProvider(new JacksonMappingProvider())
+                .build()
+                .addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL)
+        )
+        def pipeline = AttributeValuePipeline.compile(attribute)
+
+        when: "the throughput of each is measured"
+        def uncompiledThroughput = measureThroughput { processUncompiled(attribute, payload, jsonPathParser) }
+        def compiledThroughput = measureThroughput { pipeline.processInbound(payload, agentService).value }
+
+        LOG.info(String.format("Linked attribute inbound processing: uncompiled %.0f/s, compiled %.0f/s (%.1fx)",
+            uncompiledThroughput, compiledThroughput, compiledThroughput / uncompiledThroughput))
+
+        then: "both should produce the same value"
+        processUncompiled(attribute, payload, jsonPathParser) == Values.create(23)
+        pipeline.processInbound(payload, agentService).value == Values.create(23)
+        !pipeline.processInbound(payload, agentService).key
+        uncompiledThroughput > 0
+        compiledThroughput > 0
+    }
+
+    def "Bound the compiled JSON paths"() {
+
+        given: "an agent service and a JSON payload"
+        def agentService = new AgentService()
+        def payload = Values.parse(PAYLOAD).get()
+
+        when: "more distinct paths than the cache size are applied"
+        (0..AgentService.JSON_PATH_CACHE_SIZE).each {
+            agentService.applyValueFilters(payload, [new JsonPathFilter("\$.readings[0].value$it", false, false)] as ValueFilter[])
+        }
+
+        then: "only the most recently used paths should be kept"
+        agentService.jsonPathCache.size() == AgentService.JSON_PATH_CACHE_SIZE
+        !agentService.jsonPathCache.containsKey("\$.readings[0].value0")
+        agentService.jsonPathCache.containsKey("\$.readings[0].value" + AgentService.JSON_PATH_CACHE_SIZE)
+    }
+}
@@ -0,0 +1,51 @@
+package org.openremote.test.protocol
+
+import org.openremote.manager.agent.AgentService
+import org.openremote.model.value.JsonPathFilter
+import org.openremote.model.value.ValueFilter
+import org.openremote.model.value.ValueType
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+class JsonPathFilterTest extends Specification {
+
+    static final String JSON = """
+        {
+            "name": "Sensor",
+            "values": [21.5, 23, 18.5],
+            "readings": [
+                {"room": "Kitchen", "value": 21.5, "ok": true},
+                {"room": "Bathroom", "value": 23, "ok": false},
+                {"room": "Bedroom", "value": 18.5, "ok": true}
+            ]
+        }
+    """
+
+    def "Apply JSON path filters directly to values"() {
+
+        given: "an agent service and a JSON payload"
+        def agentService = new AgentService()
+        def payload = Values.parse(JSON).get()
+
+        expect: "paths to be evaluated on the parsed value"
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.name", false, false)] as ValueFilter[]) == Values.create("Sensor")
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.readings[1].value", false, false)] as ValueFilter[]) == Values.create(23)
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.readings[0]", false, false)] as ValueFilter[]).type == ValueType.OBJECT
+
+        and: "a JSON string payload to be parsed before the path is evaluated"
+        agentService.applyValueFilters(Values.create(JSON), [new JsonPathFilter("\$.readings[2].room", false, false)] as ValueFilter[]) == Values.create("Bedroom")
+
+        and: "the first or last result of a path matching many values to be returned"
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$..room", true, false)] as ValueFilter[]) == Values.create("Kitchen")
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$..room", false, true)] as ValueFilter[]) == Values.create("Bedroom")
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.readings[?(@.ok == true)].value", false, false)] as ValueFilter[]).toJson() == "[21.5,18.5]"
+
+        and: "the plain results of path functions to be converted to values"
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.readings.length()", false, false)] as ValueFilter[]) == Values.create(3)
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.values.avg()", false, false)] as ValueFilter[]) == Values.create(21)
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.values.max()", false, false)] as ValueFilter[]) == Values.create(23)
+
+        and: "a path that doesn't match to return nothing"
+        agentService.applyValueFilters(payload, [new JsonPathFilter("\$.missing", false, false)] as ValueFilter[]) == null
+    }
+}
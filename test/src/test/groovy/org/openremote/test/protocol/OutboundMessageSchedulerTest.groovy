@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol
+
+import org.openremote.agent.protocol.io.OutboundMessageScheduler
+import org.openremote.manager.concurrent.ManagerExecutorService
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static org.openremote.agent.protocol.io.OutboundMessageScheduler.Priority.*
+
+class OutboundMessageSchedulerTest extends Specification implements ManagerContainerTrait {
+
+    def "Check outbound messages are prioritised, collapsed and rate limited"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, initialDelay: 0)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(findEphemeralPort()), Collections.singletonList(new ManagerExecutorService()))
+        def executorService = container.getService(ManagerExecutorService.class)
+
+        and: "a scheduler that sends one message every 50ms"
+        List<String> sent = new CopyOnWriteArrayList<>()
+        List<Long> sentTimestamps = new CopyOnWriteArrayList<>()
+        def scheduler = new OutboundMessageScheduler<String>("test", executorService, { String msg ->
+            sent.add(msg)
+            sentTimestamps.add(System.currentTimeMillis())
+        }, 50, 1)
+
+        when: "messages of different priorities are queued at the same time"
+        synchronized (scheduler) {
+            scheduler.schedule("poll1", POLL)
+            scheduler.schedule("rule1", RULE_ACTION)
+            scheduler.schedule("user1", USER_COMMAND, "a")
+            scheduler.schedule("user2", USER_COMMAND, "a")
+            scheduler.schedule("rule2", RULE_ACTION, "b")
+            scheduler.schedule("user3", USER_COMMAND, "b")
+        }
+
+        then: "superseded messages should be collapsed and the rest sent in priority order"
+        conditions.eventually {
+            assert sent == ["user2", "user3", "rule1", "poll1"]
+            assert scheduler.size() == 0
+        }
+
+        and: "the messages should have been rate limited"
+        for (int i = 1; i < sentTimestamps.size(); i++) {
+            assert sentTimestamps[i] - sentTimestamps[i - 1] >= 40
+        }
+
+        and: "the stats should reflect the processing"
+        def stats = scheduler.getStats()
+        assert stats.getNumber("sent").orElse(0) == 4
+        assert stats.getNumber("collapsed").orElse(0) == 2
+        assert stats.getNumber("maxQueueDepth").orElse(0) == 4
+
+        when: "the scheduler is closed"
+        scheduler.close()
+
+        then: "no further messages should be accepted"
+        assert !scheduler.schedule("user4", USER_COMMAND)
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
+}
@@ -61,6 +61,11 @@ class BasicRulesProcessingTest extends Specification implements ManagerContainer
             assert rulesImport.apartment3Engine.assetStates.size() == DEMO_RULE_STATES_APARTMENT_3
         }
 
+        and: "the warm-up on startup should have loaded all asset states"
+        rulesService.warmUpStats.getNumber("assetStates").orElse(0) == DEMO_RULE_STATES_GLOBAL
+        rulesService.warmUpStats.getNumber("insertedAssetStates").orElse(0) == DEMO_RULE_STATES_GLOBAL
+        rulesService.warmUpStats.getNumber("millis").orElse(-1) >= 0
+
         when: "a LHS filtering test rule definition is loaded into the Smart Building asset"
         def assetRuleset = new AssetRuleset(
             managerDemoSetup.smartBuildingId,
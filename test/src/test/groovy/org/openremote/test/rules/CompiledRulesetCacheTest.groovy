@@ -0,0 +1,224 @@
+package org.openremote.test.rules
+
+import org.codehaus.groovy.runtime.InvokerHelper
+import org.kohsuke.groovy.sandbox.GroovyValueFilter
+import org.openremote.manager.rules.CompiledRulesetCache
+import org.openremote.manager.rules.RulesetDeployment
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.logging.Logger
+
+class CompiledRulesetCacheTest extends Specification {
+
+    private static final Logger LOG = Logger.getLogger(CompiledRulesetCacheTest.class.getName())
+    static final int FACTS = 100
+    static final int ITERATIONS = 20000
+
+    static final String GROOVY_RULES = """
+        class Temperature {
+            String room
+            double value
+        }
+        facts = (1..$FACTS).collect { new Temperature(room: "Room \$it", value: it) }
+        condition = { List<Temperature> temperatures ->
+            temperatures.findAll { it.value > 50 }.collect { it.room.length() + it.value }.sum()
+        }
+    """
+
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("compiled-rulesets")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    static Binding run(Class<? extends Script> scriptClass) {
+        def binding = new Binding()
+        InvokerHelper.createScript(scriptClass, binding).run()
+        binding
+    }
+
+    /**
+     * @return Rule condition evaluations per second.
+     */
+    static double measureThroughput(Binding binding) {
+        def condition = binding.getVariable("condition") as Closure
+        def facts = binding.getVariable("facts")
+        // Warm up the JIT before measuring
+        ITERATIONS.intdiv(10).times { condition(facts) }
+        def start = System.nanoTime()
+        ITERATIONS.times { condition(facts) }
+        ITERATIONS / ((System.nanoTime() - start) / 1_000_000_000d)
+    }
+
+    def "Compile unchanged rulesets once"() {
+
+        given: "a cache which stores compiled Groovy rulesets on disk"
+        def cache = RulesetDeployment.createCompiledRulesetCache(10, directory)
+
+        when: "a Groovy ruleset which declares a class is compiled twice"
+        def scriptClass = cache.getGroovyScript(GROOVY_RULES)
+        def cachedScriptClass = cache.getGroovyScript(GROOVY_RULES)
+
+        then: "it should have been compiled once and the cached bytecode defined in a new class for each deployment"
+        !scriptClass.is(cachedScriptClass)
+        scriptClass.name == cachedScriptClass.name
+        !scriptClass.classLoader.is(cachedScriptClass.classLoader)
+        scriptClass.name.startsWith(CompiledRulesetCache.GROOVY_CLASS_PREFIX)
+        cache.stats.getNumber("hits").orElse(0) == 1
+        cache.stats.getNumber("misses").orElse(0) == 1
+
+        and: "each deployment should run its own script instance with its own classes of the ruleset"
+        def binding = run(scriptClass)
+        def otherBinding = run(cachedScriptClass)
+        !binding.getVariable("facts").is(otherBinding.getVariable("facts"))
+        !binding.getVariable("facts")[0].class.is(otherBinding.getVariable("facts")[0].class)
+        binding.getVariable("facts")[0].class.name == otherBinding.getVariable("facts")[0].class.name
+        (binding.getVariable("condition") as Closure).call(otherBinding.getVariable("facts")) == 4126
+
+        when: "the ruleset is compiled by a new cache with the same directory, as after a restart"
+        def restartedCache = RulesetDeployment.createCompiledRulesetCache(10, directory)
+        def loadedScriptClass = restartedCache.getGroovyScript(GROOVY_RULES)
+
+        then: "the script class should have been loaded from disk"
+        restartedCache.stats.getNumber("diskHits").orElse(0) == 1
+        loadedScriptClass.name == scriptClass.name
+        (run(loadedScriptClass).getVariable("condition") as Closure).call(binding.getVariable("facts")) == 4126
+
+        when: "the ruleset is changed"
+        def changedScriptClass = cache.getGroovyScript(GROOVY_RULES + "\nchanged = true")
+
+        then: "it should have been compiled again"
+        changedScriptClass.name != scriptClass.name
+        cache.stats.getNumber("misses").orElse(0) == 2
+
+        when: "a JavaScript ruleset is compiled twice and evaluated by two deployments"
+        def compiledScript = cache.getJavascript("var rules = [{ name: 'Rule' }];")
+        def bindings = compiledScript.engine.createBindings()
+        def otherBindings = compiledScript.engine.createBindings()
+        cache.getJavascript("var rules = [{ name: 'Rule' }];").eval(bindings)
+        compiledScript.eval(otherBindings)
+
+        then: "the same compiled script should have been evaluated with separate bindings"
+        cache.getJavascript("var rules = [{ name: 'Rule' }];").is(compiledScript)
+        bindings.get("rules") != null
+        !bindings.get("rules").is(otherBindings.get("rules"))
+
+        when: "the cache has more than the maximum entries"
+        def smallCache = RulesetDeployment.createCompiledRulesetCache(2, null)
+        (1..3).each { smallCache.getJavascript("var rules = [];\n// $it") }
+
+        then: "the least recently used entry should have been evicted"
+        smallCache.stats.getNumber("entries").orElse(0) == 2
+        smallCache.stats.getNumber("evictions").orElse(0) == 1
+    }
+
+    def "Compile stored rulesets again if they don't match their signature"() {
+
+        given: "a Groovy ruleset compiled by a cache which stores it on disk"
+        def cache = RulesetDeployment.createCompiledRulesetCache(10, directory)
+        def scriptClass = cache.getGroovyScript(GROOVY_RULES)
+        def classDirectory = directory.resolve(scriptClass.name)
+
+        expect: "the classes to have been stored with their signature and the key"
+        Files.exists(classDirectory.resolve(scriptClass.name + ".class"))
+        Files.exists(classDirectory.resolve(CompiledRulesetCache.SIGNATURE_FILE))
+        Files.exists(directory.resolve(CompiledRulesetCache.KEY_FILE))
+
+        when: "the bytecode of a class is modified and the ruleset is compiled by a new cache"
+        def classFile = classDirectory.resolve(scriptClass.name + ".class")
+        byte[] bytes = Files.readAllBytes(classFile)
+        bytes[bytes.length - 1] = (byte) (bytes[bytes.length - 1] + 1)
+        Files.write(classFile, bytes)
+        def restartedCache = RulesetDeployment.createCompiledRulesetCache(10, directory)
+        def loadedScriptClass = restartedCache.getGroovyScript(GROOVY_RULES)
+
+        then: "it should have been compiled again and stored with a valid signature"
+        restartedCache.stats.getNumber("invalidSignatures").orElse(0) == 1
+        restartedCache.stats.getNumber("diskHits").orElse(0) == 0
+        (run(loadedScriptClass).getVariable("condition") as Closure).call(run(loadedScriptClass).getVariable("facts")) == 4126
+        def nextCache = RulesetDeployment.createCompiledRulesetCache(10, directory)
+        nextCache.getGroovyScript(GROOVY_RULES)
+        nextCache.stats.getNumber("diskHits").orElse(0) == 1
+
+        when: "a class is added to the stored classes and the ruleset is compiled by a new cache"
+        Files.write(classDirectory.resolve("Injected.class"), bytes)
+        def otherCache = RulesetDeployment.createCompiledRulesetCache(10, directory)
+        otherCache.getGroovyScript(GROOVY_RULES)
+
+        then: "it should have been compiled again"
+        otherCache.stats.getNumber("invalidSignatures").orElse(0) == 1
+        otherCache.stats.getNumber("diskHits").orElse(0) == 0
+        !Files.exists(classDirectory.resolve("Injected.class"))
+    }
+
+    def "Isolate static state of classes declared by a ruleset between its deployments"() {
+
+        given: "a Groovy ruleset which declares a class with a static field"
+        def cache = RulesetDeployment.createCompiledRulesetCache(10, null)
+        def source = """
+            class Counter {
+                static int count
+            }
+            Counter.count++
+            count = Counter.count
+        """
+
+        when: "the ruleset is deployed twice"
+        def binding = run(cache.getGroovyScript(source))
+        def otherBinding = run(cache.getGroovyScript(source))
+
+        then: "each deployment should have used its own static field of the class compiled once"
+        binding.getVariable("count") == 1
+        otherBinding.getVariable("count") == 1
+        cache.stats.getNumber("misses").orElse(0) == 1
+        cache.stats.getNumber("hits").orElse(0) == 1
+
+        when: "the ruleset is changed"
+        def changedBinding = run(cache.getGroovyScript(source + "\nchanged = true"))
+
+        then: "the deployment of the changed ruleset should have its own class too"
+        changedBinding.getVariable("count") == 1
+    }
+
+    def "Measure the overhead of the sandbox on rule execution"() {
+
+        given: "the rules compiled without the sandbox, as by a plain GroovyShell"
+        def plain = new Binding()
+        new GroovyShell(plain).evaluate(GROOVY_RULES)
+
+        and: "the rules compiled with the sandbox"
+        def cache = RulesetDeployment.createCompiledRulesetCache(10, null)
+        def sandboxed = run(cache.getGroovyScript(GROOVY_RULES))
+
+        when: "the rule condition throughput is measured"
+        def plainThroughput = measureThroughput(plain)
+        def sandboxedThroughput = measureThroughput(sandboxed)
+
+        and: "measured again with an interceptor that checks every call, as an enforced sandbox would"
+        def interceptor = new GroovyValueFilter() {}
+        interceptor.register()
+        double interceptedThroughput
+        try {
+            interceptedThroughput = measureThroughput(sandboxed)
+        } finally {
+            interceptor.unregister()
+        }
+
+        LOG.info(String.format("Rule condition throughput: plain %.0f/s, sandboxed %.0f/s (%.1fx), intercepted %.0f/s (%.1fx)",
+            plainThroughput, sandboxedThroughput, plainThroughput / sandboxedThroughput,
+            interceptedThroughput, plainThroughput / interceptedThroughput))
+
+        then: "all variants should evaluate the condition to the same result"
+        (plain.getVariable("condition") as Closure).call(plain.getVariable("facts")) == 4126
+        (sandboxed.getVariable("condition") as Closure).call(sandboxed.getVariable("facts")) == 4126
+        plainThroughput > 0
+        sandboxedThroughput > 0
+        interceptedThroughput > 0
+    }
+}
@@ -0,0 +1,77 @@
+package org.openremote.test.rules
+
+import org.openremote.container.util.UniqueIdentifierGenerator
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.RulesEngineId
+import org.openremote.manager.rules.RulesService
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.attribute.MetaItemType
+import org.openremote.model.rules.AssetState
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+
+import static org.openremote.model.attribute.AttributeEvent.Source.INTERNAL
+
+class RulesWarmUpTest extends Specification {
+
+    def "Insert the asset states of a warm-up page into each engine on its own thread"() {
+
+        given: "a rules service with a global and a tenant engine"
+        def insertingThreads = ConcurrentHashMap.newKeySet()
+        def globalEngine = Mock(RulesEngine) {
+            getId() >> new RulesEngineId()
+        }
+        def tenantEngine = Mock(RulesEngine) {
+            getId() >> new RulesEngineId("master")
+        }
+        def rulesService = new RulesService()
+        rulesService.globalEngine = globalEngine
+        rulesService.tenantEngines.put("master", tenantEngine)
+
+        and: "an asset with two rule state attributes"
+        def assetId = UniqueIdentifierGenerator.generateId("Warm-up Room")
+        def asset = new Asset(
+            assetId,
+            0L,
+            new Date(),
+            "Warm-up Room",
+            AssetType.ROOM.type,
+            false,
+            (String)null,
+            (String)null,
+            (String)null,
+            "master",
+            [assetId] as String[],
+            null).addAttributes(
+            new AssetAttribute("temp", AttributeValueType.TEMPERATURE, Values.create(20), 1000).addMeta(MetaItemType.RULE_STATE),
+            new AssetAttribute("humidity", AttributeValueType.HUMIDITY, Values.create(50), 1000).addMeta(MetaItemType.RULE_STATE)
+        )
+
+        and: "the asset state of one attribute has been updated whilst loading"
+        rulesService.assetStates.add(new AssetState(asset, asset.getAttribute("humidity").get(), INTERNAL))
+
+        when: "the page of assets is added and inserted"
+        def executor = Executors.newFixedThreadPool(2)
+        def engineAssetStates = rulesService.addAssetStates([asset])
+        rulesService.insertAssetStates(engineAssetStates, executor)
+        executor.shutdown()
+
+        then: "only the loaded asset state should have been inserted into each engine, on the pool"
+        1 * globalEngine.updateOrInsertAssetState({ it.attributeName == "temp" }, true) >> { insertingThreads.add(Thread.currentThread()) }
+        1 * tenantEngine.updateOrInsertAssetState({ it.attributeName == "temp" }, true) >> { insertingThreads.add(Thread.currentThread()) }
+        0 * _.updateOrInsertAssetState({ it.attributeName == "humidity" }, _)
+        !insertingThreads.contains(Thread.currentThread())
+
+        and: "the stats should only count the inserted asset state"
+        rulesService.warmUpStats.getNumber("assetStates").orElse(0) == 2
+        rulesService.warmUpStats.getNumber("insertedAssetStates").orElse(0) == 1
+        rulesService.warmUpStats.getNumber("engines").orElse(0) == 2
+        rulesService.assetStates.size() == 2
+    }
+}
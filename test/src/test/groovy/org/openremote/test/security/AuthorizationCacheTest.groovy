@@ -0,0 +1,89 @@
+package org.openremote.test.security
+
+import org.openremote.container.persistence.PersistenceEvent
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.container.timer.TimerService
+import org.openremote.manager.security.AuthorizationCache
+import org.openremote.manager.security.UserConfiguration
+import spock.lang.Specification
+
+class AuthorizationCacheTest extends Specification {
+
+    static final int EXPIRY_SECONDS = 60
+
+    def "Cache authorization data until it is invalidated or expires"() {
+
+        given: "a restricted user stored in the database"
+        def storedUserConfiguration = new UserConfiguration("user1")
+        storedUserConfiguration.setRestricted(true)
+
+        and: "a database which counts the loads"
+        def loads = 0
+        def persistenceService = Stub(PersistenceService) {
+            doReturningTransaction(_) >> {
+                loads++
+                def userConfiguration = new UserConfiguration(storedUserConfiguration.userId)
+                userConfiguration.setRestricted(storedUserConfiguration.restricted)
+                userConfiguration
+            }
+        }
+
+        and: "a clock which can be advanced"
+        def now = 1000000L
+        def timerService = Stub(TimerService) {
+            getCurrentTimeMillis() >> { now }
+        }
+
+        and: "the cache"
+        def cache = new AuthorizationCache(persistenceService, timerService, EXPIRY_SECONDS)
+
+        when: "the user is checked twice"
+        def restricted = cache.isRestrictedUser("user1")
+        def restrictedAgain = cache.isRestrictedUser("user1")
+
+        then: "the user should have been loaded once"
+        restricted
+        restrictedAgain
+        loads == 1
+
+        when: "the user is changed and a persistence event is received"
+        storedUserConfiguration.setRestricted(false)
+        cache.onPersistenceEvent(new PersistenceEvent<>(PersistenceEvent.Cause.UPDATE, storedUserConfiguration, null, null))
+
+        then: "the user should be loaded again with the change"
+        !cache.isRestrictedUser("user1")
+        loads == 2
+
+        when: "the user is changed without a persistence event, as when changed directly in Keycloak"
+        storedUserConfiguration.setRestricted(true)
+
+        then: "the cached value should be used until it expires"
+        !cache.isRestrictedUser("user1")
+        loads == 2
+
+        when: "the entry is about to expire"
+        now += EXPIRY_SECONDS * 1000 - 1
+
+        then: "the cached value should still be used"
+        !cache.isRestrictedUser("user1")
+        loads == 2
+
+        when: "the entry has expired"
+        now += 1
+
+        then: "the user should be loaded again with the change"
+        cache.isRestrictedUser("user1")
+        loads == 3
+
+        and: "the loaded value should be cached again"
+        cache.isRestrictedUser("user1")
+        loads == 3
+
+        when: "the user is invalidated by the service changing it"
+        cache.invalidateUser("user1")
+
+        then: "the user should be loaded again"
+        cache.isRestrictedUser("user1")
+        loads == 4
+    }
+}
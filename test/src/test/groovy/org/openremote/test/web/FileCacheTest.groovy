@@ -0,0 +1,78 @@
+package org.openremote.test.web
+
+import org.openremote.container.web.file.FileCache
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.GZIPInputStream
+
+class FileCacheTest extends Specification {
+
+    Path directory
+
+    def setup() {
+        directory = Files.createTempDirectory("file-cache")
+    }
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    static Enumeration<String> acceptEncoding(String... headers) {
+        Collections.enumeration(Arrays.asList(headers))
+    }
+
+    def "Serve cached and compressed variants of static files"() {
+
+        given: "a cache and a script file"
+        def cache = new FileCache(1024 * 1024, 256 * 1024, ["application/javascript"] as String[])
+        def script = directory.resolve("app.js").toFile()
+        script.text = "console.log('Hello');\n" * 500
+
+        when: "the file is requested twice"
+        def entry = cache.get(script, script.lastModified(), script.length(), "application/javascript")
+        def cachedEntry = cache.get(script, script.lastModified(), script.length(), "application/javascript")
+
+        then: "it should have been loaded once with a gzip variant"
+        entry.is(cachedEntry)
+        entry.encoded
+        cache.stats.getNumber("misses").orElse(0) == 1
+        cache.stats.getNumber("hits").orElse(0) == 1
+
+        and: "the variant should match the accepted encodings"
+        def gzip = entry.getVariant(acceptEncoding("gzip, deflate, br"))
+        gzip.encoding == "gzip"
+        gzip.data.length < script.length()
+        new GZIPInputStream(new ByteArrayInputStream(gzip.data)).withCloseable { it.text } == script.text
+        entry.getVariant(acceptEncoding("identity")).encoding == null
+        entry.getVariant(acceptEncoding("gzip;q=0, deflate")).encoding == null
+        entry.getVariant(null).data.length == script.length()
+
+        when: "a precompressed brotli file is written next to the file"
+        def brotli = new File(script.path + ".br")
+        brotli.bytes = [1, 2, 3] as byte[]
+        brotli.lastModified = script.lastModified()
+        script.text = script.text + "console.log('Changed');\n"
+        script.lastModified = brotli.lastModified
+        entry = cache.get(script, script.lastModified(), script.length(), "application/javascript")
+
+        then: "the changed file should have been reloaded with the brotli variant"
+        !entry.is(cachedEntry)
+        entry.getVariant(acceptEncoding("gzip, deflate, br")).encoding == "br"
+        entry.getVariant(acceptEncoding("gzip")).encoding == "gzip"
+        cache.stats.getNumber("files").orElse(0) == 1
+
+        when: "an image and a file larger than the maximum file size are requested"
+        def image = directory.resolve("logo.png").toFile()
+        image.bytes = new byte[1024]
+        def large = directory.resolve("large.js").toFile()
+        large.bytes = new byte[512 * 1024]
+        def imageEntry = cache.get(image, image.lastModified(), image.length(), "image/png")
+
+        then: "the image should not be compressed and the large file should not be cached"
+        !imageEntry.encoded
+        imageEntry.getVariant(acceptEncoding("gzip")).encoding == null
+        cache.get(large, large.lastModified(), large.length(), "application/javascript") == null
+    }
+}